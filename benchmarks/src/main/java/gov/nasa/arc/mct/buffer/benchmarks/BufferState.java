@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.benchmarks;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+import gov.nasa.arc.mct.buffer.internal.BenchmarkBuffers;
+import gov.nasa.arc.mct.buffer.internal.DataBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * A buffer holding the samples of a number of feeds written at a fixed rate. Time stamps and values are derived from
+ * the index of the sample, so every run writes the same samples. Samples are written by a single thread.
+ */
+@State(Scope.Benchmark)
+public class BufferState {
+    /** Time stamp of the first sample, in milliseconds. */
+    static final long START_MILLIS = 1325376000000L;
+    private static final int DISTINCT_VALUES = 100;
+
+    @Param({ "memory", "fastdisk", "noncoddisk" })
+    public String bufferType;
+
+    /** Number of feeds. */
+    @Param({ "200" })
+    public int feeds;
+
+    /** Samples per second of each feed. */
+    @Param({ "10" })
+    public int rate;
+
+    /** Seconds of samples written before the measurements start. */
+    @Param({ "60" })
+    public int history;
+
+    DataBuffer buffer;
+    String[] feedIDs;
+    private File dir;
+    private Map<String, String>[] values;
+    private volatile long tick;
+    private int nextFeed;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setupBuffer() throws IOException, BufferFullException {
+        dir = File.createTempFile("mct-benchmark", "");
+        dir.delete();
+        dir.mkdirs();
+        buffer = BenchmarkBuffers.newBuffer(bufferType, BenchmarkBuffers.getProperties(dir));
+
+        feedIDs = new String[feeds];
+        for (int i = 0; i < feeds; i++) {
+            feedIDs[i] = "benchmark:feed" + i;
+        }
+        values = new Map[DISTINCT_VALUES];
+        for (int i = 0; i < DISTINCT_VALUES; i++) {
+            Map<String, String> value = new HashMap<String, String>();
+            value.put(FeedSampleBlock.VALUE_KEY, String.valueOf(Math.sin(i * 2 * Math.PI / DISTINCT_VALUES)));
+            value.put(FeedSampleBlock.IS_VALID_KEY, Boolean.TRUE.toString());
+            value.put(FeedSampleBlock.STATUS_KEY, "0");
+            values[i] = value;
+        }
+        for (int i = 0; i < history * rate; i++) {
+            putTick();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeBuffer() {
+        stopWriting();
+        BenchmarkBuffers.closeBuffer(buffer);
+        delete(dir);
+    }
+
+    /**
+     * Stops the threads writing to the buffer, before it is closed.
+     */
+    protected void stopWriting() {
+        //
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Returns the number of times all the feeds were written.
+     */
+    long getTicks() {
+        return tick;
+    }
+
+    /**
+     * Returns the time stamp of the latest sample written, in milliseconds.
+     */
+    long getLastTime() {
+        return getTime(tick - 1);
+    }
+
+    private long getTime(long t) {
+        return START_MILLIS + t * 1000 / rate;
+    }
+
+    private Map<String, String> getValue(long t, int feed) {
+        return values[(int) ((t + feed) % DISTINCT_VALUES)];
+    }
+
+    /**
+     * Writes the next sample of every feed in a single call.
+     */
+    void putTick() throws BufferFullException {
+        Map<String, Map<Long, Map<String, String>>> value = new HashMap<String, Map<Long, Map<String, String>>>(feeds * 2);
+        Long time = Long.valueOf(getTime(tick));
+        for (int i = 0; i < feeds; i++) {
+            Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>(2);
+            entries.put(time, getValue(tick, i));
+            value.put(feedIDs[i], entries);
+        }
+        buffer.putData(value, TimeUnit.MILLISECONDS, null);
+        tick++;
+    }
+
+    /**
+     * Writes the next sample of the next feed, going through the feeds in turn.
+     */
+    void putSample() throws BufferFullException {
+        buffer.putData(feedIDs[nextFeed], TimeUnit.MILLISECONDS, getTime(tick), getValue(tick, nextFeed));
+        if (++nextFeed == feeds) {
+            nextFeed = 0;
+            tick++;
+        }
+    }
+
+    /**
+     * Moves the buffer to its next partition, discarding the samples of the partition it reuses.
+     */
+    void rotate() {
+        buffer.prepareForNextPartition();
+        buffer.moveToNextPartition();
+    }
+}
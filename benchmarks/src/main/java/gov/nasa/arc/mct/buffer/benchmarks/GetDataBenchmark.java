@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.benchmarks;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads from a buffer holding <code>history</code> seconds of samples, the way a view of a few feeds does:
+ * the last second, the whole history, and the last value of feeds which stopped changing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class GetDataBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ReadState extends BufferState {
+        /** Number of feeds of each request. */
+        @Param({ "10" })
+        public int requestFeeds;
+
+        private Set<String>[] requests;
+        private int nextRequest;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void setupRequests() {
+            requests = new Set[Math.max(1, feeds / requestFeeds)];
+            for (int i = 0; i < requests.length; i++) {
+                requests[i] = new HashSet<String>();
+                for (int j = 0; j < requestFeeds; j++) {
+                    requests[i].add(feedIDs[(i * requestFeeds + j) % feeds]);
+                }
+            }
+        }
+
+        /**
+         * Returns the feeds of the next request, going through the feeds in turn.
+         */
+        Set<String> nextRequest() {
+            Set<String> request = requests[nextRequest];
+            nextRequest = (nextRequest + 1) % requests.length;
+            return request;
+        }
+    }
+
+    @Benchmark
+    public Map<String, SortedMap<Long, Map<String, String>>> getShortWindow(ReadState state) {
+        long end = state.getLastTime();
+        return state.buffer.getData(state.nextRequest(), end - 1000, end, TimeUnit.MILLISECONDS);
+    }
+
+    @Benchmark
+    public Map<String, SortedMap<Long, Map<String, String>>> getLongWindow(ReadState state) {
+        return state.buffer.getData(state.nextRequest(), BufferState.START_MILLIS, state.getLastTime(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Requests a window after the last sample, which is answered with the last sample of each feed before the
+     * window.
+     */
+    @Benchmark
+    public Map<String, SortedMap<Long, Map<String, String>>> getLastData(ReadState state) {
+        long end = state.getLastTime() + 2000;
+        return state.buffer.getData(state.nextRequest(), end - 1000, end, TimeUnit.MILLISECONDS);
+    }
+}
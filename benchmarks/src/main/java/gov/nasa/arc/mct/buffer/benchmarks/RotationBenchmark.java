@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.benchmarks;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rotates the partitions of a buffer while a writer thread writes one sample of every feed per call as fast as the
+ * buffer takes them. Before each rotation the writer fills the current partition with <code>partitionSeconds</code>
+ * of samples; the time spent waiting for it is not measured.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class RotationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class LoadState extends BufferState {
+        /** Seconds of samples written to a partition before it is rotated. */
+        @Param({ "60" })
+        public int partitionSeconds;
+
+        private volatile boolean stopped;
+        private Thread writer;
+        private long rotatedAt;
+
+        @Setup(Level.Trial)
+        public void startWriting() {
+            writer = new Thread("Benchmark writer") {
+                @Override
+                public void run() {
+                    try {
+                        while (!stopped) {
+                            putTick();
+                        }
+                    } catch (BufferFullException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            writer.start();
+        }
+
+        @Override
+        protected void stopWriting() {
+            stopped = true;
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void fillPartition() throws InterruptedException {
+            while (getTicks() - rotatedAt < (long) partitionSeconds * rate && writer.isAlive()) {
+                Thread.sleep(1);
+            }
+            rotatedAt = getTicks();
+        }
+    }
+
+    @Benchmark
+    public void rotate(LoadState state) {
+        state.rotate();
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * Creates the buffers the benchmarks run against, the way the feed aggregator does, with a configuration rooted in
+ * a scratch directory. Lives in the package of the buffers to start each benchmark with new buffers.
+ */
+public final class BenchmarkBuffers {
+    private BenchmarkBuffers() {
+        //
+    }
+
+    /**
+     * Returns the configuration of the buffers. Partitions are only rotated by the benchmarks, and there is no
+     * evictor or journal running in the background.
+     * @param dir directory of the disk buffers
+     */
+    public static Properties getProperties(File dir) {
+        Properties prop = new Properties();
+        prop.setProperty("buffer.concurrency", "8");
+        prop.setProperty("buffer.write.threadPool.size", "1");
+        prop.setProperty("buffer.disk.loc", new File(dir, "fastdisk").getAbsolutePath());
+        prop.setProperty("buffer.disk.loc.non.cod", new File(dir, "noncoddisk").getAbsolutePath());
+        prop.setProperty("buffer.min.disk.space.megabytes", "10");
+        prop.setProperty("buffer.min.percentage.disk.space", "1");
+        prop.setProperty("buffer.evictor.recurrMills", "86400000");
+        prop.setProperty("buffer.time.millis", "-1");
+        prop.setProperty("buffer.partitions", "2");
+        prop.setProperty("buffer.partition.overlap.millis", "0");
+        prop.setProperty("meta.buffer.refresh.millis", "-1");
+        prop.setProperty("bdb.cache.percent", "5");
+        prop.setProperty("memory.buffer.time.millis", "-1");
+        prop.setProperty("memory.buffer.partition", "2");
+        return prop;
+    }
+
+    /**
+     * Creates a buffer.
+     * @param bufferType one of the buffer types of the <code>bufferList</code> property
+     */
+    public static DataBuffer newBuffer(String bufferType, Properties prop) {
+        DataBufferFactory.reset();
+        if ("memory".equals(bufferType)) {
+            return DataBufferFactory.getMemoryDataBuffer(prop);
+        } else if ("offheapmemory".equals(bufferType)) {
+            return DataBufferFactory.getOffHeapMemoryDataBuffer(prop);
+        } else if ("fastdisk".equals(bufferType)) {
+            return DataBufferFactory.getFastDiskDataBuffer(prop);
+        } else if ("noncoddisk".equals(bufferType)) {
+            return DataBufferFactory.getNonCODDiskDataBuffer(prop);
+        } else if ("mmaplog".equals(bufferType)) {
+            return DataBufferFactory.getLogDataBuffer(prop);
+        }
+        throw new IllegalArgumentException("Unknown buffer type " + bufferType);
+    }
+
+    public static void closeBuffer(DataBuffer buffer) {
+        buffer.closeBuffer();
+        DataBufferFactory.reset();
+    }
+}
@@ -24,9 +24,11 @@ package gov.nasa.arc.mct.fastplot.view;
 import gov.nasa.arc.mct.components.FeedProvider;
 import gov.nasa.arc.mct.components.FeedProvider.FeedType;
 import gov.nasa.arc.mct.components.FeedProvider.RenderingInfo;
+import gov.nasa.arc.mct.components.FeedSampleBatch;
 
 import java.awt.Color;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
@@ -59,13 +61,18 @@ public class PlotDataFeedUpdateHandler {
 	}
 	
 	void updateFromFeed(Map<String, List<Map<String, String>>> data, boolean predictionOnly) {
+		updateFromFeed(data, null, predictionOnly);
+	}
+	
+	void updateFromFeed(Map<String, List<Map<String, String>>> data, Map<String, FeedSampleBatch> batches, 
+			boolean predictionOnly) {
 		plotViewManifestation.getPlot().informUpdateFromFeedEventStarted();
 		// Receiving any data from the feed informs us that any sync lines
 		// should be
 		// removed.
 		// Check if we cached updates while the updateFromFeed was previously
 		// locked.
-		updateFromFeeds(data, false, true, predictionOnly);
+		updateFromFeeds(data, batches, false, true, predictionOnly);
 		plotViewManifestation.getPlot().refreshDisplay();
 		// Request that the plot updates its display with the new feed data.
 		if (plotViewManifestation.controlPanel != null
@@ -120,6 +127,20 @@ public class PlotDataFeedUpdateHandler {
 	 */
 	void updateFromFeeds(Map<String, List<Map<String, String>>> data,
 			boolean legendOnly, boolean updateLegend, boolean predictionOnly) {
+		updateFromFeeds(data, null, legendOnly, updateLegend, predictionOnly);
+	}
+
+	/**
+	 * Unwrap the data from the feed service, using the samples already decoded
+	 * for the feeds which have them.
+	 * 
+	 * @param data
+	 *            the data
+	 * @param batches
+	 *            the decoded samples by feed ID, or null
+	 */
+	void updateFromFeeds(Map<String, List<Map<String, String>>> data, Map<String, FeedSampleBatch> batches,
+			boolean legendOnly, boolean updateLegend, boolean predictionOnly) {
 		if (data != null) {
 			Map<String, SortedMap<Long, Double>> dataForPlot = new HashMap<String, SortedMap<Long,Double>>();
 
@@ -146,6 +167,28 @@ public class PlotDataFeedUpdateHandler {
 	
 						RenderingInfo lastRI = DEFAULT_RI;
 						boolean haveLegendInfo = false;
+						FeedSampleBatch batch = batches == null ? null : batches.get(feedId);
+						
+						if (batch != null) {
+							for (int i = 0; i < batch.size(); i++) {
+								RenderingInfo ri = batch.getRenderingInfo(i);
+								if (!batch.hasTime(i) || ri == null || ri.getValueText() == null) {
+									logger.error("Either time, value, or isValid entry was not defined. {}", batch.getSample(i));
+									continue;
+								}
+								lastRI = ri;
+								haveLegendInfo = true;
+								if (ri.isPlottable() && !batch.isNumeric(i)) {
+									logger.error("Number format exception converting string to double while processing the data feed entry {}, {}",
+											batch.getTime(i), ri.getValueText());
+								} else if (!legendOnly) {
+									// values which are not plottable are NaN
+									dataForPlotThisFeed.put(batch.getTime(i), batch.getValue(i));
+								}
+							}
+							// the batch holds all the samples of the feed
+							dataForThisFeed = Collections.emptyList();
+						}
 	
 						// Loop over each point that needs to be plotted for this
 						// feed.
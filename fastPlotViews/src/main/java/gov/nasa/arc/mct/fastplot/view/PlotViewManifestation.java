@@ -23,6 +23,7 @@ package gov.nasa.arc.mct.fastplot.view;
 
 import gov.nasa.arc.mct.components.AbstractComponent;
 import gov.nasa.arc.mct.components.FeedProvider;
+import gov.nasa.arc.mct.components.FeedSampleBatch;
 import gov.nasa.arc.mct.fastplot.bridge.PlotConstants;
 import gov.nasa.arc.mct.fastplot.bridge.PlotView;
 import gov.nasa.arc.mct.fastplot.settings.PlotConfiguration;
@@ -398,6 +399,14 @@ public class PlotViewManifestation extends FeedView implements RenderingCallback
 		}
 	}
 
+	@Override
+	public void updateFromFeed(Map<String, List<Map<String, String>>> data, Map<String, FeedSampleBatch> batches) {
+		plotDataFeedUpdateHandler.updateFromFeed(data, batches, false);
+		for (Runnable r : feedCallbacks) {
+			SwingUtilities.invokeLater(r);
+		}
+	}
+
 	// Requests to MCT data buffer call back here. 
 	@Override
 	public void render(Map<String, List<Map<String, String>>> data) {
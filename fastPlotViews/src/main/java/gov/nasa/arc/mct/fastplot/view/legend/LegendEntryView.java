@@ -2,6 +2,7 @@ package gov.nasa.arc.mct.fastplot.view.legend;
 
 import gov.nasa.arc.mct.components.AbstractComponent;
 import gov.nasa.arc.mct.components.FeedProvider;
+import gov.nasa.arc.mct.components.FeedSampleBatch;
 import gov.nasa.arc.mct.components.FeedProvider.RenderingInfo;
 import gov.nasa.arc.mct.fastplot.bridge.AbstractPlotLine;
 import gov.nasa.arc.mct.gui.FeedView;
@@ -88,12 +89,19 @@ public class LegendEntryView extends FeedView implements AbstractLegendEntry {
 
 	@Override
 	public void updateFromFeed(Map<String, List<Map<String, String>>> data) {
+		updateFromFeed(data, null);
+	}
+
+	@Override
+	public void updateFromFeed(Map<String, List<Map<String, String>>> data, Map<String, FeedSampleBatch> batches) {
 		for (FeedProvider fp : feedProviders) {
 			if (data.containsKey(fp.getSubscriptionId())) {
 				List<Map<String, String>> series = data.get(fp.getSubscriptionId());
 				if (!series.isEmpty()){
 					String display = getManifestedComponent().getDisplayName();
-					RenderingInfo ri = fp.getRenderingInfo(series.get(series.size() - 1));
+					FeedSampleBatch batch = batches == null ? null : batches.get(fp.getSubscriptionId());
+					RenderingInfo ri = batch != null && batch.size() == series.size() ?
+							batch.getRenderingInfo(batch.size() - 1) : fp.getRenderingInfo(series.get(series.size() - 1));
 					String status = ri.getStatusText();
 					if (!status.trim().isEmpty()) display = "(" + status + ") " + display;
 					label.setText(display);
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes the data requests a thread is about to make to a {@link FeedAggregator}: how urgent they are, when their
+ * result stops being useful, and whether they were cancelled. The feed aggregator serves the reads of live requests
+ * before the ones of history requests, and stops reading once a request is cancelled or past its deadline, returning
+ * the data read so far. Requests made by a thread without a description are live requests without a deadline.
+ * <p>
+ * A description applies to the thread which began it, until it is ended:
+ * <pre>
+ * DataRequest request = DataRequest.begin(DataRequest.Priority.history, 0, TimeUnit.MILLISECONDS, worker);
+ * try {
+ *     feedAggregator.getData(feedIDs, TimeUnit.MILLISECONDS, startTime, endTime);
+ * } finally {
+ *     request.end();
+ * }
+ * </pre>
+ * An interrupted thread also stops waiting for the reads of its request, so cancelling a
+ * {@link javax.swing.SwingWorker} with <code>cancel(true)</code> stops its reads even without a description.
+ */
+public final class DataRequest {
+    /**
+     * Order in which the reads of requests are served.
+     */
+    public static enum Priority {
+        /** Data of the live window of a view; served first. */
+        live,
+        /** Older data, served once the live requests are. */
+        history;
+    }
+
+    private static final ThreadLocal<DataRequest> CURRENT = new ThreadLocal<DataRequest>();
+
+    private final Priority priority;
+    private final long deadline;
+    private final Future<?> task;
+    private final DataRequest previous;
+    private volatile boolean cancelled;
+
+    private DataRequest(Priority priority, long deadline, Future<?> task, DataRequest previous) {
+        this.priority = priority;
+        this.deadline = deadline;
+        this.task = task;
+        this.previous = previous;
+    }
+
+    /**
+     * Describes the requests the current thread makes until {@link #end()} is called.
+     * @param priority priority of the requests
+     * @param timeout time after which the data of the requests is no longer useful; 0 or less for no deadline
+     * @param timeUnit unit of the timeout
+     * @param task task making the requests, whose cancellation cancels them; may be null
+     * @return the description, to end once the requests are made
+     */
+    public static DataRequest begin(Priority priority, long timeout, TimeUnit timeUnit, Future<?> task) {
+        long deadline = timeout > 0 ? System.nanoTime() + timeUnit.toNanos(timeout) : 0;
+        DataRequest request = new DataRequest(priority, deadline, task, CURRENT.get());
+        CURRENT.set(request);
+        return request;
+    }
+
+    /**
+     * Returns the description of the requests of the current thread, or null if there is none.
+     */
+    public static DataRequest current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Ends the description, restoring the one in effect when it began.
+     */
+    public void end() {
+        if (CURRENT.get() == this) {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns true if the requests have a deadline.
+     */
+    public boolean hasDeadline() {
+        return deadline != 0;
+    }
+
+    /**
+     * Returns the time left before the deadline, or Long.MAX_VALUE if the requests have no deadline.
+     */
+    public long getRemainingTime(TimeUnit timeUnit) {
+        if (deadline == 0) {
+            return Long.MAX_VALUE;
+        }
+        return timeUnit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Cancels the requests. Reads which have started are completed, the others are skipped.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns true if the requests were cancelled, directly or through their task.
+     */
+    public boolean isCancelled() {
+        return cancelled || (task != null && task.isCancelled());
+    }
+
+    /**
+     * Returns true if the requests were cancelled or are past their deadline.
+     */
+    public boolean isDone() {
+        return isCancelled() || (deadline != 0 && deadline - System.nanoTime() <= 0);
+    }
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+/**
+ * This interface defines notifications of the feeds which received new samples, so callers of 
+ * {@link FeedAggregator#getData(java.util.Set, java.util.concurrent.TimeUnit, long, long)} can limit their 
+ * requests to these feeds instead of polling every feed.
+ *
+ */
+public interface FeedChangeAggregator {
+    /**
+     * Adds a listener notified after new samples are written to the aggregator.
+     * @param listener to notify
+     */
+    public void addFeedChangeListener(FeedChangeListener listener);
+
+    /**
+     * Removes a listener added by {@link #addFeedChangeListener(FeedChangeListener)}.
+     * @param listener to remove
+     */
+    public void removeFeedChangeListener(FeedChangeListener listener);
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.Set;
+
+/**
+ * This interface defines the callback through which a {@link FeedChangeAggregator} reports the feeds which 
+ * received new samples.
+ *
+ */
+public interface FeedChangeListener {
+    /**
+     * Invoked once new samples of the feeds can be retrieved from the aggregator. This may be invoked from any 
+     * thread, including the threads writing the samples, so implementations should return quickly.
+     * @param feedIDs feeds which received new samples; the set must not be modified or kept.
+     */
+    public void feedsChanged(Set<String> feedIDs);
+}
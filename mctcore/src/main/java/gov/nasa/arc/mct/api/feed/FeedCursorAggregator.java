@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This interface defines a streaming alternative to {@link FeedAggregator#getData(Set, TimeUnit, long, long)}
+ * which returns the data through a {@link FeedDataCursor} instead of materializing all of it at once.
+ *
+ */
+public interface FeedCursorAggregator {
+    /**
+     * Opens a cursor over the data of the feeds.
+     * @param feedIDs to retrieve data for
+     * @param timeUnit the time unit of startTime and endTime parameters.
+     * @param startTime the start time of the return data set.
+     * @param endTime the end time of the return data set.
+     * @param chunkSize the number of samples the cursor should return at most in a chunk.
+     * @return cursor over the data of the feeds, as returned by {@link FeedAggregator#getData(Set, TimeUnit, long, long)}.
+     */
+    public FeedDataCursor openCursor(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime, int chunkSize);
+}
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pull based cursor over the data of a set of feeds. Each call to {@link #next()} returns a chunk holding a bounded
+ * number of samples, so a long historical request can be read with a constant amount of memory. Chunks follow
+ * each other in time; the samples of a feed in a chunk are all later than the ones of the previous chunks.
+ * <p>
+ * A cursor is not thread safe. It must be closed once it is no longer needed, even when it was not read
+ * to the end.
+ *
+ */
+public interface FeedDataCursor {
+    /**
+     * Returns true if the cursor has more samples.
+     * @return true if {@link #next()} returns more samples
+     */
+    public boolean hasNext();
+
+    /**
+     * Returns the next chunk of samples.
+     * @return map of data for the feeds having samples in the chunk, each list ordered according to the time.
+     * @throws java.util.NoSuchElementException if the cursor has no more samples
+     */
+    public Map<String, List<Map<String, String>>> next();
+
+    /**
+     * Releases the resources of the cursor.
+     */
+    public void close();
+}
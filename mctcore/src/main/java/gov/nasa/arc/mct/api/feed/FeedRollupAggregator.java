@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This interface defines a variant of {@link FeedAggregator#getData(Set, TimeUnit, long, long)} which returns
+ * the data reduced to a resolution, as described by {@link FeedRollupProvider}.
+ *
+ */
+public interface FeedRollupAggregator {
+    /**
+     * Returns a map of data for each feed, reduced to the given resolution.
+     * @param feedIDs to retrieve data for
+     * @param timeUnit the time unit of startTime, endTime and resolution parameters.
+     * @param startTime the start time of the return data set.
+     * @param endTime the end time of the return data set.
+     * @param resolution the longest interval the caller can tell apart.
+     * @return map of data for the specified feeds. Each entry in the map has data
+     * with a timestamp that is {@literal >=} startTime and {@literal <} endTime.
+     */
+    public Map<String, List<Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime, long resolution);
+}
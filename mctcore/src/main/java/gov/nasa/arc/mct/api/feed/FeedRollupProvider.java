@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This interface defines a variant of {@link DataProvider#getData(Set, long, long, TimeUnit)} for callers which
+ * do not need every sample, such as a plot covering a time span much wider than its number of pixels.
+ *
+ */
+public interface FeedRollupProvider {
+    /**
+     * Returns a map of data for each feed, reduced to the given resolution. The time span is divided into
+     * intervals no longer than the resolution and only the first, last, minimum and maximum samples of each interval
+     * are returned, so the data still covers the full range of values. Providers return every sample when they
+     * do not keep data at a resolution fine enough for the request.
+     * @param feedIDs to retrieve data for
+     * @param startTime the start time of the return data set.
+     * @param endTime the end time of the return data set.
+     * @param timeUnit the time unit of startTime, endTime and resolution parameters.
+     * @param resolution the longest interval the caller can tell apart.
+     * @return map of data for the specified feeds. Each entry in the map has data
+     * with a timestamp that is &gt;= startTime and &lt;= endTime ordered according to the time.
+     */
+    public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime, TimeUnit timeUnit, long resolution);
+}
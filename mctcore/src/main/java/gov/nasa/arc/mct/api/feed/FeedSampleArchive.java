@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This interface defines a typed alternative to {@link FeedDataArchive#putData(Map, TimeUnit, Runnable)}
+ * which accepts columnar {@link FeedSampleBlock}s instead of a map per sample.
+ *
+ */
+public interface FeedSampleArchive {
+    /**
+     * This method accepts a set of samples and will invoke the runnable once all the samples have
+     * been persisted.
+     * @param samples block of samples for each feed, keyed by feedID
+     * @param timeUnit the time unit of the time stamps in the blocks.
+     * @param callback to execute when the data has been committed to the repository, may be null
+     * @throws BufferFullException - Buffer full exception.
+     */
+    public void putSamples(Map<String, FeedSampleBlock> samples, TimeUnit timeUnit, Runnable callback) throws BufferFullException;
+}
@@ -0,0 +1,852 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A time ordered, columnar block of samples for a single feed. Each sample is stored as a time stamp,
+ * a double value, a status byte and interned ids for the rendering info and the telemetry status,
+ * instead of a <code>Map&lt;String, String&gt;</code> per sample.
+ * <p>
+ * The block is lossless with respect to the map representation used by {@link FeedAggregator} and
+ * {@link DataProvider}: {@link #toMap(int)} returns a map that is equal to the one passed to
+ * {@link #add(long, Map)}. Values that are not in canonical numeric form and keys that are not
+ * known to the block are kept as text.
+ * <p>
+ * Blocks returned by a provider should be treated as read only; they may share storage with the provider.
+ */
+public final class FeedSampleBlock {
+    /** Key of the sample time in the map representation. */
+    public static final String TIME_KEY = "time";
+    /** Key of the sample value in the map representation. */
+    public static final String VALUE_KEY = "data";
+    /** Key of the validity flag in the map representation. */
+    public static final String IS_VALID_KEY = "isValid";
+    /** Key of the rendering info in the map representation. */
+    public static final String RENDERING_INFO_KEY = "ri";
+    /** Key of the telemetry status in the map representation. */
+    public static final String STATUS_KEY = "status";
+
+    /** Status bit set when the sample has a value. */
+    public static final int HAS_VALUE = 0x01;
+    /** Status bit set when the value is kept as text. */
+    public static final int TEXT_VALUE = 0x02;
+    /** Status bit set when the value is an integral number. */
+    public static final int INTEGRAL_VALUE = 0x04;
+    /** Status bit set when the sample has a validity flag. */
+    public static final int HAS_VALIDITY = 0x08;
+    /** Status bit holding the validity flag. */
+    public static final int VALID = 0x10;
+    /** Status bit set when the sample has a normalized time. */
+    public static final int HAS_TIME = 0x20;
+    /** Status bit set when the sample has rendering info. */
+    public static final int HAS_RENDERING_INFO = 0x40;
+    /** Status bit set when the text of the rendering info is the same as the value. */
+    public static final int RENDERING_INFO_TEXT_IS_VALUE = 0x80;
+
+    private static final char RENDERING_INFO_SEPARATOR = '&';
+    private static final int RENDERING_INFO_STYLE_FIELDS = 5;
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final long MAX_EXACT_LONG = 1L << 53;
+
+    private final String feedID;
+    private final boolean readOnly;
+    private final int offset;
+    private int size;
+    private long[] times;
+    private long[] normalizedTimes;
+    private double[] values;
+    private byte[] status;
+    private int[] renderingInfoIds;
+    private int[] statusIds;
+    private String[] texts;
+    private String[] renderingInfoTexts;
+    private Map<String, String>[] extras;
+
+    /**
+     * Creates an empty block.
+     * @param feedID feed the samples belong to
+     */
+    public FeedSampleBlock(String feedID) {
+        this(feedID, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty block.
+     * @param feedID feed the samples belong to
+     * @param capacity initial number of samples the block can hold without growing
+     */
+    public FeedSampleBlock(String feedID, int capacity) {
+        this.feedID = feedID;
+        this.readOnly = false;
+        this.offset = 0;
+        allocate(Math.max(1, capacity));
+    }
+
+    private FeedSampleBlock(FeedSampleBlock source, int from, int to) {
+        this.feedID = source.feedID;
+        this.readOnly = true;
+        this.offset = source.offset + from;
+        this.size = to - from;
+        this.times = source.times;
+        this.normalizedTimes = source.normalizedTimes;
+        this.values = source.values;
+        this.status = source.status;
+        this.renderingInfoIds = source.renderingInfoIds;
+        this.statusIds = source.statusIds;
+        this.texts = source.texts;
+        this.renderingInfoTexts = source.renderingInfoTexts;
+        this.extras = source.extras;
+    }
+
+    /**
+     * Creates a block from the map representation.
+     * @param feedID feed the samples belong to
+     * @param entries samples keyed by time
+     * @return a new block holding the samples
+     */
+    public static FeedSampleBlock fromMaps(String feedID, Map<Long, Map<String, String>> entries) {
+        FeedSampleBlock block = new FeedSampleBlock(feedID, entries.size());
+        for (Entry<Long, Map<String, String>> entry : entries.entrySet()) {
+            block.add(entry.getKey().longValue(), entry.getValue());
+        }
+        return block;
+    }
+
+    private void allocate(int capacity) {
+        times = new long[capacity];
+        normalizedTimes = new long[capacity];
+        values = new double[capacity];
+        status = new byte[capacity];
+        renderingInfoIds = new int[capacity];
+        statusIds = new int[capacity];
+        texts = null;
+        renderingInfoTexts = null;
+        extras = null;
+    }
+
+    /**
+     * Returns the feed the samples belong to.
+     * @return feed id
+     */
+    public String getFeedID() {
+        return feedID;
+    }
+
+    /**
+     * Returns the number of samples in this block.
+     * @return number of samples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if the block holds no samples.
+     * @return true if empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private int index(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return offset + i;
+    }
+
+    /**
+     * Returns the time stamp of a sample. Blocks returned by the buffers and by
+     * {@link FeedSampleAggregator#getSamples(java.util.Set, java.util.concurrent.TimeUnit, long, long)} have time
+     * stamps in nanoseconds; blocks passed to {@link FeedSampleArchive#putSamples(Map, java.util.concurrent.TimeUnit, Runnable)}
+     * have time stamps in the time unit given with them.
+     * @param i index of the sample
+     * @return time stamp
+     */
+    public long getTime(int i) {
+        return times[index(i)];
+    }
+
+    /**
+     * Returns the time stamp of the first sample.
+     * @return the first time stamp
+     */
+    public long getFirstTime() {
+        return getTime(0);
+    }
+
+    /**
+     * Returns the time stamp of the last sample.
+     * @return the last time stamp
+     */
+    public long getLastTime() {
+        return getTime(size - 1);
+    }
+
+    /**
+     * Returns the status bits of a sample.
+     * @param i index of the sample
+     * @return combination of the status bit constants in this class
+     */
+    public int getStatusBits(int i) {
+        return status[index(i)] & 0xff;
+    }
+
+    /**
+     * Returns true if the sample has a numeric value.
+     * @param i index of the sample
+     * @return true if {@link #getValue(int)} holds the value of the sample
+     */
+    public boolean isNumeric(int i) {
+        int bits = getStatusBits(i);
+        return (bits & HAS_VALUE) != 0 && (bits & TEXT_VALUE) == 0;
+    }
+
+    /**
+     * Returns the numeric value of a sample.
+     * @param i index of the sample
+     * @return the value or {@link Double#NaN} if the sample does not have a numeric value
+     */
+    public double getValue(int i) {
+        return isNumeric(i) ? values[index(i)] : Double.NaN;
+    }
+
+    /**
+     * Returns the value of a sample as it appears in the map representation.
+     * @param i index of the sample
+     * @return the value or null if the sample has no value
+     */
+    public String getValueText(int i) {
+        int bits = getStatusBits(i);
+        if ((bits & HAS_VALUE) == 0) {
+            return null;
+        }
+        int j = offset + i;
+        if ((bits & TEXT_VALUE) != 0) {
+            return texts[j];
+        }
+        if ((bits & INTEGRAL_VALUE) != 0) {
+            return Long.toString((long) values[j]);
+        }
+        return Double.toString(values[j]);
+    }
+
+    /**
+     * Returns the validity of a sample.
+     * @param i index of the sample
+     * @return false only if the sample is explicitly marked as invalid
+     */
+    public boolean isValid(int i) {
+        int bits = getStatusBits(i);
+        return (bits & HAS_VALIDITY) == 0 || (bits & VALID) != 0;
+    }
+
+    /**
+     * Returns true if the sample has a normalized time.
+     * @param i index of the sample
+     * @return true if {@link #getNormalizedTime(int)} is meaningful
+     */
+    public boolean hasNormalizedTime(int i) {
+        return (getStatusBits(i) & HAS_TIME) != 0;
+    }
+
+    /**
+     * Returns the normalized time of a sample, in milliseconds.
+     * @param i index of the sample
+     * @return the normalized time
+     */
+    public long getNormalizedTime(int i) {
+        return normalizedTimes[index(i)];
+    }
+
+    /**
+     * Returns the interned id of the style portion of the rendering info.
+     * @param i index of the sample
+     * @return id in {@link SampleDictionary} or {@link SampleDictionary#NO_ID}
+     */
+    public int getRenderingInfoId(int i) {
+        return renderingInfoIds[index(i)];
+    }
+
+    /**
+     * Returns the value text portion of the rendering info if it differs from the value.
+     * @param i index of the sample
+     * @return the rendering info text or null
+     */
+    public String getRenderingInfoText(int i) {
+        int j = index(i);
+        return renderingInfoTexts == null ? null : renderingInfoTexts[j];
+    }
+
+    /**
+     * Returns the rendering info of a sample as it appears in the map representation.
+     * @param i index of the sample
+     * @return the rendering info or null if the sample has none
+     */
+    public String getRenderingInfo(int i) {
+        int bits = getStatusBits(i);
+        if ((bits & HAS_RENDERING_INFO) == 0) {
+            return null;
+        }
+        String style = SampleDictionary.lookup(getRenderingInfoId(i));
+        String text = (bits & RENDERING_INFO_TEXT_IS_VALUE) != 0 ? getValueText(i) : getRenderingInfoText(i);
+        if (style == null) {
+            return text;
+        }
+        return text == null ? style : style.concat(text);
+    }
+
+    /**
+     * Returns the interned id of the telemetry status.
+     * @param i index of the sample
+     * @return id in {@link SampleDictionary} or {@link SampleDictionary#NO_ID}
+     */
+    public int getStatusId(int i) {
+        return statusIds[index(i)];
+    }
+
+    /**
+     * Returns the telemetry status of a sample.
+     * @param i index of the sample
+     * @return the status or null if the sample has none
+     */
+    public String getStatus(int i) {
+        return SampleDictionary.lookup(getStatusId(i));
+    }
+
+    /**
+     * Returns the entries of a sample that do not map to a column.
+     * @param i index of the sample
+     * @return the extra entries or null
+     */
+    public Map<String, String> getExtras(int i) {
+        int j = index(i);
+        return extras == null ? null : extras[j];
+    }
+
+    /**
+     * Returns the index of the first sample with a time stamp greater than or equal to time.
+     * @param time time stamp
+     * @return index in the range [0, size]
+     */
+    public int ceilingIndex(long time) {
+        int low = offset;
+        int high = offset + size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midTime = times[mid];
+            if (midTime < time) {
+                low = mid + 1;
+            } else if (midTime > time) {
+                high = mid - 1;
+            } else {
+                return mid - offset;
+            }
+        }
+        return low - offset;
+    }
+
+    /**
+     * Returns the index of the last sample with a time stamp less than or equal to time.
+     * @param time time stamp
+     * @return index in the range [-1, size - 1]
+     */
+    public int floorIndex(long time) {
+        int i = ceilingIndex(time);
+        if (i < size && times[offset + i] == time) {
+            return i;
+        }
+        return i - 1;
+    }
+
+    /**
+     * Returns a read only view of the samples in [from, to). The view shares storage with this block.
+     * @param from index of the first sample
+     * @param to index after the last sample
+     * @return a view of the samples
+     */
+    public FeedSampleBlock slice(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", size: " + size);
+        }
+        return new FeedSampleBlock(this, from, to);
+    }
+
+    /**
+     * Returns a read only view of the samples with a time stamp in [startTime, endTime].
+     * @param startTime start of the range, inclusive
+     * @param endTime end of the range, inclusive
+     * @return a view of the samples
+     */
+    public FeedSampleBlock subBlock(long startTime, long endTime) {
+        int from = ceilingIndex(startTime);
+        int to = Math.max(from, floorIndex(endTime) + 1);
+        return slice(from, to);
+    }
+
+    /**
+     * Returns a copy of this block which does not share storage with it.
+     * @return a modifiable copy
+     */
+    public FeedSampleBlock copy() {
+        FeedSampleBlock copy = new FeedSampleBlock(feedID, size);
+        copy.appendAll(this);
+        return copy;
+    }
+
+    /**
+     * Adds a sample in the map representation. A sample with the same time stamp is replaced.
+     * @param time time stamp
+     * @param sample sample values
+     */
+    public void add(long time, Map<String, String> sample) {
+        int j = slot(time);
+        status[j] = 0;
+        normalizedTimes[j] = 0;
+        values[j] = 0;
+        renderingInfoIds[j] = SampleDictionary.NO_ID;
+        statusIds[j] = SampleDictionary.NO_ID;
+        setText(j, null);
+        setRenderingInfoText(j, null);
+        setExtras(j, null);
+        decode(j, sample);
+    }
+
+    /**
+     * Adds a numeric sample. A sample with the same time stamp is replaced.
+     * @param time time stamp
+     * @param normalizedTime sample time in milliseconds
+     * @param value sample value
+     * @param valid validity of the sample
+     * @param renderingInfo rendering info of the sample, may be null
+     * @param telemetryStatus telemetry status of the sample, may be null
+     */
+    public void add(long time, long normalizedTime, double value, boolean valid, String renderingInfo, String telemetryStatus) {
+        int j = slot(time);
+        normalizedTimes[j] = normalizedTime;
+        values[j] = value;
+        renderingInfoIds[j] = SampleDictionary.NO_ID;
+        statusIds[j] = SampleDictionary.intern(telemetryStatus);
+        setText(j, null);
+        setRenderingInfoText(j, null);
+        setExtras(j, null);
+        int bits = HAS_TIME | HAS_VALUE | HAS_VALIDITY | (valid ? VALID : 0);
+        status[j] = (byte) setRenderingInfo(j, bits, renderingInfo);
+    }
+
+    /**
+     * Adds a sample from its columns. This is intended for codecs which have previously read the
+     * columns of a sample through the accessors of this class. A sample with the same time stamp is replaced.
+     * @param time time stamp
+     * @param statusBits combination of the status bit constants in this class
+     * @param normalizedTime normalized time in milliseconds
+     * @param value numeric value
+     * @param text value text when {@link #TEXT_VALUE} is set
+     * @param renderingInfoId id of the rendering info style
+     * @param renderingInfoText rendering info text
+     * @param statusId id of the telemetry status
+     * @param extraEntries entries which do not map to a column, may be null
+     */
+    public void add(long time, int statusBits, long normalizedTime, double value, String text, int renderingInfoId,
+                    String renderingInfoText, int statusId, Map<String, String> extraEntries) {
+        int j = slot(time);
+        status[j] = (byte) statusBits;
+        normalizedTimes[j] = normalizedTime;
+        values[j] = value;
+        renderingInfoIds[j] = renderingInfoId;
+        statusIds[j] = statusId;
+        setText(j, text);
+        setRenderingInfoText(j, renderingInfoText);
+        setExtras(j, extraEntries == null || extraEntries.isEmpty() ? null : new HashMap<String, String>(extraEntries));
+    }
+
+    /**
+     * Adds all the samples of another block. Samples with the same time stamp are replaced.
+     * @param other block to add
+     */
+    public void addAll(FeedSampleBlock other) {
+        if (other.size == 0) {
+            return;
+        }
+        if (size == 0 || other.getFirstTime() > getLastTime()) {
+            appendAll(other);
+            return;
+        }
+        for (int i = 0; i < other.size; i++) {
+            copyRow(other, i, slot(other.getTime(i)));
+        }
+    }
+
+    private void appendAll(FeedSampleBlock other) {
+        ensureCapacity(size + other.size);
+        int src = other.offset;
+        int dst = offset + size;
+        int n = other.size;
+        System.arraycopy(other.times, src, times, dst, n);
+        System.arraycopy(other.normalizedTimes, src, normalizedTimes, dst, n);
+        System.arraycopy(other.values, src, values, dst, n);
+        System.arraycopy(other.status, src, status, dst, n);
+        System.arraycopy(other.renderingInfoIds, src, renderingInfoIds, dst, n);
+        System.arraycopy(other.statusIds, src, statusIds, dst, n);
+        if (other.texts != null) {
+            ensureTexts();
+            System.arraycopy(other.texts, src, texts, dst, n);
+        }
+        if (other.renderingInfoTexts != null) {
+            ensureRenderingInfoTexts();
+            System.arraycopy(other.renderingInfoTexts, src, renderingInfoTexts, dst, n);
+        }
+        if (other.extras != null) {
+            ensureExtras();
+            System.arraycopy(other.extras, src, extras, dst, n);
+        }
+        size += n;
+    }
+
+    private void copyRow(FeedSampleBlock other, int i, int j) {
+        int k = other.offset + i;
+        status[j] = other.status[k];
+        normalizedTimes[j] = other.normalizedTimes[k];
+        values[j] = other.values[k];
+        renderingInfoIds[j] = other.renderingInfoIds[k];
+        statusIds[j] = other.statusIds[k];
+        setText(j, other.texts == null ? null : other.texts[k]);
+        setRenderingInfoText(j, other.renderingInfoTexts == null ? null : other.renderingInfoTexts[k]);
+        setExtras(j, other.extras == null ? null : other.extras[k]);
+    }
+
+    /**
+     * Returns the storage slot for the given time, inserting a new slot in time order if there is
+     * no sample with that time stamp.
+     */
+    private int slot(long time) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Block is read only");
+        }
+        if (size == 0 || time > times[size - 1]) {
+            ensureCapacity(size + 1);
+            times[size] = time;
+            return size++;
+        }
+        int i = ceilingIndex(time);
+        if (i < size && times[i] == time) {
+            return i;
+        }
+        ensureCapacity(size + 1);
+        int n = size - i;
+        System.arraycopy(times, i, times, i + 1, n);
+        System.arraycopy(normalizedTimes, i, normalizedTimes, i + 1, n);
+        System.arraycopy(values, i, values, i + 1, n);
+        System.arraycopy(status, i, status, i + 1, n);
+        System.arraycopy(renderingInfoIds, i, renderingInfoIds, i + 1, n);
+        System.arraycopy(statusIds, i, statusIds, i + 1, n);
+        if (texts != null) {
+            System.arraycopy(texts, i, texts, i + 1, n);
+        }
+        if (renderingInfoTexts != null) {
+            System.arraycopy(renderingInfoTexts, i, renderingInfoTexts, i + 1, n);
+        }
+        if (extras != null) {
+            System.arraycopy(extras, i, extras, i + 1, n);
+        }
+        times[i] = time;
+        size++;
+        return i;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void ensureCapacity(int capacity) {
+        if (capacity <= times.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, times.length + (times.length >> 1) + 1);
+        times = Arrays.copyOf(times, newCapacity);
+        normalizedTimes = Arrays.copyOf(normalizedTimes, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        status = Arrays.copyOf(status, newCapacity);
+        renderingInfoIds = Arrays.copyOf(renderingInfoIds, newCapacity);
+        statusIds = Arrays.copyOf(statusIds, newCapacity);
+        if (texts != null) {
+            texts = Arrays.copyOf(texts, newCapacity);
+        }
+        if (renderingInfoTexts != null) {
+            renderingInfoTexts = Arrays.copyOf(renderingInfoTexts, newCapacity);
+        }
+        if (extras != null) {
+            extras = Arrays.copyOf(extras, newCapacity);
+        }
+    }
+
+    private void ensureTexts() {
+        if (texts == null) {
+            texts = new String[times.length];
+        }
+    }
+
+    private void ensureRenderingInfoTexts() {
+        if (renderingInfoTexts == null) {
+            renderingInfoTexts = new String[times.length];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void ensureExtras() {
+        if (extras == null) {
+            extras = new Map[times.length];
+        }
+    }
+
+    private void setText(int j, String text) {
+        if (text != null) {
+            ensureTexts();
+        }
+        if (texts != null) {
+            texts[j] = text;
+        }
+    }
+
+    private void setRenderingInfoText(int j, String text) {
+        if (text != null) {
+            ensureRenderingInfoTexts();
+        }
+        if (renderingInfoTexts != null) {
+            renderingInfoTexts[j] = text;
+        }
+    }
+
+    private void setExtras(int j, Map<String, String> extraEntries) {
+        if (extraEntries != null) {
+            ensureExtras();
+        }
+        if (extras != null) {
+            extras[j] = extraEntries;
+        }
+    }
+
+    private void decode(int j, Map<String, String> sample) {
+        int bits = 0;
+        Map<String, String> unknown = null;
+        String renderingInfo = null;
+        for (Entry<String, String> entry : sample.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (value == null || key == null) {
+                unknown = putExtra(unknown, key, value);
+            } else if (VALUE_KEY.equals(key)) {
+                bits |= HAS_VALUE | decodeValue(j, value);
+            } else if (TIME_KEY.equals(key) && isCanonicalLong(value)) {
+                normalizedTimes[j] = Long.parseLong(value);
+                bits |= HAS_TIME;
+            } else if (IS_VALID_KEY.equals(key) && ("true".equals(value) || "false".equals(value))) {
+                bits |= HAS_VALIDITY;
+                if ("true".equals(value)) {
+                    bits |= VALID;
+                }
+            } else if (RENDERING_INFO_KEY.equals(key)) {
+                renderingInfo = value;
+            } else if (STATUS_KEY.equals(key)) {
+                statusIds[j] = SampleDictionary.intern(value);
+            } else {
+                unknown = putExtra(unknown, key, value);
+            }
+        }
+        bits = setRenderingInfo(j, bits, renderingInfo);
+        status[j] = (byte) bits;
+        if (unknown != null) {
+            setExtras(j, unknown);
+        }
+    }
+
+    private int setRenderingInfo(int j, int bits, String renderingInfo) {
+        if (renderingInfo == null) {
+            return bits;
+        }
+        int split = styleLength(renderingInfo);
+        String text = renderingInfo.substring(split);
+        if (split > 0) {
+            renderingInfoIds[j] = SampleDictionary.intern(renderingInfo.substring(0, split));
+        }
+        String valueText = (bits & HAS_VALUE) != 0 ? getValueText(bits, j) : null;
+        if (text.equals(valueText)) {
+            return bits | HAS_RENDERING_INFO | RENDERING_INFO_TEXT_IS_VALUE;
+        }
+        setRenderingInfoText(j, text);
+        return bits | HAS_RENDERING_INFO;
+    }
+
+    private String getValueText(int bits, int j) {
+        if ((bits & TEXT_VALUE) != 0) {
+            return texts[j];
+        }
+        if ((bits & INTEGRAL_VALUE) != 0) {
+            return Long.toString((long) values[j]);
+        }
+        return Double.toString(values[j]);
+    }
+
+    private static Map<String, String> putExtra(Map<String, String> unknown, String key, String value) {
+        if (unknown == null) {
+            unknown = new HashMap<String, String>(4);
+        }
+        unknown.put(key, value);
+        return unknown;
+    }
+
+    /**
+     * Returns the length of the style portion of a rendering info string, which is everything up to
+     * and including the separator in front of the value text.
+     */
+    private static int styleLength(String renderingInfo) {
+        int index = -1;
+        for (int field = 0; field < RENDERING_INFO_STYLE_FIELDS; field++) {
+            index = renderingInfo.indexOf(RENDERING_INFO_SEPARATOR, index + 1);
+            if (index < 0) {
+                return 0;
+            }
+        }
+        return index + 1;
+    }
+
+    private int decodeValue(int j, String value) {
+        if (isCanonicalLong(value)) {
+            long l = Long.parseLong(value);
+            if (l < MAX_EXACT_LONG && l > -MAX_EXACT_LONG) {
+                values[j] = l;
+                return INTEGRAL_VALUE;
+            }
+        } else if (isNumberLike(value)) {
+            try {
+                double d = Double.parseDouble(value);
+                if (Double.toString(d).equals(value)) {
+                    values[j] = d;
+                    return 0;
+                }
+            } catch (NumberFormatException e) {
+                // kept as text below
+            }
+        }
+        setText(j, value);
+        values[j] = Double.NaN;
+        return TEXT_VALUE;
+    }
+
+    private static boolean isCanonicalLong(String s) {
+        int length = s.length();
+        int start = length > 0 && s.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 18) {
+            return false;
+        }
+        if ((s.charAt(start) == '0' && length > start + 1) || (start == 1 && s.equals("-0"))) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumberLike(String s) {
+        int length = s.length();
+        if (length == 0) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if ((c < '0' || c > '9') && c != '.' && c != '-' && c != 'E') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a sample in the map representation.
+     * @param i index of the sample
+     * @return a new map holding the sample
+     */
+    public Map<String, String> toMap(int i) {
+        int j = index(i);
+        int bits = status[j] & 0xff;
+        Map<String, String> extraEntries = extras == null ? null : extras[j];
+        Map<String, String> sample = new HashMap<String, String>(extraEntries == null ? 8 : 8 + extraEntries.size());
+        if ((bits & HAS_TIME) != 0) {
+            sample.put(TIME_KEY, Long.toString(normalizedTimes[j]));
+        }
+        if ((bits & HAS_VALUE) != 0) {
+            sample.put(VALUE_KEY, getValueText(bits, j));
+        }
+        if ((bits & HAS_VALIDITY) != 0) {
+            sample.put(IS_VALID_KEY, (bits & VALID) != 0 ? "true" : "false");
+        }
+        if ((bits & HAS_RENDERING_INFO) != 0) {
+            sample.put(RENDERING_INFO_KEY, getRenderingInfo(i));
+        }
+        if (statusIds[j] != SampleDictionary.NO_ID) {
+            sample.put(STATUS_KEY, SampleDictionary.lookup(statusIds[j]));
+        }
+        if (extraEntries != null) {
+            sample.putAll(extraEntries);
+        }
+        return sample;
+    }
+
+    /**
+     * Returns the samples in the map representation, keyed by time stamp.
+     * @return a new sorted map holding the samples
+     */
+    public SortedMap<Long, Map<String, String>> toSortedMap() {
+        SortedMap<Long, Map<String, String>> samples = new TreeMap<Long, Map<String, String>>();
+        for (int i = 0; i < size; i++) {
+            samples.put(Long.valueOf(times[offset + i]), toMap(i));
+        }
+        return samples;
+    }
+
+    /**
+     * Returns the samples in the map representation, in time order.
+     * @return a new list holding the samples
+     */
+    public List<Map<String, String>> toList() {
+        List<Map<String, String>> samples = new ArrayList<Map<String, String>>(size);
+        for (int i = 0; i < size; i++) {
+            samples.add(toMap(i));
+        }
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return "FeedSampleBlock[feedID=" + feedID + ", size=" + size + "]";
+    }
+}
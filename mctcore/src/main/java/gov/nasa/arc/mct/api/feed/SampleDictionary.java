@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process wide dictionary of interned strings used by {@link FeedSampleBlock}. Strings which
+ * repeat across a large number of samples, such as the styling portion of the rendering info or
+ * the telemetry status, are stored once and referred to by an integer id.
+ * <p>
+ * Ids are only meaningful within the running process and must not be persisted.
+ */
+public final class SampleDictionary {
+    /** Id returned for strings that are not present. */
+    public static final int NO_ID = -1;
+
+    private static final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private static volatile String[] strings = new String[256];
+    private static int nextId = 0;
+
+    private SampleDictionary() {
+    }
+
+    /**
+     * Returns the id for the given string, adding it to the dictionary if it is not already present.
+     * @param s string to intern, may be null
+     * @return id of the string or {@link #NO_ID} if the string is null
+     */
+    public static int intern(String s) {
+        if (s == null) {
+            return NO_ID;
+        }
+        Integer id = ids.get(s);
+        if (id != null) {
+            return id.intValue();
+        }
+        synchronized (ids) {
+            id = ids.get(s);
+            if (id != null) {
+                return id.intValue();
+            }
+            int newId = nextId++;
+            String[] current = strings;
+            if (newId >= current.length) {
+                String[] grown = new String[current.length * 2];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            current[newId] = s;
+            // publish the array before the id so readers holding the id can always resolve it
+            strings = current;
+            ids.put(s, Integer.valueOf(newId));
+            return newId;
+        }
+    }
+
+    /**
+     * Returns the string for the given id.
+     * @param id previously returned by {@link #intern(String)}
+     * @return the interned string or null if id is {@link #NO_ID}
+     */
+    public static String lookup(int id) {
+        if (id == NO_ID) {
+            return null;
+        }
+        return strings[id];
+    }
+
+    /**
+     * Returns the number of strings that have been interned.
+     * @return number of entries in the dictionary
+     */
+    public static int size() {
+        return ids.size();
+    }
+}
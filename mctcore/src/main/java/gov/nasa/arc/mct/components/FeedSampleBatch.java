@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See
+ * the MCT Open Source Licenses file included with this distribution or the About
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional
+ * information.
+ *******************************************************************************/
+package gov.nasa.arc.mct.components;
+
+import gov.nasa.arc.mct.components.FeedProvider.FeedType;
+import gov.nasa.arc.mct.components.FeedProvider.RenderingInfo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples of a feed for a paint cycle, decoded once for all the views showing the feed. Each sample has its time,
+ * its value as a double and its {@link RenderingInfo}, next to the sample as returned by the feed aggregator.
+ * <p>
+ * A batch is shared by all the views, so neither the batch nor its rendering info must be modified.
+ */
+public final class FeedSampleBatch {
+    private static final byte HAS_TIME = 0x01;
+    private static final byte NUMERIC = 0x02;
+    
+    private final String feedId;
+    private final List<Map<String, String>> samples;
+    private final long[] times;
+    private final double[] values;
+    private final byte[] status;
+    private final RenderingInfo[] renderingInfos;
+    
+    private FeedSampleBatch(String feedId, List<Map<String, String>> samples) {
+        this.feedId = feedId;
+        this.samples = Collections.unmodifiableList(samples);
+        int size = samples.size();
+        times = new long[size];
+        values = new double[size];
+        status = new byte[size];
+        renderingInfos = new RenderingInfo[size];
+    }
+    
+    /**
+     * Decodes the samples of a feed. The values of the samples which are not plottable, and of the samples of 
+     * {@link FeedType#STRING} feeds, are not parsed. 
+     * @param provider of the feed, which gives the rendering info of each sample
+     * @param samples of the feed, in time order
+     * @return decoded samples
+     */
+    public static FeedSampleBatch decode(FeedProvider provider, List<Map<String, String>> samples) {
+        FeedSampleBatch batch = new FeedSampleBatch(provider.getSubscriptionId(), samples);
+        boolean numericFeed = provider.getFeedType() != FeedType.STRING;
+        for (int i = 0; i < samples.size(); i++) {
+            Map<String, String> sample = samples.get(i);
+            batch.values[i] = Double.NaN;
+            String time = sample.get(FeedProvider.NORMALIZED_TIME_KEY);
+            if (time != null) {
+                try {
+                    batch.times[i] = Long.parseLong(time);
+                    batch.status[i] |= HAS_TIME;
+                } catch (NumberFormatException e) {
+                    // the sample has no time
+                }
+            }
+            RenderingInfo ri = provider.getRenderingInfo(sample);
+            batch.renderingInfos[i] = ri;
+            if (numericFeed && ri != null && ri.isPlottable() && ri.getValueText() != null) {
+                try {
+                    batch.values[i] = Double.parseDouble(ri.getValueText());
+                    batch.status[i] |= NUMERIC;
+                } catch (NumberFormatException e) {
+                    // the value is not numeric
+                }
+            }
+        }
+        return batch;
+    }
+    
+    /**
+     * Joins the samples of two batches of a feed, such as those of two paint cycles dispatched to a view at once.
+     * The samples are not decoded again.
+     * @param first earlier samples
+     * @param second later samples
+     * @return samples of both batches, in order
+     */
+    public static FeedSampleBatch concat(FeedSampleBatch first, FeedSampleBatch second) {
+        List<Map<String, String>> samples = new ArrayList<Map<String, String>>(first.size() + second.size());
+        samples.addAll(first.samples);
+        samples.addAll(second.samples);
+        FeedSampleBatch batch = new FeedSampleBatch(first.feedId, samples);
+        first.copyTo(batch, 0);
+        second.copyTo(batch, first.size());
+        return batch;
+    }
+    
+    private void copyTo(FeedSampleBatch batch, int offset) {
+        int size = size();
+        System.arraycopy(times, 0, batch.times, offset, size);
+        System.arraycopy(values, 0, batch.values, offset, size);
+        System.arraycopy(status, 0, batch.status, offset, size);
+        System.arraycopy(renderingInfos, 0, batch.renderingInfos, offset, size);
+    }
+    
+    /**
+     * Returns the subscription id of the feed.
+     * @return subscription id
+     */
+    public String getFeedId() {
+        return feedId;
+    }
+    
+    /**
+     * Returns the number of samples.
+     * @return number of samples
+     */
+    public int size() {
+        return samples.size();
+    }
+    
+    /**
+     * Returns a sample as returned by the feed aggregator, for the views which still read samples as maps. 
+     * @param i index of the sample
+     * @return sample
+     */
+    public Map<String, String> getSample(int i) {
+        return samples.get(i);
+    }
+    
+    /**
+     * Returns the samples as returned by the feed aggregator.
+     * @return unmodifiable list of the samples
+     */
+    public List<Map<String, String>> getSamples() {
+        return samples;
+    }
+    
+    /**
+     * Returns true if the sample has a time.
+     * @param i index of the sample
+     * @return true if {@link #getTime(int)} is the time of the sample
+     */
+    public boolean hasTime(int i) {
+        return (status[i] & HAS_TIME) != 0;
+    }
+    
+    /**
+     * Returns the time of a sample.
+     * @param i index of the sample
+     * @return time in milliseconds, or 0 if the sample has no time
+     */
+    public long getTime(int i) {
+        return times[i];
+    }
+    
+    /**
+     * Returns true if the value of the sample was parsed as a double. 
+     * @param i index of the sample
+     * @return false for samples of string feeds, samples which are not plottable, and values which are not numbers
+     */
+    public boolean isNumeric(int i) {
+        return (status[i] & NUMERIC) != 0;
+    }
+    
+    /**
+     * Returns the value of a sample, as given by the value text of its rendering info.
+     * @param i index of the sample
+     * @return value, or NaN if the value is not numeric
+     */
+    public double getValue(int i) {
+        return values[i];
+    }
+    
+    /**
+     * Returns the rendering info of a sample, as given by {@link FeedProvider#getRenderingInfo(Map)}.
+     * @param i index of the sample
+     * @return rendering info, which must not be modified
+     */
+    public RenderingInfo getRenderingInfo(int i) {
+        return renderingInfos[i];
+    }
+}
@@ -21,8 +21,12 @@
  *******************************************************************************/
 package gov.nasa.arc.mct.gui;
 
+import gov.nasa.arc.mct.api.feed.DataRequest;
 import gov.nasa.arc.mct.api.feed.FeedAggregator;
+import gov.nasa.arc.mct.api.feed.FeedCursorAggregator;
+import gov.nasa.arc.mct.api.feed.FeedDataCursor;
 import gov.nasa.arc.mct.components.FeedProvider;
+import gov.nasa.arc.mct.components.FeedSampleBatch;
 import gov.nasa.arc.mct.platform.spi.PlatformAccess;
 import gov.nasa.arc.mct.util.internal.ElapsedTimer;
 import gov.nasa.arc.mct.util.logging.MCTLogger;
@@ -51,9 +55,16 @@ class FeedCycleRenderer extends SwingWorker<Map<String, List<Map<String, String>
     private static final MCTLogger LOGGER = MCTLogger.getLogger(FeedCycleRenderer.class);
     private static final MCTLogger PERF_LOGGER = MCTLogger
                     .getLogger("gov.nasa.arc.mct.performance.feeds.pool");
+    
+    /** Time after which the data of a live request is stale; the next cycle asks for it again. */
+    static final long LIVE_REQUEST_TIMEOUT_MILLIS = 5000;
 
     private final Set<FeedView> activeFeedViews;
     private final Map<FeedProvider, Long[]> times;
+    private final FeedDispatcher dispatcher;
+    private final boolean decodingSamples;
+    /** Samples decoded in the background thread, by subscription id. */
+    private volatile Map<String, FeedSampleBatch> batches;
     private final ElapsedTimer dataRequestTimer = new ElapsedTimer();
     private final ElapsedTimer uiRenderingTimer = new ElapsedTimer();
 
@@ -70,6 +81,47 @@ class FeedCycleRenderer extends SwingWorker<Map<String, List<Map<String, String>
                     Set<FeedView> activeViews) {
         activeFeedViews = activeViews;
         times = timeMapping;
+        dispatcher = null;
+        decodingSamples = false;
+    }
+
+    /**
+     * Create a new instance of a worker of a paint cycle. The samples of each feed are decoded once in the 
+     * background thread and the views get them through {@link FeedView#updateFromFeed(Map, Map)}.
+     * 
+     * @param timeMapping
+     *            currently in the request set for the feed providers.
+     * @param activeViews
+     *            views current maintained
+     * @param feedDispatcher
+     *            spreads the updates of the views over slices of the AWT thread, or null to update all the 
+     *            views at once
+     */
+    FeedCycleRenderer(Map<FeedProvider, Long[]> timeMapping,
+                    Set<FeedView> activeViews, FeedDispatcher feedDispatcher) {
+        this(timeMapping, activeViews, feedDispatcher, true);
+    }
+
+    /**
+     * Create a new instance of a worker of a paint cycle, which may leave the samples to be decoded by the views.
+     * 
+     * @param timeMapping
+     *            currently in the request set for the feed providers.
+     * @param activeViews
+     *            views current maintained
+     * @param feedDispatcher
+     *            spreads the updates of the views over slices of the AWT thread, or null to update all the 
+     *            views at once
+     * @param decoding
+     *            true to decode the samples of each feed in the background thread, false to only pass the views 
+     *            the samples through {@link FeedView#updateFromFeed(Map)}
+     */
+    FeedCycleRenderer(Map<FeedProvider, Long[]> timeMapping,
+                    Set<FeedView> activeViews, FeedDispatcher feedDispatcher, boolean decoding) {
+        activeFeedViews = activeViews;
+        times = timeMapping;
+        dispatcher = feedDispatcher;
+        decodingSamples = decoding;
     }
 
     /**
@@ -136,6 +188,7 @@ class FeedCycleRenderer extends SwingWorker<Map<String, List<Map<String, String>
         dataRequestTimer.startInterval();
         Map<String, List<Map<String, String>>> values = new HashMap<String, List<Map<String, String>>>();
         PERF_LOGGER.debug("size of feed views {0}", activeFeedViews.size());
+        DataRequest dataRequest = DataRequest.begin(getRequestPriority(), getRequestTimeoutMillis(), TimeUnit.MILLISECONDS, this);
         try {
             final Map<Request, Set<FeedProvider>> fullSpanRequests = batchByRequestTime();
             Map<Request, Set<FeedProvider>> currentIterationRequests = getCurrentIterationRequests(fullSpanRequests,Collections.<Request,Set<FeedProvider>>emptyMap());
@@ -158,6 +211,11 @@ class FeedCycleRenderer extends SwingWorker<Map<String, List<Map<String, String>
 
                     FeedAggregator feedAggregator = PlatformAccess.getPlatform().getFeedAggregator();
                     
+                    if (getStreamingChunkSize() > 0 && feedAggregator instanceof FeedCursorAggregator) {
+                        streamRequest(FeedCursorAggregator.class.cast(feedAggregator), feedIds, r, values);
+                        continue;
+                    }
+                    
                     Map<String, List<Map<String, String>>> data = new HashMap<String, List<Map<String, String>>>();
                     if (feedAggregator != null) { 
                         data = feedAggregator.getData(feedIds, TimeUnit.MILLISECONDS, r.getStartTime(), r.getEndTime());
@@ -171,13 +229,88 @@ class FeedCycleRenderer extends SwingWorker<Map<String, List<Map<String, String>
             }
         } catch (Exception e) {
             LOGGER.error("exception occurred while retrieving data ", e);
+        } finally {
+            dataRequest.end();
         }
         additionalBackgroundProcessing(values);
+        if (decodingSamples && !isCancelled()) {
+            batches = decodeSamples(values);
+        }
         dataRequestTimer.stopInterval();
 
         return values;
     }
     
+    /**
+     * Decodes the samples of each feed once for all the views, with the provider of the feed in the request. The 
+     * providers of a subscription id all decode its samples the same way.
+     */
+    private Map<String, FeedSampleBatch> decodeSamples(Map<String, List<Map<String, String>>> values) {
+        Map<String, FeedProvider> providers = new HashMap<String, FeedProvider>();
+        for (FeedProvider provider : times.keySet()) {
+            providers.put(provider.getSubscriptionId(), provider);
+        }
+        Map<String, FeedSampleBatch> decoded = new HashMap<String, FeedSampleBatch>();
+        for (Entry<String, List<Map<String, String>>> entry : values.entrySet()) {
+            FeedProvider provider = providers.get(entry.getKey());
+            if (provider == null || entry.getValue() == null) {
+                continue;
+            }
+            try {
+                decoded.put(entry.getKey(), FeedSampleBatch.decode(provider, entry.getValue()));
+            } catch (Exception e) {
+                // the views decode the samples of this feed themselves
+                LOGGER.error("exception occurred while decoding the samples of " + provider, e);
+            }
+        }
+        return decoded;
+    }
+    
+    /**
+     * Reads a request through a cursor, completing the request once per chunk so only a chunk of the data is 
+     * held at a time.
+     */
+    private void streamRequest(FeedCursorAggregator feedAggregator, Set<String> feedIds, Request r, 
+                    Map<String, List<Map<String, String>>> values) {
+        FeedDataCursor cursor = feedAggregator.openCursor(feedIds, TimeUnit.MILLISECONDS, r.getStartTime(), r.getEndTime(), getStreamingChunkSize());
+        try {
+            while (!isCancelled() && cursor.hasNext()) {
+                values.putAll(adjustResponses(cursor.next(), r.getStartTime()));
+                requestCompleted(values, r.getStartTime(), r.getEndTime());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    /**
+     * Returns the priority the feed aggregator gives to the requests of this worker. The default implementation 
+     * returns {@link DataRequest.Priority#live}.
+     * @return priority of the requests
+     */
+    protected DataRequest.Priority getRequestPriority() {
+        return DataRequest.Priority.live;
+    }
+    
+    /**
+     * Returns the time after which the feed aggregator stops reading the data of a request, returning what it 
+     * has read so far, or 0 for no deadline. Cancelling the worker also stops the reads. 
+     * @return timeout of a request in milliseconds 
+     */
+    protected long getRequestTimeoutMillis() {
+        return getRequestPriority() == DataRequest.Priority.live ? LIVE_REQUEST_TIMEOUT_MILLIS : 0;
+    }
+    
+    /**
+     * Returns the number of samples to read at a time when the feed aggregator supports cursors, or 0 to read 
+     * each request at once. Streaming only bounds memory when {@link #requestCompleted(Map, long, long)} 
+     * dispatches and clears the values, so the default implementation returns 0.
+     * @return number of samples of a chunk, or 0 
+     */
+    protected int getStreamingChunkSize() {
+        return 0;
+    }
+    
     /**
      * Iterate through the set of response values to ensure that times which are earlier than the specific time are 
      * moved to the current time.
@@ -301,11 +434,38 @@ class FeedCycleRenderer extends SwingWorker<Map<String, List<Map<String, String>
         manifestation.updateFromFeed(data);
     }
     
+    /**
+     * Invoked when data has been acquired and decoded. The default implementation passes the decoded samples to 
+     * {@link FeedView#updateFromFeed(Map, Map)}, or invokes {@link #dispatchToFeed(FeedView, Map)} when the 
+     * samples were not decoded. 
+     * 
+     * @param manifestation
+     *            pass the results to
+     * @param data
+     *            retrieved from the feed
+     * @param decoded
+     *            samples of each feed, or null
+     */
+    void dispatchToFeed(FeedView manifestation, Map<String, List<Map<String, String>>> data, 
+                    Map<String, FeedSampleBatch> decoded) {
+        if (decoded == null) {
+            dispatchToFeed(manifestation, data);
+        } else {
+            manifestation.updateFromFeed(data, decoded);
+        }
+    }
+    
     private void dispatchDataToFeeds(Map<String, List<Map<String, String>>> data) {
         uiRenderingTimer.startInterval();
+        if (dispatcher != null) {
+            // the views are updated in later slices, which report the time they take
+            dispatcher.dispatch(this, activeFeedViews, data, batches);
+            uiRenderingTimer.stopInterval();
+            return;
+        }
         for (FeedView fvm : activeFeedViews) {
             try {
-                dispatchToFeed(fvm, data);
+                dispatchToFeed(fvm, data, batches);
             } catch (Exception e) {
                 LOGGER.error("exception occurred while invoking updateFromFeed " + fvm, e);
             }
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.gui;
+
+import gov.nasa.arc.mct.components.FeedSampleBatch;
+import gov.nasa.arc.mct.util.logging.MCTLogger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Dispatches the data of the paint cycles to the feed views in slices of the AWT thread. A slice updates views
+ * until it has taken the time budget, then leaves the AWT thread to painting and user input before the next
+ * slice goes on with the other views. The updates waiting for a slice are coalesced per view: a view which gets
+ * the data of a cycle before the data of the previous cycle was dispatched to it gets the samples of both cycles,
+ * in time order, in a single update.
+ * <p>
+ * Only accessed from the AWT thread.
+ */
+class FeedDispatcher {
+    private static final MCTLogger LOGGER = MCTLogger.getLogger(FeedDispatcher.class);
+    private static final MCTLogger PERF_LOGGER = MCTLogger
+                    .getLogger("gov.nasa.arc.mct.performance.feeds.pool");
+    
+    private final long budgetNanos;
+    /** Views waiting for their update, in the order they first got data. */
+    private final Map<FeedView, PendingUpdate> pending = new LinkedHashMap<FeedView, PendingUpdate>();
+    private final Runnable slice = new Runnable() {
+        @Override
+        public void run() {
+            dispatchSlice();
+        }
+    };
+    private boolean sliceScheduled;
+    
+    // statistics of the updates dispatched since the dispatcher was last idle
+    private long roundNanos;
+    private int roundSlices;
+    private int roundUpdates;
+    private int roundCoalesced;
+    private volatile long lastRoundNanos;
+    
+    /**
+     * Creates a new instance.
+     * @param budgetMillis AWT thread time in milliseconds a slice may take
+     */
+    FeedDispatcher(long budgetMillis) {
+        budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+    
+    /**
+     * Queues the data of a cycle for views. Views waiting for an earlier update get the data of both cycles.
+     * @param renderer which retrieved the data and dispatches it to each view
+     * @param views to update
+     * @param data retrieved, by subscription id
+     * @param batches decoded samples, by subscription id, or null
+     */
+    void dispatch(FeedCycleRenderer renderer, Collection<FeedView> views, Map<String, List<Map<String, String>>> data,
+                    Map<String, FeedSampleBatch> batches) {
+        for (FeedView view : views) {
+            PendingUpdate update = pending.get(view);
+            if (update == null) {
+                pending.put(view, new PendingUpdate(renderer, data, batches));
+            } else {
+                update.merge(renderer, data, batches);
+                roundCoalesced++;
+            }
+        }
+        if (!pending.isEmpty() && !sliceScheduled) {
+            sliceScheduled = true;
+            SwingUtilities.invokeLater(slice);
+        }
+    }
+    
+    /**
+     * Drops the update waiting for a view, which no longer gets data.
+     * @param view removed from the paint cycles
+     */
+    void discard(final FeedView view) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            pending.remove(view);
+        } else {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    pending.remove(view);
+                }
+            });
+        }
+    }
+    
+    private void dispatchSlice() {
+        sliceScheduled = false;
+        long start = System.nanoTime();
+        Iterator<Entry<FeedView, PendingUpdate>> it = pending.entrySet().iterator();
+        // a slice updates at least one view, however long it takes
+        while (it.hasNext()) {
+            Entry<FeedView, PendingUpdate> entry = it.next();
+            it.remove();
+            entry.getValue().dispatchTo(entry.getKey());
+            roundUpdates++;
+            if (System.nanoTime() - start >= budgetNanos) {
+                break;
+            }
+        }
+        roundNanos += System.nanoTime() - start;
+        roundSlices++;
+        
+        if (!pending.isEmpty()) {
+            sliceScheduled = true;
+            SwingUtilities.invokeLater(slice);
+            return;
+        }
+        lastRoundNanos = roundNanos;
+        PERF_LOGGER.debug("feed dispatch performance: ui rendering {0} in {1} slices, {2} view updates, {3} coalesced",
+                        TimeUnit.NANOSECONDS.toMillis(roundNanos), roundSlices, roundUpdates, roundCoalesced);
+        roundNanos = 0;
+        roundSlices = 0;
+        roundUpdates = 0;
+        roundCoalesced = 0;
+    }
+    
+    /**
+     * Returns the AWT thread time taken by the updates dispatched between the last two times the dispatcher was 
+     * idle, which is the time taken by a cycle unless the updates of several cycles were coalesced.
+     * @return AWT thread time in nanoseconds
+     */
+    long getLastRoundNanos() {
+        return lastRoundNanos;
+    }
+    
+    /**
+     * Update waiting for a view.
+     */
+    private static final class PendingUpdate {
+        private FeedCycleRenderer renderer;
+        private Map<String, List<Map<String, String>>> data;
+        private Map<String, FeedSampleBatch> batches;
+        /** The maps of the first cycle are shared by the views until another cycle is merged. */
+        private boolean copied;
+        
+        PendingUpdate(FeedCycleRenderer renderer, Map<String, List<Map<String, String>>> data, 
+                        Map<String, FeedSampleBatch> batches) {
+            this.renderer = renderer;
+            this.data = data;
+            this.batches = batches;
+        }
+        
+        void merge(FeedCycleRenderer newerRenderer, Map<String, List<Map<String, String>>> newerData, 
+                        Map<String, FeedSampleBatch> newerBatches) {
+            if (!copied) {
+                data = new HashMap<String, List<Map<String, String>>>(data);
+                batches = batches == null ? null : new HashMap<String, FeedSampleBatch>(batches);
+                copied = true;
+            }
+            // the lists and batches may be shared with other views, so they are joined into new ones
+            for (Entry<String, List<Map<String, String>>> entry : newerData.entrySet()) {
+                List<Map<String, String>> samples = data.get(entry.getKey());
+                if (samples == null) {
+                    data.put(entry.getKey(), entry.getValue());
+                } else {
+                    List<Map<String, String>> joined = new ArrayList<Map<String, String>>(samples.size() + entry.getValue().size());
+                    joined.addAll(samples);
+                    joined.addAll(entry.getValue());
+                    data.put(entry.getKey(), joined);
+                }
+            }
+            // the decoded samples must cover all the feeds of the data
+            if (batches != null && newerBatches != null) {
+                for (Entry<String, FeedSampleBatch> entry : newerBatches.entrySet()) {
+                    FeedSampleBatch batch = batches.get(entry.getKey());
+                    batches.put(entry.getKey(), batch == null ? entry.getValue() : FeedSampleBatch.concat(batch, entry.getValue()));
+                }
+            } else {
+                batches = null;
+            }
+            renderer = newerRenderer;
+        }
+        
+        void dispatchTo(FeedView view) {
+            try {
+                renderer.dispatchToFeed(view, data, batches);
+            } catch (Exception e) {
+                LOGGER.error("exception occurred while invoking updateFromFeed " + view, e);
+            }
+        }
+    }
+}
@@ -21,6 +21,10 @@
  *******************************************************************************/
 package gov.nasa.arc.mct.gui;
 
+import gov.nasa.arc.mct.api.feed.DataRequest;
+import gov.nasa.arc.mct.api.feed.FeedAggregator;
+import gov.nasa.arc.mct.api.feed.FeedChangeAggregator;
+import gov.nasa.arc.mct.api.feed.FeedChangeListener;
 import gov.nasa.arc.mct.components.FeedProvider;
 import gov.nasa.arc.mct.components.util.ComponentModelUtil;
 import gov.nasa.arc.mct.gui.FeedView.SynchronizationControl;
@@ -39,6 +43,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -51,6 +57,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.SwingUtilities;
@@ -75,13 +82,23 @@ import javax.swing.SwingWorker;
  * and then dispatch painting to the View (in the AWT thread). The data acquisition and painting will be done 
  * as a group. 
  * 
- * This class will only start a maximum number of worker threads, if the current cycle would exceed 
- * the number of worker threads. The cycle is skipped and the next cycle will request a longer
- * time range. 
+ * Feeds are rendered by independent pipelines, one for each time service and kind of data buffer, so a slow 
+ * request only delays the feeds of its own pipeline. A pipeline has at most one request in progress and a 
+ * maximum number of pipelines have requests in progress at a time; when a pipeline cannot start a request, the 
+ * cycle is skipped for this pipeline and its next cycle will request a longer time range. 
  * 
  * During the rendering cycle, subscriptions are managed using referencing counting. Thus when a 
  * transition from zero to one feed views occurs a subscription is requested and when the number of views
  * transitions from one to zero a subscription is removed. 
+ * 
+ * In incremental mode, when the feed aggregator reports the feeds which received new samples (see 
+ * {@link FeedChangeAggregator}), a cycle only requests the data of these feeds, and a cycle is started as soon as 
+ * new samples arrive instead of waiting for the next paint period. The paint period still bounds how long 
+ * subscription changes take to be applied. 
+ * 
+ * A {@link FeedViewScheduler} may limit the views which get the data of a cycle to the views visible on screen.
+ * Feeds none of whose views are due are not requested, and views which missed data catch up before they get 
+ * the data of the next cycles. 
  */
 class FeedRenderingPool {
     private final Timer timer;
@@ -94,11 +111,58 @@ class FeedRenderingPool {
     private final Set<FeedView> activeFeedViews = new ConcurrentSkipListSet<FeedView>(new IdentityComparator());
     private static final MCTLogger LOGGER = MCTLogger.getLogger(FeedRenderingPool.class);
     private final AtomicInteger activeRenderers = new AtomicInteger(0);
-    private static final int MAX_ACTIVE_REQUESTS = 1;
+    private final AtomicInteger activeCatchUps = new AtomicInteger(0);
+    /** Maximum number of pipelines with a request in progress. */
+    private static final int MAX_ACTIVE_PIPELINES = 4;
+    private static final int SKIPPED_CYCLES_WARNING = 20;
+    /** Number of samples a catch up reads and dispatches to its view at a time. */
+    static final int CATCH_UP_CHUNK_SAMPLES = 1000;
+    /** Pipelines of the feeds requested on the last cycle, and pipelines with a request in progress. Only accessed from the timer thread. */
+    private final Map<PipelineKey, Pipeline> pipelines = new HashMap<PipelineKey, Pipeline>();
+    private final AtomicLong skippedCycles = new AtomicLong();
+    private static final Comparator<Pipeline> SKIPS_COMPARATOR = new Comparator<Pipeline>() {
+        @Override
+        public int compare(Pipeline o1, Pipeline o2) {
+            return o2.consecutiveSkips - o1.consecutiveSkips;
+        }
+    };
     private final ConcurrentHashMap<FeedProvider, Long> activeFeeds = new ConcurrentHashMap<FeedProvider, Long>();
     private final AtomicReference<SynchronizationControl> activeSyncControl = new AtomicReference<SynchronizationControl>();
     private AtomicBoolean exceededMaxSubscriptions = new AtomicBoolean(false);
     private static final int maxSubscriptions = initMaxSubscriptions();
+    private final boolean incremental;
+    private final FeedViewScheduler scheduler;
+    private final FeedDispatcher dispatcher;
+    /** 
+     * Changed subscriptions which were not requested as none of their views was due. Only accessed from the 
+     * timer thread. 
+     */
+    private final Set<String> deferredChanges = new HashSet<String>();
+    /** Subscriptions which received new samples since the last cycle. */
+    private final Set<String> changedFeeds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** 
+     * Subscriptions which changed before the last cycle, requested again as samples stamped after the time read 
+     * by the last cycle are only found by this one. Only accessed from the timer thread. 
+     */
+    private Set<String> previousChanges = Collections.emptySet();
+    private volatile Set<String> subscribedIds = Collections.emptySet();
+    private volatile FeedChangeAggregator notifyingAggregator;
+    private final AtomicBoolean cycleScheduled = new AtomicBoolean(false);
+    private final FeedChangeListener changeListener = new FeedChangeListener() {
+        @Override
+        public void feedsChanged(Set<String> feedIDs) {
+            Set<String> subscribed = subscribedIds;
+            boolean changed = false;
+            for (String feedID : feedIDs) {
+                if (subscribed.contains(feedID)) {
+                    changed |= changedFeeds.add(feedID);
+                }
+            }
+            if (changed) {
+                scheduleCycle();
+            }
+        }
+    };
     private static final Comparator<FeedProvider> FEED_COMPARATOR = new Comparator<FeedProvider>() {
         @Override
         public int compare(FeedProvider o1, FeedProvider o2) {
@@ -107,31 +171,160 @@ class FeedRenderingPool {
     };
     
     /**
-     * Create a new instance.
+     * Create a new instance which requests the data of every feed on each cycle.
      * @param paintRateInterval how often in milliseconds to paint the feed displays
      * @throws IllegalArgumentException if paintRateIntervalue is < 1
      */
     public FeedRenderingPool(int paintRateInterval) throws IllegalArgumentException {
+        this(paintRateInterval, false);
+    }
+    
+    /**
+     * Create a new instance.
+     * @param paintRateInterval how often in milliseconds to paint the feed displays
+     * @param incrementalDelivery true to only request the data of the feeds which received new samples, when the 
+     * feed aggregator reports them
+     * @throws IllegalArgumentException if paintRateIntervalue is < 1
+     */
+    public FeedRenderingPool(int paintRateInterval, boolean incrementalDelivery) throws IllegalArgumentException {
+        this(paintRateInterval, incrementalDelivery, null);
+    }
+    
+    /**
+     * Create a new instance.
+     * @param paintRateInterval how often in milliseconds to paint the feed displays
+     * @param incrementalDelivery true to only request the data of the feeds which received new samples, when the 
+     * feed aggregator reports them
+     * @param viewScheduler decides which views get the data of each cycle, or null to dispatch the data of every 
+     * cycle to every view
+     * @throws IllegalArgumentException if paintRateIntervalue is < 1
+     */
+    FeedRenderingPool(int paintRateInterval, boolean incrementalDelivery, FeedViewScheduler viewScheduler) throws IllegalArgumentException {
+        this(paintRateInterval, incrementalDelivery, viewScheduler, null);
+    }
+    
+    /**
+     * Create a new instance.
+     * @param paintRateInterval how often in milliseconds to paint the feed displays
+     * @param incrementalDelivery true to only request the data of the feeds which received new samples, when the 
+     * feed aggregator reports them
+     * @param viewScheduler decides which views get the data of each cycle, or null to dispatch the data of every 
+     * cycle to every view
+     * @param feedDispatcher spreads the updates of the views over slices of the AWT thread, or null to update all
+     * the views of a cycle at once
+     * @throws IllegalArgumentException if paintRateIntervalue is < 1
+     */
+    FeedRenderingPool(int paintRateInterval, boolean incrementalDelivery, FeedViewScheduler viewScheduler, 
+                    FeedDispatcher feedDispatcher) throws IllegalArgumentException {
         if (paintRateInterval < 1) {
             throw new IllegalArgumentException("paint rate interval must be greater than 0");
         }
         paintRate = paintRateInterval;
+        incremental = incrementalDelivery;
+        scheduler = viewScheduler;
+        dispatcher = feedDispatcher;
         timer = new Timer("MCT Painting timer",true);
         TimerTask task = new TimerTask() {
             @Override
             public void run() {
                 LOGGER.debug("timer event fired");
-                try {
-                    startWorker();
-                } catch (Exception e) {
-                    LOGGER.error("exception thrown out of scheduled paint thread. " +
-                            "The root cause of this exception should be fixed but operation should continue normally", e);
-                }
+                runCycle();
             }
         };
         timer.scheduleAtFixedRate(task, paintRate, paintRate);
     }
     
+    private void runCycle() {
+        try {
+            if (incremental) {
+                updateChangeListener();
+            }
+            startWorker();
+        } catch (Exception e) {
+            LOGGER.error("exception thrown out of scheduled paint thread. " +
+                    "The root cause of this exception should be fixed but operation should continue normally", e);
+        }
+    }
+    
+    /**
+     * Start a cycle right away for feeds which received new samples, unless a cycle is already scheduled. Changes 
+     * of pipelines with a request in progress are kept until the request is done, which schedules the next cycle. 
+     */
+    private void scheduleCycle() {
+        if (cycleScheduled.compareAndSet(false, true)) {
+            try {
+                timer.schedule(new TimerTask() {
+                    @Override
+                    public void run() {
+                        cycleScheduled.set(false);
+                        runCycle();
+                    }
+                }, 0);
+            } catch (IllegalStateException e) {
+                // the timer is cancelled
+                cycleScheduled.set(false);
+            }
+        }
+    }
+    
+    /**
+     * Listen to the current feed aggregator, which may change as services come and go. This will only be called 
+     * from the timer thread.
+     */
+    private void updateChangeListener() {
+        FeedAggregator aggregator = getFeedAggregator();
+        FeedChangeAggregator current = aggregator instanceof FeedChangeAggregator ? (FeedChangeAggregator) aggregator : null;
+        if (current != notifyingAggregator) {
+            if (notifyingAggregator != null) {
+                notifyingAggregator.removeFeedChangeListener(changeListener);
+            }
+            changedFeeds.clear();
+            previousChanges = Collections.emptySet();
+            if (current != null) {
+                current.addFeedChangeListener(changeListener);
+                // nothing is known about the samples received so far
+                changedFeeds.addAll(subscribedIds);
+            }
+            notifyingAggregator = current;
+        }
+    }
+    
+    /**
+     * Get the current feed aggregator (may return null)
+     * @return the current feed aggregator, or null if there is none
+     */
+    FeedAggregator getFeedAggregator() {
+        try {
+            return PlatformAccess.getPlatform().getFeedAggregator();
+        } catch (IllegalStateException ise) {
+            return null;
+        }
+    }
+    
+    /**
+     * Returns the subscriptions to request on this cycle, or null to request all of them. This will only be 
+     * called from the timer thread.
+     */
+    private Set<String> takeChangedFeeds() {
+        if (notifyingAggregator == null) {
+            return null;
+        }
+        Set<String> changes = new HashSet<String>();
+        for (Iterator<String> it = changedFeeds.iterator(); it.hasNext();) {
+            changes.add(it.next());
+            it.remove();
+        }
+        Set<String> requested = changes;
+        if (!previousChanges.isEmpty() || !deferredChanges.isEmpty()) {
+            requested = new HashSet<String>(changes);
+            requested.addAll(previousChanges);
+            requested.addAll(deferredChanges);
+            deferredChanges.clear();
+        }
+        previousChanges = changes;
+        return requested;
+    }
+    
     private static class IdentityComparator implements Comparator<Object>, Serializable {
         private static final long serialVersionUID = 1L;
 
@@ -143,6 +336,10 @@ class FeedRenderingPool {
     
     void cancelTimer() {
         timer.cancel();
+        FeedChangeAggregator aggregator = notifyingAggregator;
+        if (aggregator != null) {
+            aggregator.removeFeedChangeListener(changeListener);
+        }
     }
     
     /**
@@ -150,6 +347,9 @@ class FeedRenderingPool {
      * @param manifestation to start delivering feed events to
      */
     public void addFeedView(FeedView manifestation) throws IllegalArgumentException {
+        if (scheduler != null) {
+            scheduler.addView(manifestation);
+        }
         activeFeedViews.add(manifestation);
     }
     
@@ -159,6 +359,12 @@ class FeedRenderingPool {
      */
     public void removeFeedView(FeedView manifestation) {
         activeFeedViews.remove(manifestation);
+        if (scheduler != null) {
+            scheduler.removeView(manifestation);
+        }
+        if (dispatcher != null) {
+            dispatcher.discard(manifestation);
+        }
     }
     
     public SynchronizationControl synchronizeTime(final long syncTime) {
@@ -239,24 +445,99 @@ class FeedRenderingPool {
     }
     
     FeedCycleRenderer createWorker(Map<FeedProvider, Long[]> times, Set<FeedView> activeFeedViews) {
-        return new FeedCycleRenderer(times, activeFeedViews);
+        return new FeedCycleRenderer(times, activeFeedViews, dispatcher);
     }
     
     /**
-     * Start a new worker or extend an existing worker. This will only be called from the
-     * timer thread. 
+     * Start a new worker for each pipeline which is idle and has data to request. This will only be called from 
+     * the timer thread. 
      */
     private void startWorker() {
         handleSubscriptions();
         
-        // if the current number of active requests > max number of threads, then wait for the next
-        // one
-        if (activeRenderers.get() < MAX_ACTIVE_REQUESTS && activeSyncControl.get() == null) {
-            Map<TimeService,Long> currentTimes = new HashMap<TimeService,Long>();
+        if (activeSyncControl.get() != null) {
+            return;
+        }
+        Set<String> changes = incremental ? takeChangedFeeds() : null;
+        Set<FeedView> liveViews = activeFeedViews;
+        Set<FeedView> catchUpViews = Collections.emptySet();
+        Set<String> dueFeeds = null;
+        if (scheduler != null) {
+            scheduler.refreshVisibility(activeFeedViews);
+            liveViews = scheduler.selectDueViews(activeFeedViews, System.currentTimeMillis());
+            catchUpViews = selectCatchUpViews(liveViews);
+            liveViews.removeAll(catchUpViews);
+            dueFeeds = new HashSet<String>();
+            for (FeedView view:liveViews) {
+                Collection<FeedProvider> providers = view.getVisibleFeedProviders();
+                if (providers != null) {
+                    for (FeedProvider provider:providers) {
+                        dueFeeds.add(provider.getSubscriptionId());
+                    }
+                }
+            }
+        }
+        Map<PipelineKey, List<FeedProvider>> feedsByPipeline = new HashMap<PipelineKey, List<FeedProvider>>();
+        for (FeedProvider feed:activeFeeds.keySet()) {
+            // feeds without new samples keep their last request time, so their next request covers the gap
+            if (changes != null && !changes.contains(feed.getSubscriptionId())) {
+                continue;
+            }
+            // so do feeds without any view due
+            if (dueFeeds != null && !dueFeeds.contains(feed.getSubscriptionId())) {
+                if (changes != null) {
+                    deferredChanges.add(feed.getSubscriptionId());
+                }
+                continue;
+            }
+            PipelineKey key = new PipelineKey(feed);
+            List<FeedProvider> feeds = feedsByPipeline.get(key);
+            if (feeds == null) {
+                feeds = new ArrayList<FeedProvider>();
+                feedsByPipeline.put(key, feeds);
+            }
+            feeds.add(feed);
+        }
+        // pipelines with a request in progress are kept, so they do not start another one
+        for (Iterator<Pipeline> it = pipelines.values().iterator(); it.hasNext();) {
+            Pipeline pipeline = it.next();
+            if (!feedsByPipeline.containsKey(pipeline.key) && !pipeline.active.get()) {
+                it.remove();
+            }
+        }
+        
+        // pipelines which skipped the most cycles get the free workers first
+        List<Pipeline> candidates = new ArrayList<Pipeline>(feedsByPipeline.size());
+        for (PipelineKey key:feedsByPipeline.keySet()) {
+            Pipeline pipeline = pipelines.get(key);
+            if (pipeline == null) {
+                pipeline = new Pipeline(key);
+                pipelines.put(key, pipeline);
+            }
+            candidates.add(pipeline);
+        }
+        Collections.sort(candidates, SKIPS_COMPARATOR);
+        
+        Map<TimeService,Long> currentTimes = new HashMap<TimeService,Long>();
+        for (Pipeline pipeline:candidates) {
+            List<FeedProvider> feeds = feedsByPipeline.get(pipeline.key);
+            // if the pipeline still has a request in progress, or all workers are busy, wait for the next cycle 
+            if (pipeline.active.get() || activeRenderers.get() >= MAX_ACTIVE_PIPELINES) {
+                pipeline.skipCycle();
+                if (changes != null) {
+                    for (FeedProvider feed:feeds) {
+                        changedFeeds.add(feed.getSubscriptionId());
+                    }
+                }
+                continue;
+            }
+            
             Map<FeedProvider,Long[]> times = new TreeMap<FeedProvider,Long[]>(FEED_COMPARATOR);
-            for (Entry<FeedProvider,Long> lastTimeMapping:activeFeeds.entrySet()) {
-                FeedProvider feed = lastTimeMapping.getKey();
-                long lastRequestTime = lastTimeMapping.getValue();
+            for (FeedProvider feed:feeds) {
+                Long lastRequestTime = activeFeeds.get(feed);
+                if (lastRequestTime == null) {
+                    continue;
+                }
                 // ensure that all values coming from the same time service reflect the same time
                 Long cachedTime = currentTimes.get(feed.getTimeService());
                 if (cachedTime == null) {
@@ -273,19 +554,201 @@ class FeedRenderingPool {
             }
             
             if (!times.isEmpty()) {
-                FeedCycleRenderer worker = createWorker(times, activeFeedViews);
-                worker.addPropertyChangeListener(new PropertyChangeListener() {
-                    @Override
-                    public void propertyChange(PropertyChangeEvent evt) {
-                        if (evt.getNewValue() == SwingWorker.StateValue.DONE) {
-                            activeRenderers.decrementAndGet();
-                        }
-                    }
-                });
-                activeRenderers.incrementAndGet();
-                worker.execute();
+                startPipelineWorker(pipeline, times, liveViews);
             } 
         }
+        
+        for (FeedView view:catchUpViews) {
+            startCatchUp(view);
+        }
+    }
+    
+    /**
+     * Returns the views which missed data and can catch up on this cycle; these views do not get the data of 
+     * the cycle, which they will get with the data they missed. 
+     */
+    private Set<FeedView> selectCatchUpViews(Set<FeedView> dueViews) {
+        Set<FeedView> catchUpViews = null;
+        for (FeedView view:dueViews) {
+            if (scheduler.hasMissed(view)) {
+                if (catchUpViews == null) {
+                    catchUpViews = Collections.newSetFromMap(new IdentityHashMap<FeedView, Boolean>());
+                }
+                catchUpViews.add(view);
+            }
+        }
+        if (catchUpViews == null) {
+            return Collections.emptySet();
+        }
+        // views beyond the limit are not due on this cycle, they keep missing data until their turn
+        Iterator<FeedView> it = catchUpViews.iterator();
+        for (int i = 0; it.hasNext(); i++) {
+            FeedView view = it.next();
+            if (i >= FeedViewScheduler.MAX_CATCH_UPS - activeCatchUps.get()) {
+                it.remove();
+                dueViews.remove(view);
+            }
+        }
+        return catchUpViews;
+    }
+    
+    /**
+     * Read again the data a view missed, up to the last request of each of its feeds. 
+     */
+    private void startCatchUp(final FeedView view) {
+        Map<String, Long> missed = scheduler.startCatchUp(view);
+        Map<FeedProvider,Long[]> times = new TreeMap<FeedProvider,Long[]>(FEED_COMPARATOR);
+        Collection<FeedProvider> providers = view.getVisibleFeedProviders();
+        if (providers != null) {
+            for (FeedProvider provider:providers) {
+                Long start = missed.get(provider.getSubscriptionId());
+                Long end = activeFeeds.get(provider);
+                if (start != null && end != null && start <= end) {
+                    times.put(provider, new Long[] {start, end});
+                }
+            }
+        }
+        if (times.isEmpty()) {
+            scheduler.catchUpDone(view);
+            return;
+        }
+        FeedCycleRenderer worker = createCatchUpWorker(times, view);
+        worker.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (evt.getNewValue() == SwingWorker.StateValue.DONE) {
+                    activeCatchUps.decrementAndGet();
+                    scheduler.catchUpDone(view);
+                }
+            }
+        });
+        activeCatchUps.incrementAndGet();
+        worker.execute();
+    }
+    
+    /**
+     * Creates the worker reading the data a view missed. When the feed aggregator supports cursors, the data is
+     * read through a cursor and dispatched to the view a chunk at a time, so a view which missed a long span does
+     * not hold it all in memory or take the AWT thread for the whole span at once.
+     */
+    FeedCycleRenderer createCatchUpWorker(Map<FeedProvider, Long[]> times, FeedView view) {
+        // like the other history reads, the data a view missed is passed as sample maps only
+        return new FeedCycleRenderer(times, Collections.singleton(view), null, false) {
+            @Override
+            protected DataRequest.Priority getRequestPriority() {
+                return DataRequest.Priority.history;
+            }
+            
+            @Override
+            protected int getStreamingChunkSize() {
+                return CATCH_UP_CHUNK_SAMPLES;
+            }
+            
+            @SuppressWarnings("unchecked")
+            @Override
+            protected void requestCompleted(Map<String, List<Map<String, String>>> values, long startTime, long endTime) {
+                publish(new HashMap<String, List<Map<String, String>>>(values));
+                values.clear();
+            }
+        };
+    }
+    
+    private void startPipelineWorker(final Pipeline pipeline, Map<FeedProvider,Long[]> times, Set<FeedView> liveViews) {
+        pipeline.resume();
+        if (scheduler != null) {
+            for (FeedView view:activeFeedViews) {
+                if (!liveViews.contains(view)) {
+                    scheduler.recordMissed(view, times);
+                }
+            }
+        }
+        FeedCycleRenderer worker = createWorker(times, liveViews);
+        worker.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (evt.getNewValue() == SwingWorker.StateValue.DONE) {
+                    pipeline.active.set(false);
+                    activeRenderers.decrementAndGet();
+                    if (incremental && !changedFeeds.isEmpty()) {
+                        scheduleCycle();
+                    }
+                }
+            }
+        });
+        pipeline.active.set(true);
+        activeRenderers.incrementAndGet();
+        worker.execute();
+    }
+    
+    /**
+     * Returns the number of cycles skipped by all the pipelines, because a request of the pipeline was still in 
+     * progress or all the workers were busy. 
+     */
+    long getSkippedCycles() {
+        return skippedCycles.get();
+    }
+    
+    /**
+     * Identifies the pipeline of a feed: feeds of a time service are requested together, except for the feeds 
+     * of the non COD data buffers which are read from a different buffer.
+     */
+    private static final class PipelineKey {
+        private final TimeService timeService;
+        private final boolean nonCOD;
+        
+        PipelineKey(FeedProvider feed) {
+            timeService = feed.getTimeService();
+            nonCOD = feed.isNonCODDataBuffer();
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PipelineKey)) {
+                return false;
+            }
+            PipelineKey other = (PipelineKey) obj;
+            return timeService == other.timeService && nonCOD == other.nonCOD;
+        }
+        
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(timeService) * 31 + (nonCOD ? 1 : 0);
+        }
+        
+        @Override
+        public String toString() {
+            return timeService + (nonCOD ? " (non COD)" : "");
+        }
+    }
+    
+    /**
+     * Render cycles of a group of feeds. A pipeline has at most one request in progress; the cycles it skips 
+     * meanwhile are caught up by its next request, which covers a longer time range.
+     */
+    private final class Pipeline {
+        private final PipelineKey key;
+        private final AtomicBoolean active = new AtomicBoolean(false);
+        /** Only accessed from the timer thread. */
+        private int consecutiveSkips;
+        
+        Pipeline(PipelineKey key) {
+            this.key = key;
+        }
+        
+        void skipCycle() {
+            skippedCycles.incrementAndGet();
+            consecutiveSkips++;
+            if (consecutiveSkips == SKIPPED_CYCLES_WARNING) {
+                LOGGER.warn("feeds of {0} skipped {1} paint cycles, their last request is still in progress or all workers are busy", key, consecutiveSkips);
+            }
+        }
+        
+        void resume() {
+            if (consecutiveSkips >= SKIPPED_CYCLES_WARNING) {
+                LOGGER.info("feeds of {0} resumed after skipping {1} paint cycles", key, consecutiveSkips);
+            }
+            consecutiveSkips = 0;
+        }
     }
     
     /**
@@ -349,6 +812,15 @@ class FeedRenderingPool {
                 newlyAddedSubscriptionIds.add(feed.getSubscriptionId());
                 activeFeeds.put(feed, feed.getTimeService().getCurrentTime());
             }
+            if (incremental && (!newSubscriptions.isEmpty() || !removedSubscriptions.isEmpty())) {
+                Set<String> ids = new HashSet<String>();
+                for (FeedProvider feed:requiredSubscriptions) {
+                    ids.add(feed.getSubscriptionId());
+                }
+                subscribedIds = ids;
+                // new subscriptions are requested right away, so their views get the current value
+                changedFeeds.addAll(newlyAddedSubscriptionIds);
+            }
             
             assert newlyAddedSubscriptionIds.size() == newSubscriptions.size();
             if (!newlyAddedSubscriptionIds.isEmpty()) {
@@ -21,8 +21,13 @@
  *******************************************************************************/
 package gov.nasa.arc.mct.gui;
 
+import gov.nasa.arc.mct.api.feed.DataRequest;
+import gov.nasa.arc.mct.api.feed.FeedCursorAggregator;
 import gov.nasa.arc.mct.components.AbstractComponent;
 import gov.nasa.arc.mct.components.FeedProvider;
+import gov.nasa.arc.mct.components.FeedSampleBatch;
+import gov.nasa.arc.mct.platform.spi.Platform;
+import gov.nasa.arc.mct.platform.spi.PlatformAccess;
 import gov.nasa.arc.mct.services.component.ViewInfo;
 import gov.nasa.arc.mct.util.property.MCTProperties;
 
@@ -57,7 +62,7 @@ public abstract class FeedView extends View {
     private static final Logger logger = LoggerFactory.getLogger(FeedView.class);
     private static final long serialVersionUID = 1L;
     private static final int PAINT_RATE = getPaintRate();    
-    private static final FeedRenderingPool feedPool = new FeedRenderingPool(PAINT_RATE);
+    private static final FeedRenderingPool feedPool = new FeedRenderingPool(PAINT_RATE, isIncrementalDelivery(), createViewScheduler(), createDispatcher());
     
     /**
      * The maximum number of data points that are returned from a data request. This will cause the
@@ -120,6 +125,19 @@ public abstract class FeedView extends View {
      */
     public abstract void updateFromFeed(Map<String,List<Map<String,String>>> data);
     
+    /**
+     * Updates the view manifestation with the data of a paint cycle, along with the samples of each feed decoded
+     * once for all the views showing the feed. The default implementation invokes {@link #updateFromFeed(Map)};
+     * views override this method to use the decoded samples instead of parsing the maps. 
+     * Invocation of this method from the MCT platform will always be in the AWT thread. 
+     * @param data to update this view with, as for {@link #updateFromFeed(Map)}
+     * @param batches decoded samples by subscription id; feeds whose samples could not be decoded have no batch
+     * and are only in the data
+     */
+    public void updateFromFeed(Map<String,List<Map<String,String>>> data, Map<String,FeedSampleBatch> batches) {
+        updateFromFeed(data);
+    }
+    
     /**
      * Adjust the max time request to ensure that data is not requested beyond the end of the possible time. 
      * @param requestSet to adjust
@@ -185,6 +203,9 @@ public abstract class FeedView extends View {
             requestTimes.put(provider, new Long[]{!reverseOrder?startTime:endTime,!reverseOrder?endTime:startTime});
         }
         
+        // history read front to back is streamed through a cursor instead of being split by estimated sample rates
+        final boolean streaming = !reverseOrder && isCursorAvailable();
+        
         final Semaphore s = new Semaphore(1);
         try {
             s.acquire();
@@ -217,9 +238,22 @@ public abstract class FeedView extends View {
             protected Map<Request, Set<FeedProvider>> getCurrentIterationRequests(
                             Map<Request, Set<FeedProvider>> fullSpanRequests,
                             Map<Request, Set<FeedProvider>> lastRequests) {
+                if (streaming) {
+                    return super.getCurrentIterationRequests(fullSpanRequests, lastRequests);
+                }
                 return getCurrentIterationRequestsImpl(fullSpanRequests, lastRequests, MAX_DATA_POINTS);
             }
             
+            @Override
+            protected int getStreamingChunkSize() {
+                return streaming ? MAX_DATA_POINTS : 0;
+            }
+            
+            @Override
+            protected DataRequest.Priority getRequestPriority() {
+                return DataRequest.Priority.history;
+            }
+            
             @SuppressWarnings("unchecked")
             @Override
             protected void requestCompleted(Map<String, List<Map<String, String>>> values, long startTime, long endTime) {
@@ -245,6 +279,11 @@ public abstract class FeedView extends View {
         return worker;
     }
     
+    private boolean isCursorAvailable() {
+        Platform platform = PlatformAccess.getPlatform();
+        return platform != null && platform.getFeedAggregator() instanceof FeedCursorAggregator;
+    }
+    
     private Request findLastRequest(Set<FeedProvider> provider, Map<Request,Set<FeedProvider>> lastRequests) {
         // simply iterate through the list to find the last request from the feed provider
         Request r = null;
@@ -442,4 +481,45 @@ public abstract class FeedView extends View {
         } 
         return paint_rate;
     }
+    
+    /**
+     * Returns true if the property mct.feed.delivery is set to incremental, in which case only the feeds which
+     * received new samples are requested on each paint cycle.
+     * @return true for incremental delivery
+     */
+    private static boolean isIncrementalDelivery() {
+        return "incremental".equals(MCTProperties.DEFAULT_MCT_PROPERTIES.getProperty("mct.feed.delivery", "poll").trim());
+    }
+    
+    /**
+     * Creates the scheduler of the views, which get data at the rate given by the property 
+     * mct.feed.background.paint.rate, or once per second, when they are on screen but not in use.
+     * @return view scheduler
+     */
+    private static FeedViewScheduler createViewScheduler() {
+        int backgroundRate = 1000;
+        try {
+            backgroundRate = Integer.parseInt(MCTProperties.DEFAULT_MCT_PROPERTIES.getProperty("mct.feed.background.paint.rate", "1000").trim());
+        } catch (NumberFormatException ex) {
+            logger.warn("Wrong input format for mct.feed.background.paint.rate. Need to input an integer. Defaulting to 1000 ms.");
+        }
+        FeedViewScheduler scheduler = new FeedViewScheduler(backgroundRate);
+        scheduler.trackInteractions();
+        return scheduler;
+    }
+    
+    /**
+     * Creates the dispatcher of the paint cycles, which updates the views in slices of the AWT thread of at most 
+     * the time given by the property mct.feed.dispatch.budget, or 8 milliseconds. 
+     * @return dispatcher, or null if the budget is not positive and the views of a cycle are updated at once
+     */
+    private static FeedDispatcher createDispatcher() {
+        int budget = 8;
+        try {
+            budget = Integer.parseInt(MCTProperties.DEFAULT_MCT_PROPERTIES.getProperty("mct.feed.dispatch.budget", "8").trim());
+        } catch (NumberFormatException ex) {
+            logger.warn("Wrong input format for mct.feed.dispatch.budget. Need to input an integer. Defaulting to 8 ms.");
+        }
+        return budget > 0 ? new FeedDispatcher(budget) : null;
+    }
 }
@@ -0,0 +1,266 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.gui;
+
+import gov.nasa.arc.mct.components.FeedProvider;
+import gov.nasa.arc.mct.util.logging.MCTLogger;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Frame;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Decides which feed views get the data of a paint cycle, from how visible they are. Views in the focused window
+ * or recently used get the data of every cycle, other views on screen get data at a lower rate, and views which
+ * cannot be seen (in a minimized window or scrolled out of sight) get no data. The data of the cycles a view 
+ * misses is read again from the buffers once the view is due, before the view gets the data of the next cycles.
+ * <p>
+ * The visibility of the views is evaluated in the AWT thread, and {@link #catchUpDone(FeedView)} is invoked from
+ * the AWT thread once the data is dispatched; everything else is only accessed from the timer thread of the
+ * {@link FeedRenderingPool}.
+ */
+class FeedViewScheduler {
+    private static final MCTLogger LOGGER = MCTLogger.getLogger(FeedViewScheduler.class);
+    
+    /** How long a view is considered in use after a mouse or key event. */
+    static final long INTERACTION_MILLIS = 30000;
+    
+    /** Maximum number of views catching up at a time. */
+    static final int MAX_CATCH_UPS = 2;
+    
+    /**
+     * How visible a view is.
+     */
+    enum Visibility {
+        /** The view is in the focused window or was used recently. */
+        FOREGROUND,
+        /** The view is on screen. */
+        BACKGROUND,
+        /** The view cannot be seen. */
+        HIDDEN;
+    }
+    
+    private final long backgroundRateMillis;
+    private final Map<FeedView, ViewState> states = new ConcurrentHashMap<FeedView, ViewState>();
+    private final AtomicBoolean refreshPending = new AtomicBoolean(false);
+    private final AWTEventListener interactionListener = new AWTEventListener() {
+        @Override
+        public void eventDispatched(AWTEvent event) {
+            int id = event.getID();
+            if ((id == MouseEvent.MOUSE_PRESSED || id == MouseEvent.MOUSE_WHEEL || id == KeyEvent.KEY_PRESSED)
+                    && event.getSource() instanceof Component) {
+                interacted((Component) event.getSource(), System.currentTimeMillis());
+            }
+        }
+    };
+    
+    /**
+     * Creates a new instance.
+     * @param backgroundRateMillis how often in milliseconds views on screen which are not in use get data
+     */
+    FeedViewScheduler(long backgroundRateMillis) {
+        this.backgroundRateMillis = backgroundRateMillis;
+    }
+    
+    /**
+     * Start tracking the mouse and key events, to find out which views are in use.
+     */
+    void trackInteractions() {
+        try {
+            Toolkit.getDefaultToolkit().addAWTEventListener(interactionListener, 
+                    AWTEvent.MOUSE_EVENT_MASK | AWTEvent.MOUSE_WHEEL_EVENT_MASK | AWTEvent.KEY_EVENT_MASK);
+        } catch (SecurityException e) {
+            LOGGER.warn("cannot track the use of feed views, views out of the focused window get data at the lower rate", e);
+        }
+    }
+    
+    void addView(FeedView view) {
+        states.put(view, new ViewState());
+    }
+    
+    void removeView(FeedView view) {
+        states.remove(view);
+    }
+    
+    private void interacted(Component source, long now) {
+        for (Component c = source; c != null; c = c.getParent()) {
+            if (c instanceof FeedView) {
+                ViewState state = states.get(c);
+                if (state != null) {
+                    state.lastInteraction = now;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Evaluates the visibility of the views in the AWT thread, for the next cycles.
+     * @param views to evaluate
+     */
+    void refreshVisibility(final Collection<FeedView> views) {
+        if (refreshPending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    refreshPending.set(false);
+                    long now = System.currentTimeMillis();
+                    for (FeedView view : views) {
+                        ViewState state = states.get(view);
+                        if (state != null) {
+                            state.visibility = getVisibility(view, state, now);
+                        }
+                    }
+                }
+            });
+        }
+    }
+    
+    private static Visibility getVisibility(FeedView view, ViewState state, long now) {
+        if (!view.isShowing() || view.getVisibleRect().isEmpty()) {
+            return Visibility.HIDDEN;
+        }
+        Window window = SwingUtilities.getWindowAncestor(view);
+        if (window instanceof Frame && (((Frame) window).getExtendedState() & Frame.ICONIFIED) != 0) {
+            return Visibility.HIDDEN;
+        }
+        if ((window != null && window.isFocused()) || now - state.lastInteraction < INTERACTION_MILLIS) {
+            return Visibility.FOREGROUND;
+        }
+        return Visibility.BACKGROUND;
+    }
+    
+    /**
+     * Returns the views which are due for data on this cycle. Views which are catching up are not due. 
+     * @param views the active views
+     * @param now current time in milliseconds
+     * @return the views to dispatch data to
+     */
+    Set<FeedView> selectDueViews(Collection<FeedView> views, long now) {
+        Set<FeedView> due = Collections.newSetFromMap(new IdentityHashMap<FeedView, Boolean>());
+        for (FeedView view : views) {
+            ViewState state = states.get(view);
+            if (state == null) {
+                due.add(view);
+                continue;
+            }
+            if (state.catchingUp || state.visibility == Visibility.HIDDEN || now < state.nextDue) {
+                continue;
+            }
+            state.nextDue = state.visibility == Visibility.FOREGROUND ? 0 : now + backgroundRateMillis;
+            due.add(view);
+        }
+        return due;
+    }
+    
+    /**
+     * Records the data a view does not get on this cycle, so it can be read again once the view is due. 
+     * @param view which does not get the data of the cycle
+     * @param times requested on this cycle
+     */
+    void recordMissed(FeedView view, Map<FeedProvider, Long[]> times) {
+        ViewState state = states.get(view);
+        if (state == null) {
+            return;
+        }
+        Collection<FeedProvider> providers = view.getVisibleFeedProviders();
+        if (providers == null) {
+            return;
+        }
+        for (FeedProvider provider : providers) {
+            Long[] range = times.get(provider);
+            if (range != null) {
+                String id = provider.getSubscriptionId();
+                Long start = state.missed.get(id);
+                if (start == null || range[0] < start) {
+                    state.missed.put(id, range[0]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns true if a view missed data which has to be read again before it gets the data of a cycle.
+     */
+    boolean hasMissed(FeedView view) {
+        ViewState state = states.get(view);
+        return state != null && !state.missed.isEmpty();
+    }
+    
+    /**
+     * Starts catching up a view: the view is not due until {@link #catchUpDone(FeedView)} is invoked. 
+     * @param view to catch up
+     * @return the start time of the data missed by the view, by subscription id
+     */
+    Map<String, Long> startCatchUp(FeedView view) {
+        ViewState state = states.get(view);
+        if (state == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> missed = state.missed;
+        state.missed = new HashMap<String, Long>();
+        state.catchingUp = true;
+        return missed;
+    }
+    
+    /**
+     * Invoked once the data missed by a view is dispatched to it, from the timer thread or the AWT thread.
+     */
+    void catchUpDone(FeedView view) {
+        ViewState state = states.get(view);
+        if (state != null) {
+            state.nextDue = 0;
+            state.catchingUp = false;
+        }
+    }
+    
+    // exposed for testing
+    void setVisibility(FeedView view, Visibility visibility) {
+        ViewState state = states.get(view);
+        if (state != null) {
+            state.visibility = visibility;
+        }
+    }
+    
+    private static final class ViewState {
+        /** Views get data until their visibility is evaluated. */
+        private volatile Visibility visibility = Visibility.FOREGROUND;
+        private volatile long lastInteraction;
+        private volatile boolean catchingUp;
+        private volatile long nextDue;
+        private Map<String, Long> missed = new HashMap<String, Long>();
+    }
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.api.feed;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class FeedSampleBlockTest {
+
+    private static Map<String, String> sample(String value, String time) {
+        Map<String, String> sample = new HashMap<String, String>();
+        sample.put(FeedSampleBlock.VALUE_KEY, value);
+        sample.put(FeedSampleBlock.TIME_KEY, time);
+        sample.put(FeedSampleBlock.IS_VALID_KEY, "true");
+        sample.put(FeedSampleBlock.RENDERING_INFO_KEY, "-16777216&&-16777216&true&true&" + value);
+        return sample;
+    }
+
+    @Test
+    public void testMapRoundTrip() {
+        SortedMap<Long, Map<String, String>> data = new TreeMap<Long, Map<String, String>>();
+        data.put(30L, sample("3.25", "30"));
+        data.put(10L, sample("1", "10"));
+        data.put(20L, sample("-0.5", "20"));
+        Map<String, String> text = sample("1.50", "40");
+        text.put("extra", "value");
+        text.put(FeedSampleBlock.STATUS_KEY, "stale");
+        data.put(40L, text);
+
+        FeedSampleBlock block = FeedSampleBlock.fromMaps("feed", data);
+        Assert.assertEquals(block.size(), 4);
+        Assert.assertEquals(block.toSortedMap(), data);
+        Assert.assertEquals(block.getValue(0), 1.0);
+        Assert.assertEquals(block.getValue(1), -0.5);
+        Assert.assertTrue(Double.isNaN(block.getValue(3)));
+        Assert.assertEquals(block.getValueText(3), "1.50");
+        Assert.assertEquals(block.getStatus(3), "stale");
+        Assert.assertEquals(block.getRenderingInfoId(0), block.getRenderingInfoId(2));
+    }
+
+    @Test
+    public void testOrderingAndReplace() {
+        FeedSampleBlock block = new FeedSampleBlock("feed", 1);
+        block.add(20, 20, 2.0, true, null, null);
+        block.add(10, 10, 1.0, true, null, null);
+        block.add(30, 30, 3.0, true, null, null);
+        block.add(20, 20, 4.0, false, null, null);
+        Assert.assertEquals(block.size(), 3);
+        Assert.assertEquals(block.getTime(0), 10);
+        Assert.assertEquals(block.getValue(1), 4.0);
+        Assert.assertFalse(block.isValid(1));
+
+        FeedSampleBlock other = new FeedSampleBlock("feed");
+        other.add(25, 25, 5.0, true, null, null);
+        other.add(40, 40, 6.0, true, null, null);
+        block.addAll(other);
+        Assert.assertEquals(block.size(), 5);
+        Assert.assertEquals(block.getTime(2), 25);
+        Assert.assertEquals(block.getLastTime(), 40);
+    }
+
+    @Test
+    public void testSubBlock() {
+        FeedSampleBlock block = new FeedSampleBlock("feed");
+        for (int i = 0; i < 10; i++) {
+            block.add(i * 10, i * 10, i, true, null, null);
+        }
+        FeedSampleBlock view = block.subBlock(15, 50);
+        Assert.assertEquals(view.size(), 4);
+        Assert.assertEquals(view.getFirstTime(), 20);
+        Assert.assertEquals(view.getLastTime(), 50);
+        Assert.assertEquals(view.floorIndex(35), 1);
+        Assert.assertEquals(view.ceilingIndex(35), 2);
+        Assert.assertEquals(block.subBlock(91, 95).size(), 0);
+        try {
+            view.add(60, 60, 6.0, true, null, null);
+            Assert.fail("views are read only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        FeedSampleBlock copy = view.copy();
+        copy.add(60, 60, 6.0, true, null, null);
+        Assert.assertEquals(copy.size(), 5);
+        Assert.assertEquals(view.size(), 4);
+    }
+}
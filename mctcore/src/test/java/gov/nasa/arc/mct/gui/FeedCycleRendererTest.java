@@ -23,9 +23,12 @@ package gov.nasa.arc.mct.gui;
 
 import gov.nasa.arc.mct.api.feed.FeedAggregator;
 import gov.nasa.arc.mct.components.FeedProvider;
+import gov.nasa.arc.mct.components.FeedProvider.RenderingInfo;
+import gov.nasa.arc.mct.components.FeedSampleBatch;
 import gov.nasa.arc.mct.platform.spi.Platform;
 import gov.nasa.arc.mct.platform.spi.PlatformAccess;
 
+import java.awt.Color;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collections;
@@ -37,6 +40,7 @@ import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
@@ -198,5 +202,60 @@ public class FeedCycleRendererTest {
         Mockito.verify(goodManifestation).updateFromFeed(Mockito.anyMap());
         
     }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testDecodeSamples() throws Exception {
+        Map<FeedProvider, Long[]> times = new HashMap<FeedProvider, Long[]>();
+        times.put(numericProvider, new Long[]{0L,1L});
+        times.put(alphaProvider, new Long[]{0L,1L});
+        RenderingInfo ri = new RenderingInfo("1.5", Color.green, " ", Color.green, true);
+        Mockito.when(numericProvider.getRenderingInfo(Mockito.anyMap())).thenReturn(ri);
+        Mockito.when(alphaProvider.getRenderingInfo(Mockito.anyMap())).thenThrow(new RuntimeException());
+        
+        FeedCycleRenderer worker = new FeedCycleRenderer(times, new HashSet<FeedView>(Arrays.asList(fv1, fv4)), null) {
+            @Override
+            Map<String, List<Map<String, String>>> getData() throws InterruptedException, ExecutionException {
+                return doInBackground();
+            }
+        };
+        worker.renderFeeds();
+        
+        // the samples are decoded once and shared by the views
+        ArgumentCaptor<Map> batches = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(fv1).updateFromFeed(Mockito.anyMap(), batches.capture());
+        Mockito.verify(fv4).updateFromFeed(Mockito.anyMap(), Mockito.same(batches.getValue()));
+        Mockito.verify(numericProvider, Mockito.times(1)).getRenderingInfo(Mockito.anyMap());
+        
+        FeedSampleBatch batch = (FeedSampleBatch) batches.getValue().get("numeric");
+        Assert.assertEquals(batch.size(), 1);
+        Assert.assertTrue(batch.hasTime(0));
+        Assert.assertEquals(batch.getTime(0), 1000L);
+        Assert.assertTrue(batch.isNumeric(0));
+        Assert.assertEquals(batch.getValue(0), 1.5);
+        Assert.assertSame(batch.getRenderingInfo(0), ri);
+        Assert.assertSame(batch.getSample(0), singleValue.get(0));
+        // feeds which cannot be decoded are left to the views
+        Assert.assertFalse(batches.getValue().containsKey("alpha"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testSamplesLeftUndecoded() throws Exception {
+        Map<FeedProvider, Long[]> times = new HashMap<FeedProvider, Long[]>();
+        times.put(numericProvider, new Long[]{0L,1L});
+        
+        FeedCycleRenderer worker = new FeedCycleRenderer(times, Collections.singleton(fv1), null, false) {
+            @Override
+            Map<String, List<Map<String, String>>> getData() throws InterruptedException, ExecutionException {
+                return doInBackground();
+            }
+        };
+        worker.renderFeeds();
+        
+        Mockito.verify(fv1).updateFromFeed(Mockito.anyMap());
+        Mockito.verify(fv1, Mockito.never()).updateFromFeed(Mockito.anyMap(), Mockito.anyMap());
+        Mockito.verify(numericProvider, Mockito.never()).getRenderingInfo(Mockito.anyMap());
+    }
 
 }
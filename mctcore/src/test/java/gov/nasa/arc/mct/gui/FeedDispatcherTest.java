@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.gui;
+
+import gov.nasa.arc.mct.components.FeedProvider;
+import gov.nasa.arc.mct.components.FeedSampleBatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FeedDispatcherTest {
+    @Mock 
+    private FeedView fv1;
+    @Mock
+    private FeedView fv2;
+    private FeedCycleRenderer renderer;
+    
+    @BeforeMethod
+    public void initialize() {
+        MockitoAnnotations.initMocks(this);
+        renderer = new FeedCycleRenderer(Collections.<FeedProvider, Long[]>emptyMap(), Collections.<FeedView>emptySet());
+    }
+    
+    private static Map<String, List<Map<String, String>>> data(String feedId, String time) {
+        Map<String, List<Map<String, String>>> data = new HashMap<String, List<Map<String, String>>>();
+        List<Map<String, String>> samples = new ArrayList<Map<String, String>>();
+        samples.add(Collections.singletonMap(FeedProvider.NORMALIZED_TIME_KEY, time));
+        data.put(feedId, samples);
+        return data;
+    }
+    
+    // waits until the slices queued so far have run
+    private static void flush() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        }
+    }
+    
+    @Test
+    public void testCoalescing() throws Exception {
+        final FeedDispatcher dispatcher = new FeedDispatcher(10);
+        final Map<String, List<Map<String, String>>> first = data("a", "1");
+        first.putAll(data("b", "1"));
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(renderer, Arrays.asList(fv1, fv2), first, null);
+                dispatcher.dispatch(renderer, Collections.singleton(fv1), data("a", "2"), null);
+            }
+        });
+        flush();
+        
+        // the view which got two cycles is updated once with the samples of both
+        Map<String, List<Map<String, String>>> expected = data("a", "1");
+        expected.get("a").addAll(data("a", "2").get("a"));
+        expected.putAll(data("b", "1"));
+        Mockito.verify(fv1, Mockito.times(1)).updateFromFeed(Mockito.anyMap());
+        Mockito.verify(fv1).updateFromFeed(expected);
+        Mockito.verify(fv2).updateFromFeed(first);
+        Assert.assertEquals(first.get("a").get(0).get(FeedProvider.NORMALIZED_TIME_KEY), "1");
+    }
+    
+    private static Map<String, FeedSampleBatch> decode(Map<String, List<Map<String, String>>> data) {
+        Map<String, FeedSampleBatch> batches = new HashMap<String, FeedSampleBatch>();
+        for (Map.Entry<String, List<Map<String, String>>> entry : data.entrySet()) {
+            FeedProvider provider = Mockito.mock(FeedProvider.class);
+            Mockito.when(provider.getSubscriptionId()).thenReturn(entry.getKey());
+            batches.put(entry.getKey(), FeedSampleBatch.decode(provider, entry.getValue()));
+        }
+        return batches;
+    }
+    
+    @Test
+    public void testCoalescingDecodedSamples() throws Exception {
+        final FeedDispatcher dispatcher = new FeedDispatcher(10);
+        final Map<String, List<Map<String, String>>> first = data("a", "1");
+        final Map<String, List<Map<String, String>>> second = data("b", "2");
+        final Map<String, FeedSampleBatch> firstBatches = decode(first);
+        final Map<String, FeedSampleBatch> secondBatches = decode(second);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(renderer, Arrays.asList(fv1, fv2), first, firstBatches);
+                dispatcher.dispatch(renderer, Collections.singleton(fv1), second, secondBatches);
+                dispatcher.dispatch(renderer, Collections.singleton(fv2), second, null);
+            }
+        });
+        flush();
+        
+        Map<String, List<Map<String, String>>> expected = new HashMap<String, List<Map<String, String>>>(first);
+        expected.putAll(second);
+        Map<String, FeedSampleBatch> expectedBatches = new HashMap<String, FeedSampleBatch>(firstBatches);
+        expectedBatches.putAll(secondBatches);
+        Mockito.verify(fv1).updateFromFeed(expected, expectedBatches);
+        // samples which were not decoded are dispatched as maps only
+        Mockito.verify(fv2).updateFromFeed(expected);
+        Assert.assertEquals(firstBatches.keySet(), Collections.singleton("a"));
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testJoiningDecodedSamples() throws Exception {
+        final FeedDispatcher dispatcher = new FeedDispatcher(10);
+        final Map<String, List<Map<String, String>>> first = data("a", "1");
+        final Map<String, List<Map<String, String>>> second = data("a", "2");
+        final Map<String, FeedSampleBatch> firstBatches = decode(first);
+        final Map<String, FeedSampleBatch> secondBatches = decode(second);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(renderer, Arrays.asList(fv1, fv2), first, firstBatches);
+                dispatcher.dispatch(renderer, Collections.singleton(fv1), second, secondBatches);
+            }
+        });
+        flush();
+        
+        ArgumentCaptor<Map> batches = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(fv1).updateFromFeed(Mockito.anyMap(), batches.capture());
+        FeedSampleBatch batch = (FeedSampleBatch) batches.getValue().get("a");
+        Assert.assertEquals(batch.size(), 2);
+        Assert.assertEquals(batch.getTime(0), 1);
+        Assert.assertEquals(batch.getTime(1), 2);
+        Assert.assertSame(batch.getSample(1), second.get("a").get(0));
+        // the batches of the first cycle, shared with the other view, are left as they were
+        Mockito.verify(fv2).updateFromFeed(first, firstBatches);
+        Assert.assertEquals(firstBatches.get("a").size(), 1);
+    }
+    
+    @Test
+    public void testBudget() throws Exception {
+        final FeedDispatcher dispatcher = new FeedDispatcher(10);
+        final AtomicInteger updates = new AtomicInteger();
+        final LinkedHashSet<FeedView> views = new LinkedHashSet<FeedView>();
+        for (int i = 0; i < 10; i++) {
+            FeedView view = Mockito.mock(FeedView.class);
+            Mockito.doAnswer(new Answer<Object>() {
+                @Override
+                public Object answer(InvocationOnMock invocation) throws Throwable {
+                    Thread.sleep(4);
+                    updates.incrementAndGet();
+                    return null;
+                }
+            }).when(view).updateFromFeed(Mockito.anyMap());
+            views.add(view);
+        }
+        final AtomicInteger updatesBeforeEvent = new AtomicInteger(-1);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(renderer, views, data("a", "1"), null);
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        updatesBeforeEvent.set(updates.get());
+                    }
+                });
+            }
+        });
+        flush();
+        
+        // other events run between the slices
+        Assert.assertEquals(updates.get(), 10);
+        Assert.assertTrue(updatesBeforeEvent.get() > 0);
+        Assert.assertTrue(updatesBeforeEvent.get() < 10);
+        Assert.assertTrue(dispatcher.getLastRoundNanos() >= TimeUnit.MILLISECONDS.toNanos(40));
+    }
+    
+    @Test
+    public void testDiscard() throws Exception {
+        final FeedDispatcher dispatcher = new FeedDispatcher(10);
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(renderer, Arrays.asList(fv1, fv2), data("a", "1"), null);
+                dispatcher.discard(fv1);
+            }
+        });
+        flush();
+        
+        Mockito.verify(fv1, Mockito.never()).updateFromFeed(Mockito.anyMap());
+        Mockito.verify(fv2).updateFromFeed(Mockito.anyMap());
+    }
+}
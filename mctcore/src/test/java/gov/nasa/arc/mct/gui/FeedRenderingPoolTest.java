@@ -21,22 +21,32 @@
  *******************************************************************************/
 package gov.nasa.arc.mct.gui;
 
+import gov.nasa.arc.mct.api.feed.FeedAggregator;
+import gov.nasa.arc.mct.api.feed.FeedChangeAggregator;
+import gov.nasa.arc.mct.api.feed.FeedChangeListener;
 import gov.nasa.arc.mct.components.FeedProvider;
 import gov.nasa.arc.mct.gui.FeedView.SynchronizationControl;
+import gov.nasa.arc.mct.gui.FeedViewScheduler.Visibility;
 import gov.nasa.arc.mct.platform.spi.SubscriptionManager;
 import gov.nasa.arc.mct.services.activity.TimeService;
 
 import java.awt.Window;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
@@ -317,4 +327,211 @@ public class FeedRenderingPoolTest {
         Assert.assertTrue(dialogAppeared.get());
     }
     
+    static class ChangeAggregator implements FeedAggregator, FeedChangeAggregator {
+        private volatile FeedChangeListener listener;
+
+        @Override
+        public Map<String, List<Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void addFeedChangeListener(FeedChangeListener l) {
+            listener = l;
+        }
+
+        @Override
+        public void removeFeedChangeListener(FeedChangeListener l) {
+            listener = null;
+        }
+    }
+    
+    private static Set<String> requestedIds(Map<FeedProvider, Long[]> times) {
+        Assert.assertNotNull(times);
+        Set<String> ids = new HashSet<String>();
+        for (FeedProvider provider : times.keySet()) {
+            ids.add(provider.getSubscriptionId());
+        }
+        return ids;
+    }
+    
+    @Test
+    public void testIncrementalDelivery() throws Exception {
+        final ChangeAggregator aggregator = new ChangeAggregator();
+        final BlockingQueue<Map<FeedProvider, Long[]>> requests = new LinkedBlockingQueue<Map<FeedProvider, Long[]>>();
+        feedId1.set("f1");
+        FeedView fv2 = Mockito.mock(FeedView.class);
+        FeedProvider fp2 = Mockito.mock(FeedProvider.class);
+        Mockito.when(fp2.getSubscriptionId()).thenReturn("f2");
+        Mockito.when(fp2.getTimeService()).thenReturn(timeService);
+        Mockito.when(fv2.getVisibleFeedProviders()).thenReturn(Collections.singleton(fp2));
+        pool.cancelTimer();
+        pool = new FeedRenderingPool(1000, true) {
+            @Override
+            FeedCycleRenderer createWorker(Map<FeedProvider, Long[]> timeMapping, Set<FeedView> activeFeedViews) {
+                requests.add(timeMapping);
+                return new FeedCycleRendererTest2(timeMapping, activeFeedViews);
+            }
+            
+            @Override
+            SubscriptionManager getSubscriptionManager() {
+                return manager;
+            }
+            
+            @Override
+            FeedAggregator getFeedAggregator() {
+                return aggregator;
+            }
+        };
+        pool.addFeedView(fv1);
+        pool.addFeedView(fv2);
+        
+        // new subscriptions are requested on the next two cycles
+        Set<String> both = new HashSet<String>(Arrays.asList("f1", "f2"));
+        Assert.assertEquals(requestedIds(requests.poll(5, TimeUnit.SECONDS)), both);
+        Assert.assertEquals(requestedIds(requests.poll(5, TimeUnit.SECONDS)), both);
+        Assert.assertNotNull(aggregator.listener);
+        
+        // a change starts a cycle for the changed feed without waiting for the paint period
+        aggregator.listener.feedsChanged(new HashSet<String>(Arrays.asList("f2", "unsubscribed")));
+        Assert.assertEquals(requestedIds(requests.poll(500, TimeUnit.MILLISECONDS)), Collections.singleton("f2"));
+        
+        pool.cancelTimer();
+        Assert.assertNull(aggregator.listener);
+    }
+    
+    @Test
+    public void testPipelinesPerTimeService() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final BlockingQueue<Map<FeedProvider, Long[]>> slowRequests = new LinkedBlockingQueue<Map<FeedProvider, Long[]>>();
+        final BlockingQueue<Map<FeedProvider, Long[]>> fastRequests = new LinkedBlockingQueue<Map<FeedProvider, Long[]>>();
+        feedId1.set("f1");
+        TimeService timeService2 = Mockito.mock(TimeService.class);
+        Mockito.when(timeService2.getCurrentTime()).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) throws Throwable {
+                return time.getAndIncrement();
+            }
+        });
+        FeedView fv2 = Mockito.mock(FeedView.class);
+        FeedProvider fp2 = Mockito.mock(FeedProvider.class);
+        Mockito.when(fp2.getSubscriptionId()).thenReturn("f2");
+        Mockito.when(fp2.getTimeService()).thenReturn(timeService2);
+        Mockito.when(fv2.getVisibleFeedProviders()).thenReturn(Collections.singleton(fp2));
+        pool.cancelTimer();
+        pool = new FeedRenderingPool(50) {
+            @Override
+            FeedCycleRenderer createWorker(Map<FeedProvider, Long[]> timeMapping, Set<FeedView> activeFeedViews) {
+                if (requestedIds(timeMapping).contains("f1")) {
+                    slowRequests.add(timeMapping);
+                    // blocked as if reading from a slow source
+                    return new FeedCycleRendererTest2(timeMapping, activeFeedViews) {
+                        @Override
+                        protected Map<String, List<Map<String,String>>> doInBackground() {
+                            try {
+                                release.await();
+                            } catch (InterruptedException ie) {}
+                            return super.doInBackground();
+                        }
+                    };
+                }
+                fastRequests.add(timeMapping);
+                return new FeedCycleRendererTest2(timeMapping, activeFeedViews);
+            }
+            
+            @Override
+            SubscriptionManager getSubscriptionManager() {
+                return manager;
+            }
+        };
+        pool.addFeedView(fv1);
+        pool.addFeedView(fv2);
+        
+        Long[] first = slowRequests.poll(5, TimeUnit.SECONDS).get(fp);
+        // the feeds of the other time service keep being requested
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(requestedIds(fastRequests.poll(5, TimeUnit.SECONDS)), Collections.singleton("f2"));
+        }
+        Assert.assertTrue(slowRequests.isEmpty());
+        Assert.assertTrue(pool.getSkippedCycles() > 0);
+        
+        // the next request of the slow pipeline covers the skipped cycles
+        release.countDown();
+        Long[] next = slowRequests.poll(5, TimeUnit.SECONDS).get(fp);
+        Assert.assertEquals(next[0].longValue(), first[1].longValue() + 1);
+    }
+    
+    @Test
+    public void testVisibilityScheduling() throws Exception {
+        final BlockingQueue<Set<FeedView>> requestViews = new LinkedBlockingQueue<Set<FeedView>>();
+        final BlockingQueue<Map<FeedProvider, Long[]>> requests = new LinkedBlockingQueue<Map<FeedProvider, Long[]>>();
+        final BlockingQueue<Map<FeedProvider, Long[]>> catchUps = new LinkedBlockingQueue<Map<FeedProvider, Long[]>>();
+        feedId1.set("f1");
+        FeedView fv2 = Mockito.mock(FeedView.class);
+        Mockito.when(fv2.getVisibleFeedProviders()).thenReturn(Collections.singleton(fp));
+        // the visibility is set by the test instead of being evaluated from the mocked views
+        FeedViewScheduler scheduler = new FeedViewScheduler(1000) {
+            @Override
+            void refreshVisibility(Collection<FeedView> views) {
+            }
+        };
+        pool.cancelTimer();
+        pool = new FeedRenderingPool(50, false, scheduler) {
+            @Override
+            FeedCycleRenderer createWorker(Map<FeedProvider, Long[]> timeMapping, Set<FeedView> activeFeedViews) {
+                requests.add(timeMapping);
+                requestViews.add(activeFeedViews);
+                return new FeedCycleRendererTest2(timeMapping, activeFeedViews);
+            }
+            
+            @Override
+            FeedCycleRenderer createCatchUpWorker(Map<FeedProvider, Long[]> times, FeedView view) {
+                catchUps.add(times);
+                return new FeedCycleRendererTest2(times, Collections.singleton(view));
+            }
+            
+            @Override
+            SubscriptionManager getSubscriptionManager() {
+                return manager;
+            }
+        };
+        pool.addFeedView(fv1);
+        pool.addFeedView(fv2);
+        Assert.assertNotNull(requests.poll(5, TimeUnit.SECONDS));
+        Assert.assertNotNull(requestViews.poll(5, TimeUnit.SECONDS));
+        
+        // a hidden view does not get the data of the cycles
+        scheduler.setVisibility(fv1, Visibility.HIDDEN);
+        Long firstMissed = null;
+        for (int i = 0; i < 20 && firstMissed == null; i++) {
+            Map<FeedProvider, Long[]> times = requests.poll(5, TimeUnit.SECONDS);
+            if (!requestViews.poll(5, TimeUnit.SECONDS).contains(fv1)) {
+                firstMissed = times.get(fp)[0];
+            }
+        }
+        Assert.assertNotNull(firstMissed);
+        requests.poll(5, TimeUnit.SECONDS);
+        Assert.assertEquals(requestViews.poll(5, TimeUnit.SECONDS), Collections.singleton(fv2));
+        Assert.assertTrue(catchUps.isEmpty());
+        
+        // once visible again it first gets the data it missed
+        scheduler.setVisibility(fv1, Visibility.FOREGROUND);
+        Map<FeedProvider, Long[]> catchUp = catchUps.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull(catchUp);
+        Assert.assertEquals(catchUp.get(fp)[0], firstMissed);
+        boolean resumed = false;
+        for (int i = 0; i < 20 && !resumed; i++) {
+            requests.poll(5, TimeUnit.SECONDS);
+            resumed = requestViews.poll(5, TimeUnit.SECONDS).contains(fv1);
+        }
+        Assert.assertTrue(resumed);
+        
+        // feeds none of whose views are due are not requested
+        scheduler.setVisibility(fv1, Visibility.HIDDEN);
+        scheduler.setVisibility(fv2, Visibility.HIDDEN);
+        Thread.sleep(200);
+        requests.clear();
+        Thread.sleep(300);
+        Assert.assertTrue(requests.isEmpty());
+    }
 }
@@ -26,6 +26,7 @@ import gov.nasa.arc.mct.components.ExtendedProperties;
 import gov.nasa.arc.mct.components.FeedProvider;
 import gov.nasa.arc.mct.components.FeedProvider.FeedType;
 import gov.nasa.arc.mct.components.FeedProvider.RenderingInfo;
+import gov.nasa.arc.mct.components.FeedSampleBatch;
 import gov.nasa.arc.mct.components.TimeConversion;
 import gov.nasa.arc.mct.evaluator.api.Evaluator;
 import gov.nasa.arc.mct.gui.FeedView;
@@ -466,6 +467,15 @@ public class TableViewManifestation extends FeedView
 	 */
 	@Override
 	public void updateFromFeed(Map<String, List<Map<String, String>>> data) {
+		updateFromFeed(data, null);
+	}
+
+	/**
+	 * Push the feed data to the table, taking the rendering info from the
+	 * samples decoded for the paint cycle when there are any.
+	 */
+	@Override
+	public void updateFromFeed(Map<String, List<Map<String, String>>> data, Map<String, FeedSampleBatch> batches) {
 		receivedData = true;
 		if (data != null) {
 			Collection<FeedProvider> feeds = getVisibleFeedProviders();
@@ -482,7 +492,9 @@ public class TableViewManifestation extends FeedView
 					try {
 						Object value = entry
 								.get(FeedProvider.NORMALIZED_VALUE_KEY);
-						RenderingInfo ri = provider.getRenderingInfo(entry);
+						FeedSampleBatch batch = batches == null ? null : batches.get(feedId);
+						RenderingInfo ri = batch != null && batch.size() == dataForThisFeed.size() ?
+								batch.getRenderingInfo(batch.size() - 1) : provider.getRenderingInfo(entry);
 						TableCellSettings settings = model
 								.getCellSettings(provider
 										.getSubscriptionId());
@@ -370,6 +370,14 @@ public final class DiskBufferEnv implements DataBufferEnv, Cloneable {
         return concurrency;
     }
     
+    /**
+     * Returns true if new samples are written as compact binary records rather than as serialized maps.
+     * Samples written in either format can always be read back.
+     */
+    public boolean isCompactRecords() {
+        return Boolean.parseBoolean(prop.getProperty("buffer.compact.records", "true").trim());
+    }
+    
     public int getBufferWriteThreadPoolSize() {
         return bufferWriteThreadPoolSize;
     }
@@ -397,6 +405,13 @@ public final class DiskBufferEnv implements DataBufferEnv, Cloneable {
     public int getCurrentBufferPartition() {
         return currentBufferPartition;
     }
+
+    /**
+     * Returns the directory holding the files of this partition.
+     */
+    public File getPartitionHome() {
+        return envHome;
+    }
     
     public DataBufferEnv advanceBufferPartition() {
         int nextBufferPartition = nextBufferPartition();
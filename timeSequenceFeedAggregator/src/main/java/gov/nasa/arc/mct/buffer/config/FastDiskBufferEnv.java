@@ -286,6 +286,28 @@ public class FastDiskBufferEnv implements DataBufferEnv, Cloneable {
         return concurrency;
     }
     
+    /**
+     * Returns true if new samples are written as compact binary records rather than as serialized maps.
+     * Samples written in either format can always be read back.
+     */
+    public boolean isCompactRecords() {
+        return Boolean.parseBoolean(prop.getProperty("buffer.compact.records", "true").trim());
+    }
+    
+    /**
+     * Returns true if partitions which stop taking samples are rewritten in compressed chunks.
+     */
+    public boolean isCompressInactivePartitions() {
+        return Boolean.parseBoolean(prop.getProperty("buffer.compress.inactive", "true").trim());
+    }
+    
+    /**
+     * Reclaims the disk space of deleted samples.
+     */
+    public void cleanLog() throws DatabaseException {
+        dbufferEnv.cleanLog();
+    }
+    
     public int getBufferWriteThreadPoolSize() {
         return bufferWriteThreadPoolSize;
     }
@@ -313,6 +335,13 @@ public class FastDiskBufferEnv implements DataBufferEnv, Cloneable {
     public int getCurrentBufferPartition() {
         return currentBufferPartition;
     }
+
+    /**
+     * Returns the directory holding the files of this partition.
+     */
+    public File getPartitionHome() {
+        return envHome;
+    }
     
     public DataBufferEnv advanceBufferPartition() {
         int nextBufferPartition = nextBufferPartition();
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.config;
+
+import gov.nasa.arc.mct.api.feed.DataProvider.LOS;
+import gov.nasa.arc.mct.util.FilepathReplacer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Environment of the memory mapped log buffer. Each partition is a directory of fixed size segment files under
+ * <code>buffer.disk.loc</code>; partitions rotate the same way as the disk buffers do.
+ */
+public class LogBufferEnv implements DataBufferEnv, Cloneable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogBufferEnv.class);
+
+    private static final String LOG_PATH = "mmaplog";
+    private static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+    private static final int DEFAULT_INDEX_INTERVAL = 32;
+
+    private static Properties loadDefaultPropertyFile() {
+        Properties prop = new Properties();
+        InputStream is = null;
+        try {
+             is = ClassLoader.getSystemResourceAsStream("properties/feed.properties");
+            prop.load(is);
+        } catch (Exception e) {
+            LOGGER.error("Cannot initialized DataBufferEnv properties", e);
+        } finally {
+            if (is != null) {
+                try {
+                    is.close();
+                } catch (IOException ioe) {
+                    // ignore exception
+                }
+            }
+        }
+        return prop;
+    }
+
+    private final Properties prop;
+    private final File logHome;
+    private final File partitionHome;
+    private final long bufferTimeMills;
+    private final int bufferWriteThreadPoolSize;
+    private final int numOfBufferPartitions;
+    private final int currentBufferPartition;
+    private final long partitionOverlapMillis;
+    private final int segmentBytes;
+    private final int indexInterval;
+    private final DiskQuotaHelper diskQuotaHelper;
+
+    public LogBufferEnv(Properties prop) {
+        this(prop, 0);
+    }
+
+    public LogBufferEnv(Properties prop, int currentBufferPartition) {
+        if (prop == null) {
+            prop = loadDefaultPropertyFile();
+        }
+        this.prop = prop;
+        this.currentBufferPartition = currentBufferPartition;
+        File bufferHome = new File(FilepathReplacer.substitute(getPropertyWithPrecedence(prop, "buffer.disk.loc")));
+        logHome = new File(bufferHome, LOG_PATH);
+        partitionHome = new File(logHome, String.valueOf(currentBufferPartition));
+        if (!partitionHome.exists()) {
+            partitionHome.mkdirs();
+        }
+        bufferWriteThreadPoolSize = Integer.parseInt(prop.getProperty("buffer.write.threadPool.size"));
+        numOfBufferPartitions = Integer.parseInt(prop.getProperty("buffer.partitions"));
+        long bufferTime = Long.parseLong(prop.getProperty("buffer.time.millis"));
+        if (bufferTime > numOfBufferPartitions) {
+            bufferTime = bufferTime / numOfBufferPartitions;
+        }
+        bufferTimeMills = bufferTime;
+        partitionOverlapMillis = Long.parseLong(prop.getProperty("buffer.partition.overlap.millis"));
+        String bytes = prop.getProperty("log.buffer.segment.bytes");
+        segmentBytes = bytes == null ? DEFAULT_SEGMENT_BYTES : Integer.parseInt(bytes.trim());
+        String interval = prop.getProperty("log.buffer.index.interval");
+        indexInterval = interval == null ? DEFAULT_INDEX_INTERVAL : Integer.parseInt(interval.trim());
+        diskQuotaHelper = new DiskQuotaHelper(prop, bufferHome);
+    }
+
+    private String getPropertyWithPrecedence(Properties localProps, String key) {
+        String systemProp = System.getProperty(key);
+        return systemProp != null ? systemProp.trim() : localProps.getProperty(key, "unset").trim();
+    }
+
+    public boolean isDiskBufferFull() {
+        return diskQuotaHelper.isDiskBufferFull();
+    }
+
+    public String getErrorMsg() {
+        return diskQuotaHelper.getErrorMsg();
+    }
+
+    /**
+     * Returns the directory holding the segment files of this partition.
+     */
+    public File getPartitionHome() {
+        return partitionHome;
+    }
+
+    /**
+     * Returns the size of the segment files, which is also the largest size of a single sample.
+     */
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * Returns the number of samples of a feed between two entries of the sparse time index of the feed.
+     */
+    public int getIndexInterval() {
+        return indexInterval;
+    }
+
+    /**
+     * Deletes the segment files of this partition.
+     */
+    public void removePartitionFiles() {
+        deletePartitionFiles(currentBufferPartition);
+    }
+
+    private void deletePartitionFiles(int partitionNo) {
+        File partitionDir = new File(logHome, String.valueOf(partitionNo));
+        if (partitionDir.isDirectory()) {
+            for (File f : partitionDir.listFiles()) {
+                if (!f.delete()) {
+                    LOGGER.warn("Cannot delete log segment {}", f.getAbsolutePath());
+                }
+            }
+        }
+        partitionDir.delete();
+    }
+
+    @Override
+    public int getConcurrencyDegree() {
+        return 1;
+    }
+
+    @Override
+    public int getBufferWriteThreadPoolSize() {
+        return bufferWriteThreadPoolSize;
+    }
+
+    @Override
+    public long getBufferTime() {
+        return bufferTimeMills;
+    }
+
+    @Override
+    public int getNumOfBufferPartitions() {
+        return numOfBufferPartitions;
+    }
+
+    @Override
+    public long getBufferPartitionOverlap() {
+        return partitionOverlapMillis;
+    }
+
+    @Override
+    public int getCurrentBufferPartition() {
+        return currentBufferPartition;
+    }
+
+    @Override
+    public DataBufferEnv advanceBufferPartition() {
+        int nextBufferPartition = nextBufferPartition();
+        deletePartitionFiles(nextBufferPartition);
+        return new LogBufferEnv(prop, nextBufferPartition);
+    }
+
+    @Override
+    public int nextBufferPartition() {
+        return (this.currentBufferPartition+1)%numOfBufferPartitions;
+    }
+
+    @Override
+    public int previousBufferPartition(int currentPartition) {
+        int i = currentPartition;
+        if (i == 0) {
+            i = this.numOfBufferPartitions-1;
+        } else {
+            i--;
+        }
+        return i;
+    }
+
+    @Override
+    public void closeAndRestartEnvironment() {
+        removePartitionFiles();
+        restartEnvironment(false);
+    }
+
+    @Override
+    public void restartEnvironment(boolean isReadOnly) {
+        if (!partitionHome.exists()) {
+            partitionHome.mkdirs();
+        }
+    }
+
+    @Override
+    public Object clone() {
+        return new LogBufferEnv(prop, 0);
+    }
+
+    @Override
+    public Object cloneMetaBuffer() {
+        return new LogBufferEnv(prop);
+    }
+
+    @Override
+    public Properties getConfigProperties() {
+        return this.prop;
+    }
+
+    /**
+     * Segments are forced to disk by the partition owning them.
+     */
+    @Override
+    public void flush() {
+        //
+    }
+
+    @Override
+    public LOS getLOS() {
+        return LOS.medium;
+    }
+}
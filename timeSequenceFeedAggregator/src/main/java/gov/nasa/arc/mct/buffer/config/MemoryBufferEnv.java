@@ -22,7 +22,9 @@
 package gov.nasa.arc.mct.buffer.config;
 
 import gov.nasa.arc.mct.api.feed.DataProvider.LOS;
+import gov.nasa.arc.mct.util.FilepathReplacer;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
@@ -54,6 +56,9 @@ public class MemoryBufferEnv implements DataBufferEnv, Cloneable {
     }
     
     
+    private static final long DEFAULT_OFF_HEAP_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_OFF_HEAP_SEGMENT_BYTES = 64 * 1024;
+    
     private final Properties prop;
     private final long bufferTimeMillis;
     private final int numOfBufferPartitions;
@@ -162,6 +167,34 @@ public class MemoryBufferEnv implements DataBufferEnv, Cloneable {
         return this.prop;
     }
 
+    /**
+     * Returns the number of bytes of direct memory of the off-heap memory buffer, divided evenly between its partitions.
+     */
+    public long getOffHeapBufferBytes() {
+        String bytes = prop.getProperty("memory.buffer.offheap.bytes");
+        return bytes == null ? DEFAULT_OFF_HEAP_BYTES : Long.parseLong(bytes.trim());
+    }
+    
+    /**
+     * Returns the size of the segments the off-heap budget is divided into. A feed holds at least one segment.
+     */
+    public int getOffHeapSegmentBytes() {
+        String bytes = prop.getProperty("memory.buffer.offheap.segment.bytes");
+        return bytes == null ? DEFAULT_OFF_HEAP_SEGMENT_BYTES : Integer.parseInt(bytes.trim());
+    }
+    
+    /**
+     * Returns the directory of the journal the memory buffer is refilled from on startup, or null if the buffer
+     * is not journaled.
+     */
+    public File getSnapshotDirectory() {
+        String dir = prop.getProperty("memory.buffer.snapshot.dir");
+        if (dir == null || dir.trim().length() == 0) {
+            return null;
+        }
+        return new File(FilepathReplacer.substitute(dir.trim()));
+    }
+    
     @Override
     public LOS getLOS() {
         return LOS.fast;
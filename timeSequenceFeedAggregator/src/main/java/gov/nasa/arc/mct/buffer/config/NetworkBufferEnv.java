@@ -59,15 +59,19 @@ public class NetworkBufferEnv implements DataBufferEnv, Cloneable {
     private int currentBufferPartition;
     private final String networkBufferServerHost;
     private final int networkBufferServerPort;
+    private final int numOfConnections;
+    private final long requestTimeoutMillis;
     
     public NetworkBufferEnv(Properties prop) {
         if (prop == null) {
             prop = loadDefaultPropertyFile();
         }
         this.prop = prop;
-        numOfBufferPartitions = Integer.parseInt(prop.getProperty("network.buffer.partition"));
-        networkBufferServerHost = prop.getProperty("network.buffer.server.host");
-        networkBufferServerPort = Integer.parseInt(prop.getProperty("network.buffer.server.port"));
+        numOfBufferPartitions = Integer.parseInt(prop.getProperty("network.buffer.partition", "1"));
+        networkBufferServerHost = prop.getProperty("network.buffer.server.host", "localhost").trim();
+        networkBufferServerPort = Integer.parseInt(prop.getProperty("network.buffer.server.port").trim());
+        numOfConnections = Integer.parseInt(prop.getProperty("network.buffer.connections", "2").trim());
+        requestTimeoutMillis = Long.parseLong(prop.getProperty("network.buffer.timeout.millis", "10000").trim());
         this.currentBufferPartition = 0;
     }
     
@@ -77,9 +81,11 @@ public class NetworkBufferEnv implements DataBufferEnv, Cloneable {
         }
         this.prop = prop;
         this.currentBufferPartition = currentBufferPartition;
-        numOfBufferPartitions = Integer.parseInt(prop.getProperty("network.buffer.partition"));
-        networkBufferServerHost = prop.getProperty("network.buffer.server.host");
-        networkBufferServerPort = Integer.parseInt(prop.getProperty("network.buffer.server.port"));
+        numOfBufferPartitions = Integer.parseInt(prop.getProperty("network.buffer.partition", "1"));
+        networkBufferServerHost = prop.getProperty("network.buffer.server.host", "localhost").trim();
+        networkBufferServerPort = Integer.parseInt(prop.getProperty("network.buffer.server.port").trim());
+        numOfConnections = Integer.parseInt(prop.getProperty("network.buffer.connections", "2").trim());
+        requestTimeoutMillis = Long.parseLong(prop.getProperty("network.buffer.timeout.millis", "10000").trim());
     }
 
     @Override
@@ -162,6 +168,20 @@ public class NetworkBufferEnv implements DataBufferEnv, Cloneable {
     public int getNetworkBufferServerPort() {
         return networkBufferServerPort;
     }
+
+    /**
+     * Returns the number of connections each partition opens to the buffer server.
+     */
+    public int getNumOfConnections() {
+        return numOfConnections;
+    }
+
+    /**
+     * Returns the time to wait for a response of the buffer server.
+     */
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
     
     @Override
     public Properties getConfigProperties() {
@@ -0,0 +1,351 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.disk.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.buffer.config.FastDiskBufferEnv;
+import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads telemetry dumps into the fast disk buffer, to backfill historical data without going through the feed
+ * aggregator. The dumps are read, grouped by feed and sorted by reader threads, one per file, while the batches
+ * are written to the partitions covering their time stamps: the partition the fast disk buffer opens on startup
+ * takes the samples of the last partition span, the partition before it those of the span before, and so on, so
+ * the samples are evicted with the partitions as they age. Samples older than the buffer go to its oldest
+ * partition. The metadata of each partition written is updated once, when the loader is closed. The dump formats
+ * are described by {@link SampleDumpReader}.
+ * <p>
+ * The loader opens the buffer files for writing, so it must be run while MCT is not running:
+ * <pre>
+ * java -cp ... gov.nasa.arc.mct.buffer.disk.internal.BulkLoader feed.properties dump1.csv dump2.bin ...
+ * </pre>
+ */
+public final class BulkLoader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoader.class);
+
+    static final String BATCH_SIZE_PROPERTY = "bulk.load.batch.samples";
+    private static final int DEFAULT_BATCH_SIZE = 200000;
+    // the loader is the only user of the cache
+    private static final int DEFAULT_CACHE_PERCENT = 60;
+
+    private final Properties loaderProp;
+    private final FastDiskBufferEnv metaEnv;
+    private final MetaDiskBuffer metaDataBuffer;
+    private final int batchSize;
+    private final int currentPartition;
+    // length of the time span of a partition, or -1 if the partitions are not rotated
+    private final long partitionMillis;
+    private final long loadTime = System.currentTimeMillis();
+    // indexed by partition; only the partitions written are opened
+    private final PartitionFastDiskBuffer[] partitionBuffers;
+    private final List<Map<String, PartitionTimestamps>> timestamps;
+    private long loadedSamples;
+
+    /**
+     * Opens the fast disk buffer.
+     * @param prop properties of the feed aggregator
+     */
+    public BulkLoader(Properties prop) {
+        loaderProp = new Properties();
+        loaderProp.putAll(prop);
+        int partitions = Integer.parseInt(loaderProp.getProperty("buffer.partitions").trim());
+        if (loaderProp.getProperty("bdb.cache.percent") == null) {
+            // shared by the partitions written
+            loaderProp.setProperty("bdb.cache.percent", String.valueOf(Math.max(1, DEFAULT_CACHE_PERCENT / partitions)));
+        }
+        // the metadata is written once, by close
+        loaderProp.setProperty("meta.buffer.refresh.millis", "-1");
+        this.batchSize = Integer.parseInt(loaderProp.getProperty(BATCH_SIZE_PROPERTY, String.valueOf(DEFAULT_BATCH_SIZE)).trim());
+        this.metaEnv = new FastDiskBufferEnv(loaderProp);
+        this.metaDataBuffer = new MetaDiskBuffer(metaEnv);
+        PartitionFastDiskBuffer startupBuffer = new PartitionFastDiskBuffer(new FastDiskBufferEnv(loaderProp));
+        this.currentPartition = startupBuffer.getBufferEnv().getCurrentBufferPartition();
+        this.partitionMillis = partitions > 1 ? startupBuffer.getBufferEnv().getBufferTime() : -1;
+        this.partitionBuffers = new PartitionFastDiskBuffer[partitions];
+        this.partitionBuffers[currentPartition] = startupBuffer;
+        this.timestamps = new ArrayList<Map<String, PartitionTimestamps>>(partitions);
+        for (int i = 0; i < partitions; i++) {
+            timestamps.add(new HashMap<String, PartitionTimestamps>());
+        }
+    }
+
+    /**
+     * Loads dumps, reading several of them at once.
+     * @return the number of samples loaded
+     */
+    public long load(List<File> files) throws IOException, BufferFullException {
+        if (files.isEmpty()) {
+            return 0;
+        }
+        final ElapsedTimer timer = new ElapsedTimer();
+        timer.startInterval();
+        final int readers = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        final BlockingQueue<Object> batches = new ArrayBlockingQueue<Object>(readers * 2);
+        final Object endOfFiles = new Object();
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final AtomicReference<IOException> readFailure = new AtomicReference<IOException>();
+        final AtomicInteger nextFile = new AtomicInteger();
+        final List<File> dumps = new ArrayList<File>(files);
+        ExecutorService readThreads = Executors.newFixedThreadPool(readers);
+        for (int i = 0; i < readers; i++) {
+            readThreads.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int f = nextFile.getAndIncrement(); f < dumps.size() && !stopped.get(); f = nextFile.getAndIncrement()) {
+                            try {
+                                read(dumps.get(f), batches, stopped);
+                            } catch (IOException e) {
+                                LOGGER.error("Cannot read {}", dumps.get(f), e);
+                                readFailure.compareAndSet(null, e);
+                                stopped.set(true);
+                            }
+                        }
+                    } finally {
+                        putUninterruptibly(batches, endOfFiles);
+                    }
+                }
+            });
+        }
+        readThreads.shutdown();
+
+        // batches keep being taken after a failure, so the readers are not blocked
+        long samples = 0;
+        BufferFullException bufferFull = null;
+        for (int runningReaders = readers; runningReaders > 0; ) {
+            Object batch = takeUninterruptibly(batches);
+            if (batch == endOfFiles) {
+                runningReaders--;
+            } else if (!stopped.get()) {
+                @SuppressWarnings("unchecked")
+                Map<String, Map<Long, Map<String, String>>> value = (Map<String, Map<Long, Map<String, String>>>) batch;
+                try {
+                    samples += write(value);
+                } catch (BufferFullException e) {
+                    bufferFull = e;
+                    stopped.set(true);
+                }
+            }
+        }
+        timer.stopInterval();
+        LOGGER.info("Loaded {} samples in {} ms", Long.valueOf(samples), Long.valueOf(timer.getIntervalInMillis()));
+        if (bufferFull != null) {
+            throw bufferFull;
+        }
+        if (readFailure.get() != null) {
+            throw readFailure.get();
+        }
+        return samples;
+    }
+
+    private void read(File file, BlockingQueue<Object> batches, AtomicBoolean stopped) throws IOException {
+        SampleDumpReader reader = new SampleDumpReader(file);
+        try {
+            LOGGER.info("Reading {}", file);
+            for (Map<String, Map<Long, Map<String, String>>> batch = reader.nextBatch(batchSize); batch != null
+                            && !stopped.get(); batch = reader.nextBatch(batchSize)) {
+                putUninterruptibly(batches, batch);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private long write(Map<String, Map<Long, Map<String, String>>> batch) throws BufferFullException {
+        long samples = 0;
+        List<Map<String, Map<Long, Map<String, String>>>> partitionBatches = splitByPartition(batch);
+        for (int partition = 0; partition < partitionBatches.size(); partition++) {
+            Map<String, Map<Long, Map<String, String>>> partitionBatch = partitionBatches.get(partition);
+            if (partitionBatch != null) {
+                samples += write(partition, partitionBatch);
+            }
+        }
+        loadedSamples += samples;
+        LOGGER.debug("Loaded {} samples", Long.valueOf(loadedSamples));
+        return samples;
+    }
+
+    private long write(int partition, Map<String, Map<Long, Map<String, String>>> batch) throws BufferFullException {
+        if (partitionBuffers[partition] == null) {
+            partitionBuffers[partition] = new PartitionFastDiskBuffer(new FastDiskBufferEnv(loaderProp, partition));
+        }
+        Map<String, PartitionTimestamps> batchTimestamps = partitionBuffers[partition].loadData(batch, TimeUnit.MILLISECONDS);
+        Map<String, PartitionTimestamps> partitionTimestamps = timestamps.get(partition);
+        long samples = 0;
+        for (Entry<String, Map<Long, Map<String, String>>> entry : batch.entrySet()) {
+            samples += entry.getValue().size();
+            PartitionTimestamps timestamp = batchTimestamps.get(entry.getKey());
+            if (timestamp == null) {
+                continue;
+            }
+            PartitionTimestamps existing = partitionTimestamps.get(entry.getKey());
+            if (existing == null) {
+                partitionTimestamps.put(entry.getKey(), timestamp);
+            } else {
+                existing.merge(timestamp);
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * Splits a batch by the partitions covering the time stamps of its samples.
+     * @return the samples of each partition, indexed by partition; null for the partitions without samples
+     */
+    private List<Map<String, Map<Long, Map<String, String>>>> splitByPartition(Map<String, Map<Long, Map<String, String>>> batch) {
+        List<Map<String, Map<Long, Map<String, String>>>> partitionBatches = new ArrayList<Map<String, Map<Long, Map<String, String>>>>(
+                        Collections.<Map<String, Map<Long, Map<String, String>>>>nCopies(partitionBuffers.length, null));
+        if (partitionMillis <= 0) {
+            partitionBatches.set(currentPartition, batch);
+            return partitionBatches;
+        }
+        for (Entry<String, Map<Long, Map<String, String>>> feed : batch.entrySet()) {
+            for (Entry<Long, Map<String, String>> entry : feed.getValue().entrySet()) {
+                int partition = getPartition(entry.getKey().longValue());
+                Map<String, Map<Long, Map<String, String>>> partitionBatch = partitionBatches.get(partition);
+                if (partitionBatch == null) {
+                    partitionBatch = new HashMap<String, Map<Long, Map<String, String>>>();
+                    partitionBatches.set(partition, partitionBatch);
+                }
+                Map<Long, Map<String, String>> feedData = partitionBatch.get(feed.getKey());
+                if (feedData == null) {
+                    feedData = new TreeMap<Long, Map<String, String>>();
+                    partitionBatch.put(feed.getKey(), feedData);
+                }
+                feedData.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return partitionBatches;
+    }
+
+    /**
+     * Returns the partition covering a time stamp in milliseconds. The partition opened on startup covers the last
+     * partition span before the load, and each partition before it the span before.
+     */
+    int getPartition(long time) {
+        int partition = currentPartition;
+        if (partitionMillis <= 0) {
+            return partition;
+        }
+        long age = Math.min((loadTime - time) / partitionMillis, partitionBuffers.length - 1);
+        for (long i = 0; i < age; i++) {
+            partition = metaEnv.previousBufferPartition(partition);
+        }
+        return partition;
+    }
+
+    /**
+     * Records the time span of the loaded samples of each feed in the metadata of the partitions written, then
+     * closes the buffer.
+     */
+    public void close() {
+        for (int partition = 0; partition < partitionBuffers.length; partition++) {
+            if (partitionBuffers[partition] != null) {
+                metaDataBuffer.updatePartitionMetaData(partition, timestamps.get(partition));
+                partitionBuffers[partition].closeBuffer();
+            }
+        }
+        metaDataBuffer.close();
+        metaEnv.closeEnvironment();
+    }
+
+    private static void putUninterruptibly(BlockingQueue<Object> queue, Object o) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(o);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Object takeUninterruptibly(BlockingQueue<Object> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BulkLoader <feed properties> <dump file>...");
+            System.exit(1);
+        }
+        Properties prop = new Properties();
+        InputStream is = new FileInputStream(args[0]);
+        try {
+            prop.load(is);
+        } finally {
+            is.close();
+        }
+        List<File> files = new ArrayList<File>();
+        for (String name : Arrays.asList(args).subList(1, args.length)) {
+            files.add(new File(name));
+        }
+        BulkLoader loader = new BulkLoader(prop);
+        try {
+            loader.load(files);
+        } finally {
+            loader.close();
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.disk.internal;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import com.sleepycat.je.DatabaseException;
+
+/**
+ * Encodes the values of a sample into the compact record stored by the disk buffers in place of the map of strings.
+ * <p>
+ * A record starts with a format version and the number of entries. Each entry is the code of its key in the
+ * {@link KeyDictionary} of the store, a tag and the value. Values are kept as strings unless they can be restored
+ * exactly from a more compact form: doubles as their 8 byte representation, integers as variable length integers,
+ * the "time" value as the difference to the time stamp of the sample and booleans as the tag alone.
+ */
+class CompactRecordCodec {
+    static final byte VERSION = 1;
+    
+    private static final String TIME_KEY = "time";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    private static final int TAG_STRING = 0;
+    private static final int TAG_DOUBLE = 1;
+    private static final int TAG_LONG = 2;
+    private static final int TAG_TIME_DELTA = 3;
+    private static final int TAG_TRUE = 4;
+    private static final int TAG_FALSE = 5;
+    private static final int TAG_NULL = 6;
+    
+    private final KeyDictionary dictionary;
+    private final boolean enabled;
+    
+    /**
+     * Creates a codec.
+     * @param dictionary key dictionary of the store
+     * @param enabled false to keep writing the map of strings; records are decoded either way
+     */
+    CompactRecordCodec(KeyDictionary dictionary, boolean enabled) {
+        this.dictionary = dictionary;
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Returns the values of a stored sample, whichever way they were written.
+     */
+    Map<String, String> getData(PersistentBufferObject pObj) {
+        byte[] record = pObj.getRecord();
+        if (record == null) {
+            return pObj.getData();
+        }
+        return decode(record, pObj.getKey().timestamp.longValue());
+    }
+    
+    /**
+     * Sets the values of a sample to store.
+     */
+    void setData(PersistentBufferObject pObj, Map<String, String> data) throws DatabaseException {
+        if (enabled) {
+            pObj.setRecord(encode(data, pObj.getKey().timestamp.longValue()));
+        } else {
+            pObj.setData(data);
+        }
+    }
+    
+    /**
+     * Encodes the values of a sample.
+     * @param data values of the sample
+     * @param timestamp time stamp of the sample in nanoseconds
+     */
+    byte[] encode(Map<String, String> data, long timestamp) throws DatabaseException {
+        long baseMillis = TimeUnit.NANOSECONDS.toMillis(timestamp);
+        Output out = new Output(16 + data.size() * 12);
+        out.write(VERSION);
+        out.writeVarLong(data.size());
+        for (Entry<String, String> entry : data.entrySet()) {
+            out.writeVarLong(dictionary.getCode(entry.getKey()));
+            String value = entry.getValue();
+            if (value == null) {
+                out.write(TAG_NULL);
+            } else if ("true".equals(value)) {
+                out.write(TAG_TRUE);
+            } else if ("false".equals(value)) {
+                out.write(TAG_FALSE);
+            } else if (isLong(value)) {
+                long l = Long.parseLong(value);
+                long delta = l - baseMillis;
+                if (TIME_KEY.equals(entry.getKey()) && ((l ^ baseMillis) & (l ^ delta)) >= 0) {
+                    out.write(TAG_TIME_DELTA);
+                    out.writeVarLong(zigZag(delta));
+                } else {
+                    out.write(TAG_LONG);
+                    out.writeVarLong(zigZag(l));
+                }
+            } else if (isDouble(value)) {
+                out.write(TAG_DOUBLE);
+                long bits = Double.doubleToRawLongBits(Double.parseDouble(value));
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.write((int) (bits >>> shift));
+                }
+            } else {
+                byte[] bytes = value.getBytes(UTF8);
+                out.write(TAG_STRING);
+                out.writeVarLong(bytes.length);
+                out.write(bytes);
+            }
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * Decodes a record.
+     * @param record record produced by {@link #encode(Map, long)}
+     * @param timestamp time stamp of the sample in nanoseconds
+     * @throws IllegalArgumentException if the record has an unknown format
+     */
+    Map<String, String> decode(byte[] record, long timestamp) {
+        Input in = new Input(record);
+        int version = in.read();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported record version " + version);
+        }
+        int size = (int) in.readVarLong();
+        Map<String, String> data = new HashMap<String, String>(Math.max(4, size * 2));
+        for (int i = 0; i < size; i++) {
+            String key = dictionary.getKey((int) in.readVarLong());
+            int tag = in.read();
+            String value;
+            switch (tag) {
+            case TAG_NULL:
+                value = null;
+                break;
+            case TAG_TRUE:
+                value = "true";
+                break;
+            case TAG_FALSE:
+                value = "false";
+                break;
+            case TAG_LONG:
+                value = Long.toString(unZigZag(in.readVarLong()));
+                break;
+            case TAG_TIME_DELTA:
+                value = Long.toString(TimeUnit.NANOSECONDS.toMillis(timestamp) + unZigZag(in.readVarLong()));
+                break;
+            case TAG_DOUBLE:
+                long bits = 0;
+                for (int b = 0; b < 8; b++) {
+                    bits = (bits << 8) | in.read();
+                }
+                value = Double.toString(Double.longBitsToDouble(bits));
+                break;
+            case TAG_STRING:
+                int length = (int) in.readVarLong();
+                value = new String(record, in.skip(length), length, UTF8);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown value tag " + tag);
+            }
+            data.put(key, value);
+        }
+        return data;
+    }
+    
+    static boolean isLong(String s) {
+        int length = s.length();
+        int start = length > 0 && s.charAt(0) == '-' ? 1 : 0;
+        if (length == start || length - start > 18) {
+            return false;
+        }
+        if (s.charAt(start) == '0' && (length > start + 1 || start == 1)) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    static boolean isDouble(String s) {
+        if (s.length() == 0) {
+            return false;
+        }
+        char c = s.charAt(0);
+        if ((c < '0' || c > '9') && c != '-') {
+            return false;
+        }
+        try {
+            return Double.toString(Double.parseDouble(s)).equals(s);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+    
+    static long zigZag(long l) {
+        return (l << 1) ^ (l >> 63);
+    }
+    
+    static long unZigZag(long l) {
+        return (l >>> 1) ^ -(l & 1);
+    }
+    
+    private static final class Output {
+        private byte[] bytes;
+        private int size;
+        
+        Output(int capacity) {
+            bytes = new byte[capacity];
+        }
+        
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+        
+        void write(int b) {
+            ensureCapacity(size + 1);
+            bytes[size++] = (byte) b;
+        }
+        
+        void write(byte[] b) {
+            ensureCapacity(size + b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+        
+        void writeVarLong(long l) {
+            while ((l & ~0x7FL) != 0) {
+                write((int) ((l & 0x7F) | 0x80));
+                l >>>= 7;
+            }
+            write((int) l);
+        }
+        
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+    
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+        
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+        
+        int read() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Truncated record");
+            }
+            return bytes[position++] & 0xFF;
+        }
+        
+        int skip(int length) {
+            int start = position;
+            if (length < 0 || start + length > bytes.length) {
+                throw new IllegalArgumentException("Truncated record");
+            }
+            position += length;
+            return start;
+        }
+        
+        long readVarLong() {
+            long l = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                l |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return l;
+                }
+            }
+            throw new IllegalArgumentException("Malformed variable length integer");
+        }
+    }
+}
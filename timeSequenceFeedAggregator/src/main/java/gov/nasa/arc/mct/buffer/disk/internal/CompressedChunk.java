@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.disk.internal;
+
+import com.sleepycat.persist.model.Entity;
+import com.sleepycat.persist.model.PrimaryKey;
+
+/**
+ * Samples of a feed rewritten by {@link CompressedChunkCodec} once their partition stopped taking samples. The key
+ * holds the time stamp of the first sample of the chunk.
+ */
+@Entity
+public class CompressedChunk {
+    @PrimaryKey
+    private PersistentBufferKey key;
+    
+    private long endTimestamp;
+    
+    private byte[] samples;
+
+    public PersistentBufferKey getKey() {
+        return key;
+    }
+
+    public void setKey(PersistentBufferKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Returns the time stamp of the last sample of the chunk, in nanoseconds.
+     */
+    public long getEndTimestamp() {
+        return endTimestamp;
+    }
+
+    public void setEndTimestamp(long endTimestamp) {
+        this.endTimestamp = endTimestamp;
+    }
+
+    public byte[] getSamples() {
+        return samples;
+    }
+
+    public void setSamples(byte[] samples) {
+        this.samples = samples;
+    }
+}
@@ -0,0 +1,470 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.disk.internal;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes the samples of a feed into the compressed chunks an inactive partition is rewritten into.
+ * <p>
+ * Samples are stored by column. Time stamps are stored as deltas of deltas, so regularly spaced samples take one
+ * bit each. Numeric values are XOR-ed with the previous value and only the bits which differ are stored. The "time"
+ * value is stored as its difference to the time stamp of the sample, and values which seldom change, such as the
+ * status or the rendering info, as runs of repeated values. As in {@link CompactRecordCodec}, values are only
+ * stored in a compact form when they can be restored exactly.
+ */
+final class CompressedChunkCodec {
+    static final int VERSION = 1;
+
+    /** Largest number of samples in a chunk. */
+    static final int MAX_SAMPLES = 1024;
+
+    private static final String TIME_KEY = "time";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int COLUMN_RUNS = 0;
+    private static final int COLUMN_DOUBLES = 1;
+    private static final int COLUMN_LONGS = 2;
+    private static final int COLUMN_TIME_DELTAS = 3;
+
+    private static final int RUN_ABSENT = 0;
+    private static final int RUN_NULL = 1;
+    private static final int RUN_STRING = 2;
+
+    private static final Object ABSENT = new Object();
+
+    private CompressedChunkCodec() {
+        //
+    }
+
+    /**
+     * Encodes the samples of a feed.
+     * @param samples samples keyed by time stamps in nanoseconds
+     */
+    static byte[] encode(SortedMap<Long, Map<String, String>> samples) {
+        int size = samples.size();
+        long[] times = new long[size];
+        TreeSet<String> keys = new TreeSet<String>();
+        int n = 0;
+        for (Entry<Long, Map<String, String>> sample : samples.entrySet()) {
+            times[n++] = sample.getKey().longValue();
+            keys.addAll(sample.getValue().keySet());
+        }
+
+        BitOutput out = new BitOutput(16 + size);
+        out.writeBits(VERSION, 8);
+        out.writeVarLong(size);
+        writeTimes(out, times);
+        out.writeVarLong(keys.size());
+        for (String key : keys) {
+            Object[] values = new Object[size];
+            n = 0;
+            for (Map<String, String> sample : samples.values()) {
+                values[n++] = sample.containsKey(key) ? sample.get(key) : ABSENT;
+            }
+            out.writeString(key);
+            writeColumn(out, key, values, times);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the samples of a chunk which are within a time span.
+     * @param chunk chunk produced by {@link #encode(SortedMap)}
+     * @param startTime start time in nanoseconds
+     * @param endTime end time in nanoseconds
+     * @return the samples keyed by time stamps in nanoseconds
+     * @throws IllegalArgumentException if the chunk has an unknown format
+     */
+    static SortedMap<Long, Map<String, String>> decode(byte[] chunk, long startTime, long endTime) {
+        BitInput in = new BitInput(chunk);
+        int version = (int) in.readBits(8);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported chunk version " + version);
+        }
+        int size = (int) in.readVarLong();
+        long[] times = readTimes(in, size);
+        int from = 0;
+        while (from < size && times[from] < startTime) {
+            from++;
+        }
+        int to = from;
+        while (to < size && times[to] <= endTime) {
+            to++;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, String>[] data = new Map[to - from];
+        int numOfKeys = (int) in.readVarLong();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new HashMap<String, String>(Math.max(4, numOfKeys * 2));
+        }
+        for (int k = 0; k < numOfKeys && from < to; k++) {
+            String key = in.readString();
+            Object[] values = readColumn(in, size, times);
+            for (int i = from; i < to; i++) {
+                if (values[i] != ABSENT) {
+                    data[i - from].put(key, (String) values[i]);
+                }
+            }
+        }
+
+        SortedMap<Long, Map<String, String>> samples = new TreeMap<Long, Map<String, String>>();
+        for (int i = from; i < to; i++) {
+            samples.put(Long.valueOf(times[i]), data[i - from]);
+        }
+        return samples;
+    }
+
+    private static void writeTimes(BitOutput out, long[] times) {
+        long delta = 0;
+        for (int i = 0; i < times.length; i++) {
+            if (i == 0) {
+                out.writeBits(times[0], 64);
+                continue;
+            }
+            long newDelta = times[i] - times[i - 1];
+            long dod = newDelta - delta;
+            if (dod == 0) {
+                out.writeBits(0, 1);
+            } else if (fits(dod, 16)) {
+                out.writeBits(2, 2);
+                out.writeBits(dod, 16);
+            } else if (fits(dod, 32)) {
+                out.writeBits(6, 3);
+                out.writeBits(dod, 32);
+            } else {
+                out.writeBits(7, 3);
+                out.writeBits(dod, 64);
+            }
+            delta = newDelta;
+        }
+    }
+
+    private static long[] readTimes(BitInput in, int size) {
+        long[] times = new long[size];
+        long delta = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0) {
+                times[0] = in.readBits(64);
+                continue;
+            }
+            if (in.readBits(1) != 0) {
+                if (in.readBits(1) == 0) {
+                    delta += in.readSignedBits(16);
+                } else if (in.readBits(1) == 0) {
+                    delta += in.readSignedBits(32);
+                } else {
+                    delta += in.readBits(64);
+                }
+            }
+            times[i] = times[i - 1] + delta;
+        }
+        return times;
+    }
+
+    private static boolean fits(long l, int bits) {
+        long limit = 1L << (bits - 1);
+        return l >= -limit && l < limit;
+    }
+
+    private static void writeColumn(BitOutput out, String key, Object[] values, long[] times) {
+        boolean allLongs = true;
+        boolean allDoubles = true;
+        int runs = 0;
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == ABSENT || value == null) {
+                allLongs = false;
+                allDoubles = false;
+            } else {
+                allLongs = allLongs && CompactRecordCodec.isLong((String) value);
+                allDoubles = allDoubles && CompactRecordCodec.isDouble((String) value);
+            }
+            if (i == 0 || !equal(value, values[i - 1])) {
+                runs++;
+            }
+        }
+
+        if (allLongs && TIME_KEY.equals(key)) {
+            out.writeBits(COLUMN_TIME_DELTAS, 2);
+            long[] deltas = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                deltas[i] = Long.parseLong((String) values[i]) - TimeUnit.NANOSECONDS.toMillis(times[i]);
+            }
+            int start = 0;
+            for (int i = 1; i <= deltas.length; i++) {
+                if (i == deltas.length || deltas[i] != deltas[start]) {
+                    out.writeVarLong(i - start);
+                    out.writeVarLong(CompactRecordCodec.zigZag(deltas[start]));
+                    start = i;
+                }
+            }
+        } else if (runs * 4 > values.length && allDoubles) {
+            out.writeBits(COLUMN_DOUBLES, 2);
+            writeDoubles(out, values);
+        } else if (runs * 4 > values.length && allLongs) {
+            out.writeBits(COLUMN_LONGS, 2);
+            long previous = 0;
+            for (Object value : values) {
+                long l = Long.parseLong((String) value);
+                out.writeVarLong(CompactRecordCodec.zigZag(l - previous));
+                previous = l;
+            }
+        } else {
+            out.writeBits(COLUMN_RUNS, 2);
+            int start = 0;
+            for (int i = 1; i <= values.length; i++) {
+                if (i == values.length || !equal(values[i], values[start])) {
+                    out.writeVarLong(i - start);
+                    Object value = values[start];
+                    if (value == ABSENT) {
+                        out.writeBits(RUN_ABSENT, 2);
+                    } else if (value == null) {
+                        out.writeBits(RUN_NULL, 2);
+                    } else {
+                        out.writeBits(RUN_STRING, 2);
+                        out.writeString((String) value);
+                    }
+                    start = i;
+                }
+            }
+        }
+    }
+
+    private static Object[] readColumn(BitInput in, int size, long[] times) {
+        Object[] values = new Object[size];
+        int kind = (int) in.readBits(2);
+        switch (kind) {
+        case COLUMN_TIME_DELTAS:
+            for (int i = 0; i < size; ) {
+                int length = readRunLength(in, size - i);
+                long delta = CompactRecordCodec.unZigZag(in.readVarLong());
+                for (int j = 0; j < length; j++, i++) {
+                    values[i] = Long.toString(TimeUnit.NANOSECONDS.toMillis(times[i]) + delta);
+                }
+            }
+            break;
+        case COLUMN_DOUBLES:
+            readDoubles(in, values);
+            break;
+        case COLUMN_LONGS:
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                previous += CompactRecordCodec.unZigZag(in.readVarLong());
+                values[i] = Long.toString(previous);
+            }
+            break;
+        default:
+            for (int i = 0; i < size; ) {
+                int length = readRunLength(in, size - i);
+                int tag = (int) in.readBits(2);
+                Object value;
+                if (tag == RUN_ABSENT) {
+                    value = ABSENT;
+                } else if (tag == RUN_NULL) {
+                    value = null;
+                } else {
+                    value = in.readString();
+                }
+                Arrays.fill(values, i, i + length, value);
+                i += length;
+            }
+        }
+        return values;
+    }
+
+    private static int readRunLength(BitInput in, int remaining) {
+        long length = in.readVarLong();
+        if (length <= 0 || length > remaining) {
+            throw new IllegalArgumentException("Malformed chunk");
+        }
+        return (int) length;
+    }
+
+    private static void writeDoubles(BitOutput out, Object[] values) {
+        long previous = 0;
+        int leading = -1;
+        int trailing = 0;
+        for (int i = 0; i < values.length; i++) {
+            long bits = Double.doubleToRawLongBits(Double.parseDouble((String) values[i]));
+            if (i == 0) {
+                out.writeBits(bits, 64);
+            } else {
+                long xor = bits ^ previous;
+                if (xor == 0) {
+                    out.writeBits(0, 1);
+                } else {
+                    int newLeading = Long.numberOfLeadingZeros(xor);
+                    int newTrailing = Long.numberOfTrailingZeros(xor);
+                    if (leading >= 0 && newLeading >= leading && newTrailing >= trailing) {
+                        // the bits which differ fit in the window of the previous value
+                        out.writeBits(2, 2);
+                        out.writeBits(xor >>> trailing, 64 - leading - trailing);
+                    } else {
+                        leading = newLeading;
+                        trailing = newTrailing;
+                        out.writeBits(3, 2);
+                        out.writeBits(leading, 6);
+                        out.writeBits(63 - leading - trailing, 6);
+                        out.writeBits(xor >>> trailing, 64 - leading - trailing);
+                    }
+                }
+            }
+            previous = bits;
+        }
+    }
+
+    private static void readDoubles(BitInput in, Object[] values) {
+        long bits = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (i == 0) {
+                bits = in.readBits(64);
+            } else if (in.readBits(1) != 0) {
+                if (in.readBits(1) != 0) {
+                    leading = (int) in.readBits(6);
+                    trailing = 63 - leading - (int) in.readBits(6);
+                    if (trailing < 0) {
+                        throw new IllegalArgumentException("Malformed chunk");
+                    }
+                }
+                bits ^= in.readBits(64 - leading - trailing) << trailing;
+            }
+            values[i] = Double.toString(Double.longBitsToDouble(bits));
+        }
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return o1 == null ? o2 == null : o1.equals(o2);
+    }
+
+    private static final class BitOutput {
+        private byte[] bytes;
+        private int position;
+
+        BitOutput(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        /**
+         * Writes the lowest bits of a value, most significant first.
+         */
+        void writeBits(long value, int n) {
+            while (n > 0) {
+                int index = position >>> 3;
+                if (index >= bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2 + 8);
+                }
+                int free = 8 - (position & 7);
+                int take = Math.min(free, n);
+                int chunk = (int) (value >>> (n - take)) & ((1 << take) - 1);
+                bytes[index] |= chunk << (free - take);
+                position += take;
+                n -= take;
+            }
+        }
+
+        void writeVarLong(long l) {
+            while ((l & ~0x7FL) != 0) {
+                writeBits((l & 0x7F) | 0x80, 8);
+                l >>>= 7;
+            }
+            writeBits(l, 8);
+        }
+
+        void writeString(String s) {
+            byte[] b = s.getBytes(UTF8);
+            writeVarLong(b.length);
+            for (int i = 0; i < b.length; i++) {
+                writeBits(b[i], 8);
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, (position + 7) >>> 3);
+        }
+    }
+
+    private static final class BitInput {
+        private final byte[] bytes;
+        private int position;
+
+        BitInput(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long readBits(int n) {
+            long value = 0;
+            while (n > 0) {
+                int index = position >>> 3;
+                if (index >= bytes.length) {
+                    throw new IllegalArgumentException("Truncated chunk");
+                }
+                int available = 8 - (position & 7);
+                int take = Math.min(available, n);
+                int chunk = ((bytes[index] & 0xFF) >>> (available - take)) & ((1 << take) - 1);
+                value = (value << take) | chunk;
+                position += take;
+                n -= take;
+            }
+            return value;
+        }
+
+        long readSignedBits(int n) {
+            return readBits(n) << (64 - n) >> (64 - n);
+        }
+
+        long readVarLong() {
+            long l = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = (int) readBits(8);
+                l |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return l;
+                }
+            }
+            throw new IllegalArgumentException("Malformed variable length integer");
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            if (length < 0 || length > bytes.length) {
+                throw new IllegalArgumentException("Truncated chunk");
+            }
+            byte[] b = new byte[length];
+            for (int i = 0; i < length; i++) {
+                b[i] = (byte) readBits(8);
+            }
+            return new String(b, UTF8);
+        }
+    }
+}
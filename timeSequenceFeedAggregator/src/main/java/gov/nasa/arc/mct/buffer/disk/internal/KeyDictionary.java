@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.disk.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.sleepycat.je.DatabaseException;
+import com.sleepycat.persist.EntityCursor;
+import com.sleepycat.persist.EntityStore;
+import com.sleepycat.persist.PrimaryIndex;
+
+/**
+ * Maps the keys of the samples in a store to small integer codes used by {@link CompactRecordCodec}. The keys every
+ * feed uses have fixed codes; other keys are assigned codes on first use, which are persisted in the store before
+ * any record refers to them.
+ */
+class KeyDictionary {
+    /** Keys with a fixed code, the index of a key is its code. Keys must only ever be appended. */
+    private static final String[] BUILT_IN_KEYS = { "time", "data", "isValid", "ri", "status", "value" };
+    
+    /** First code assigned to keys which are not built in. */
+    static final int FIRST_CODE = 32;
+    
+    private final PrimaryIndex<String, PersistentKeyEntry> index;
+    private final ConcurrentMap<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+    private volatile String[] keys = new String[0];
+    
+    /**
+     * Creates a dictionary which is only kept in memory.
+     */
+    KeyDictionary() {
+        this.index = null;
+        addBuiltInKeys();
+    }
+    
+    /**
+     * Creates a dictionary persisted in a store, loading the keys already assigned a code.
+     */
+    KeyDictionary(EntityStore store) throws DatabaseException {
+        this.index = store.getPrimaryIndex(String.class, PersistentKeyEntry.class);
+        addBuiltInKeys();
+        EntityCursor<PersistentKeyEntry> cursor = index.entities();
+        try {
+            for (PersistentKeyEntry entry : cursor) {
+                add(entry.getKey(), entry.getCode());
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    private void addBuiltInKeys() {
+        for (int i = 0; i < BUILT_IN_KEYS.length; i++) {
+            codes.put(BUILT_IN_KEYS[i], Integer.valueOf(i));
+        }
+    }
+    
+    private synchronized void add(String key, int code) {
+        int i = code - FIRST_CODE;
+        String[] current = keys;
+        if (i >= current.length) {
+            current = Arrays.copyOf(current, Math.max(i + 1, current.length * 2));
+        }
+        current[i] = key;
+        keys = current;
+        codes.put(key, Integer.valueOf(code));
+    }
+    
+    /**
+     * Returns the code of a key, assigning a new code if the key has not been seen before.
+     */
+    int getCode(String key) throws DatabaseException {
+        Integer code = codes.get(key);
+        if (code != null) {
+            return code.intValue();
+        }
+        synchronized (this) {
+            code = codes.get(key);
+            if (code != null) {
+                return code.intValue();
+            }
+            int newCode = FIRST_CODE + codes.size() - BUILT_IN_KEYS.length;
+            if (index != null) {
+                index.putNoReturn(new PersistentKeyEntry(key, newCode));
+            }
+            add(key, newCode);
+            return newCode;
+        }
+    }
+    
+    /**
+     * Returns the key for a code.
+     * @throws IllegalArgumentException if the code has not been assigned
+     */
+    String getKey(int code) {
+        if (code < FIRST_CODE) {
+            if (code < BUILT_IN_KEYS.length) {
+                return BUILT_IN_KEYS[code];
+            }
+        } else {
+            String[] current = keys;
+            int i = code - FIRST_CODE;
+            if (i < current.length && current[i] != null) {
+                return current[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown key code " + code);
+    }
+}
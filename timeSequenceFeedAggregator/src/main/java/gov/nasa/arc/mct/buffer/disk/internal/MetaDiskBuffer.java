@@ -241,6 +241,15 @@ public class MetaDiskBuffer extends MetaDataBuffer {
     }
 
     public void close() {
+        if (updateTimer != null) {
+            updateTimer.cancel();
+        }
+        // the time stamps written since the last refresh are kept, so a restart finds all the samples on disk
+        for (int i = 0; i < partitionMetaDatas.length; i++) {
+            if (partitionMetaDatas[i] != null) {
+                writePartitionMetaData(i);
+            }
+        }
         if (metaEnv != null) {
             metaEnv.closeDatabase(metaDatabase);
         }
@@ -22,21 +22,28 @@
 package gov.nasa.arc.mct.buffer.disk.internal;
 
 import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
 import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
 import gov.nasa.arc.mct.buffer.config.FastDiskBufferEnv;
+import gov.nasa.arc.mct.buffer.internal.CompressiblePartition;
 import gov.nasa.arc.mct.buffer.internal.MetaDataBuffer;
 import gov.nasa.arc.mct.buffer.internal.PartitionDataBuffer;
 import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
+import gov.nasa.arc.mct.buffer.util.ReadScheduler;
+import gov.nasa.arc.mct.buffer.util.SampleBlocks;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -54,7 +61,7 @@ import com.sleepycat.je.Transaction;
 import com.sleepycat.persist.EntityCursor;
 import com.sleepycat.persist.EntityStore;
 
-public class PartitionFastDiskBuffer implements PartitionDataBuffer {
+public class PartitionFastDiskBuffer implements PartitionDataBuffer, CompressiblePartition {
     private static final Logger LOGGER = LoggerFactory.getLogger(PartitionFastDiskBuffer.class);
     private static final Logger READ_PERF_LOGGER = LoggerFactory
             .getLogger("gov.nasa.arc.mct.performance.fastDisk.partitionbuffer.read");
@@ -73,6 +80,7 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
     private static final Comparator<Long> TIMESTAMP_COMPARATOR = new TimeStampComparator();
 
     private final EntityStore[] databases;
+    private final CompactRecordCodec[] codecs;
     private final FastDiskBufferEnv env;
 
     /**
@@ -99,13 +107,15 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
             10L, TimeUnit.SECONDS,
             new LinkedBlockingQueue<Runnable>(),
             tf);
-    private static final ExecutorService readThreads = new ThreadPoolExecutor(0, 10,
-            10L, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<Runnable>(),
-            tf);
 
     private volatile boolean active;
 
+    // position of the compression of an inactive partition
+    private int compressDatabase;
+    private PersistentBufferKey compressFrom;
+    // true once the partition has compressed chunks; reads of other partitions do not look for chunks
+    private volatile boolean hasChunks;
+
     public PartitionFastDiskBuffer(int partitionNumber) {
         this(new FastDiskBufferEnv(null, partitionNumber));
     }
@@ -129,21 +139,37 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
         this.segmentMask = ssize - 1;
 
         this.databases = new EntityStore[ssize];
+        this.codecs = new CompactRecordCodec[ssize];
         setupDatabasePartition(env);
 
         this.active = true;
     }
 
     private synchronized void setupDatabasePartition(FastDiskBufferEnv env) {
+        hasChunks = false;
         for (int i = 0; i < databases.length; i++) {
             try {
                 this.databases[i] = env.openDiskStore(String.valueOf(i));
+                this.codecs[i] = new CompactRecordCodec(new KeyDictionary(databases[i]), env.isCompactRecords());
+                if (!hasChunks) {
+                    hasChunks = hasChunks(databases[i]);
+                }
             } catch (DatabaseException e) {
                 databases[i] = null;
+                codecs[i] = null;
             }
         }
     }
 
+    private static boolean hasChunks(EntityStore db) throws DatabaseException {
+        EntityCursor<CompressedChunk> cursor = new CompressedChunkAccess(db).pIdx.entities();
+        try {
+            return cursor.first() != null;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private Set<String>[] groupInputFeeds(Set<String> feedIDs) {
         Set<String>[] groupFeeds = new Set[databases.length];
@@ -166,34 +192,28 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
 
         final Set<String>[] groupFeeds = groupInputFeeds(feedIDs);
         final Map<String, SortedMap<Long, Map<String, String>>>[] dataSlices = new Map[groupFeeds.length];
-        final CountDownLatch readLatch = new CountDownLatch(groupFeeds.length);
+        List<Runnable> reads = new ArrayList<Runnable>(groupFeeds.length);
         for (int i = 0; i < groupFeeds.length; i++) {
             final int dataIndex = i;
+            if (groupFeeds[dataIndex].isEmpty()) {
+                continue;
+            }
 
-            Runnable r = new Runnable() {
+            reads.add(new Runnable() {
 
                 @Override
                 public void run() {
-                    try {
-                        Map<String, SortedMap<Long, Map<String, String>>> dataSlice = getData(databases[dataIndex],
-                                groupFeeds[dataIndex], timeUnit, startTime, endTime);
-                        if (dataSlice != null) {
-                            dataSlices[dataIndex] = dataSlice;
-                        }
-                    } finally {
-                        readLatch.countDown();
-                    } 
+                    Map<String, SortedMap<Long, Map<String, String>>> dataSlice = getData(databases[dataIndex], codecs[dataIndex],
+                            groupFeeds[dataIndex], timeUnit, startTime, endTime);
+                    if (dataSlice != null) {
+                        dataSlices[dataIndex] = dataSlice;
+                    }
                 }
-            };
-            
-            readThreads.execute(r);
+            });
+        }
+        if (!ReadScheduler.getInstance().invokeAll(reads)) {
+            LOGGER.debug("getData of partition {} stopped before reading all the segments", Integer.valueOf(env.getCurrentBufferPartition()));
         }
-        
-        try {
-            readLatch.await();
-        } catch (InterruptedException e) {
-            LOGGER.warn("Internal error during getData thread", e);
-        } 
 
         Map<String, SortedMap<Long, Map<String, String>>> returnedData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
         for (int i = 0; i < dataSlices.length; i++) {
@@ -218,35 +238,28 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
 
         final Set<String>[] groupFeeds = groupInputFeeds(feedIDs);
         final Map<String, SortedMap<Long, Map<String, String>>>[] dataSlices = new Map[groupFeeds.length];
-        final CountDownLatch latch = new CountDownLatch(groupFeeds.length);
+        List<Runnable> reads = new ArrayList<Runnable>(groupFeeds.length);
         for (int i = 0; i < groupFeeds.length; i++) {
             final int dataIndex = i;
+            if (groupFeeds[dataIndex].isEmpty()) {
+                continue;
+            }
 
-            Runnable r = new Runnable() {
+            reads.add(new Runnable() {
 
                 @Override
                 public void run() {
-                    try {
-                        Map<String, SortedMap<Long, Map<String, String>>> dataSlice = getLastData(databases[dataIndex],
-                            groupFeeds[dataIndex], timeUnit, startTime, endTime);
-                        if (dataSlice != null) {
-                            dataSlices[dataIndex] = dataSlice;
-                        }
-                    } finally {
-                        latch.countDown();
-                    } 
-
+                    Map<String, SortedMap<Long, Map<String, String>>> dataSlice = getLastData(databases[dataIndex], codecs[dataIndex],
+                        groupFeeds[dataIndex], timeUnit, startTime, endTime);
+                    if (dataSlice != null) {
+                        dataSlices[dataIndex] = dataSlice;
+                    }
                 }
-            };
-            
-            readThreads.execute(r);
-            
+            });
+        }
+        if (!ReadScheduler.getInstance().invokeAll(reads)) {
+            LOGGER.debug("getLastData of partition {} stopped before reading all the segments", Integer.valueOf(env.getCurrentBufferPartition()));
         }
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            LOGGER.warn("Internal error during getLastData thread", e);
-        } 
 
         Map<String, SortedMap<Long, Map<String, String>>> returnedData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
         for (int i = 0; i < dataSlices.length; i++) {
@@ -265,7 +278,7 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
 
     }
     
-    private Map<String, SortedMap<Long, Map<String, String>>> getLastData(EntityStore db, Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+    private Map<String, SortedMap<Long, Map<String, String>>> getLastData(EntityStore db, CompactRecordCodec codec, Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
         Map<String, SortedMap<Long, Map<String, String>>> returnedData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
 
         startTime = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
@@ -287,7 +300,15 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
                 SortedMap<Long, Map<String, String>> data = new TreeMap<Long, Map<String, String>>(TIMESTAMP_COMPARATOR);
                 returnedData.put(feedID, data);
                 if (pObj != null) 
-                    data.put(pObj.getKey().timestamp, pObj.getData());
+                    data.put(pObj.getKey().timestamp, codec.getData(pObj));
+                if (!hasChunks) {
+                    continue;
+                }
+                SortedMap<Long, Map<String, String>> compressedData = getCompressedData(db, feedID, startTime, endTime, true);
+                if (!compressedData.isEmpty() && (data.isEmpty() || compressedData.lastKey().longValue() > data.lastKey().longValue())) {
+                    data.clear();
+                    data.putAll(compressedData);
+                }
 
             } catch (DatabaseException e) {
                 e.printStackTrace();
@@ -299,7 +320,7 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
 
     }
 
-    private Map<String, SortedMap<Long, Map<String, String>>> getData(EntityStore db, Set<String> feedIDs,
+    private Map<String, SortedMap<Long, Map<String, String>>> getData(EntityStore db, CompactRecordCodec codec, Set<String> feedIDs,
             TimeUnit timeUnit, long startTime, long endTime) {
         Map<String, SortedMap<Long, Map<String, String>>> returnedData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
 
@@ -324,7 +345,20 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
                         data = new TreeMap<Long, Map<String, String>>(TIMESTAMP_COMPARATOR);
                         returnedData.put(feedID, data);
                     }
-                    data.put(pObj.getKey().timestamp, pObj.getData());
+                    data.put(pObj.getKey().timestamp, codec.getData(pObj));
+                }
+                // samples are read before the chunks they may be compressed into
+                if (!hasChunks) {
+                    continue;
+                }
+                SortedMap<Long, Map<String, String>> compressedData = getCompressedData(db, feedID, startTime, endTime, false);
+                if (!compressedData.isEmpty()) {
+                    SortedMap<Long, Map<String, String>> data = returnedData.get(feedID);
+                    if (data == null) {
+                        returnedData.put(feedID, compressedData);
+                    } else {
+                        data.putAll(compressedData);
+                    }
                 }
             } catch (DatabaseException e) {
                 e.printStackTrace();
@@ -336,6 +370,115 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
 
     }
 
+    /**
+     * Reads the samples of a feed from the compressed chunks.
+     * @param lastOnly true to only read the last sample
+     */
+    private SortedMap<Long, Map<String, String>> getCompressedData(EntityStore db, String feedID, long startTime, long endTime, boolean lastOnly) {
+        SortedMap<Long, Map<String, String>> data = new TreeMap<Long, Map<String, String>>(TIMESTAMP_COMPARATOR);
+        EntityCursor<CompressedChunk> cursor;
+        try {
+            cursor = new CompressedChunkAccess(db).pIdx.entities(new PersistentBufferKey(feedID, Long.MIN_VALUE), true,
+                    new PersistentBufferKey(feedID, endTime), true);
+        } catch (DatabaseException e) {
+            LOGGER.debug("No compressed data for feed {}", feedID, e);
+            return data;
+        }
+        try {
+            // the chunks of a feed follow each other, so the chunks before one ending before the start time are skipped
+            for (CompressedChunk chunk = cursor.last(); chunk != null && chunk.getEndTimestamp() >= startTime; chunk = cursor.prev()) {
+                SortedMap<Long, Map<String, String>> samples = CompressedChunkCodec.decode(chunk.getSamples(), startTime, endTime);
+                if (lastOnly && !samples.isEmpty()) {
+                    data.put(samples.lastKey(), samples.get(samples.lastKey()));
+                    break;
+                }
+                data.putAll(samples);
+            }
+        } catch (DatabaseException e) {
+            LOGGER.error("Reading compressed data for feed {} failed", feedID, e);
+        } finally {
+            cursor.close();
+        }
+        return data;
+    }
+
+    @Override
+    public synchronized boolean compressNext() {
+        if (active || compressDatabase >= databases.length || !env.isCompressInactivePartitions()) {
+            return false;
+        }
+        try {
+            while (compressDatabase < databases.length) {
+                if (databases[compressDatabase] == null) {
+                    // the partition was closed
+                    compressDatabase = databases.length;
+                    return false;
+                }
+                if (compressChunk(databases[compressDatabase], codecs[compressDatabase])) {
+                    return true;
+                }
+                compressDatabase++;
+                compressFrom = null;
+            }
+            env.flush();
+            env.cleanLog();
+            LOGGER.debug("Compressed partition {}", env.getCurrentBufferPartition());
+        } catch (DatabaseException e) {
+            LOGGER.error("Compressing partition {} failed", env.getCurrentBufferPartition(), e);
+            compressDatabase = databases.length;
+        }
+        return false;
+    }
+
+    /**
+     * Rewrites the samples of a feed following the last rewritten sample into a compressed chunk. The chunk is
+     * written before the samples are deleted, so readers find the samples in one form or the other.
+     * @return false if there are no samples left to rewrite
+     */
+    private boolean compressChunk(EntityStore db, CompactRecordCodec codec) throws DatabaseException {
+        PersistentBufferObjectAccess pObjAccess = new PersistentBufferObjectAccess(db);
+        SortedMap<Long, Map<String, String>> samples = new TreeMap<Long, Map<String, String>>(TIMESTAMP_COMPARATOR);
+        String feedID = null;
+        EntityCursor<PersistentBufferObject> piCursor = compressFrom == null ? pObjAccess.pIdx.entities()
+                : pObjAccess.pIdx.entities(compressFrom, false, null, false);
+        try {
+            for (PersistentBufferObject pObj : piCursor) {
+                if (feedID == null) {
+                    feedID = pObj.getKey().feedID;
+                } else if (!feedID.equals(pObj.getKey().feedID) || samples.size() >= CompressedChunkCodec.MAX_SAMPLES) {
+                    break;
+                }
+                samples.put(pObj.getKey().timestamp, codec.getData(pObj));
+            }
+        } finally {
+            piCursor.close();
+        }
+        if (samples.isEmpty()) {
+            return false;
+        }
+
+        CompressedChunkAccess chunkAccess = new CompressedChunkAccess(db);
+        PersistentBufferKey key = new PersistentBufferKey(feedID, samples.firstKey());
+        CompressedChunk chunk = chunkAccess.pIdx.get(key);
+        if (chunk != null) {
+            // a sample written late has the time stamp of a chunk
+            samples.putAll(CompressedChunkCodec.decode(chunk.getSamples(), Long.MIN_VALUE, Long.MAX_VALUE));
+        } else {
+            chunk = new CompressedChunk();
+            chunk.setKey(key);
+        }
+        chunk.setEndTimestamp(samples.lastKey().longValue());
+        chunk.setSamples(CompressedChunkCodec.encode(samples));
+        // readers look for chunks before the samples are deleted
+        hasChunks = true;
+        chunkAccess.pIdx.putNoReturn(chunk);
+        for (Long time : samples.keySet()) {
+            pObjAccess.pIdx.delete(new PersistentBufferKey(feedID, time));
+        }
+        compressFrom = new PersistentBufferKey(feedID, samples.lastKey());
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     private Map<String, Map<Long, Map<String, String>>>[] groupInputDataByFeed(
             Map<String, Map<Long, Map<String, String>>> value) {
@@ -350,11 +493,40 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
         return (Map<String, Map<Long, Map<String, String>>>[]) groupInputData;
     }
 
+    @Override
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return SampleBlocks.toSamples(getData(feedIDs, timeUnit, startTime, endTime));
+    }
+    
+    @Override
+    public Map<String, FeedSampleBlock> getLastSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return SampleBlocks.toSamples(getLastData(feedIDs, timeUnit, startTime, endTime));
+    }
+    
+    @Override
+    public Map<String, PartitionTimestamps> putSamples(Map<String, FeedSampleBlock> value, TimeUnit timeUnit) throws BufferFullException {
+        return putData(SampleBlocks.toMaps(value), timeUnit);
+    }
+
     public Map<String, PartitionTimestamps> putData(Map<String, Map<Long, Map<String, String>>> value, final TimeUnit timeUnit) throws BufferFullException {
+        return putData(value, timeUnit, false);
+    }
+
+    /**
+     * Writes samples loaded in bulk, such as a backfill of historical data. Each segment database is written by its
+     * own thread in the order of its keys, by feed and time, so its files are filled in order instead of at random
+     * places.
+     * @return the time stamps of the samples of each feed
+     */
+    public Map<String, PartitionTimestamps> loadData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) throws BufferFullException {
+        return putData(value, timeUnit, true);
+    }
+
+    private Map<String, PartitionTimestamps> putData(Map<String, Map<Long, Map<String, String>>> value, final TimeUnit timeUnit, final boolean sort) throws BufferFullException {
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
         final Map<String, Map<Long, Map<String, String>>>[] groupData = groupInputDataByFeed(value);
-        final Map<String, PartitionTimestamps> timestamps = new HashMap<String, PartitionTimestamps>();
+        final Map<String, PartitionTimestamps> timestamps = new ConcurrentHashMap<String, PartitionTimestamps>();
 
         final AtomicBoolean bufferFull = new AtomicBoolean(false);
         final CountDownLatch latch = new CountDownLatch(groupData.length);
@@ -364,10 +536,11 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
                 @Override
                 public void run() {
                     try {
-                        for (Entry<String, Map<Long, Map<String, String>>> feedData : groupData[dataIndex].entrySet()) {
+                        Map<String, Map<Long, Map<String, String>>> segmentData = sort ? sortByKey(groupData[dataIndex]) : groupData[dataIndex];
+                        for (Entry<String, Map<Long, Map<String, String>>> feedData : segmentData.entrySet()) {
                             PartitionTimestamps timeStamp = null;
                             try {
-                                timeStamp = putData(null, feedData.getKey(), databases[dataIndex], timeUnit, feedData.getValue());
+                                timeStamp = putData(null, feedData.getKey(), databases[dataIndex], codecs[dataIndex], timeUnit, feedData.getValue());
                             } catch (BufferFullException e) {
                                 bufferFull.compareAndSet(false, true);
                             }
@@ -417,7 +590,7 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
                         for (Entry<String, Map<Long, Map<String, String>>> feedData : groupData[dataIndex].entrySet()) {
                             PartitionTimestamps timeStamp = null;
                             try {
-                                timeStamp = putData(null, feedData.getKey(), databases[dataIndex], timeUnit, feedData.getValue());
+                                timeStamp = putData(null, feedData.getKey(), databases[dataIndex], codecs[dataIndex], timeUnit, feedData.getValue());
                             } catch (BufferFullException e) {
                                 bufferFull.compareAndSet(false, true);
                             }
@@ -450,10 +623,20 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
     }
     
 
-    private PartitionTimestamps putData(Transaction txn, String feedID, EntityStore db, TimeUnit timeUnit,
+    private static Map<String, Map<Long, Map<String, String>>> sortByKey(Map<String, Map<Long, Map<String, String>>> value) {
+        Map<String, Map<Long, Map<String, String>>> sorted = new TreeMap<String, Map<Long, Map<String, String>>>();
+        for (Entry<String, Map<Long, Map<String, String>>> entry : value.entrySet()) {
+            Map<Long, Map<String, String>> entries = entry.getValue();
+            sorted.put(entry.getKey(), entries instanceof SortedMap ? entries : new TreeMap<Long, Map<String, String>>(entries));
+        }
+        return sorted;
+    }
+
+    private PartitionTimestamps putData(Transaction txn, String feedID, EntityStore db, CompactRecordCodec codec, TimeUnit timeUnit,
             Map<Long, Map<String, String>> entries) throws BufferFullException {
         long largestTime = 0;
         long smallestTime = 0;
+        boolean firstSample = true;
 
         try {
             PersistentBufferObjectAccess pObjAccess = new PersistentBufferObjectAccess(db);
@@ -466,15 +649,15 @@ public class PartitionFastDiskBuffer implements PartitionDataBuffer {
                     if (time.longValue() > largestTime) {
                         largestTime = time.longValue();
                     }
-                    if (smallestTime == 0) {
-                        smallestTime = time.longValue();
-                    } else if (time.longValue() < smallestTime) {
+                    // 0 is a valid time stamp, so the first sample sets the smallest time
+                    if (firstSample || time.longValue() < smallestTime) {
                         smallestTime = time.longValue();
+                        firstSample = false;
                     }
 
                     PersistentBufferObject pObj = new PersistentBufferObject();
                     pObj.setKey(new PersistentBufferKey(feedID, time.longValue()));
-                    pObj.setData(value);
+                    codec.setData(pObj, value);
 
                     pObjAccess.pIdx.putNoReturn(pObj);
                 } catch (DatabaseException de) {
@@ -22,16 +22,21 @@
 package gov.nasa.arc.mct.buffer.disk.internal;
 
 import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
 import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
 import gov.nasa.arc.mct.buffer.config.DiskBufferEnv;
 import gov.nasa.arc.mct.buffer.internal.MetaDataBuffer;
 import gov.nasa.arc.mct.buffer.internal.PartitionDataBuffer;
 import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
+import gov.nasa.arc.mct.buffer.util.ReadScheduler;
+import gov.nasa.arc.mct.buffer.util.SampleBlocks;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -73,6 +78,7 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
     private static final Comparator<Long> TIMESTAMP_COMPARATOR = new TimeStampComparator();
     
     private final EntityStore[] databases;
+    private final CompactRecordCodec[] codecs;
     private final DiskBufferEnv env;
 
     /**
@@ -99,10 +105,6 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
             10L, TimeUnit.SECONDS,
             new LinkedBlockingQueue<Runnable>(),
             tf);
-    private static final ExecutorService readThreads = new ThreadPoolExecutor(0, 10,
-            10L, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<Runnable>(),
-            tf);
 
     private volatile boolean active;
 
@@ -129,6 +131,7 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
         this.segmentMask = ssize - 1;
 
         this.databases = new EntityStore[ssize];
+        this.codecs = new CompactRecordCodec[ssize];
         setupDatabasePartition(env);
 
         this.active = true;
@@ -138,8 +141,10 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
         for (int i = 0; i < databases.length; i++) {
             try {
                 this.databases[i] = env.openDiskStore(String.valueOf(i));
+                this.codecs[i] = new CompactRecordCodec(new KeyDictionary(databases[i]), env.isCompactRecords());
             } catch (DatabaseException e) {
                 databases[i] = null;
+                codecs[i] = null;
             }
         }
     }
@@ -167,34 +172,28 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
 
         final Set<String>[] groupFeeds = groupInputFeeds(feedIDs);
         final Map<String, SortedMap<Long, Map<String, String>>>[] dataSlices = new Map[groupFeeds.length];
-        final CountDownLatch readLatch = new CountDownLatch(groupFeeds.length);
+        List<Runnable> reads = new ArrayList<Runnable>(groupFeeds.length);
         for (int i = 0; i < groupFeeds.length; i++) {
             final int dataIndex = i;
+            if (groupFeeds[dataIndex].isEmpty()) {
+                continue;
+            }
 
-            Runnable r = new Runnable() {
+            reads.add(new Runnable() {
 
                 @Override
                 public void run() {
-                    try {
-                        Map<String, SortedMap<Long, Map<String, String>>> dataSlice = getData(databases[dataIndex],
-                                groupFeeds[dataIndex], timeUnit, startTime, endTime);
-                        if (dataSlice != null) {
-                            dataSlices[dataIndex] = dataSlice;
-                        }
-                    } finally {
-                        readLatch.countDown();
-                    } 
+                    Map<String, SortedMap<Long, Map<String, String>>> dataSlice = getData(databases[dataIndex], codecs[dataIndex],
+                            groupFeeds[dataIndex], timeUnit, startTime, endTime);
+                    if (dataSlice != null) {
+                        dataSlices[dataIndex] = dataSlice;
+                    }
                 }
-            };
-            
-            readThreads.execute(r);
+            });
+        }
+        if (!ReadScheduler.getInstance().invokeAll(reads)) {
+            LOGGER.debug("getData of partition {} stopped before reading all the segments", Integer.valueOf(env.getCurrentBufferPartition()));
         }
-        
-        try {
-            readLatch.await();
-        } catch (InterruptedException e) {
-            LOGGER.warn("Internal error during getData thread", e);
-        } 
 
         Map<String, SortedMap<Long, Map<String, String>>> returnedData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
         for (int i = 0; i < dataSlices.length; i++) {
@@ -218,7 +217,7 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
         return returnedData;
     }
     
-    private Map<String, SortedMap<Long, Map<String, String>>> getData(EntityStore db, Set<String> feedIDs,
+    private Map<String, SortedMap<Long, Map<String, String>>> getData(EntityStore db, CompactRecordCodec codec, Set<String> feedIDs,
             TimeUnit timeUnit, long startTime, long endTime) {
         Map<String, SortedMap<Long, Map<String, String>>> returnedData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
 
@@ -243,7 +242,7 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
                         data = new TreeMap<Long, Map<String, String>>(TIMESTAMP_COMPARATOR);
                         returnedData.put(feedID, data);
                     }
-                    data.put(pObj.getKey().timestamp, pObj.getData());
+                    data.put(pObj.getKey().timestamp, codec.getData(pObj));
                 }
             } catch (DatabaseException e) {
                 e.printStackTrace();
@@ -269,6 +268,21 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
         return (Map<String, Map<Long, Map<String, String>>>[]) groupInputData;
     }
 
+    @Override
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return SampleBlocks.toSamples(getData(feedIDs, timeUnit, startTime, endTime));
+    }
+    
+    @Override
+    public Map<String, FeedSampleBlock> getLastSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return SampleBlocks.toSamples(getLastData(feedIDs, timeUnit, startTime, endTime));
+    }
+    
+    @Override
+    public Map<String, PartitionTimestamps> putSamples(Map<String, FeedSampleBlock> value, TimeUnit timeUnit) throws BufferFullException {
+        return putData(SampleBlocks.toMaps(value), timeUnit);
+    }
+
     public Map<String, PartitionTimestamps> putData(Map<String, Map<Long, Map<String, String>>> value, final TimeUnit timeUnit) throws BufferFullException {
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
@@ -286,7 +300,7 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
                         for (Entry<String, Map<Long, Map<String, String>>> feedData : groupData[dataIndex].entrySet()) {
                             PartitionTimestamps timeStamp = null;
                             try {
-                                timeStamp = putData(null, feedData.getKey(), databases[dataIndex], timeUnit, feedData.getValue());
+                                timeStamp = putData(null, feedData.getKey(), databases[dataIndex], codecs[dataIndex], timeUnit, feedData.getValue());
                             } catch (BufferFullException e) {
                                 bufferFull.compareAndSet(false, true);
                             }
@@ -337,7 +351,7 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
                         for (Entry<String, Map<Long, Map<String, String>>> feedData : groupData[dataIndex].entrySet()) {
                             PartitionTimestamps timeStamp = null;
                             try {
-                                timeStamp = putData(null, feedData.getKey(), databases[dataIndex], timeUnit, feedData.getValue());
+                                timeStamp = putData(null, feedData.getKey(), databases[dataIndex], codecs[dataIndex], timeUnit, feedData.getValue());
                             } catch (BufferFullException e) {
                                 bufferFull.compareAndSet(false, true);
                             }
@@ -370,10 +384,11 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
     }
     
 
-    private PartitionTimestamps putData(Transaction txn, String feedID, EntityStore db, TimeUnit timeUnit,
+    private PartitionTimestamps putData(Transaction txn, String feedID, EntityStore db, CompactRecordCodec codec, TimeUnit timeUnit,
             Map<Long, Map<String, String>> entries) throws BufferFullException {
         long largestTime = 0;
         long smallestTime = 0;
+        boolean firstSample = true;
 
         try {
             PersistentBufferObjectAccess pObjAccess = new PersistentBufferObjectAccess(db);
@@ -386,15 +401,15 @@ public class PartitionNonCODDiskBuffer implements PartitionDataBuffer {
                     if (time.longValue() > largestTime) {
                         largestTime = time.longValue();
                     }
-                    if (smallestTime == 0) {
-                        smallestTime = time.longValue();
-                    } else if (time.longValue() < smallestTime) {
+                    // 0 is a valid time stamp, so the first sample sets the smallest time
+                    if (firstSample || time.longValue() < smallestTime) {
                         smallestTime = time.longValue();
+                        firstSample = false;
                     }
 
                     PersistentBufferObject pObj = new PersistentBufferObject();
                     pObj.setKey(new PersistentBufferKey(feedID, time.longValue()));
-                    pObj.setData(value);
+                    codec.setData(pObj, value);
 
                     pObjAccess.pIdx.putNoReturn(pObj);
                 } catch (DatabaseException de) {
@@ -26,12 +26,15 @@ import java.util.Map;
 import com.sleepycat.persist.model.Entity;
 import com.sleepycat.persist.model.PrimaryKey;
 
-@Entity
+@Entity(version = 1)
 public class PersistentBufferObject {
     @PrimaryKey
     private PersistentBufferKey key;
     
     private Map<String, String> data;
+    
+    /** Values encoded by {@link CompactRecordCodec}, null for samples stored as a map. */
+    private byte[] record;
 
     public PersistentBufferKey getKey() {
         return key;
@@ -49,5 +52,13 @@ public class PersistentBufferObject {
         this.data = data;
     }
     
+    public byte[] getRecord() {
+        return record;
+    }
+
+    public void setRecord(byte[] record) {
+        this.record = record;
+    }
+    
     
 }
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.disk.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Reads the samples of a telemetry dump in batches, for the {@link BulkLoader}. A file whose name ends with
+ * <code>.csv</code> is read as comma separated values, any other file as binary records.
+ * <p>
+ * The first line of a CSV dump names the columns: the feed, the time in milliseconds, then the keys of the samples,
+ * such as <code>feed,time,value,status</code>. Each following line is a sample; empty values are left out of the
+ * sample, and values cannot contain commas. Blank lines and lines starting with <code>#</code> are skipped.
+ * <p>
+ * A binary dump is a sequence of records as written by {@link #writeSample(DataOutput, String, long, Map)}.
+ */
+final class SampleDumpReader implements Closeable {
+    private static final String CSV_SUFFIX = ".csv";
+
+    private final File file;
+    private final BufferedReader csv;
+    private final DataInputStream binary;
+    private String[] columns;
+    private int line;
+
+    SampleDumpReader(File file) throws IOException {
+        this.file = file;
+        if (file.getName().toLowerCase().endsWith(CSV_SUFFIX)) {
+            csv = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"), 1 << 16);
+            binary = null;
+        } else {
+            csv = null;
+            binary = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        }
+    }
+
+    /**
+     * Writes a sample as a binary record: the feed, the time in milliseconds, the number of entries of the sample,
+     * then the key and value of each entry.
+     */
+    static void writeSample(DataOutput out, String feedID, long time, Map<String, String> sample) throws IOException {
+        out.writeUTF(feedID);
+        out.writeLong(time);
+        out.writeShort(sample.size());
+        for (Entry<String, String> entry : sample.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    /**
+     * Reads the next samples.
+     * @param maxSamples number of samples of the batch
+     * @return the samples of each feed, sorted by time in milliseconds, or null once the dump is read
+     */
+    Map<String, Map<Long, Map<String, String>>> nextBatch(int maxSamples) throws IOException {
+        Map<String, Map<Long, Map<String, String>>> batch = new HashMap<String, Map<Long, Map<String, String>>>();
+        int samples = 0;
+        while (samples < maxSamples && (csv != null ? readCsvSample(batch) : readBinarySample(batch))) {
+            samples++;
+        }
+        return samples == 0 ? null : batch;
+    }
+
+    private boolean readCsvSample(Map<String, Map<Long, Map<String, String>>> batch) throws IOException {
+        String s;
+        do {
+            s = csv.readLine();
+            line++;
+            if (s == null) {
+                return false;
+            }
+            s = s.trim();
+        } while (s.length() == 0 || s.charAt(0) == '#');
+
+        if (columns == null) {
+            columns = s.split(",", -1);
+            if (columns.length < 2) {
+                throw new IOException(file + ":" + line + ": the header needs the feed and time columns");
+            }
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = columns[i].trim();
+            }
+            return readCsvSample(batch);
+        }
+
+        String[] values = s.split(",", -1);
+        if (values.length != columns.length) {
+            throw new IOException(file + ":" + line + ": expected " + columns.length + " values but found " + values.length);
+        }
+        long time;
+        try {
+            time = Long.parseLong(values[1].trim());
+        } catch (NumberFormatException e) {
+            throw new IOException(file + ":" + line + ": invalid time " + values[1]);
+        }
+        Map<String, String> sample = new HashMap<String, String>((columns.length - 2) * 2);
+        for (int i = 2; i < columns.length; i++) {
+            String value = values[i].trim();
+            if (value.length() > 0) {
+                sample.put(columns[i], value);
+            }
+        }
+        add(batch, values[0].trim(), time, sample);
+        return true;
+    }
+
+    private boolean readBinarySample(Map<String, Map<Long, Map<String, String>>> batch) throws IOException {
+        String feedID;
+        try {
+            feedID = binary.readUTF();
+        } catch (EOFException e) {
+            return false;
+        }
+        long time = binary.readLong();
+        int entries = binary.readUnsignedShort();
+        Map<String, String> sample = new HashMap<String, String>(entries * 2);
+        for (int i = 0; i < entries; i++) {
+            String key = binary.readUTF();
+            sample.put(key, binary.readUTF());
+        }
+        add(batch, feedID, time, sample);
+        return true;
+    }
+
+    private static void add(Map<String, Map<Long, Map<String, String>>> batch, String feedID, long time, Map<String, String> sample) {
+        Map<Long, Map<String, String>> feedData = batch.get(feedID);
+        if (feedData == null) {
+            // sorted while reading, so the partition only has to order the feeds
+            feedData = new TreeMap<Long, Map<String, String>>();
+            batch.put(feedID, feedData);
+        }
+        feedData.put(Long.valueOf(time), sample);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (csv != null) {
+            csv.close();
+        } else {
+            binary.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+}
@@ -24,10 +24,15 @@ package gov.nasa.arc.mct.buffer.internal;
 import gov.nasa.arc.mct.api.feed.BufferFullException;
 import gov.nasa.arc.mct.api.feed.DataArchive;
 import gov.nasa.arc.mct.api.feed.DataProvider;
+import gov.nasa.arc.mct.api.feed.FeedRollupProvider;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
 import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
+import gov.nasa.arc.mct.buffer.config.FastDiskBufferEnv;
+import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
 import gov.nasa.arc.mct.buffer.disk.internal.PartitionTimestamps;
 import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -45,7 +50,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public final class CODataBuffer extends DataBuffer implements DataArchive, DataProvider {
+public final class CODataBuffer extends DataBuffer implements DataArchive, DataProvider, FeedRollupProvider {
     private static final Logger LOGGER = LoggerFactory.getLogger(CODataBuffer.class);
     private static final Logger PERF_READ_LOGGER = LoggerFactory
     .getLogger("gov.nasa.arc.mct.performance.read.codbuffer");
@@ -54,8 +59,25 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
     private static final Logger PERF_LOGGER = LoggerFactory
                     .getLogger("gov.nasa.arc.mct.performance.codbuffer");
 
+    private final long[] rollupResolutions;
+    // only kept for memory buffers; other buffers reduce the samples they read
+    private final RollupTier[] rollups;
+    private final ChangeIndex changeIndex;
+
     CODataBuffer(DataBufferEnv env, DataBufferHelper partitionBufferFactory) {
         super(env, partitionBufferFactory);
+        this.rollupResolutions = RollupTier.getResolutions(currentParition.getBufferEnv().getConfigProperties());
+        this.rollups = env instanceof MemoryBufferEnv ? new RollupTier[partitionDataBuffers.length] : null;
+        this.changeIndex = new ChangeIndex(partitionDataBuffers.length, ChangeIndex.getMaxChanges(currentParition.getBufferEnv().getConfigProperties()));
+        for (int i = 0; i < partitionDataBuffers.length; i++) {
+            // samples already in the partition, such as those of a disk buffer being reopened, are not rolled up or indexed
+            PartitionMetaData partitionMetaData = metaDataBuffer.getPartitionMetaData(i);
+            Collection<String> existingFeeds = partitionMetaData == null ? Collections.<String>emptySet() : partitionMetaData.getFeeds();
+            if (rollups != null) {
+                rollups[i] = new RollupTier(rollupResolutions, existingFeeds);
+            }
+            changeIndex.markIncomplete(i, existingFeeds);
+        }
     }
     
     @Override
@@ -76,16 +98,37 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
         } else {
             this.currentParition = partitionBufferFactory.newPartitionBuffer(env);
             this.partitionDataBuffers[currentParition.getBufferEnv().getCurrentBufferPartition()].set(currentParition);
+            if (env instanceof FastDiskBufferEnv) {
+                // partitions written before the buffer was opened, such as by the bulk loader, are read but not written
+                for (int i=0; i<partitionDataBuffers.length; i++) {
+                    PartitionMetaData partitionMetaData = metaDataBuffer.getPartitionMetaData(i);
+                    if (partitionDataBuffers[i].get() == null && partitionMetaData != null && !partitionMetaData.getFeeds().isEmpty()) {
+                        PartitionDataBuffer partitionBuffer = partitionBufferFactory.newPartitionBuffer(new FastDiskBufferEnv(env.getConfigProperties(), i));
+                        partitionBuffer.inactive();
+                        this.partitionDataBuffers[i].set(partitionBuffer);
+                    }
+                }
+            }
         }
     }
     
     private final static class FeedRequestContext {
         private final String feedID;
         private final boolean getLastDataIfNeeded;
+        private final Long lastChangeTime;
         
         public FeedRequestContext(String feedID, boolean getLastDataIfNeeded) {
+            this(feedID, getLastDataIfNeeded, null);
+        }
+        
+        /**
+         * @param lastChangeTime time in nanoseconds of the last change at or before the start time, as found by the
+         * change index, or null if the feed is not indexed
+         */
+        public FeedRequestContext(String feedID, boolean getLastDataIfNeeded, Long lastChangeTime) {
             this.feedID = feedID;
             this.getLastDataIfNeeded = getLastDataIfNeeded;
+            this.lastChangeTime = lastChangeTime;
         }
         
         @Override
@@ -112,7 +155,32 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
         int startPartition = this.currentParition.getBufferEnv().getCurrentBufferPartition();
         int i = startPartition;
         
+        // indexed feeds are only read from the partitions with changes in the time span and from the partition
+        // holding their last change before it
+        long start = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+        long end = TimeUnit.NANOSECONDS.convert(endTime, timeUnit);
+        Map<String, ChangeIndex.Change> lastChanges = changeIndex.getLastChanges(feedIDs, start, startPartition);
+        feedIDs.removeAll(lastChanges.keySet());
+        
         do {
+            for (Iterator<Entry<String, ChangeIndex.Change>> it = lastChanges.entrySet().iterator(); it.hasNext(); ) {
+                Entry<String, ChangeIndex.Change> entry = it.next();
+                String feedID = entry.getKey();
+                ChangeIndex.Change lastChange = entry.getValue();
+                FeedRequestContext frc = null;
+                if (lastChange.getPartition() == i) {
+                    frc = new FeedRequestContext(feedID, true, Long.valueOf(lastChange.getTime()));
+                    it.remove();
+                } else if (changeIndex.hasChanges(i, feedID, start, end)) {
+                    frc = new FeedRequestContext(feedID, false);
+                }
+                if (frc != null) {
+                    if (partitionFeeds[i] == null) {
+                        partitionFeeds[i] = new HashMap<String, FeedRequestContext>();
+                    }
+                    partitionFeeds[i].put(feedID, frc);
+                }
+            }
             Map<String, FeedRequestContext> feedsForThisPartition = null;
             for (Iterator<String> it = feedIDs.iterator(); it.hasNext(); ) {
                 String feedID = it.next();
@@ -143,9 +211,7 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
         Set<String> requestFeedIDs = new HashSet<String>(feedIDs);
         Map<String, FeedRequestContext>[] partitionFeeds = mapFeedsToPartitions(requestFeedIDs, startTime, endTime, timeUnit);
         
-        synchronized (movePartitionLock) {
-            if (reset) return Collections.emptyMap();
-        }
+        if (reset) return Collections.emptyMap();
         
         Map<String, SortedMap<Long, Map<String, String>>> aggregateData = new HashMap<String, SortedMap<Long, Map<String,String>>>();
         
@@ -176,9 +242,7 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
         Set<String> requestFeedIDs = new HashSet<String>(feedIDs);
         Map<String, FeedRequestContext>[] partitionFeeds = mapFeedsToPartitions(requestFeedIDs, startTime, endTime, timeUnit);
         
-        synchronized (movePartitionLock) {
-            if (reset) return Collections.emptyMap();
-        }
+        if (reset) return Collections.emptyMap();
         
         Map<String, List<Map<String, String>>> aggregateData = new HashMap<String, List<Map<String,String>>>();
         
@@ -204,76 +268,275 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
 
     private Map<String, SortedMap<Long, Map<String, String>>> getData(PartitionDataBuffer partitionDataBuffer, Map<String, FeedRequestContext> feedRequestContexts, TimeUnit timeUnit,
                     long startTime, long endTime) {
-        synchronized (movePartitionLock) {
-            if (reset) return Collections.emptyMap();
+        final long start = System.nanoTime();
+        final int epoch = enterEpoch(partitionDataBuffer);
+        if (epoch < 0) return Collections.emptyMap();
+        
+        try {
+            final ElapsedTimer timer = new ElapsedTimer();
+            timer.startInterval();
+
+            Map<String, SortedMap<Long, Map<String, String>>> returnedData = partitionDataBuffer.getData(feedRequestContexts.keySet(), timeUnit, startTime, endTime);
+            PERF_READ_LOGGER.debug("Get Regular Data feeds: {}  from partition: {}", returnedData, partitionDataBuffer.getBufferEnv().getCurrentBufferPartition());
+
+            addPreviousPoints(partitionDataBuffer, feedRequestContexts, returnedData, timeUnit, startTime);
+
+            timer.stopInterval();
+            LOGGER.debug("time to get Data for feeds {}: {}", feedRequestContexts, timer.getIntervalInMillis());
+            return returnedData;
+        } finally {
+            exitEpoch(epoch);
+            metrics.read(partitionDataBuffer, start);
+        }
+    }
+
+    /**
+     * Adds the last sample before startTime to the data of the feeds which need it and have no sample at startTime.
+     */
+    private void addPreviousPoints(PartitionDataBuffer partitionDataBuffer, Map<String, FeedRequestContext> feedRequestContexts,
+                    Map<String, SortedMap<Long, Map<String, String>>> returnedData, TimeUnit timeUnit, long startTime) {
+        for (Iterator<Entry<String, FeedRequestContext>> it = feedRequestContexts.entrySet().iterator(); it.hasNext(); ) {
+            Entry<String, FeedRequestContext> entry = it.next();
+            String feedID = entry.getKey();
+            SortedMap<Long, Map<String, String>> data = returnedData.get(feedID);
+            boolean needPrevPoint = true;
+            if (data != null && !data.isEmpty()) {
+                long firstPointTS = data.firstKey();
+                needPrevPoint = firstPointTS > TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+            }
+            if (!entry.getValue().getLastDataIfNeeded || !needPrevPoint) {
+                it.remove();
+            }
+        }
+        if (!feedRequestContexts.isEmpty()) {
+            Map<String, SortedMap<Long, Map<String, String>>> lastData = getLastData(partitionDataBuffer, feedRequestContexts, timeUnit, startTime);
+            for (Entry<String, SortedMap<Long, Map<String, String>>> entry : lastData.entrySet()) {
+                String feedID = entry.getKey();
+                SortedMap<Long, Map<String, String>> data = entry.getValue();
+                if (data != null && !data.isEmpty()) {
+                    SortedMap<Long, Map<String, String>> feedData = returnedData.get(feedID);
+                    if (feedData == null) {
+                        feedData = new TreeMap<Long, Map<String, String>>();
+                        returnedData.put(feedID, feedData);
+                    }
+                    Long ts = data.firstKey();
+                    feedData.put(ts, data.get(ts));
+                }
+            }
             
-            while (moveParitionInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
+            PERF_READ_LOGGER.debug("Get Last Data feeds: {} from partition: {} ", returnedData, partitionDataBuffer.getBufferEnv().getCurrentBufferPartition());
+        }
+    }
+
+    /**
+     * Reads the last sample before startTime of each feed. The samples of the indexed feeds are read at the time of
+     * their last change, the others by searching the partition backwards from startTime.
+     */
+    private Map<String, SortedMap<Long, Map<String, String>>> getLastData(PartitionDataBuffer partitionDataBuffer,
+                    Map<String, FeedRequestContext> feedRequestContexts, TimeUnit timeUnit, long startTime) {
+        Set<String> searchedFeedIDs = new HashSet<String>();
+        Map<Long, Set<String>> indexedFeedIDs = groupByLastChange(feedRequestContexts, searchedFeedIDs);
+        Map<String, SortedMap<Long, Map<String, String>>> lastData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+        for (Entry<Long, Set<String>> entry : indexedFeedIDs.entrySet()) {
+            long time = entry.getKey().longValue();
+            lastData.putAll(partitionDataBuffer.getData(entry.getValue(), TimeUnit.NANOSECONDS, time, time));
+        }
+        if (!searchedFeedIDs.isEmpty()) {
+            lastData.putAll(partitionDataBuffer.getLastData(searchedFeedIDs, timeUnit, 0, startTime));
+        }
+        return lastData;
+    }
+
+    /**
+     * Typed version of {@link #getLastData(PartitionDataBuffer, Map, TimeUnit, long)}.
+     */
+    private Map<String, FeedSampleBlock> getLastSamples(PartitionDataBuffer partitionDataBuffer,
+                    Map<String, FeedRequestContext> feedRequestContexts, TimeUnit timeUnit, long startTime) {
+        Set<String> searchedFeedIDs = new HashSet<String>();
+        Map<Long, Set<String>> indexedFeedIDs = groupByLastChange(feedRequestContexts, searchedFeedIDs);
+        Map<String, FeedSampleBlock> lastData = new HashMap<String, FeedSampleBlock>();
+        for (Entry<Long, Set<String>> entry : indexedFeedIDs.entrySet()) {
+            long time = entry.getKey().longValue();
+            lastData.putAll(partitionDataBuffer.getSamples(entry.getValue(), TimeUnit.NANOSECONDS, time, time));
+        }
+        if (!searchedFeedIDs.isEmpty()) {
+            lastData.putAll(partitionDataBuffer.getLastSamples(searchedFeedIDs, timeUnit, 0, startTime));
+        }
+        return lastData;
+    }
+
+    /**
+     * Groups the indexed feeds by the time of their last change, so feeds which changed together, such as the
+     * samples carried over to a new partition, are read at once. Feeds which are not indexed are added to
+     * searchedFeedIDs.
+     */
+    private static Map<Long, Set<String>> groupByLastChange(Map<String, FeedRequestContext> feedRequestContexts, Set<String> searchedFeedIDs) {
+        Map<Long, Set<String>> indexedFeedIDs = new HashMap<Long, Set<String>>();
+        for (FeedRequestContext frc : feedRequestContexts.values()) {
+            if (frc.lastChangeTime == null) {
+                searchedFeedIDs.add(frc.feedID);
+            } else {
+                Set<String> feedIDs = indexedFeedIDs.get(frc.lastChangeTime);
+                if (feedIDs == null) {
+                    feedIDs = new HashSet<String>();
+                    indexedFeedIDs.put(frc.lastChangeTime, feedIDs);
+                }
+                feedIDs.add(frc.feedID);
+            }
+        }
+        return indexedFeedIDs;
+    }
+
+    @Override
+    public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime,
+            TimeUnit timeUnit, long resolution) {
+        int level = RollupTier.selectLevel(rollupResolutions, TimeUnit.NANOSECONDS.convert(resolution, timeUnit));
+        if (level < 0) {
+            return getData(feedIDs, startTime, endTime, timeUnit);
+        }
+        
+        Set<String> requestFeedIDs = new HashSet<String>(feedIDs);
+        Map<String, FeedRequestContext>[] partitionFeeds = mapFeedsToPartitions(requestFeedIDs, startTime, endTime, timeUnit);
+        
+        if (reset) return Collections.emptyMap();
+        
+        Map<String, SortedMap<Long, Map<String, String>>> aggregateData = new HashMap<String, SortedMap<Long, Map<String,String>>>();
+        
+        for (int i=0; i< partitionFeeds.length; i++) {
+            Map<String, FeedRequestContext> partitionFeed = partitionFeeds[i];
+            if (partitionFeed != null) {
+                Map<String, SortedMap<Long, Map<String, String>>> data = getRollupData(i, partitionFeed, timeUnit, startTime, endTime, level);
+                for (Entry<String, SortedMap<Long, Map<String, String>>> entry: data.entrySet()) {
+                    SortedMap<Long, Map<String, String>> cumulativeData = aggregateData.get(entry.getKey());
+                    if (cumulativeData != null) {
+                        cumulativeData.putAll(entry.getValue());
+                    } else {
+                        aggregateData.put(entry.getKey(), entry.getValue());
+                    }
                 }
             }
-            readInProgress = true;
         }
         
+        return aggregateData;
+    }
+
+    private Map<String, SortedMap<Long, Map<String, String>>> getRollupData(int partition, Map<String, FeedRequestContext> feedRequestContexts, TimeUnit timeUnit,
+                    long startTime, long endTime, int level) {
+        final long readStart = System.nanoTime();
+        final int epoch = enterEpoch();
+        if (epoch < 0) return Collections.emptyMap();
+        
         try {
             final ElapsedTimer timer = new ElapsedTimer();
             timer.startInterval();
 
-            Map<String, SortedMap<Long, Map<String, String>>> returnedData = partitionDataBuffer.getData(feedRequestContexts.keySet(), timeUnit, startTime, endTime);
-            PERF_READ_LOGGER.debug("Get Regular Data feeds: {}  from partition: {}", returnedData, partitionDataBuffer.getBufferEnv().getCurrentBufferPartition());
+            PartitionDataBuffer partitionDataBuffer = this.partitionDataBuffers[partition].get();
+            if (partitionDataBuffer == null) {
+                return Collections.emptyMap();
+            }
+            RollupTier rollup = rollups == null ? null : rollups[partition];
+            long start = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+            long end = TimeUnit.NANOSECONDS.convert(endTime, timeUnit);
+            Map<String, SortedMap<Long, Map<String, String>>> returnedData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+            Set<String> rawFeedIDs = new HashSet<String>();
+            for (String feedID : feedRequestContexts.keySet()) {
+                if (rollup != null && rollup.isComplete(feedID)) {
+                    SortedMap<Long, Map<String, String>> data = rollup.getData(feedID, level, start, end);
+                    if (data != null) {
+                        returnedData.put(feedID, data);
+                    }
+                } else {
+                    rawFeedIDs.add(feedID);
+                }
+            }
+            if (!rawFeedIDs.isEmpty()) {
+                Map<String, SortedMap<Long, Map<String, String>>> rawData = partitionDataBuffer.getData(rawFeedIDs, timeUnit, startTime, endTime);
+                for (Entry<String, SortedMap<Long, Map<String, String>>> entry : rawData.entrySet()) {
+                    returnedData.put(entry.getKey(), RollupTier.reduce(entry.getValue(), rollupResolutions[level]));
+                }
+            }
+            addPreviousPoints(partitionDataBuffer, feedRequestContexts, returnedData, timeUnit, startTime);
+
+            timer.stopInterval();
+            LOGGER.debug("time to get rollups for feeds {}: {}", feedRequestContexts, timer.getIntervalInMillis());
+            metrics.read(partitionDataBuffer, readStart);
+            return returnedData;
+        } finally {
+            exitEpoch(epoch);
+        }
+    }
+
+    @Override
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        Set<String> requestFeedIDs = new HashSet<String>(feedIDs);
+        Map<String, FeedRequestContext>[] partitionFeeds = mapFeedsToPartitions(requestFeedIDs, startTime, endTime, timeUnit);
+        
+        if (reset) return Collections.emptyMap();
+        
+        Map<String, FeedSampleBlock> aggregateData = new HashMap<String, FeedSampleBlock>();
+        
+        for (int i=0; i< partitionFeeds.length; i++) {
+            Map<String, FeedRequestContext> partitionFeed = partitionFeeds[i];
+            if (partitionFeed != null) {
+                PartitionDataBuffer partitionBuffer = this.partitionDataBuffers[i].get();
+                Map<String, FeedSampleBlock> data = getSamples(partitionBuffer, partitionFeed, timeUnit, startTime, endTime);
+                mergeSamples(aggregateData, data);
+            }
+        }
+        
+        return aggregateData;
+    }
+
+    private Map<String, FeedSampleBlock> getSamples(PartitionDataBuffer partitionDataBuffer, Map<String, FeedRequestContext> feedRequestContexts, TimeUnit timeUnit,
+                    long startTime, long endTime) {
+        final long start = System.nanoTime();
+        final int epoch = enterEpoch(partitionDataBuffer);
+        if (epoch < 0) return Collections.emptyMap();
+        
+        try {
+            final ElapsedTimer timer = new ElapsedTimer();
+            timer.startInterval();
+
+            Map<String, FeedSampleBlock> returnedData = partitionDataBuffer.getSamples(feedRequestContexts.keySet(), timeUnit, startTime, endTime);
 
             for (Iterator<Entry<String, FeedRequestContext>> it = feedRequestContexts.entrySet().iterator(); it.hasNext(); ) {
                 Entry<String, FeedRequestContext> entry = it.next();
-                String feedID = entry.getKey();
-                SortedMap<Long, Map<String, String>> data = returnedData.get(feedID);
+                FeedSampleBlock data = returnedData.get(entry.getKey());
                 boolean needPrevPoint = true;
                 if (data != null && !data.isEmpty()) {
-                    long firstPointTS = data.firstKey();
-                    needPrevPoint = firstPointTS > TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+                    needPrevPoint = data.getFirstTime() > TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
                 }
                 if (!entry.getValue().getLastDataIfNeeded || !needPrevPoint) {
                     it.remove();
                 }
             }
             if (!feedRequestContexts.isEmpty()) {
-                Set<String> feedIDs = feedRequestContexts.keySet();
-                Map<String, SortedMap<Long, Map<String, String>>> lastData = partitionDataBuffer.getLastData(feedIDs,
-                        timeUnit, 0, startTime);
-                for (Entry<String, SortedMap<Long, Map<String, String>>> entry : lastData.entrySet()) {
-                    String feedID = entry.getKey();
-                    SortedMap<Long, Map<String, String>> data = entry.getValue();
+                Map<String, FeedSampleBlock> lastData = getLastSamples(partitionDataBuffer, feedRequestContexts, timeUnit, startTime);
+                for (Entry<String, FeedSampleBlock> entry : lastData.entrySet()) {
+                    FeedSampleBlock data = entry.getValue();
                     if (data != null && !data.isEmpty()) {
-                        SortedMap<Long, Map<String, String>> feedData = returnedData.get(feedID);
-                        if (feedData == null) {
-                            feedData = new TreeMap<Long, Map<String, String>>();
-                            returnedData.put(feedID, feedData);
+                        FeedSampleBlock feedData = data.slice(data.size() - 1, data.size()).copy();
+                        FeedSampleBlock regularData = returnedData.get(entry.getKey());
+                        if (regularData != null) {
+                            feedData.addAll(regularData);
                         }
-                        Long ts = data.firstKey();
-                        feedData.put(ts, data.get(ts));
+                        returnedData.put(entry.getKey(), feedData);
                     }
                 }
-                
-                PERF_READ_LOGGER.debug("Get Last Data feeds: {} from partition: {} ", returnedData, partitionDataBuffer.getBufferEnv().getCurrentBufferPartition());
             }
 
             timer.stopInterval();
-            LOGGER.debug("time to get Data for feeds {}: {}", feedRequestContexts, timer.getIntervalInMillis());
+            LOGGER.debug("time to get samples for feeds {}: {}", feedRequestContexts, timer.getIntervalInMillis());
             return returnedData;
         } finally {
-            synchronized (movePartitionLock) {
-                readInProgress = false;
-                movePartitionLock.notifyAll();
-            }
+            exitEpoch(epoch);
+            metrics.read(partitionDataBuffer, start);
         }
     }
 
     @Override
     public void putData(String feedID, TimeUnit timeUnit, Map<Long, Map<String, String>> entries) throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return;
-        }
+        if (reset) return;
         
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
@@ -304,56 +567,33 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
     }
     
     private void putData(PartitionDataBuffer partitionBuffer, Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit, MetaDataBuffer metadata, int metadataIndex)  throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return;
-            while (moveParitionInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
-                }
-            }
-            writeInProgress = true;
-        }
-        if (this.partitionDataBuffers[partitionBuffer.getBufferEnv().getCurrentBufferPartition()].get() == null) {
-            return;
-        }
+        final long start = System.nanoTime();
+        final int epoch = enterWriteEpoch(partitionBuffer);
+        if (epoch < 0) return;
 
         try {
             partitionBuffer.putData(value, timeUnit, metadata, metadataIndex);
+            dataWritten(partitionBuffer.getBufferEnv().getCurrentBufferPartition(), value, timeUnit);
         } finally {
-            synchronized (movePartitionLock) {
-                writeInProgress = false;
-                movePartitionLock.notifyAll();
-            }
+            exitEpoch(epoch);
+            metrics.written(partitionBuffer, start);
         }
     
     }
     
     
     private Map<String, PartitionTimestamps> putData(PartitionDataBuffer partitionBuffer, Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit)  throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return null;
-            while (moveParitionInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
-                }
-            }
-            writeInProgress = true;
-        }
-        if (this.partitionDataBuffers[partitionBuffer.getBufferEnv().getCurrentBufferPartition()].get() == null) {
-            return null;
-        }
+        final long start = System.nanoTime();
+        final int epoch = enterWriteEpoch(partitionBuffer);
+        if (epoch < 0) return null;
 
         try {
-            return partitionBuffer.putData(value, timeUnit);
+            Map<String, PartitionTimestamps> timeStamps = partitionBuffer.putData(value, timeUnit);
+            dataWritten(partitionBuffer.getBufferEnv().getCurrentBufferPartition(), value, timeUnit);
+            return timeStamps;
         } finally {
-            synchronized (movePartitionLock) {
-                writeInProgress = false;
-                movePartitionLock.notifyAll();
-            }
+            exitEpoch(epoch);
+            metrics.written(partitionBuffer, start);
         }
     }
     
@@ -361,9 +601,7 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
     public void putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit,
                     Runnable callback)  throws BufferFullException {
         PERF_WRITE_LOGGER.debug("COD Putting data for {} feeds", value);
-        synchronized (movePartitionLock) {
-            if (reset) return;
-        }
+        if (reset) return;
         
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
@@ -394,9 +632,7 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
 
     @Override
     public void putData(String feedID, TimeUnit timeUnit, long time, Map<String, String> value) throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return;
-        }
+        if (reset) return;
         
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
@@ -427,6 +663,31 @@ public final class CODataBuffer extends DataBuffer implements DataArchive, DataP
         timer.stopInterval();
         PERF_LOGGER.debug("Time to save data for feed {}: {}", feedID, timer.getIntervalInMillis());
     }
-    
 
+    @Override
+    protected void dataWritten(int partition, Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) {
+        if (rollups != null) {
+            rollups[partition].putData(value, timeUnit);
+        }
+        changeIndex.putData(partition, value, timeUnit);
+        super.dataWritten(partition, value, timeUnit);
+    }
+
+    @Override
+    protected void samplesWritten(int partition, Map<String, FeedSampleBlock> samples, TimeUnit timeUnit) {
+        if (rollups != null) {
+            rollups[partition].putSamples(samples, timeUnit);
+        }
+        changeIndex.putSamples(partition, samples, timeUnit);
+        super.samplesWritten(partition, samples, timeUnit);
+    }
+
+    @Override
+    protected void partitionCleared(int partition) {
+        if (rollups != null) {
+            rollups[partition].clear();
+        }
+        changeIndex.clear(partition);
+        super.partitionCleared(partition);
+    }
 }
@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Times of the changes of each feed in each partition of a change only data buffer. The value of a feed at a given
+ * time is the last change at or before that time, so the index tells which partition holds it, and at what time,
+ * without walking the partitions backwards; the sample itself is then read with a point lookup.
+ * <p>
+ * Only the times are kept, in sorted arrays. The index is built as samples are written, so a feed which already had
+ * samples in a partition when the buffer was opened, or which has more changes in a partition than the index is
+ * allowed to keep, is not indexed until that partition is cleared.
+ */
+final class ChangeIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeIndex.class);
+
+    static final String MAX_CHANGES_PROPERTY = "buffer.changeindex.max.changes";
+    private static final int DEFAULT_MAX_CHANGES = 10000;
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Returns the number of changes of a feed in a partition the index keeps, configured by
+     * <code>buffer.changeindex.max.changes</code>. Zero disables the index.
+     */
+    static int getMaxChanges(Properties prop) {
+        String value = prop == null ? null : prop.getProperty(MAX_CHANGES_PROPERTY);
+        if (value == null) {
+            return DEFAULT_MAX_CHANGES;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warn("Ignoring {} {}", MAX_CHANGES_PROPERTY, value);
+            return DEFAULT_MAX_CHANGES;
+        }
+    }
+
+    /**
+     * Last change of a feed at or before a time.
+     */
+    static final class Change {
+        private final int partition;
+        private final long time;
+
+        Change(int partition, long time) {
+            this.partition = partition;
+            this.time = time;
+        }
+
+        /**
+         * Returns the partition holding the change, or -1 if the feed has no change at or before the time.
+         */
+        int getPartition() {
+            return partition;
+        }
+
+        /**
+         * Returns the time of the change in nanoseconds.
+         */
+        long getTime() {
+            return time;
+        }
+    }
+
+    private static final Change NO_CHANGE = new Change(-1, Long.MIN_VALUE);
+
+    private final int numOfPartitions;
+    private final int maxChanges;
+    private final ConcurrentMap<String, FeedChanges> feeds = new ConcurrentHashMap<String, FeedChanges>();
+
+    /**
+     * @param numOfPartitions number of partitions of the buffer
+     * @param maxChanges number of changes of a feed in a partition the index keeps; zero disables the index
+     */
+    ChangeIndex(int numOfPartitions, int maxChanges) {
+        this.numOfPartitions = numOfPartitions;
+        this.maxChanges = maxChanges;
+    }
+
+    /**
+     * Marks feeds which already have samples in a partition, such as those of a disk buffer being reopened, as not
+     * indexed until the partition is cleared.
+     */
+    void markIncomplete(int partition, Collection<String> feedIDs) {
+        if (maxChanges == 0) {
+            return;
+        }
+        for (String feedID : feedIDs) {
+            FeedChanges changes = getChanges(feedID);
+            synchronized (changes) {
+                changes.drop(partition);
+            }
+        }
+    }
+
+    /**
+     * Forgets the changes of a partition, once it is emptied.
+     */
+    void clear(int partition) {
+        for (FeedChanges changes : feeds.values()) {
+            synchronized (changes) {
+                changes.clear(partition);
+            }
+        }
+    }
+
+    void putData(int partition, Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) {
+        if (maxChanges == 0) {
+            return;
+        }
+        for (Entry<String, Map<Long, Map<String, String>>> feed : value.entrySet()) {
+            FeedChanges changes = getChanges(feed.getKey());
+            synchronized (changes) {
+                for (Long time : feed.getValue().keySet()) {
+                    changes.add(partition, TimeUnit.NANOSECONDS.convert(time.longValue(), timeUnit));
+                }
+            }
+        }
+    }
+
+    void putSamples(int partition, Map<String, FeedSampleBlock> samples, TimeUnit timeUnit) {
+        if (maxChanges == 0) {
+            return;
+        }
+        for (Entry<String, FeedSampleBlock> feed : samples.entrySet()) {
+            FeedSampleBlock block = feed.getValue();
+            FeedChanges changes = getChanges(feed.getKey());
+            synchronized (changes) {
+                for (int i = 0; i < block.size(); i++) {
+                    changes.add(partition, TimeUnit.NANOSECONDS.convert(block.getTime(i), timeUnit));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the last change of each indexed feed at or before a time. When several partitions hold a change at
+     * the same time, as they do for the samples carried over to a new partition, the newest partition is returned.
+     * @param feedIDs feeds to look up
+     * @param time time in nanoseconds
+     * @param currentPartition the partition samples are written to
+     * @return the last changes of the indexed feeds, without the feeds which are not indexed; a feed without any
+     * change at or before the time has a change in partition -1
+     */
+    Map<String, Change> getLastChanges(Collection<String> feedIDs, long time, int currentPartition) {
+        Map<String, Change> lastChanges = new HashMap<String, Change>();
+        if (maxChanges == 0) {
+            return lastChanges;
+        }
+        for (String feedID : feedIDs) {
+            FeedChanges changes = feeds.get(feedID);
+            if (changes == null) {
+                lastChanges.put(feedID, NO_CHANGE);
+                continue;
+            }
+            synchronized (changes) {
+                if (!changes.isComplete()) {
+                    continue;
+                }
+                int lastPartition = -1;
+                long lastTime = Long.MIN_VALUE;
+                int i = currentPartition;
+                do {
+                    int index = changes.floorIndex(i, time);
+                    if (index >= 0 && (lastPartition < 0 || changes.times[i][index] > lastTime)) {
+                        lastPartition = i;
+                        lastTime = changes.times[i][index];
+                    }
+                    i = i == 0 ? numOfPartitions - 1 : i - 1;
+                } while (i != currentPartition);
+                lastChanges.put(feedID, lastPartition < 0 ? NO_CHANGE : new Change(lastPartition, lastTime));
+            }
+        }
+        return lastChanges;
+    }
+
+    /**
+     * Returns true if a feed has changes in a partition between two times.
+     * @param startTime start time in nanoseconds
+     * @param endTime end time in nanoseconds
+     */
+    boolean hasChanges(int partition, String feedID, long startTime, long endTime) {
+        FeedChanges changes = feeds.get(feedID);
+        if (changes == null) {
+            return false;
+        }
+        synchronized (changes) {
+            int index = changes.floorIndex(partition, endTime);
+            return index >= 0 && changes.times[partition][index] >= startTime;
+        }
+    }
+
+    private FeedChanges getChanges(String feedID) {
+        FeedChanges changes = feeds.get(feedID);
+        if (changes == null) {
+            changes = new FeedChanges(numOfPartitions);
+            FeedChanges existing = feeds.putIfAbsent(feedID, changes);
+            if (existing != null) {
+                changes = existing;
+            }
+        }
+        return changes;
+    }
+
+    private final class FeedChanges {
+        private final long[][] times;
+        private final int[] sizes;
+        private final boolean[] incomplete;
+        private int incompletePartitions;
+
+        FeedChanges(int numOfPartitions) {
+            times = new long[numOfPartitions][];
+            sizes = new int[numOfPartitions];
+            incomplete = new boolean[numOfPartitions];
+        }
+
+        boolean isComplete() {
+            return incompletePartitions == 0;
+        }
+
+        void add(int partition, long time) {
+            if (incomplete[partition]) {
+                return;
+            }
+            long[] t = times[partition];
+            int size = sizes[partition];
+            int index;
+            if (size == 0 || time > t[size - 1]) {
+                // samples mostly come in order
+                index = size;
+            } else {
+                index = Arrays.binarySearch(t, 0, size, time);
+                if (index >= 0) {
+                    return;
+                }
+                index = -index - 1;
+            }
+            if (size == maxChanges) {
+                drop(partition);
+                return;
+            }
+            if (t == null || size == t.length) {
+                t = Arrays.copyOf(t == null ? new long[0] : t, Math.min(maxChanges, Math.max(INITIAL_CAPACITY, size * 2)));
+                times[partition] = t;
+            }
+            System.arraycopy(t, index, t, index + 1, size - index);
+            t[index] = time;
+            sizes[partition] = size + 1;
+        }
+
+        void drop(int partition) {
+            if (!incomplete[partition]) {
+                incomplete[partition] = true;
+                incompletePartitions++;
+            }
+            times[partition] = null;
+            sizes[partition] = 0;
+        }
+
+        void clear(int partition) {
+            if (incomplete[partition]) {
+                incomplete[partition] = false;
+                incompletePartitions--;
+            }
+            times[partition] = null;
+            sizes[partition] = 0;
+        }
+
+        /**
+         * Returns the index of the last change at or before a time, or -1.
+         */
+        int floorIndex(int partition, long time) {
+            int size = sizes[partition];
+            if (size == 0) {
+                return -1;
+            }
+            int index = Arrays.binarySearch(times[partition], 0, size, time);
+            return index >= 0 ? index : -index - 2;
+        }
+    }
+}
@@ -24,6 +24,9 @@ package gov.nasa.arc.mct.buffer.internal;
 import gov.nasa.arc.mct.api.feed.BufferFullException;
 import gov.nasa.arc.mct.api.feed.DataArchive;
 import gov.nasa.arc.mct.api.feed.DataProvider;
+import gov.nasa.arc.mct.api.feed.FeedSampleAggregator;
+import gov.nasa.arc.mct.api.feed.FeedSampleArchive;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
 import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
 import gov.nasa.arc.mct.buffer.disk.internal.PartitionTimestamps;
 import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
@@ -37,29 +40,46 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class DataBuffer implements DataArchive, DataProvider {
+public class DataBuffer implements DataArchive, DataProvider, FeedSampleAggregator, FeedSampleArchive {
     private static final Logger LOGGER = LoggerFactory.getLogger(DataBuffer.class);
     private static final Logger PERF_LOGGER = LoggerFactory
                     .getLogger("gov.nasa.arc.mct.performance.buffer");
 
+    private static final ExecutorService compressionThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Buffer partition compression");
+            t.setContextClassLoader(getClass().getClassLoader());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    });
+
     protected final AtomicReference<PartitionDataBuffer>[] partitionDataBuffers;
     protected MetaDataBuffer metaDataBuffer;
     protected volatile PartitionDataBuffer currentParition;
+    /** Partition a rotation is making inactive, until it is marked inactive. Writes starting meanwhile skip it. */
+    private volatile PartitionDataBuffer retiringPartition;
     protected DataBufferEvictor evictor;
     protected final Object movePartitionLock = new Object();
     protected final Object resetLock = new Object();
-    protected boolean readInProgress = false;
-    protected boolean writeInProgress = false;
-    protected boolean moveParitionInProgress = false;
+    final OperationEpochs epochs = new OperationEpochs();
     protected volatile boolean reset = false;
     protected volatile boolean prepareNewPartitionInProgress = false;
     protected final DataBufferHelper dataBufferHelper;
+    private volatile HotWindowJournal journal;
+    private volatile String name;
+    protected volatile TierMetrics metrics;
 
     @SuppressWarnings("unchecked")
     DataBuffer(DataBufferEnv env, DataBufferHelper partitionBufferFactory) {
@@ -71,8 +91,26 @@ public class DataBuffer implements DataArchive, DataProvider {
         }
         this.partitionDataBuffers = new AtomicReference[metaDataBuffer.getNumOfPartitions()];
         setupPartitionBuffers(env, partitionBufferFactory);
+        String envName = currentParition.getBufferEnv().getClass().getSimpleName();
+        setName(envName.replace("BufferEnv", "").toLowerCase());
         startEvictor();
     }
+
+    /**
+     * Returns the name the metrics of this buffer are registered under.
+     */
+    public String getName() {
+        return name;
+    }
+
+    void setName(String name) {
+        TierMetrics previous = metrics;
+        this.name = name;
+        this.metrics = new TierMetrics(name, partitionDataBuffers, currentParition.getBufferEnv());
+        if (previous != null) {
+            previous.close();
+        }
+    }
     
     protected void setupPartitionBuffers(DataBufferEnv env, DataBufferHelper partitionBufferFactory) {
         PartitionDataBuffer partitionBuffer;
@@ -122,29 +160,17 @@ public class DataBuffer implements DataArchive, DataProvider {
      * @return
      */
     private boolean isFullyWithinTimeSpan(int partition, Set<String> feedIDs, long startTime, TimeUnit timeUnit) {
-        for (String feedID : feedIDs) {
-            if(!metaDataBuffer.isFullyWithinTimeSpan(partition, feedID, timeUnit, startTime)) {
-                return false;
-            }
-        }
-        return true;
+        return metaDataBuffer.isFullyWithinTimeSpan(partition, feedIDs, timeUnit, startTime);
     }
 
     private boolean isWithinTimeSpan(int partition, Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
-        for (String feedID : feedIDs) {
-            if(metaDataBuffer.isWithinTimeSpan(partition, feedID, timeUnit, startTime, endTime)) {
-                return true;
-            }
-        }
-        return false;
+        return metaDataBuffer.isWithinTimeSpan(partition, feedIDs, timeUnit, startTime, endTime);
     }
     
     @Override
     public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime,
             TimeUnit timeUnit) {
-        synchronized (movePartitionLock) {
-            if (reset) return Collections.emptyMap();
-        }
+        if (reset) return Collections.emptyMap();
         
         Map<String, SortedMap<Long, Map<String, String>>> aggregateData = new HashMap<String, SortedMap<Long, Map<String,String>>>();
         
@@ -175,9 +201,7 @@ public class DataBuffer implements DataArchive, DataProvider {
     @Override
     public Map<String, List<Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime,
             long endTime) {
-        synchronized (movePartitionLock) {
-            if (reset) return Collections.emptyMap();
-        }
+        if (reset) return Collections.emptyMap();
         
         Map<String, List<Map<String, String>>> aggregateData = new HashMap<String, List<Map<String,String>>>();
         
@@ -207,18 +231,9 @@ public class DataBuffer implements DataArchive, DataProvider {
 
     private Map<String, SortedMap<Long, Map<String, String>>> getData(PartitionDataBuffer partitionDataBuffer, Set<String> feedIDs, TimeUnit timeUnit,
                     long startTime, long endTime) {
-        synchronized (movePartitionLock) {
-            if (reset) return Collections.emptyMap();
-            
-            while (moveParitionInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
-                }
-            }
-            readInProgress = true;
-        }
+        final long start = System.nanoTime();
+        final int epoch = enterEpoch(partitionDataBuffer);
+        if (epoch < 0) return Collections.emptyMap();
         
         Set<String> searchFeedIDS = new HashSet<String>(feedIDs);
 
@@ -232,18 +247,75 @@ public class DataBuffer implements DataArchive, DataProvider {
             LOGGER.debug("time to get Data for feeds {}: {}", feedIDs, timer.getIntervalInMillis());
             return returnedData;
         } finally {
-            synchronized (movePartitionLock) {
-                readInProgress = false;
-                movePartitionLock.notifyAll();
+            exitEpoch(epoch);
+            metrics.read(partitionDataBuffer, start);
+        }
+    }
+
+    @Override
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        if (reset) return Collections.emptyMap();
+        
+        Map<String, FeedSampleBlock> aggregateData = new HashMap<String, FeedSampleBlock>();
+        
+        int startPartition = this.currentParition.getBufferEnv().getCurrentBufferPartition();
+        int i = startPartition;
+        do {
+            PartitionDataBuffer partitionBuffer = this.partitionDataBuffers[i].get();
+            if (partitionBuffer != null && isWithinTimeSpan(i, feedIDs, timeUnit, startTime, endTime)) {
+                Map<String, FeedSampleBlock> data = getSamples(partitionBuffer, feedIDs, timeUnit, startTime, endTime);
+                mergeSamples(aggregateData, data);
+                if (isFullyWithinTimeSpan(i, feedIDs, startTime, timeUnit)) {
+                    break;
+                }
             }
+            i = this.currentParition.getBufferEnv().previousBufferPartition(i);
+        } while (i != startPartition);
+        
+        return aggregateData;
+    }
+    
+    /**
+     * Merges the samples read from another partition into the aggregate. Samples already in the aggregate take
+     * precedence when both have the same time stamp.
+     */
+    protected static void mergeSamples(Map<String, FeedSampleBlock> aggregateData, Map<String, FeedSampleBlock> data) {
+        for (Entry<String, FeedSampleBlock> entry : data.entrySet()) {
+            FeedSampleBlock cumulativeData = aggregateData.get(entry.getKey());
+            if (cumulativeData == null) {
+                aggregateData.put(entry.getKey(), entry.getValue());
+            } else {
+                FeedSampleBlock mergedData = entry.getValue().copy();
+                mergedData.addAll(cumulativeData);
+                aggregateData.put(entry.getKey(), mergedData);
+            }
+        }
+    }
+
+    private Map<String, FeedSampleBlock> getSamples(PartitionDataBuffer partitionDataBuffer, Set<String> feedIDs, TimeUnit timeUnit,
+                    long startTime, long endTime) {
+        final long start = System.nanoTime();
+        final int epoch = enterEpoch(partitionDataBuffer);
+        if (epoch < 0) return Collections.emptyMap();
+        
+        try {
+            final ElapsedTimer timer = new ElapsedTimer();
+            timer.startInterval();
+
+            Map<String, FeedSampleBlock> returnedData = partitionDataBuffer.getSamples(new HashSet<String>(feedIDs), timeUnit, startTime, endTime);
+
+            timer.stopInterval();
+            LOGGER.debug("time to get samples for feeds {}: {}", feedIDs, timer.getIntervalInMillis());
+            return returnedData;
+        } finally {
+            exitEpoch(epoch);
+            metrics.read(partitionDataBuffer, start);
         }
     }
 
     @Override
     public void putData(String feedID, TimeUnit timeUnit, Map<Long, Map<String, String>> entries) throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return;
-        }
+        if (reset) return;
         
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
@@ -274,28 +346,17 @@ public class DataBuffer implements DataArchive, DataProvider {
     }
 
     private Map<String, PartitionTimestamps> putData(PartitionDataBuffer partitionBuffer, Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit)  throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return null;
-            while (moveParitionInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
-                }
-            }
-            writeInProgress = true;
-        }
-        if (this.partitionDataBuffers[partitionBuffer.getBufferEnv().getCurrentBufferPartition()].get() == null) {
-            return null;
-        }
+        final long start = System.nanoTime();
+        final int epoch = enterWriteEpoch(partitionBuffer);
+        if (epoch < 0) return null;
 
         try {
-            return partitionBuffer.putData(value, timeUnit);
+            Map<String, PartitionTimestamps> timeStamps = partitionBuffer.putData(value, timeUnit);
+            dataWritten(partitionBuffer.getBufferEnv().getCurrentBufferPartition(), value, timeUnit);
+            return timeStamps;
         } finally {
-            synchronized (movePartitionLock) {
-                writeInProgress = false;
-                movePartitionLock.notifyAll();
-            }
+            exitEpoch(epoch);
+            metrics.written(partitionBuffer, start);
         }
     }
     
@@ -303,9 +364,7 @@ public class DataBuffer implements DataArchive, DataProvider {
     public void putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit,
                     Runnable callback)  throws BufferFullException {
         PERF_LOGGER.debug("Putting data for {} feeds", value.size());
-        synchronized (movePartitionLock) {
-            if (reset) return;
-        }
+        if (reset) return;
         
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
@@ -339,9 +398,7 @@ public class DataBuffer implements DataArchive, DataProvider {
 
     @Override
     public void putData(String feedID, TimeUnit timeUnit, long time, Map<String, String> value) throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return;
-        }
+        if (reset) return;
         
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
@@ -373,6 +430,154 @@ public class DataBuffer implements DataArchive, DataProvider {
         PERF_LOGGER.debug("Time to save data for feed {}: {}", feedID, timer.getIntervalInMillis());
     }
 
+    @Override
+    public void putSamples(Map<String, FeedSampleBlock> samples, TimeUnit timeUnit, Runnable callback) throws BufferFullException {
+        PERF_LOGGER.debug("Putting samples for {} feeds", samples.size());
+        if (reset) return;
+        
+        final ElapsedTimer timer = new ElapsedTimer();
+        timer.startInterval();
+
+        int i = this.currentParition.getBufferEnv().getCurrentBufferPartition();
+        int startPartition = i;
+        do {
+            PartitionDataBuffer partitionBuffer = this.partitionDataBuffers[i].get();
+            if (partitionBuffer == null || !partitionBuffer.isActive()) {
+                break;
+            }
+            
+            LOGGER.debug("Putting samples in partition {}", i);
+
+            Map<String, PartitionTimestamps> timeStamps = putSamples(partitionBuffer, samples, timeUnit);
+            if (timeStamps != null) {
+                metaDataBuffer.updatePartitionMetaData(partitionBuffer.getBufferEnv().getCurrentBufferPartition(), timeStamps);
+            }
+            i = (i + 1) % currentParition.getBufferEnv().getNumOfBufferPartitions();
+        } while (i != startPartition);
+
+        timer.stopInterval();
+        PERF_LOGGER.debug("Time to save samples for {} feeds: {}", samples.size(), timer.getIntervalInMillis());
+
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    private Map<String, PartitionTimestamps> putSamples(PartitionDataBuffer partitionBuffer, Map<String, FeedSampleBlock> samples, TimeUnit timeUnit)  throws BufferFullException {
+        final long start = System.nanoTime();
+        final int epoch = enterWriteEpoch(partitionBuffer);
+        if (epoch < 0) return null;
+
+        try {
+            Map<String, PartitionTimestamps> timeStamps = partitionBuffer.putSamples(samples, timeUnit);
+            samplesWritten(partitionBuffer.getBufferEnv().getCurrentBufferPartition(), samples, timeUnit);
+            return timeStamps;
+        } finally {
+            exitEpoch(epoch);
+            metrics.written(partitionBuffer, start);
+        }
+    }
+
+    /**
+     * Starts a read or a write which does not look up its partition beforehand.
+     * @return the value to pass to {@link #exitEpoch(int)}, or -1 if the buffer is being reset
+     */
+    protected final int enterEpoch() {
+        int epoch = epochs.enter();
+        if (reset) {
+            epochs.exit(epoch);
+            return -1;
+        }
+        return epoch;
+    }
+
+    /**
+     * Starts a read or a write of a partition. The partition is not removed before the operation ends.
+     * @return the value to pass to {@link #exitEpoch(int)}, or -1 if the buffer is being reset or the partition
+     * was removed since it was looked up
+     */
+    protected final int enterEpoch(PartitionDataBuffer partitionBuffer) {
+        int epoch = epochs.enter();
+        if (reset || partitionBuffer == null
+                        || this.partitionDataBuffers[partitionBuffer.getBufferEnv().getCurrentBufferPartition()].get() != partitionBuffer) {
+            epochs.exit(epoch);
+            return -1;
+        }
+        return epoch;
+    }
+
+    /**
+     * Starts a write to a partition. Unlike a read, a write does not start once a rotation began making the
+     * partition inactive, as the rotation may have flushed the partition already.
+     * @return the value to pass to {@link #exitEpoch(int)}, or -1 if the buffer is being reset or the partition
+     * was removed or is no longer written since it was looked up
+     */
+    protected final int enterWriteEpoch(PartitionDataBuffer partitionBuffer) {
+        int epoch = enterEpoch(partitionBuffer);
+        if (epoch >= 0 && (partitionBuffer == retiringPartition || !partitionBuffer.isActive())) {
+            epochs.exit(epoch);
+            return -1;
+        }
+        return epoch;
+    }
+
+    protected final void exitEpoch(int epoch) {
+        epochs.exit(epoch);
+    }
+
+    /**
+     * Called once data has been written to a partition. Journals the data if the buffer has a journal.
+     */
+    protected void dataWritten(int partition, Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) {
+        HotWindowJournal j = journal;
+        if (j != null) {
+            j.appendData(partition, value, timeUnit);
+        }
+    }
+
+    /**
+     * Called once samples have been written to a partition. Journals the samples if the buffer has a journal.
+     */
+    protected void samplesWritten(int partition, Map<String, FeedSampleBlock> samples, TimeUnit timeUnit) {
+        HotWindowJournal j = journal;
+        if (j != null) {
+            j.appendSamples(partition, samples, timeUnit);
+        }
+    }
+
+    /**
+     * Called when a partition is emptied to be reused. Clears the journal of the partition if the buffer has one.
+     */
+    protected void partitionCleared(int partition) {
+        HotWindowJournal j = journal;
+        if (j != null) {
+            j.clear(partition);
+        }
+    }
+
+    /**
+     * Refills the buffer with the samples kept by a journal before the last shutdown, then journals the samples
+     * written from now on. Samples older than the time span of the buffer are dropped.
+     */
+    void restore(HotWindowJournal hotWindowJournal) {
+        DataBufferEnv env = currentParition.getBufferEnv();
+        long oldestTime = Long.MIN_VALUE;
+        if (env.getBufferTime() > 0) {
+            oldestTime = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - env.getBufferTime() * env.getNumOfBufferPartitions());
+        }
+        Map<String, Map<Long, Map<String, String>>> data = hotWindowJournal.recover(oldestTime);
+        this.journal = hotWindowJournal;
+        if (!data.isEmpty()) {
+            try {
+                putData(data, TimeUnit.NANOSECONDS, null);
+            } catch (BufferFullException e) {
+                LOGGER.error("Buffer full while restoring the memory buffer journal", e);
+            }
+            LOGGER.info("Restored {} feeds from {}", Integer.valueOf(data.size()), hotWindowJournal.getDirectory());
+        }
+        hotWindowJournal.completeRecovery();
+    }
+
     public int getConcurrencyDegree() {
         return this.currentParition.getBufferEnv().getConcurrencyDegree();
     }
@@ -384,15 +589,10 @@ public class DataBuffer implements DataArchive, DataProvider {
     @Override
     public void reset() {
         synchronized (movePartitionLock) {
-            while (moveParitionInProgress || writeInProgress || readInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
-                }
-            }
             reset = true;
         }
+        // reads and writes which started before the reset finish first
+        epochs.synchronize();
         synchronized(resetLock) {
             while (prepareNewPartitionInProgress) {
                 try {
@@ -413,6 +613,7 @@ public class DataBuffer implements DataArchive, DataProvider {
                     partitionDataBuffers[j].get().removeBuffer();
                     partitionDataBuffers[j].set(null);
                 }
+                partitionCleared(j);
             }
             
             if (this.metaDataBuffer != null) {
@@ -451,6 +652,10 @@ public class DataBuffer implements DataArchive, DataProvider {
         if (this.metaDataBuffer != null) {
             this.metaDataBuffer.close();
         }
+        if (journal != null) {
+            journal.close();
+        }
+        metrics.close();
     }
 
     private synchronized void closeBuffer(PartitionDataBuffer partitionBuffer) {
@@ -477,6 +682,7 @@ public class DataBuffer implements DataArchive, DataProvider {
             prepareNewPartitionInProgress = true;
         }
         
+        final long start = System.nanoTime();
         try {
             int newBufferPartition = this.currentParition.getBufferEnv().nextBufferPartition();
         
@@ -485,11 +691,15 @@ public class DataBuffer implements DataArchive, DataProvider {
             Map<String, SortedMap<Long, Map<String, String>>> rowOverData = null;
             if (toBeClosedBuffer != null) {
                 Set<String> rowOverFeedIDs = metaDataBuffer.resetPartitionMetaData(newBufferPartition);
+                // new reads and writes skip the partition; those still using it finish before it is removed
+                this.partitionDataBuffers[newBufferPartition].set(null);
+                epochs.synchronize();
                 if (!rowOverFeedIDs.isEmpty()) {
                     rowOverData = toBeClosedBuffer.getLastData(rowOverFeedIDs, TimeUnit.NANOSECONDS, 0, Long.MAX_VALUE);
                 }
                 closeBuffer(toBeClosedBuffer);
             }
+            partitionCleared(newBufferPartition);
 
             DataBufferEnv newBufferEnv = this.currentParition.getBufferEnv().advanceBufferPartition();
             PartitionDataBuffer newPartitionBuffer = dataBufferHelper.newPartitionBuffer(newBufferEnv);
@@ -500,7 +710,9 @@ public class DataBuffer implements DataArchive, DataProvider {
                     data.put(entry.getKey(), feedData);
                 }
                 try {
-                    Map<String, PartitionTimestamps> timeStamps = putData(newPartitionBuffer, data, TimeUnit.NANOSECONDS);
+                    // the partition is not in use yet
+                    Map<String, PartitionTimestamps> timeStamps = newPartitionBuffer.putData(data, TimeUnit.NANOSECONDS);
+                    dataWritten(newBufferPartition, data, TimeUnit.NANOSECONDS);
                     if (timeStamps != null) {
                         metaDataBuffer.updatePartitionMetaData(newBufferPartition, timeStamps);
                     }
@@ -514,10 +726,12 @@ public class DataBuffer implements DataArchive, DataProvider {
                 prepareNewPartitionInProgress = false;
                 resetLock.notifyAll();
             }
+            metrics.prepared(start);
         }
     }
 
     public void moveToNextPartition() {
+        final long start = System.nanoTime();
         int nextBufferPartition = this.currentParition.getBufferEnv().nextBufferPartition();
         int currentBufferPartition = this.currentParition.getBufferEnv().getCurrentBufferPartition();
         
@@ -527,34 +741,53 @@ public class DataBuffer implements DataArchive, DataProvider {
 
         synchronized (movePartitionLock) {
             if (reset) { return; }
-            
-            while (readInProgress || writeInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
-                }
-            }
-            moveParitionInProgress = true;
-        }
-        try {
             this.currentParition = this.partitionDataBuffers[nextBufferPartition].get();
-        } finally {
-            synchronized (movePartitionLock) {
-                moveParitionInProgress = false;
-                movePartitionLock.notifyAll();
-            }
+            retiringPartition = toBeInActiveBuffer;
         }
+        // writes which started on the previous partition finish before it is flushed, later ones skip it
+        epochs.synchronize();
         
         metaDataBuffer.writePartitionMetaData(currentBufferPartition);
         
         if (toBeInActiveBuffer != null) {
             toBeInActiveBuffer.getBufferEnv().flush();
             toBeInActiveBuffer.inactive();
+            retiringPartition = null;
+            if (toBeInActiveBuffer instanceof CompressiblePartition) {
+                compressPartition(toBeInActiveBuffer);
+            }
         } else {
             LOGGER.warn("PartitionDataBuffer object should not be null!");
             LOGGER.warn("currentBufferPartition={}, nextBufferPartition={}", currentBufferPartition, nextBufferPartition);
         }
+        metrics.moved(start);
+    }
+
+    /**
+     * Compresses an inactive partition in the background. Each step runs in an epoch of its own, so a rotation
+     * reusing the partition only waits for the current step.
+     */
+    private void compressPartition(final PartitionDataBuffer partitionBuffer) {
+        compressionThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean more = true;
+                while (more) {
+                    int epoch = enterEpoch(partitionBuffer);
+                    if (epoch < 0) {
+                        return;
+                    }
+                    try {
+                        more = ((CompressiblePartition) partitionBuffer).compressNext();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Compressing partition failed", e);
+                        more = false;
+                    } finally {
+                        exitEpoch(epoch);
+                    }
+                }
+            }
+        });
     }
 
     @Override
@@ -22,12 +22,18 @@
 package gov.nasa.arc.mct.buffer.internal;
 
 import gov.nasa.arc.mct.buffer.config.FastDiskBufferEnv;
+import gov.nasa.arc.mct.buffer.config.LogBufferEnv;
 import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
+import gov.nasa.arc.mct.buffer.config.NetworkBufferEnv;
 import gov.nasa.arc.mct.buffer.config.DiskBufferEnv;
 import gov.nasa.arc.mct.buffer.disk.internal.FastDiskDataBufferHelper;
+import gov.nasa.arc.mct.buffer.log.internal.LogDataBufferHelper;
 import gov.nasa.arc.mct.buffer.memory.internal.MemoryDataBufferHelper;
+import gov.nasa.arc.mct.buffer.memory.internal.OffHeapMemoryDataBufferHelper;
+import gov.nasa.arc.mct.buffer.network.internal.NetworkDataBufferHelper;
 import gov.nasa.arc.mct.buffer.disk.internal.NonCODDiskDataBufferHelper;
 
+import java.io.File;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -35,12 +41,21 @@ public class DataBufferFactory {
     private final static AtomicBoolean fastDiskBufferInitializeToken = new AtomicBoolean(false);
     private final static AtomicBoolean memoryBufferInitializeToken = new AtomicBoolean(false);
     private final static AtomicBoolean nonCODDiskBufferInitializeToken = new AtomicBoolean(false);
+    private final static AtomicBoolean offHeapMemoryBufferInitializeToken = new AtomicBoolean(false);
+    private final static AtomicBoolean logBufferInitializeToken = new AtomicBoolean(false);
+    private final static AtomicBoolean networkBufferInitializeToken = new AtomicBoolean(false);
     private static volatile DataBuffer fastDiskDataBuffer;
     private static volatile DataBuffer memoryDataBuffer;
     private static volatile DataBuffer nonCODDiskDataBuffer;
+    private static volatile DataBuffer offHeapMemoryDataBuffer;
+    private static volatile DataBuffer logDataBuffer;
+    private static volatile DataBuffer networkDataBuffer;
     private final static DataBufferHelper fastDiskBufferHelper = new FastDiskDataBufferHelper();
     private final static DataBufferHelper memoryBufferHelper = new MemoryDataBufferHelper();
     private final static DataBufferHelper nonCODDiskBufferHelper = new NonCODDiskDataBufferHelper();
+    private final static DataBufferHelper offHeapMemoryBufferHelper = new OffHeapMemoryDataBufferHelper();
+    private final static DataBufferHelper logBufferHelper = new LogDataBufferHelper();
+    private final static DataBufferHelper networkBufferHelper = new NetworkDataBufferHelper();
 
     private DataBufferFactory() {
         //
@@ -50,7 +65,7 @@ public class DataBufferFactory {
         if (!memoryBufferInitializeToken.get()) {
             synchronized(DataBufferFactory.class) {
                 if (memoryDataBuffer == null) {
-                    memoryDataBuffer = new CODataBuffer(new MemoryBufferEnv(prop), memoryBufferHelper);
+                    memoryDataBuffer = newMemoryDataBuffer(prop, memoryBufferHelper, "memory");
                 }
             }
             memoryBufferInitializeToken.compareAndSet(false, true);
@@ -58,11 +73,36 @@ public class DataBufferFactory {
         return memoryDataBuffer;
     }
 
+    public static DataBuffer getOffHeapMemoryDataBuffer(Properties prop) {
+        if (!offHeapMemoryBufferInitializeToken.get()) {
+            synchronized(DataBufferFactory.class) {
+                if (offHeapMemoryDataBuffer == null) {
+                    offHeapMemoryDataBuffer = newMemoryDataBuffer(prop, offHeapMemoryBufferHelper, "offheapmemory");
+                }
+            }
+            offHeapMemoryBufferInitializeToken.compareAndSet(false, true);
+        }
+        return offHeapMemoryDataBuffer;
+    }
+
+    // the buffer is refilled from its journal, if it has one, before it is handed out
+    private static DataBuffer newMemoryDataBuffer(Properties prop, DataBufferHelper helper, String name) {
+        MemoryBufferEnv env = new MemoryBufferEnv(prop);
+        DataBuffer buffer = new CODataBuffer(env, helper);
+        buffer.setName(name);
+        File dir = env.getSnapshotDirectory();
+        if (dir != null) {
+            buffer.restore(new HotWindowJournal(new File(dir, name), env.getNumOfBufferPartitions()));
+        }
+        return buffer;
+    }
+
     public static DataBuffer getFastDiskDataBuffer(Properties prop) {
         if (!fastDiskBufferInitializeToken.get()) {
             synchronized(DataBufferFactory.class) {
                 if (fastDiskDataBuffer == null) {
                     fastDiskDataBuffer = new CODataBuffer(new FastDiskBufferEnv(prop), fastDiskBufferHelper);
+                    fastDiskDataBuffer.setName("fastdisk");
                 }
             }
             fastDiskBufferInitializeToken.compareAndSet(false, true);
@@ -75,19 +115,58 @@ public class DataBufferFactory {
             synchronized(DataBufferFactory.class) {
                 if (nonCODDiskDataBuffer == null) {
                     nonCODDiskDataBuffer = new NonCODataBuffer(new DiskBufferEnv(prop), nonCODDiskBufferHelper);
+                    nonCODDiskDataBuffer.setName("noncoddisk");
                 }
             }
             nonCODDiskBufferInitializeToken.compareAndSet(false, true);
         }
         return nonCODDiskDataBuffer;
     }
+
+    public static DataBuffer getLogDataBuffer(Properties prop) {
+        if (!logBufferInitializeToken.get()) {
+            synchronized(DataBufferFactory.class) {
+                if (logDataBuffer == null) {
+                    logDataBuffer = new CODataBuffer(new LogBufferEnv(prop), logBufferHelper);
+                    logDataBuffer.setName("mmaplog");
+                }
+            }
+            logBufferInitializeToken.compareAndSet(false, true);
+        }
+        return logDataBuffer;
+    }
+
+    public static DataBuffer getNetworkDataBuffer(Properties prop) {
+        if (!networkBufferInitializeToken.get()) {
+            synchronized(DataBufferFactory.class) {
+                if (networkDataBuffer == null) {
+                    // rollups and the change index would only cover the samples this process writes and hide
+                    // those of the other clients, so requests read the samples of the server
+                    Properties networkProp = new Properties();
+                    networkProp.putAll(prop);
+                    networkProp.setProperty(RollupTier.RESOLUTIONS_PROPERTY, "");
+                    networkProp.setProperty(ChangeIndex.MAX_CHANGES_PROPERTY, "0");
+                    networkDataBuffer = new CODataBuffer(new NetworkBufferEnv(networkProp), networkBufferHelper);
+                    networkDataBuffer.setName("network");
+                }
+            }
+            networkBufferInitializeToken.compareAndSet(false, true);
+        }
+        return networkDataBuffer;
+    }
 
     static void reset() {
         fastDiskDataBuffer = null;
         memoryDataBuffer = null;
         nonCODDiskDataBuffer = null;
+        offHeapMemoryDataBuffer = null;
+        logDataBuffer = null;
+        networkDataBuffer = null;
         fastDiskBufferInitializeToken.set(false);
         memoryBufferInitializeToken.set(false);
         nonCODDiskBufferInitializeToken.set(false);
+        offHeapMemoryBufferInitializeToken.set(false);
+        logBufferInitializeToken.set(false);
+        networkBufferInitializeToken.set(false);
     }
 }
@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+import gov.nasa.arc.mct.buffer.util.FeedDataCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Journal of the samples written to the partitions of the memory buffer, so the buffer can be refilled when the
+ * aggregator restarts instead of starting empty. Each partition appends to a file of its own, which is truncated
+ * when the partition is emptied; the files thus hold the samples the memory buffer holds.
+ * <p>
+ * Each write is appended as a record made of its length, the CRC-32 of its content and its content. A record left
+ * incomplete by a crash fails its check and ends the replay of the file, so a restart sees every write whose record
+ * was completed. On startup, {@link #recover(long)} moves the files to a replay directory before they are read; the
+ * directory is only removed once the recovered samples have been journaled again, so a crash during the recovery
+ * loses nothing either.
+ */
+final class HotWindowJournal {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HotWindowJournal.class);
+
+    static final String DIR_PROPERTY = "memory.buffer.snapshot.dir";
+
+    private static final String SUFFIX = ".journal";
+    private static final String REPLAY_DIR = "replay";
+    private static final String REPLAY_TMP_DIR = "replay.tmp";
+    private static final String REPLAY_OLD_DIR = "replay.old";
+
+    private final File dir;
+    private final Partition[] partitions;
+
+    /**
+     * @param dir directory of the journal files
+     * @param numOfPartitions number of partitions of the memory buffer
+     */
+    HotWindowJournal(File dir, int numOfPartitions) {
+        this.dir = dir;
+        this.partitions = new Partition[numOfPartitions];
+        for (int i = 0; i < numOfPartitions; i++) {
+            partitions[i] = new Partition(new File(dir, "hot-" + i + SUFFIX));
+        }
+    }
+
+    File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Reads back the samples journaled before the last shutdown or crash, and starts new, empty journal files.
+     * {@link #completeRecovery()} must be called once the samples have been written to the buffer again.
+     * @param oldestTime time stamp, in nanoseconds, of the oldest sample to keep
+     * @return the samples keyed by feed and by time stamp in nanoseconds
+     */
+    Map<String, Map<Long, Map<String, String>>> recover(long oldestTime) {
+        Map<String, Map<Long, Map<String, String>>> data = new HashMap<String, Map<Long, Map<String, String>>>();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOGGER.error("Cannot create the memory buffer journal directory {}", dir);
+            return data;
+        }
+        deleteDirectory(new File(dir, REPLAY_OLD_DIR));
+        File replay = new File(dir, REPLAY_DIR);
+        if (replay.isDirectory()) {
+            // a previous recovery did not complete; what was journaled since is also in the replay directory
+            for (File f : listJournals(dir)) {
+                f.delete();
+            }
+        } else {
+            File replayTmp = new File(dir, REPLAY_TMP_DIR);
+            replayTmp.mkdir();
+            for (File f : listJournals(dir)) {
+                if (!f.renameTo(new File(replayTmp, f.getName()))) {
+                    LOGGER.warn("Cannot move memory buffer journal {}", f);
+                }
+            }
+            if (!replayTmp.renameTo(replay)) {
+                LOGGER.error("Cannot move the memory buffer journal to {}", replay);
+                return data;
+            }
+        }
+
+        long start = System.nanoTime();
+        int records = 0;
+        for (File f : listJournals(replay)) {
+            records += read(f, data);
+        }
+        int dropped = 0;
+        for (Iterator<Map<Long, Map<String, String>>> it = data.values().iterator(); it.hasNext();) {
+            SortedMap<Long, Map<String, String>> feedData = (SortedMap<Long, Map<String, String>>) it.next();
+            SortedMap<Long, Map<String, String>> old = feedData.headMap(Long.valueOf(oldestTime));
+            dropped += old.size();
+            old.clear();
+            if (feedData.isEmpty()) {
+                it.remove();
+            }
+        }
+        if (dropped > 0) {
+            LOGGER.info("Dropped {} samples of the memory buffer journal older than the memory buffer", Integer.valueOf(dropped));
+        }
+        if (records > 0) {
+            LOGGER.info("Read {} records from the memory buffer journal in {} ms", Integer.valueOf(records),
+                            Long.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
+        return data;
+    }
+
+    /**
+     * Makes the journal files durable and discards the files read by {@link #recover(long)}.
+     */
+    void completeRecovery() {
+        for (Partition p : partitions) {
+            p.force();
+        }
+        File replay = new File(dir, REPLAY_DIR);
+        File old = new File(dir, REPLAY_OLD_DIR);
+        if (replay.renameTo(old)) {
+            deleteDirectory(old);
+        } else if (replay.exists()) {
+            LOGGER.warn("Cannot move {}, deleting it in place", replay);
+            deleteDirectory(replay);
+        }
+    }
+
+    /**
+     * Appends the samples written to a partition.
+     */
+    void appendData(int partition, Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            FeedDataCodec.writeData(newRecord(bytes), value, timeUnit);
+            partitions[partition].append(bytes);
+        } catch (IOException e) {
+            LOGGER.error("Cannot write to the memory buffer journal", e);
+        }
+    }
+
+    /**
+     * Appends the samples written to a partition.
+     */
+    void appendSamples(int partition, Map<String, FeedSampleBlock> samples, TimeUnit timeUnit) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            FeedDataCodec.writeSamples(newRecord(bytes), samples, timeUnit);
+            partitions[partition].append(bytes);
+        } catch (IOException e) {
+            LOGGER.error("Cannot write to the memory buffer journal", e);
+        }
+    }
+
+    /**
+     * Discards the samples of a partition, once it is emptied.
+     */
+    void clear(int partition) {
+        partitions[partition].clear();
+    }
+
+    void close() {
+        for (Partition p : partitions) {
+            p.close();
+        }
+    }
+
+    private static File[] listJournals(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        int n = 0;
+        for (File f : files) {
+            if (f.isFile() && f.getName().endsWith(SUFFIX)) {
+                files[n++] = f;
+            }
+        }
+        File[] journals = new File[n];
+        System.arraycopy(files, 0, journals, 0, n);
+        return journals;
+    }
+
+    private static void deleteDirectory(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    // the record header is filled in once the content is known
+    private static DataOutputStream newRecord(ByteArrayOutputStream bytes) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        return out;
+    }
+
+    /**
+     * Reads the records of a file up to the first incomplete or damaged one.
+     * @return the number of records read
+     */
+    static int read(File f, Map<String, Map<Long, Map<String, String>>> data) {
+        int records = 0;
+        try {
+            RandomAccessFile raf = new RandomAccessFile(f, "r");
+            try {
+                // read in one go rather than mapped, so the file can be deleted right after on all platforms
+                FileChannel channel = raf.getChannel();
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                CRC32 crc = new CRC32();
+                while (buffer.remaining() >= 8) {
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (length < 0 || length > buffer.remaining()) {
+                        break;
+                    }
+                    byte[] record = new byte[length];
+                    buffer.get(record);
+                    crc.reset();
+                    crc.update(record);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    readRecord(record, data);
+                    records++;
+                }
+                if (buffer.hasRemaining()) {
+                    LOGGER.warn("Ignoring the incomplete end of memory buffer journal {}", f);
+                }
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Cannot read memory buffer journal " + f, e);
+        }
+        return records;
+    }
+
+    private static void readRecord(byte[] record, Map<String, Map<Long, Map<String, String>>> data) throws IOException {
+        Map<String, SortedMap<Long, Map<String, String>>> value;
+        try {
+            value = FeedDataCodec.readData(new DataInputStream(new ByteArrayInputStream(record)));
+        } catch (EOFException e) {
+            throw new IOException("Malformed memory buffer journal record");
+        }
+        for (Entry<String, SortedMap<Long, Map<String, String>>> feed : value.entrySet()) {
+            Map<Long, Map<String, String>> feedData = data.get(feed.getKey());
+            if (feedData == null) {
+                data.put(feed.getKey(), feed.getValue());
+            } else {
+                feedData.putAll(feed.getValue());
+            }
+        }
+    }
+
+    /**
+     * Journal file of a partition.
+     */
+    private static final class Partition {
+        private final File file;
+        private FileChannel channel;
+
+        Partition(File file) {
+            this.file = file;
+        }
+
+        synchronized void append(ByteArrayOutputStream bytes) throws IOException {
+            ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+            CRC32 crc = new CRC32();
+            crc.update(record.array(), 8, record.capacity() - 8);
+            record.putInt(0, record.capacity() - 8);
+            record.putInt(4, (int) crc.getValue());
+            FileChannel c = open();
+            while (record.hasRemaining()) {
+                c.write(record);
+            }
+        }
+
+        synchronized void clear() {
+            if (channel != null) {
+                try {
+                    channel.truncate(0);
+                } catch (IOException e) {
+                    LOGGER.error("Cannot clear memory buffer journal " + file, e);
+                }
+            }
+        }
+
+        synchronized void force() {
+            if (channel != null) {
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    LOGGER.error("Cannot sync memory buffer journal " + file, e);
+                }
+            }
+        }
+
+        synchronized void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // ignore exception
+                }
+                channel = null;
+            }
+        }
+
+        private FileChannel open() throws IOException {
+            if (channel == null) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                raf.setLength(0);
+                channel = raf.getChannel();
+            }
+            return channel;
+        }
+    }
+}
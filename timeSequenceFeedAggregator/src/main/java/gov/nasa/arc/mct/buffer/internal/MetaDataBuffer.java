@@ -101,6 +101,39 @@ public class MetaDataBuffer {
         }
     }
 
+    /**
+     * Returns true if any of the feeds has samples in a partition between the times.
+     */
+    public boolean isWithinTimeSpan(int bufferPartition, Set<String> feedIDs, TimeUnit timeunit, long startTime, long endTime) {
+        long startTimeInNanos = TimeUnit.NANOSECONDS.convert(startTime, timeunit);
+        long endTimeInNanos = TimeUnit.NANOSECONDS.convert(endTime, timeunit);
+
+        synchronized (this) {
+            PartitionMetaData partitionMetaData = partitionMetaDatas[bufferPartition];
+            if (partitionMetaData == null) {
+                return false;
+            }
+            
+            return partitionMetaData.isWithinTimeSpan(feedIDs, startTimeInNanos, endTimeInNanos);
+        }
+    }
+    
+    /**
+     * Returns true if a partition has all the samples of all the feeds since the start time.
+     */
+    public boolean isFullyWithinTimeSpan(int bufferPartition, Set<String> feedIDs, TimeUnit timeunit, long startTime) {
+        long startTimeInNanos = TimeUnit.NANOSECONDS.convert(startTime, timeunit);
+        
+        synchronized (this) {
+            PartitionMetaData partitionMetaData = partitionMetaDatas[bufferPartition];
+            if (partitionMetaData == null) {
+                return false;
+            }
+            
+            return partitionMetaData.isFullyWithinTimeSpan(feedIDs, startTimeInNanos);
+        }
+    }
+
     public synchronized PartitionMetaData removePartitionMetaData(int bufferPartition) {
         PartitionMetaData partitionMetaData = this.partitionMetaDatas[bufferPartition];
         this.partitionMetaDatas[bufferPartition] = null;
@@ -164,6 +197,16 @@ public class MetaDataBuffer {
         partitionMetaData.updateTimestamp(feedID, startTime, endTime);
     }
 
+    /**
+     * Moves the start time stamp of a feed forward after a partition has discarded its oldest samples.
+     */
+    public synchronized void truncatePartitionMetaData(int bufferPartition, String feedID, long startTime) {
+        PartitionMetaData partitionMetaData = partitionMetaDatas[bufferPartition];
+        if (partitionMetaData != null) {
+            partitionMetaData.truncateTimestamp(feedID, startTime);
+        }
+    }
+
     public void writePartitionMetaData(int bufferPartition) {
     }
 
@@ -176,6 +219,10 @@ public class MetaDataBuffer {
     }
 
     public void close() {
+        if (metaEnv == null) {
+            // already closed
+            return;
+        }
         partitionMetaDatas = new PartitionMetaData[metaEnv.getNumOfBufferPartitions()];
         metaEnv = null;
     }
@@ -137,9 +137,7 @@ public final class NonCODataBuffer extends DataBuffer implements DataArchive, Da
         Set<String> requestFeedIDs = new HashSet<String>(feedIDs);
         Map<String, FeedRequestContext>[] partitionFeeds = mapFeedsToPartitions(requestFeedIDs, startTime, endTime, timeUnit);
         
-        synchronized (movePartitionLock) {
-            if (reset) return Collections.emptyMap();
-        }
+        if (reset) return Collections.emptyMap();
         
         Map<String, SortedMap<Long, Map<String, String>>> aggregateData = new HashMap<String, SortedMap<Long, Map<String,String>>>();
         
@@ -170,9 +168,7 @@ public final class NonCODataBuffer extends DataBuffer implements DataArchive, Da
         Set<String> requestFeedIDs = new HashSet<String>(feedIDs);
         Map<String, FeedRequestContext>[] partitionFeeds = mapFeedsToPartitions(requestFeedIDs, startTime, endTime, timeUnit);
         
-        synchronized (movePartitionLock) {
-            if (reset) return Collections.emptyMap();
-        }
+        if (reset) return Collections.emptyMap();
         
         Map<String, List<Map<String, String>>> aggregateData = new HashMap<String, List<Map<String,String>>>();
         
@@ -198,18 +194,9 @@ public final class NonCODataBuffer extends DataBuffer implements DataArchive, Da
 
     private Map<String, SortedMap<Long, Map<String, String>>> getData(PartitionDataBuffer partitionDataBuffer, Map<String, FeedRequestContext> feedRequestContexts, TimeUnit timeUnit,
                     long startTime, long endTime) {
-        synchronized (movePartitionLock) {
-            if (reset) return Collections.emptyMap();
-            
-            while (moveParitionInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
-                }
-            }
-            readInProgress = true;
-        }
+        final long start = System.nanoTime();
+        final int epoch = enterEpoch(partitionDataBuffer);
+        if (epoch < 0) return Collections.emptyMap();
         
         try {
             final ElapsedTimer timer = new ElapsedTimer();
@@ -256,18 +243,14 @@ public final class NonCODataBuffer extends DataBuffer implements DataArchive, Da
             LOGGER.debug("time to get Data for feeds {}: {}", feedRequestContexts, timer.getIntervalInMillis());
             return returnedData;
         } finally {
-            synchronized (movePartitionLock) {
-                readInProgress = false;
-                movePartitionLock.notifyAll();
-            }
+            exitEpoch(epoch);
+            metrics.read(partitionDataBuffer, start);
         }
     }
 
     @Override
     public void putData(String feedID, TimeUnit timeUnit, Map<Long, Map<String, String>> entries) throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return;
-        }
+        if (reset) return;
         
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
@@ -298,56 +281,30 @@ public final class NonCODataBuffer extends DataBuffer implements DataArchive, Da
     }
     
     private void putData(PartitionDataBuffer partitionBuffer, Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit, MetaDataBuffer metadata, int metadataIndex)  throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return;
-            while (moveParitionInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
-                }
-            }
-            writeInProgress = true;
-        }
-        if (this.partitionDataBuffers[partitionBuffer.getBufferEnv().getCurrentBufferPartition()].get() == null) {
-            return;
-        }
+        final long start = System.nanoTime();
+        final int epoch = enterWriteEpoch(partitionBuffer);
+        if (epoch < 0) return;
 
         try {
             partitionBuffer.putData(value, timeUnit, metadata, metadataIndex);
         } finally {
-            synchronized (movePartitionLock) {
-                writeInProgress = false;
-                movePartitionLock.notifyAll();
-            }
+            exitEpoch(epoch);
+            metrics.written(partitionBuffer, start);
         }
     
     }
     
     
     private Map<String, PartitionTimestamps> putData(PartitionDataBuffer partitionBuffer, Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit)  throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return null;
-            while (moveParitionInProgress) {
-                try {
-                    movePartitionLock.wait();
-                } catch (InterruptedException e) {
-                    // ignore
-                }
-            }
-            writeInProgress = true;
-        }
-        if (this.partitionDataBuffers[partitionBuffer.getBufferEnv().getCurrentBufferPartition()].get() == null) {
-            return null;
-        }
+        final long start = System.nanoTime();
+        final int epoch = enterWriteEpoch(partitionBuffer);
+        if (epoch < 0) return null;
 
         try {
             return partitionBuffer.putData(value, timeUnit);
         } finally {
-            synchronized (movePartitionLock) {
-                writeInProgress = false;
-                movePartitionLock.notifyAll();
-            }
+            exitEpoch(epoch);
+            metrics.written(partitionBuffer, start);
         }
     }
     
@@ -355,9 +312,7 @@ public final class NonCODataBuffer extends DataBuffer implements DataArchive, Da
     public void putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit,
                     Runnable callback)  throws BufferFullException {
         PERF_WRITE_LOGGER.debug("NonCOD Putting data for {} feeds", value);
-        synchronized (movePartitionLock) {
-            if (reset) return;
-        }
+        if (reset) return;
         
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
@@ -388,9 +343,7 @@ public final class NonCODataBuffer extends DataBuffer implements DataArchive, Da
 
     @Override
     public void putData(String feedID, TimeUnit timeUnit, long time, Map<String, String> value) throws BufferFullException {
-        synchronized (movePartitionLock) {
-            if (reset) return;
-        }
+        if (reset) return;
         
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
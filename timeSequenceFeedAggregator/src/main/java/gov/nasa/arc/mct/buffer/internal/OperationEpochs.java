@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tracks the reads and writes in progress so a partition can be swapped out without stopping them. An operation
+ * enters the current epoch before it looks up a partition and exits it when done; after changing which partitions
+ * are in use, {@link #synchronize()} starts a new epoch and waits for the operations of the previous one, which may
+ * still use the old partitions. Operations never wait on each other or on a partition rotation.
+ */
+final class OperationEpochs {
+    private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AtomicLong epoch = new AtomicLong();
+    private final AtomicInteger[] operations = { new AtomicInteger(), new AtomicInteger() };
+
+    /**
+     * Enters the current epoch.
+     * @return the slot to pass to {@link #exit(int)}
+     */
+    int enter() {
+        while (true) {
+            long current = epoch.get();
+            int slot = (int) (current & 1);
+            operations[slot].incrementAndGet();
+            if (epoch.get() == current) {
+                return slot;
+            }
+            // a new epoch started in between, the operation belongs to it
+            operations[slot].decrementAndGet();
+        }
+    }
+
+    void exit(int slot) {
+        operations[slot].decrementAndGet();
+    }
+
+    /**
+     * Starts a new epoch and waits until the operations which entered the previous one exit. Changes made before
+     * the call are seen by all the operations still in progress when it returns.
+     */
+    synchronized void synchronize() {
+        int slot = (int) (epoch.getAndIncrement() & 1);
+        while (operations[slot].get() > 0) {
+            LockSupport.parkNanos(POLL_NANOS);
+        }
+    }
+}
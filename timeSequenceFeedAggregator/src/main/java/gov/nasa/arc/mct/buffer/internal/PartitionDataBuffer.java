@@ -22,6 +22,7 @@
 package gov.nasa.arc.mct.buffer.internal;
 
 import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
 import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
 import gov.nasa.arc.mct.buffer.disk.internal.PartitionTimestamps;
 
@@ -38,8 +39,23 @@ public interface PartitionDataBuffer {
      */
     public Map<String, SortedMap<Long, Map<String, String>>> getLastData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime);
     
+    /**
+     * Typed version of {@link #getData(Set, TimeUnit, long, long)}. Time stamps in the returned blocks are in nanoseconds.
+     */
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime);
+    
+    /**
+     * Typed version of {@link #getLastData(Set, TimeUnit, long, long)}.
+     */
+    public Map<String, FeedSampleBlock> getLastSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime);
+    
     public Map<String, PartitionTimestamps> putData(Map<String, Map<Long, Map<String, String>>> value, final TimeUnit timeUnit)  throws BufferFullException;
     
+    /**
+     * Typed version of {@link #putData(Map, TimeUnit)}.
+     */
+    public Map<String, PartitionTimestamps> putSamples(Map<String, FeedSampleBlock> value, final TimeUnit timeUnit)  throws BufferFullException;
+    
     public void putData(Map<String, Map<Long, Map<String, String>>> value, final TimeUnit timeUnit, MetaDataBuffer metadata, int metadataIndex)  throws BufferFullException;
     
     public boolean isActive();
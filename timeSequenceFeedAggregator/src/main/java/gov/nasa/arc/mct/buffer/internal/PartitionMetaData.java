@@ -31,13 +31,15 @@ import java.util.Set;
 import com.sleepycat.persist.model.Entity;
 import com.sleepycat.persist.model.PrimaryKey;
 
-@Entity
+@Entity(version = 1)
 public final class PartitionMetaData {
     @PrimaryKey
     private Integer partitionId;
     
     private Map<String, PartitionTimestamps> timestamps = new HashMap<String, PartitionTimestamps>();
     private volatile boolean currentPartition;
+    // null when loaded from a store written before summaries were kept
+    private PartitionSummary summary = new PartitionSummary();
     
     public PartitionMetaData() {
         
@@ -62,19 +64,35 @@ public final class PartitionMetaData {
     public void updateTimestamp(String feedID, long startTime, long endTime) {
         PartitionTimestamps ts = timestamps.get(feedID);
         if (ts == null) {
+            if (!timestamps.containsKey(feedID)) {
+                addToSummary(feedID);
+            }
             timestamps.put(feedID, new PartitionTimestamps(startTime,endTime));
         } else {
             ts.merge(startTime,endTime);
         }
+        getSummary().addTimestamps(startTime, endTime);
     }
     
     public void updateTimestamp(String feedID, PartitionTimestamps originalTs) {
         PartitionTimestamps ts = timestamps.get(feedID);
         if (ts == null) {
+            if (!timestamps.containsKey(feedID)) {
+                addToSummary(feedID);
+            }
             timestamps.put(feedID, originalTs);
         } else {
             ts.merge(originalTs);
         }
+        getSummary().addTimestamps(originalTs.getStartTimestamp(), originalTs.getEndTimestamp());
+    }
+    
+    public void truncateTimestamp(String feedID, long startTime) {
+        PartitionTimestamps ts = timestamps.get(feedID);
+        if (ts != null && ts.getStartTimestamp() < startTime) {
+            ts.setStartTimestamp(startTime);
+            getSummary().truncate(startTime);
+        }
     }
     
     public void setTimeStamp(Map<String, PartitionTimestamps> ts) {
@@ -82,6 +100,7 @@ public final class PartitionMetaData {
         for (String feedID : ts.keySet()) {
             timestamps.put(feedID, ts.get(feedID).clone());
         }
+        summary = PartitionSummary.build(timestamps);
     }
 
     public boolean hasFeed(String feedID) {
@@ -91,6 +110,7 @@ public final class PartitionMetaData {
     public void addFeeds(Set<String> feedIDs) {
         for (String feedID : feedIDs) {
             if(!timestamps.containsKey(feedID)) {
+                addToSummary(feedID);
                 timestamps.put(feedID, null);
             }
         }
@@ -102,6 +122,24 @@ public final class PartitionMetaData {
     
     public void reset() {
         timestamps.clear();
+        summary = new PartitionSummary();
+    }
+    
+    private PartitionSummary getSummary() {
+        if (summary == null) {
+            summary = PartitionSummary.build(timestamps);
+        }
+        return summary;
+    }
+    
+    private void addToSummary(String feedID) {
+        PartitionSummary s = getSummary();
+        s.addFeed(feedID);
+        if (s.isOverCapacity()) {
+            // the new feed is added to the map by the caller, the rebuilt filter must have it too
+            summary = PartitionSummary.build(timestamps);
+            summary.addFeed(feedID);
+        }
     }
     
     public long getStartTimestamp(String feedID) {
@@ -130,6 +168,39 @@ public final class PartitionMetaData {
         return (startTime <= end || end == -1) && endTime >= start;
     }
 
+    /**
+     * Returns true if any of the feeds has samples between the times, in nanoseconds. Partitions whose feeds are
+     * all outside the times are answered from the summary.
+     */
+    public boolean isWithinTimeSpan(Set<String> feedIDs, long startTime, long endTime) {
+        PartitionSummary s = getSummary();
+        if (!s.mightOverlap(startTime, endTime)) {
+            return false;
+        }
+        for (String feedID : feedIDs) {
+            if (s.mightHaveFeed(feedID) && isWithinTimeSpan(feedID, startTime, endTime)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the partition has all the samples of all the feeds since the time, in nanoseconds.
+     */
+    public boolean isFullyWithinTimeSpan(Set<String> feedIDs, long startTime) {
+        PartitionSummary s = getSummary();
+        if (!feedIDs.isEmpty() && s.noneStartBy(startTime)) {
+            return false;
+        }
+        for (String feedID : feedIDs) {
+            if (!s.mightHaveFeed(feedID) || !isFullyWithinTimeSpan(feedID, startTime)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public boolean isFullyWithinTimeSpan(String feedID, long startTime) {
         PartitionTimestamps timeStamp = timestamps.get(feedID);
         if (timeStamp == null) {
@@ -148,7 +219,11 @@ public final class PartitionMetaData {
             String feedID = entry.getKey();
             PartitionTimestamps newTS = entry.getValue();
             PartitionTimestamps timeStamp = timestamps.get(feedID);
+            getSummary().addTimestamps(newTS.getStartTimestamp(), newTS.getEndTimestamp());
             if (timeStamp == null) {
+                if (!timestamps.containsKey(feedID)) {
+                    addToSummary(feedID);
+                }
                 timestamps.put(feedID, newTS.clone());
                 continue;
             }
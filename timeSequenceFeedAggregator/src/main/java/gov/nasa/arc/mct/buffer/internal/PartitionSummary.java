@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.buffer.disk.internal.PartitionTimestamps;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.sleepycat.persist.model.Persistent;
+
+/**
+ * Compact summary of the feeds of a partition, used to skip partitions without looking up each requested feed.
+ * The summary holds the span of the time stamps of all the feeds and a Bloom filter over the feed IDs. Both are
+ * conservative: the span may be wider than the time stamps and the filter may report feeds the partition does
+ * not have, but a partition is never skipped for a feed it has.
+ */
+@Persistent
+public final class PartitionSummary {
+    private static final int MIN_CAPACITY = 256;
+    private static final int BITS_PER_FEED = 10;
+    private static final int NUM_OF_HASHES = 7;
+
+    private long minStart = Long.MAX_VALUE;
+    private long maxStart = Long.MIN_VALUE;
+    private long maxEnd = Long.MIN_VALUE;
+    private boolean openEnded;
+    private int numOfFeeds;
+    private int capacity;
+    private long[] bits;
+
+    public PartitionSummary() {
+        this(MIN_CAPACITY);
+    }
+
+    private PartitionSummary(int capacity) {
+        this.capacity = capacity;
+        this.bits = new long[(capacity * BITS_PER_FEED + 63) / 64];
+    }
+
+    /**
+     * Builds the summary of the time stamps of a partition.
+     */
+    static PartitionSummary build(Map<String, PartitionTimestamps> timestamps) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < timestamps.size()) {
+            capacity *= 2;
+        }
+        PartitionSummary summary = new PartitionSummary(capacity);
+        for (Entry<String, PartitionTimestamps> entry : timestamps.entrySet()) {
+            summary.addFeed(entry.getKey());
+            PartitionTimestamps ts = entry.getValue();
+            if (ts != null) {
+                summary.addTimestamps(ts.getStartTimestamp(), ts.getEndTimestamp());
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Returns true if the filter has grown past its capacity, in which case the summary should be rebuilt to keep
+     * the rate of false positives low.
+     */
+    boolean isOverCapacity() {
+        return numOfFeeds > capacity;
+    }
+
+    void addFeed(String feedID) {
+        numOfFeeds++;
+        int h1 = feedID.hashCode();
+        int h2 = mix(h1);
+        int numOfBits = bits.length * 64;
+        for (int i = 0; i < NUM_OF_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numOfBits;
+            bits[bit >>> 6] |= 1L << (bit & 63);
+        }
+    }
+
+    void addTimestamps(long startTime, long endTime) {
+        minStart = Math.min(minStart, startTime);
+        maxStart = Math.max(maxStart, startTime);
+        if (endTime == -1) {
+            openEnded = true;
+        } else {
+            maxEnd = Math.max(maxEnd, endTime);
+        }
+    }
+
+    /**
+     * Records that the samples of a feed now start at a later time.
+     */
+    void truncate(long startTime) {
+        maxStart = Math.max(maxStart, startTime);
+    }
+
+    /**
+     * Returns false if the partition certainly does not have the feed.
+     */
+    boolean mightHaveFeed(String feedID) {
+        int h1 = feedID.hashCode();
+        int h2 = mix(h1);
+        int numOfBits = bits.length * 64;
+        for (int i = 0; i < NUM_OF_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numOfBits;
+            if ((bits[bit >>> 6] & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns false if no feed of the partition has samples between the times, in nanoseconds.
+     */
+    boolean mightOverlap(long startTime, long endTime) {
+        if (minStart == Long.MAX_VALUE) {
+            return false;
+        }
+        return (openEnded || startTime <= maxEnd) && endTime >= minStart;
+    }
+
+    /**
+     * Returns true if none of the feeds start by the time, in nanoseconds.
+     */
+    boolean noneStartBy(long startTime) {
+        return minStart == Long.MAX_VALUE || startTime < minStart;
+    }
+
+    // second hash for double hashing, from the finalizer of MurmurHash3
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
@@ -0,0 +1,388 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rollups of the samples of a partition at a few fixed resolutions. For each interval of a resolution, a rollup keeps
+ * the first, last, minimum and maximum samples of each feed, so a request over a wide time span can be answered
+ * with a handful of samples per interval instead of every sample. Samples without a numeric value only count
+ * as first and last samples.
+ * <p>
+ * Rollups are built as samples are written, so they only cover the samples of the feeds which were written after
+ * the partition was created; other feeds are reported as incomplete. A feed also becomes incomplete when a sample
+ * replaces the minimum or maximum sample of an interval with one that is no longer the extreme, since the rollup
+ * does not know the other samples of the interval.
+ */
+final class RollupTier {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RollupTier.class);
+
+    static final String RESOLUTIONS_PROPERTY = "buffer.rollup.resolutions.millis";
+    private static final long[] DEFAULT_RESOLUTIONS = {
+        TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(10), TimeUnit.MINUTES.toNanos(1)
+    };
+
+    /**
+     * Returns the resolutions configured by <code>buffer.rollup.resolutions.millis</code>, in nanoseconds and in
+     * ascending order. An empty property disables the rollups.
+     */
+    static long[] getResolutions(Properties prop) {
+        String value = prop == null ? null : prop.getProperty(RESOLUTIONS_PROPERTY);
+        if (value == null) {
+            return DEFAULT_RESOLUTIONS;
+        }
+        String[] millis = value.trim().length() == 0 ? new String[0] : value.split(",");
+        long[] resolutions = new long[millis.length];
+        int n = 0;
+        for (String m : millis) {
+            try {
+                long resolution = Long.parseLong(m.trim());
+                if (resolution > 0) {
+                    resolutions[n++] = TimeUnit.MILLISECONDS.toNanos(resolution);
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Ignoring rollup resolution {}", m);
+            }
+        }
+        resolutions = Arrays.copyOf(resolutions, n);
+        Arrays.sort(resolutions);
+        return resolutions;
+    }
+
+    /**
+     * Returns the index of the coarsest resolution which is not coarser than the requested one, or -1 if all the
+     * resolutions are coarser.
+     */
+    static int selectLevel(long[] resolutions, long resolution) {
+        int level = -1;
+        for (int i = 0; i < resolutions.length && resolutions[i] <= resolution; i++) {
+            level = i;
+        }
+        return level;
+    }
+
+    private final long[] resolutions;
+    private final ConcurrentMap<String, FeedRollup> feeds = new ConcurrentHashMap<String, FeedRollup>();
+    private final Set<String> incompleteFeeds;
+
+    /**
+     * @param resolutions resolutions in nanoseconds, in ascending order
+     * @param incompleteFeeds feeds the partition already has samples for
+     */
+    RollupTier(long[] resolutions, Collection<String> incompleteFeeds) {
+        this.resolutions = resolutions;
+        this.incompleteFeeds = new HashSet<String>(incompleteFeeds);
+    }
+
+    /**
+     * Returns true if the rollups of a feed cover all of its samples in the partition.
+     */
+    boolean isComplete(String feedID) {
+        synchronized (incompleteFeeds) {
+            return !incompleteFeeds.contains(feedID);
+        }
+    }
+
+    /**
+     * Discards the rollups, once the partition is emptied.
+     */
+    void clear() {
+        feeds.clear();
+        synchronized (incompleteFeeds) {
+            incompleteFeeds.clear();
+        }
+    }
+
+    void putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) {
+        if (resolutions.length == 0) {
+            return;
+        }
+        for (Entry<String, Map<Long, Map<String, String>>> feed : value.entrySet()) {
+            FeedRollup rollup = getRollup(feed.getKey());
+            if (rollup == null) {
+                continue;
+            }
+            boolean complete = true;
+            synchronized (rollup) {
+                for (Entry<Long, Map<String, String>> sample : feed.getValue().entrySet()) {
+                    complete &= rollup.add(TimeUnit.NANOSECONDS.convert(sample.getKey().longValue(), timeUnit), sample.getValue(),
+                                    getValue(sample.getValue()));
+                }
+            }
+            if (!complete) {
+                markIncomplete(feed.getKey());
+            }
+        }
+    }
+
+    void putSamples(Map<String, FeedSampleBlock> samples, TimeUnit timeUnit) {
+        if (resolutions.length == 0) {
+            return;
+        }
+        for (Entry<String, FeedSampleBlock> feed : samples.entrySet()) {
+            FeedSampleBlock block = feed.getValue();
+            FeedRollup rollup = getRollup(feed.getKey());
+            if (rollup == null) {
+                continue;
+            }
+            boolean complete = true;
+            synchronized (rollup) {
+                for (int i = 0; i < block.size(); i++) {
+                    complete &= rollup.add(TimeUnit.NANOSECONDS.convert(block.getTime(i), timeUnit), block, i, block.getValue(i));
+                }
+            }
+            if (!complete) {
+                markIncomplete(feed.getKey());
+            }
+        }
+    }
+
+    /**
+     * Returns the rollup samples of a feed.
+     * @param level index of the resolution
+     * @param startTime start time in nanoseconds
+     * @param endTime end time in nanoseconds
+     * @return the samples between startTime and endTime, or null if the feed has no samples
+     */
+    SortedMap<Long, Map<String, String>> getData(String feedID, int level, long startTime, long endTime) {
+        FeedRollup rollup = feeds.get(feedID);
+        if (rollup == null) {
+            return null;
+        }
+        synchronized (rollup) {
+            SortedMap<Long, Bucket> buckets = rollup.levels[level].subMap(Long.valueOf(bucketOf(startTime, resolutions[level])),
+                            Long.valueOf(endTime + 1));
+            if (buckets.isEmpty()) {
+                return null;
+            }
+            SortedMap<Long, Map<String, String>> data = new TreeMap<Long, Map<String, String>>();
+            for (Bucket bucket : buckets.values()) {
+                bucket.addTo(data, startTime, endTime);
+            }
+            return data.isEmpty() ? null : data;
+        }
+    }
+
+    /**
+     * Reduces samples to the first, last, minimum and maximum samples of each interval of a resolution, the way
+     * the rollups do.
+     * @param data samples keyed by time stamps in nanoseconds
+     * @param resolution resolution in nanoseconds
+     */
+    static SortedMap<Long, Map<String, String>> reduce(SortedMap<Long, Map<String, String>> data, long resolution) {
+        SortedMap<Long, Map<String, String>> reduced = new TreeMap<Long, Map<String, String>>();
+        Bucket bucket = null;
+        long bucketTime = 0;
+        for (Entry<Long, Map<String, String>> sample : data.entrySet()) {
+            long time = sample.getKey().longValue();
+            if (bucket == null || bucketOf(time, resolution) != bucketTime) {
+                if (bucket != null) {
+                    bucket.addTo(reduced, Long.MIN_VALUE, Long.MAX_VALUE);
+                }
+                bucket = new Bucket();
+                bucketTime = bucketOf(time, resolution);
+            }
+            bucket.add(time, sample.getValue(), null, 0, getValue(sample.getValue()));
+        }
+        if (bucket != null) {
+            bucket.addTo(reduced, Long.MIN_VALUE, Long.MAX_VALUE);
+        }
+        return reduced;
+    }
+
+    /**
+     * Stops rolling up a feed; its samples are reduced when they are read instead.
+     */
+    private void markIncomplete(String feedID) {
+        synchronized (incompleteFeeds) {
+            incompleteFeeds.add(feedID);
+        }
+        feeds.remove(feedID);
+    }
+
+    /**
+     * Returns the rollup of a feed, or null if the feed is not rolled up.
+     */
+    private FeedRollup getRollup(String feedID) {
+        FeedRollup rollup = feeds.get(feedID);
+        if (rollup == null) {
+            if (!isComplete(feedID)) {
+                return null;
+            }
+            rollup = new FeedRollup(resolutions.length);
+            FeedRollup existing = feeds.putIfAbsent(feedID, rollup);
+            if (existing != null) {
+                rollup = existing;
+            }
+        }
+        return rollup;
+    }
+
+    private static long bucketOf(long time, long resolution) {
+        long bucket = time / resolution;
+        if (time < 0 && bucket * resolution != time) {
+            bucket--;
+        }
+        return bucket * resolution;
+    }
+
+    private static double getValue(Map<String, String> sample) {
+        String value = sample.get(FeedSampleBlock.VALUE_KEY);
+        if (value != null) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                // not a numeric value
+            }
+        }
+        return Double.NaN;
+    }
+
+    private final class FeedRollup {
+        private final TreeMap<Long, Bucket>[] levels;
+
+        @SuppressWarnings("unchecked")
+        FeedRollup(int numOfLevels) {
+            levels = new TreeMap[numOfLevels];
+            for (int i = 0; i < numOfLevels; i++) {
+                levels[i] = new TreeMap<Long, Bucket>();
+            }
+        }
+
+        /**
+         * @return false if the sample replaced an extreme sample of an interval which is no longer the extreme
+         */
+        boolean add(long time, Map<String, String> sample, double value) {
+            return add(time, sample, null, 0, value);
+        }
+
+        boolean add(long time, FeedSampleBlock block, int i, double value) {
+            return add(time, null, block, i, value);
+        }
+
+        private boolean add(long time, Map<String, String> sample, FeedSampleBlock block, int i, double value) {
+            boolean complete = true;
+            for (int level = 0; level < levels.length; level++) {
+                Long key = Long.valueOf(bucketOf(time, resolutions[level]));
+                Bucket bucket = levels[level].get(key);
+                if (bucket == null) {
+                    bucket = new Bucket();
+                    levels[level].put(key, bucket);
+                }
+                sample = bucket.add(time, sample, block, i, value);
+                complete &= !bucket.isStale();
+            }
+            return complete;
+        }
+    }
+
+    /**
+     * First, last, minimum and maximum samples of an interval.
+     */
+    private static final class Bucket {
+        private long firstTime = Long.MAX_VALUE;
+        private long lastTime = Long.MIN_VALUE;
+        private long minTime;
+        private long maxTime;
+        private double min = Double.NaN;
+        private double max = Double.NaN;
+        private Map<String, String> first;
+        private Map<String, String> last;
+        private Map<String, String> minSample;
+        private Map<String, String> maxSample;
+        private boolean stale;
+
+        /**
+         * Adds a sample given either as a map or as a sample of a block.
+         * @return the map of the sample if it had to be created, so other buckets can share it
+         */
+        Map<String, String> add(long time, Map<String, String> sample, FeedSampleBlock block, int i, double value) {
+            if (time <= firstTime) {
+                firstTime = time;
+                first = sample = toMap(sample, block, i);
+            }
+            if (time >= lastTime) {
+                lastTime = time;
+                last = sample = toMap(sample, block, i);
+            }
+            if (minSample != null && (time == minTime && !(value <= min) || time == maxTime && !(value >= max))) {
+                // the sample replaces an extreme sample by one which may no longer be the extreme
+                stale = true;
+                return sample;
+            }
+            if (!Double.isNaN(value)) {
+                // ties go to the earliest sample, whatever the order the samples are added in
+                if (Double.isNaN(min) || value < min || (value == min && time <= minTime)) {
+                    min = value;
+                    minTime = time;
+                    minSample = sample = toMap(sample, block, i);
+                }
+                if (Double.isNaN(max) || value > max || (value == max && time <= maxTime)) {
+                    max = value;
+                    maxTime = time;
+                    maxSample = sample = toMap(sample, block, i);
+                }
+            }
+            return sample;
+        }
+
+        boolean isStale() {
+            return stale;
+        }
+
+        private static Map<String, String> toMap(Map<String, String> sample, FeedSampleBlock block, int i) {
+            return sample != null ? sample : block.toMap(i);
+        }
+
+        void addTo(SortedMap<Long, Map<String, String>> data, long startTime, long endTime) {
+            put(data, firstTime, first, startTime, endTime);
+            put(data, lastTime, last, startTime, endTime);
+            if (minSample != null) {
+                put(data, minTime, minSample, startTime, endTime);
+                put(data, maxTime, maxSample, startTime, endTime);
+            }
+        }
+
+        private static void put(SortedMap<Long, Map<String, String>> data, long time, Map<String, String> sample, long startTime, long endTime) {
+            if (time >= startTime && time <= endTime) {
+                data.put(Long.valueOf(time), sample);
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
+import gov.nasa.arc.mct.buffer.config.DiskBufferEnv;
+import gov.nasa.arc.mct.buffer.config.FastDiskBufferEnv;
+import gov.nasa.arc.mct.buffer.config.LogBufferEnv;
+import gov.nasa.arc.mct.buffer.util.LatencyHistogram;
+import gov.nasa.arc.mct.buffer.util.MetricsRegistry;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Metrics of the partitions of a {@link DataBuffer}, registered under the name of the buffer:
+ * <ul>
+ * <li><code>get.&lt;name&gt;.partition&lt;n&gt;</code> and <code>put.&lt;name&gt;.partition&lt;n&gt;</code>: latency of
+ * the reads and writes of a partition</li>
+ * <li><code>rotate.&lt;name&gt;.prepare</code> and <code>rotate.&lt;name&gt;.move</code>: time to prepare and to move
+ * to the next partition</li>
+ * <li><code>disk.&lt;name&gt;.partition&lt;n&gt;.bytes</code>: size of the files of a partition, for disk buffers</li>
+ * </ul>
+ */
+final class TierMetrics {
+    private final LatencyHistogram[] reads;
+    private final LatencyHistogram[] writes;
+    private final LatencyHistogram prepares;
+    private final LatencyHistogram moves;
+    private final Map<String, MetricsRegistry.Gauge> gauges = new HashMap<String, MetricsRegistry.Gauge>();
+
+    /**
+     * @param name name of the buffer
+     * @param partitions partitions of the buffer
+     * @param env environment of the current partition
+     */
+    TierMetrics(String name, final AtomicReference<PartitionDataBuffer>[] partitions, DataBufferEnv env) {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        reads = new LatencyHistogram[partitions.length];
+        writes = new LatencyHistogram[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            reads[i] = registry.getHistogram("get." + name + ".partition" + i);
+            writes[i] = registry.getHistogram("put." + name + ".partition" + i);
+        }
+        prepares = registry.getHistogram("rotate." + name + ".prepare");
+        moves = registry.getHistogram("rotate." + name + ".move");
+
+        if (getPartitionHome(env) != null) {
+            for (int i = 0; i < partitions.length; i++) {
+                final AtomicReference<PartitionDataBuffer> partition = partitions[i];
+                MetricsRegistry.Gauge gauge = new MetricsRegistry.Gauge() {
+                    @Override
+                    public long getValue() {
+                        PartitionDataBuffer partitionBuffer = partition.get();
+                        File home = partitionBuffer == null ? null : getPartitionHome(partitionBuffer.getBufferEnv());
+                        return home == null ? 0 : sizeOf(home);
+                    }
+                };
+                gauges.put("disk." + name + ".partition" + i + ".bytes", gauge);
+                registry.putGauge("disk." + name + ".partition" + i + ".bytes", gauge);
+            }
+        }
+    }
+
+    /**
+     * Records a read of a partition.
+     * @param startNanos start of the read, given by {@link System#nanoTime()}
+     */
+    void read(PartitionDataBuffer partitionBuffer, long startNanos) {
+        record(reads, partitionBuffer, startNanos);
+    }
+
+    /**
+     * Records a write to a partition.
+     * @param startNanos start of the write, given by {@link System#nanoTime()}
+     */
+    void written(PartitionDataBuffer partitionBuffer, long startNanos) {
+        record(writes, partitionBuffer, startNanos);
+    }
+
+    void prepared(long startNanos) {
+        prepares.recordSince(startNanos);
+    }
+
+    void moved(long startNanos) {
+        moves.recordSince(startNanos);
+    }
+
+    /**
+     * Removes the gauges, once the buffer is closed.
+     */
+    void close() {
+        for (Entry<String, MetricsRegistry.Gauge> entry : gauges.entrySet()) {
+            MetricsRegistry.getInstance().removeGauge(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void record(LatencyHistogram[] histograms, PartitionDataBuffer partitionBuffer, long startNanos) {
+        int partition = partitionBuffer.getBufferEnv().getCurrentBufferPartition();
+        if (partition >= 0 && partition < histograms.length) {
+            histograms[partition].recordSince(startNanos);
+        }
+    }
+
+    private static File getPartitionHome(DataBufferEnv env) {
+        if (env instanceof FastDiskBufferEnv) {
+            return ((FastDiskBufferEnv) env).getPartitionHome();
+        } else if (env instanceof DiskBufferEnv) {
+            return ((DiskBufferEnv) env).getPartitionHome();
+        } else if (env instanceof LogBufferEnv) {
+            return ((LogBufferEnv) env).getPartitionHome();
+        }
+        return null;
+    }
+
+    private static long sizeOf(File file) {
+        File[] files = file.listFiles();
+        if (files == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File f : files) {
+            size += sizeOf(f);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.log.internal;
+
+import java.util.Properties;
+
+import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
+import gov.nasa.arc.mct.buffer.config.LogBufferEnv;
+import gov.nasa.arc.mct.buffer.internal.DataBufferHelper;
+import gov.nasa.arc.mct.buffer.internal.MetaDataBuffer;
+import gov.nasa.arc.mct.buffer.internal.PartitionDataBuffer;
+
+/**
+ * Creates {@link PartitionLogBuffer}s. The meta data of the log is not persisted; partitions rebuild it from their
+ * segment files when they are opened, so a helper serves a single data buffer whose meta data buffer it created last.
+ */
+public class LogDataBufferHelper implements DataBufferHelper {
+    private volatile MetaDataBuffer metaDataBuffer;
+
+    @Override
+    public MetaDataBuffer newMetaDataBuffer(DataBufferEnv env) {
+        if (env == null) {
+            env = new LogBufferEnv(null);
+        }
+        metaDataBuffer = new MetaDataBuffer(env);
+        return metaDataBuffer;
+    }
+
+    @Override
+    public PartitionDataBuffer newPartitionBuffer(int partitionNo) {
+        return new PartitionLogBuffer(new LogBufferEnv(null, partitionNo), metaDataBuffer);
+    }
+
+    @Override
+    public PartitionDataBuffer newPartitionBuffer(DataBufferEnv env) {
+        assert env instanceof LogBufferEnv;
+        return new PartitionLogBuffer((LogBufferEnv) env, metaDataBuffer);
+    }
+
+    @Override
+    public DataBufferEnv newMetaDataBufferEnv(Properties prop) {
+        return new LogBufferEnv(prop);
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.log.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory mapped segment file of the log. A segment starts with a header followed by records, each made of its length
+ * and its body. The length of a record is written after its body, so a record only becomes visible once it is
+ * complete, and a zero length marks the end of the records since a new file is filled with zeros. Segments are not
+ * thread safe; the owning partition serializes writes.
+ */
+final class LogSegment {
+    private static final int MAGIC = 0x4d43544c;
+    private static final int VERSION = 2;
+    static final int HEADER_BYTES = 8;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer buffer;
+    private int end;
+
+    private LogSegment(File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+        this.file = file;
+        this.raf = raf;
+        this.buffer = buffer;
+        this.end = HEADER_BYTES;
+    }
+
+    /**
+     * Creates a new segment file.
+     */
+    static LogSegment create(File file, int capacity) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(capacity);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            return new LogSegment(file, raf, buffer);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing segment file. The end of the records has to be set with {@link #setEnd(int)} once the
+     * records have been scanned.
+     * @return the segment or null if the file is not a segment
+     */
+    static LogSegment open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = raf.length();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                raf.close();
+                return null;
+            }
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                raf.close();
+                return null;
+            }
+            return new LogSegment(file, raf, buffer);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    void setEnd(int end) {
+        this.end = end;
+    }
+
+    /**
+     * Returns the length of the record at an offset, or 0 if there is no record.
+     */
+    int getLength(int offset) {
+        if (offset + 4 > buffer.capacity()) {
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        return length < 0 || offset + 4 + length > buffer.capacity() ? 0 : length;
+    }
+
+    /**
+     * Returns the offset of the record following the record at an offset.
+     */
+    static int next(int offset, int length) {
+        return offset + 4 + length;
+    }
+
+    /**
+     * Appends a record.
+     * @return the offset of the record or -1 if the segment does not have room for the record
+     */
+    int append(byte[] body, int length) {
+        int offset = end;
+        if (offset + 4 + length > buffer.capacity()) {
+            return -1;
+        }
+        ByteBuffer records = buffer.duplicate();
+        records.position(offset + 4);
+        records.put(body, 0, length);
+        buffer.putInt(offset, length);
+        end = next(offset, length);
+        return offset;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Closes the file. The mapping itself is released once the segment is garbage collected.
+     */
+    void close() {
+        try {
+            raf.close();
+        } catch (IOException e) {
+            // ignore exception
+        }
+    }
+}
@@ -0,0 +1,753 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.log.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+import gov.nasa.arc.mct.api.feed.SampleDictionary;
+import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
+import gov.nasa.arc.mct.buffer.config.LogBufferEnv;
+import gov.nasa.arc.mct.buffer.disk.internal.PartitionTimestamps;
+import gov.nasa.arc.mct.buffer.internal.MetaDataBuffer;
+import gov.nasa.arc.mct.buffer.internal.PartitionDataBuffer;
+import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
+import gov.nasa.arc.mct.buffer.util.SampleBlocks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Partition stored as an append-only log of memory mapped {@link LogSegment}s. Samples of all the feeds are appended
+ * in arrival order; the records of a feed are chained by a link to the next record of the same feed, which is
+ * patched in place when that record is appended. A sparse in-memory index keeps the time stamp and position of every
+ * few records of each feed, so a range scan jumps close to its start time and then follows the chain. Feeds whose
+ * samples arrive out of order are scanned from their first record. The log is self describing: reopening a partition
+ * rebuilds the chains, the index and the meta data from the segment files.
+ * <p>
+ * The rendering info styles and telemetry statuses of the samples are stored as codes of a dictionary kept in the
+ * log itself, since the ids of the {@link SampleDictionary} are only valid in the running process. A string record
+ * defines the code of a string before the first sample referring to it.
+ */
+public class PartitionLogBuffer implements PartitionDataBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionLogBuffer.class);
+    private static final Logger READ_PERF_LOGGER = LoggerFactory.getLogger("gov.nasa.arc.mct.performance.log.partitionbuffer.read");
+    private static final Logger WRITE_PERF_LOGGER = LoggerFactory.getLogger("gov.nasa.arc.mct.performance.log.partitionbuffer.write");
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final byte FEED_RECORD = 1;
+    private static final byte SAMPLE_RECORD = 2;
+    private static final byte STRING_RECORD = 3;
+
+    // offsets within a record, the length of the record comes first
+    private static final int TYPE = 4;
+    private static final int FEED_CODE = 5;
+    private static final int FEED_NAME = 9;
+    private static final int STRING_CODE = 5;
+    private static final int STRING_TEXT = 9;
+    private static final int TIME = 9;
+    private static final int NEXT = 17;
+    private static final int STATUS = 25;
+    private static final int NORMALIZED_TIME = 26;
+    private static final int VALUE = 34;
+    private static final int RENDERING_INFO_CODE = 42;
+    private static final int STATUS_CODE = 46;
+    private static final int STRINGS = 50;
+
+    private static final long NONE = -1;
+
+    private final LogBufferEnv env;
+    private final MetaDataBuffer metaDataBuffer;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<LogSegment> segments = new ArrayList<LogSegment>();
+    private final Map<String, FeedIndex> feeds = new HashMap<String, FeedIndex>();
+    private final List<FeedIndex> feedCodes = new ArrayList<FeedIndex>();
+    // SampleDictionary id of each string code of the log, and string code of each SampleDictionary id plus one
+    private int[] stringIds = new int[16];
+    private int stringCount;
+    private int[] stringCodes = new int[16];
+    private byte[] scratch = new byte[256];
+    private volatile boolean active;
+    private volatile boolean closed;
+
+    /**
+     * Records of a feed, with a sparse index of their time stamps.
+     */
+    private static final class FeedIndex {
+        final String feedID;
+        final int code;
+        long first = NONE;
+        long last = NONE;
+        long lastTime;
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        boolean ordered = true;
+        int count;
+        long[] indexTimes = new long[8];
+        long[] indexPositions = new long[8];
+        int indexSize;
+
+        FeedIndex(String feedID, int code) {
+            this.feedID = feedID;
+            this.code = code;
+        }
+
+        void add(long position, long time, int indexInterval) {
+            if (count == 0) {
+                first = position;
+            } else if (time <= lastTime) {
+                ordered = false;
+            }
+            if (count % indexInterval == 0) {
+                if (indexSize == indexTimes.length) {
+                    indexTimes = Arrays.copyOf(indexTimes, indexSize * 2);
+                    indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+                }
+                indexTimes[indexSize] = time;
+                indexPositions[indexSize++] = position;
+            }
+            last = position;
+            lastTime = time;
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+            count++;
+        }
+
+        /**
+         * Returns the position from which to scan for the first record at or after time. Only meaningful for a
+         * feed whose samples are ordered.
+         */
+        long seek(long time) {
+            int low = 0;
+            int high = indexSize - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (indexTimes[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high < 0 ? first : indexPositions[high];
+        }
+    }
+
+    /**
+     * Creates a partition, recovering the samples already in its directory.
+     * @param env environment of the partition
+     * @param metaDataBuffer meta data to update with the recovered samples, may be null
+     */
+    public PartitionLogBuffer(LogBufferEnv env, MetaDataBuffer metaDataBuffer) {
+        this.env = env;
+        this.metaDataBuffer = metaDataBuffer;
+        recover();
+        this.active = true;
+    }
+
+    private static String segmentName(int index) {
+        return String.format("%08d%s", Integer.valueOf(index), SEGMENT_SUFFIX);
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | offset;
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    private void recover() {
+        File home = env.getPartitionHome();
+        for (int i = 0; ; i++) {
+            File file = new File(home, segmentName(i));
+            if (!file.isFile()) {
+                break;
+            }
+            LogSegment segment;
+            try {
+                segment = LogSegment.open(file);
+            } catch (IOException e) {
+                LOGGER.error("Cannot open log segment " + file.getAbsolutePath(), e);
+                break;
+            }
+            if (segment == null) {
+                LOGGER.warn("Ignoring log segment {} and the segments after it", file.getAbsolutePath());
+                break;
+            }
+            segments.add(segment);
+            segment.setEnd(scan(i, segment));
+        }
+
+        if (!feeds.isEmpty()) {
+            LOGGER.info("Recovered {} feeds from log partition {}", feeds.size(), env.getCurrentBufferPartition());
+            if (metaDataBuffer != null) {
+                for (FeedIndex feed : feeds.values()) {
+                    metaDataBuffer.updatePartitionMetaData(env.getCurrentBufferPartition(), feed.feedID, feed.minTime, feed.maxTime);
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the feeds from the records of a segment.
+     * @return the end of the valid records
+     */
+    private int scan(int index, LogSegment segment) {
+        ByteBuffer buffer = segment.getBuffer();
+        int offset = LogSegment.HEADER_BYTES;
+        for (int length = segment.getLength(offset); length > 0; length = segment.getLength(offset)) {
+            byte type = buffer.get(offset + TYPE);
+            if (type == FEED_RECORD && length >= FEED_NAME - 4) {
+                int code = buffer.getInt(offset + FEED_CODE);
+                if (code != feedCodes.size()) {
+                    break;
+                }
+                String feedID = new String(getBytes(buffer, offset + FEED_NAME, length - (FEED_NAME - 4)), UTF8);
+                FeedIndex feed = new FeedIndex(feedID, code);
+                feeds.put(feedID, feed);
+                feedCodes.add(feed);
+            } else if (type == STRING_RECORD && length >= STRING_TEXT - 4) {
+                if (buffer.getInt(offset + STRING_CODE) != stringCount) {
+                    break;
+                }
+                addString(SampleDictionary.intern(new String(getBytes(buffer, offset + STRING_TEXT, length - (STRING_TEXT - 4)), UTF8)));
+            } else if (type == SAMPLE_RECORD && length >= STRINGS - 4) {
+                int code = buffer.getInt(offset + FEED_CODE);
+                if (code < 0 || code >= feedCodes.size()) {
+                    break;
+                }
+                long position = position(index, offset);
+                if (buffer.getLong(offset + NEXT) != NONE) {
+                    buffer.putLong(offset + NEXT, NONE);
+                }
+                link(feedCodes.get(code), position, buffer.getLong(offset + TIME));
+            } else {
+                break;
+            }
+            offset = LogSegment.next(offset, length);
+        }
+        return offset;
+    }
+
+    private int addString(int id) {
+        if (stringCount == stringIds.length) {
+            stringIds = Arrays.copyOf(stringIds, stringCount * 2);
+        }
+        if (id >= stringCodes.length) {
+            stringCodes = Arrays.copyOf(stringCodes, Math.max(id + 1, stringCodes.length * 2));
+        }
+        stringIds[stringCount] = id;
+        stringCodes[id] = stringCount + 1;
+        return stringCount++;
+    }
+
+    private int getStringId(int code) {
+        return code < 0 ? SampleDictionary.NO_ID : stringIds[code];
+    }
+
+    /**
+     * Returns the code of a string of the {@link SampleDictionary}, appending its string record if the log does
+     * not have it yet.
+     * @return the code, -1 for {@link SampleDictionary#NO_ID}, or -2 if the string is larger than a segment
+     */
+    private int getStringCode(int id) throws BufferFullException {
+        if (id == SampleDictionary.NO_ID) {
+            return -1;
+        }
+        if (id < stringCodes.length && stringCodes[id] > 0) {
+            return stringCodes[id] - 1;
+        }
+        byte[] text = SampleDictionary.lookup(id).getBytes(UTF8);
+        ByteBuffer body = body(STRING_TEXT - 4 + text.length);
+        body.put(STRING_RECORD);
+        body.putInt(stringCount);
+        body.put(text);
+        if (write(body) == NONE) {
+            return -2;
+        }
+        return addString(id);
+    }
+
+    private void link(FeedIndex feed, long position, long time) {
+        if (feed.last != NONE) {
+            ByteBuffer previous = segments.get(segmentOf(feed.last)).getBuffer();
+            if (previous.getLong(offsetOf(feed.last) + NEXT) != position) {
+                previous.putLong(offsetOf(feed.last) + NEXT, position);
+            }
+        }
+        feed.add(position, time, env.getIndexInterval());
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime,
+            long endTime) {
+        return SampleBlocks.toSortedMaps(getSamples(feedIDs, timeUnit, startTime, endTime));
+    }
+
+    @Override
+    public Map<String, SortedMap<Long, Map<String, String>>> getLastData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return SampleBlocks.toSortedMaps(getLastSamples(feedIDs, timeUnit, startTime, endTime));
+    }
+
+    @Override
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        final ElapsedTimer timer = new ElapsedTimer();
+        timer.startInterval();
+
+        Map<String, FeedSampleBlock> returnedData = new HashMap<String, FeedSampleBlock>();
+
+        long start = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+        long end = TimeUnit.NANOSECONDS.convert(endTime, timeUnit);
+        lock.readLock().lock();
+        try {
+            for (String feedID : feedIDs) {
+                FeedIndex feed = feeds.get(feedID);
+                if (feed == null || feed.maxTime < start || feed.minTime > end) {
+                    continue;
+                }
+                FeedSampleBlock feedData = new FeedSampleBlock(feedID);
+                if (feed.ordered) {
+                    for (long position = feed.seek(start); position != NONE; position = getNext(position)) {
+                        long time = getTime(position);
+                        if (time > end) {
+                            break;
+                        }
+                        if (time >= start) {
+                            decode(position, feedData);
+                        }
+                    }
+                } else {
+                    // later samples replace earlier samples with the same time stamp
+                    TreeMap<Long, Long> positions = new TreeMap<Long, Long>();
+                    for (long position = feed.first; position != NONE; position = getNext(position)) {
+                        long time = getTime(position);
+                        if (time >= start && time <= end) {
+                            positions.put(Long.valueOf(time), Long.valueOf(position));
+                        }
+                    }
+                    for (Long position : positions.values()) {
+                        decode(position.longValue(), feedData);
+                    }
+                }
+                if (!feedData.isEmpty()) {
+                    returnedData.put(feedID, feedData);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        timer.stopInterval();
+        READ_PERF_LOGGER.debug("Time to get {} feeds from log: {} from partition " + this.env.getCurrentBufferPartition(), feedIDs.size(), timer.getIntervalInMillis());
+
+        return returnedData;
+    }
+
+    @Override
+    public Map<String, FeedSampleBlock> getLastSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        final ElapsedTimer timer = new ElapsedTimer();
+        timer.startInterval();
+
+        Map<String, FeedSampleBlock> returnedData = new HashMap<String, FeedSampleBlock>();
+
+        long start = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+        long end = TimeUnit.NANOSECONDS.convert(endTime, timeUnit);
+        lock.readLock().lock();
+        try {
+            for (String feedID : feedIDs) {
+                FeedIndex feed = feeds.get(feedID);
+                if (feed == null || feed.maxTime < start || feed.minTime > end) {
+                    continue;
+                }
+                long last = NONE;
+                if (feed.ordered && feed.lastTime <= end) {
+                    last = feed.last;
+                } else {
+                    long lastTime = Long.MIN_VALUE;
+                    long position = feed.ordered ? feed.seek(start) : feed.first;
+                    for (; position != NONE; position = getNext(position)) {
+                        long time = getTime(position);
+                        if (feed.ordered && time > end) {
+                            break;
+                        }
+                        if (time >= start && time <= end && time >= lastTime) {
+                            last = position;
+                            lastTime = time;
+                        }
+                    }
+                }
+                if (last != NONE) {
+                    FeedSampleBlock feedData = new FeedSampleBlock(feedID, 1);
+                    decode(last, feedData);
+                    returnedData.put(feedID, feedData);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        timer.stopInterval();
+        READ_PERF_LOGGER.debug("Time to get {} feeds from log: {} from partition " + this.env.getCurrentBufferPartition(), feedIDs.size(), timer.getIntervalInMillis());
+
+        return returnedData;
+    }
+
+    private long getTime(long position) {
+        return segments.get(segmentOf(position)).getBuffer().getLong(offsetOf(position) + TIME);
+    }
+
+    private long getNext(long position) {
+        return segments.get(segmentOf(position)).getBuffer().getLong(offsetOf(position) + NEXT);
+    }
+
+    private void decode(long position, FeedSampleBlock destination) {
+        ByteBuffer buffer = segments.get(segmentOf(position)).getBuffer().duplicate();
+        int at = offsetOf(position);
+        int bits = buffer.get(at + STATUS) & 0xff;
+        buffer.position(at + STRINGS);
+        String text = getString(buffer);
+        String renderingInfoText = getString(buffer);
+        Map<String, String> extras = null;
+        int size = buffer.getInt();
+        if (size >= 0) {
+            extras = new HashMap<String, String>(Math.max(4, size * 2));
+            for (int i = 0; i < size; i++) {
+                String key = getString(buffer);
+                extras.put(key, getString(buffer));
+            }
+        }
+        destination.add(buffer.getLong(at + TIME), bits, buffer.getLong(at + NORMALIZED_TIME), buffer.getDouble(at + VALUE),
+                        text, getStringId(buffer.getInt(at + RENDERING_INFO_CODE)), renderingInfoText,
+                        getStringId(buffer.getInt(at + STATUS_CODE)), extras);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    @Override
+    public Map<String, PartitionTimestamps> putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) throws BufferFullException {
+        Map<String, FeedSampleBlock> samples = new HashMap<String, FeedSampleBlock>(value.size() * 2);
+        for (Entry<String, Map<Long, Map<String, String>>> entry : value.entrySet()) {
+            FeedSampleBlock block = new FeedSampleBlock(entry.getKey(), entry.getValue().size());
+            for (Entry<Long, Map<String, String>> feedData : entry.getValue().entrySet()) {
+                block.add(TimeUnit.NANOSECONDS.convert(feedData.getKey().longValue(), timeUnit), feedData.getValue());
+            }
+            samples.put(entry.getKey(), block);
+        }
+        return putSamples(samples, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Map<String, PartitionTimestamps> putSamples(Map<String, FeedSampleBlock> value, TimeUnit timeUnit) throws BufferFullException {
+        final ElapsedTimer timer = new ElapsedTimer();
+        timer.startInterval();
+
+        Map<String, PartitionTimestamps> timestamps = new HashMap<String, PartitionTimestamps>();
+
+        lock.writeLock().lock();
+        try {
+            for (Entry<String, FeedSampleBlock> entry : value.entrySet()) {
+                if (closed) {
+                    break;
+                }
+                String feedID = entry.getKey();
+                FeedSampleBlock samples = SampleBlocks.toNanoseconds(entry.getValue(), timeUnit);
+                LOGGER.debug("Putting {} samples for feed {}", samples.size(), feedID);
+                long smallestTime = Long.MAX_VALUE;
+                long largestTime = Long.MIN_VALUE;
+                for (int i = 0; i < samples.size(); i++) {
+                    if (append(feedID, samples, i)) {
+                        smallestTime = Math.min(smallestTime, samples.getTime(i));
+                        largestTime = Math.max(largestTime, samples.getTime(i));
+                    }
+                }
+                if (smallestTime <= largestTime) {
+                    timestamps.put(feedID, new PartitionTimestamps(smallestTime, largestTime));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        timer.stopInterval();
+        WRITE_PERF_LOGGER.debug("Time to write {} feeds: {} from partition " + this.env.getCurrentBufferPartition(), value.size(), timer.getIntervalInMillis());
+
+        return timestamps;
+    }
+
+    @Override
+    public void putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit, MetaDataBuffer metadata, int metadataIndex) throws BufferFullException {
+        Map<String, PartitionTimestamps> timestamps = putData(value, timeUnit);
+        for (Entry<String, PartitionTimestamps> entry : timestamps.entrySet()) {
+            metadata.updatePartitionMetaData(metadataIndex, entry.getKey(), entry.getValue().getStartTimestamp(), entry.getValue().getEndTimestamp());
+        }
+    }
+
+    /**
+     * Appends a sample, defining its feed first if needed.
+     * @return false if the sample is larger than a segment and was dropped
+     */
+    private boolean append(String feedID, FeedSampleBlock samples, int i) throws BufferFullException {
+        FeedIndex feed = feeds.get(feedID);
+        if (feed == null) {
+            byte[] name = feedID.getBytes(UTF8);
+            ByteBuffer body = body(FEED_NAME - 4 + name.length);
+            body.put(FEED_RECORD);
+            body.putInt(feedCodes.size());
+            body.put(name);
+            if (write(body) == NONE) {
+                LOGGER.warn("Feed ID {} does not fit in a log segment", feedID);
+                return false;
+            }
+            feed = new FeedIndex(feedID, feedCodes.size());
+            feeds.put(feedID, feed);
+            feedCodes.add(feed);
+        }
+
+        // the string records go before the sample, which is built in the same scratch buffer
+        int renderingInfoCode = getStringCode(samples.getRenderingInfoId(i));
+        int statusCode = getStringCode(samples.getStatusId(i));
+        if (renderingInfoCode == -2 || statusCode == -2) {
+            LOGGER.warn("Dropping sample of feed {} with a string larger than a log segment", feedID);
+            return false;
+        }
+
+        int bits = samples.getStatusBits(i);
+        byte[] text = (bits & FeedSampleBlock.TEXT_VALUE) != 0 ? toBytes(samples.getValueText(i)) : null;
+        byte[] renderingInfoText = toBytes(samples.getRenderingInfoText(i));
+        Map<String, String> extras = samples.getExtras(i);
+        int length = STRINGS - 4 + sizeOf(text) + sizeOf(renderingInfoText) + 4;
+        List<byte[]> extraBytes = null;
+        if (extras != null) {
+            extraBytes = new ArrayList<byte[]>(extras.size() * 2);
+            for (Entry<String, String> extra : extras.entrySet()) {
+                extraBytes.add(toBytes(extra.getKey()));
+                extraBytes.add(toBytes(extra.getValue()));
+            }
+            for (byte[] bytes : extraBytes) {
+                length += sizeOf(bytes);
+            }
+        }
+
+        long time = samples.getTime(i);
+        ByteBuffer body = body(length);
+        body.put(SAMPLE_RECORD);
+        body.putInt(feed.code);
+        body.putLong(time);
+        body.putLong(NONE);
+        body.put((byte) bits);
+        body.putLong(samples.getNormalizedTime(i));
+        body.putDouble(samples.getValue(i));
+        body.putInt(renderingInfoCode);
+        body.putInt(statusCode);
+        putBytes(body, text);
+        putBytes(body, renderingInfoText);
+        if (extraBytes == null) {
+            body.putInt(-1);
+        } else {
+            body.putInt(extras.size());
+            for (byte[] bytes : extraBytes) {
+                putBytes(body, bytes);
+            }
+        }
+
+        long position = write(body);
+        if (position == NONE) {
+            LOGGER.warn("Dropping sample of feed {} larger than a log segment", feedID);
+            return false;
+        }
+        link(feed, position, time);
+        return true;
+    }
+
+    private ByteBuffer body(int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        return ByteBuffer.wrap(scratch, 0, length);
+    }
+
+    private static byte[] toBytes(String s) {
+        return s == null ? null : s.getBytes(UTF8);
+    }
+
+    private static int sizeOf(byte[] bytes) {
+        return bytes == null ? 4 : 4 + bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer body, byte[] bytes) {
+        if (bytes == null) {
+            body.putInt(-1);
+        } else {
+            body.putInt(bytes.length);
+            body.put(bytes);
+        }
+    }
+
+    /**
+     * Writes a record at the end of the log, starting a new segment when the current one is full.
+     * @return the position of the record or NONE if the record is larger than a segment
+     */
+    private long write(ByteBuffer body) throws BufferFullException {
+        int length = body.position();
+        if (LogSegment.HEADER_BYTES + 4 + length > env.getSegmentBytes()) {
+            return NONE;
+        }
+        int index = segments.size() - 1;
+        int offset = index < 0 ? -1 : segments.get(index).append(scratch, length);
+        if (offset < 0) {
+            LogSegment segment = newSegment(++index);
+            offset = segment.append(scratch, length);
+            assert offset >= 0;
+        }
+        return position(index, offset);
+    }
+
+    private LogSegment newSegment(int index) throws BufferFullException {
+        if (env.isDiskBufferFull()) {
+            LOGGER.error("[PartitionLogBuffer]: " + env.getErrorMsg());
+            throw new BufferFullException();
+        }
+        File file = new File(env.getPartitionHome(), segmentName(index));
+        try {
+            LogSegment segment = LogSegment.create(file, env.getSegmentBytes());
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            LOGGER.error("Cannot create log segment " + file.getAbsolutePath(), e);
+            throw new BufferFullException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void inactive() {
+        this.active = false;
+        lock.readLock().lock();
+        try {
+            for (LogSegment segment : segments) {
+                segment.force();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return this.active;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void closeBuffer() {
+        lock.writeLock().lock();
+        try {
+            for (LogSegment segment : segments) {
+                segment.force();
+            }
+            closeSegments();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeBuffer() {
+        lock.writeLock().lock();
+        try {
+            closeSegments();
+            env.removePartitionFiles();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        lock.writeLock().lock();
+        try {
+            closeSegments();
+            env.closeAndRestartEnvironment();
+            closed = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void closeSegments() {
+        for (LogSegment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        feeds.clear();
+        feedCodes.clear();
+        stringCount = 0;
+        Arrays.fill(stringCodes, 0);
+        closed = true;
+    }
+
+    @Override
+    public DataBufferEnv getBufferEnv() {
+        return env;
+    }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.memory.internal;
+
+import java.util.Properties;
+
+import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
+import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
+import gov.nasa.arc.mct.buffer.internal.DataBufferHelper;
+import gov.nasa.arc.mct.buffer.internal.MetaDataBuffer;
+import gov.nasa.arc.mct.buffer.internal.PartitionDataBuffer;
+
+/**
+ * Creates {@link PartitionOffHeapMemoryBuffer}s. Each partition number has its own segment pool holding an even
+ * share of the off-heap budget, sized from the properties of the first environment of the partition. A partition
+ * only recycles its own segments, so the current partition does not run out of memory while the inactive
+ * partitions hold theirs. A helper serves a single data buffer, as the partitions report discarded samples to the
+ * meta data buffer created last.
+ */
+public class OffHeapMemoryDataBufferHelper implements DataBufferHelper {
+    private OffHeapSegmentPool[] pools;
+    private volatile MetaDataBuffer metaDataBuffer;
+
+    @Override
+    public MetaDataBuffer newMetaDataBuffer(DataBufferEnv env) {
+        if (env == null) {
+            env = new MemoryBufferEnv(null);
+        }
+        metaDataBuffer = new MetaDataBuffer(env);
+        return metaDataBuffer;
+    }
+
+    @Override
+    public PartitionDataBuffer newPartitionBuffer(int partitionNo) {
+        return newPartitionBuffer(new MemoryBufferEnv(null, partitionNo));
+    }
+
+    @Override
+    public PartitionDataBuffer newPartitionBuffer(DataBufferEnv env) {
+        assert env instanceof MemoryBufferEnv;
+        MemoryBufferEnv memoryEnv = (MemoryBufferEnv) env;
+        return new PartitionOffHeapMemoryBuffer(memoryEnv, getPool(memoryEnv), metaDataBuffer);
+    }
+
+    @Override
+    public DataBufferEnv newMetaDataBufferEnv(Properties prop) {
+        return new MemoryBufferEnv(prop);
+    }
+
+    synchronized OffHeapSegmentPool getPool(MemoryBufferEnv env) {
+        if (pools == null) {
+            pools = new OffHeapSegmentPool[env.getNumOfBufferPartitions()];
+        }
+        int partition = env.getCurrentBufferPartition();
+        if (pools[partition] == null) {
+            // the segments of a removed partition are released to the pool of the partition replacing it
+            pools[partition] = new OffHeapSegmentPool(env.getOffHeapBufferBytes() / pools.length, env.getOffHeapSegmentBytes());
+        }
+        return pools[partition];
+    }
+}
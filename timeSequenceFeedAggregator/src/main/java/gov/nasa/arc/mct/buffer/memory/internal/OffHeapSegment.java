@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.memory.internal;
+
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Samples of one feed stored in a direct memory segment. Fixed size records sorted by time stamp grow
+ * from the start of the segment so the time column can be binary searched, while the variable length strings
+ * referenced by the records grow from the end of the segment. Segments are not thread safe; the owning
+ * partition serializes access to them.
+ */
+final class OffHeapSegment {
+    private static final int TIME = 0;
+    private static final int NORMALIZED_TIME = 8;
+    private static final int VALUE = 16;
+    private static final int STATUS = 24;
+    private static final int RENDERING_INFO_ID = 25;
+    private static final int STATUS_ID = 29;
+    private static final int TEXT = 33;
+    private static final int RENDERING_INFO_TEXT = 37;
+    private static final int EXTRAS = 41;
+    static final int RECORD_BYTES = 45;
+
+    private static final int NONE = -1;
+
+    private final ByteBuffer buffer;
+    private int count;
+    private int heapStart;
+
+    OffHeapSegment(ByteBuffer buffer) {
+        this.buffer = buffer;
+        clear();
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    void clear() {
+        count = 0;
+        heapStart = buffer.capacity();
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    long getTime(int i) {
+        return buffer.getLong(i * RECORD_BYTES + TIME);
+    }
+
+    long getFirstTime() {
+        return getTime(0);
+    }
+
+    long getLastTime() {
+        return getTime(count - 1);
+    }
+
+    /**
+     * Returns the index of the first record with a time stamp greater than or equal to time.
+     */
+    int ceilingIndex(long time) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (getTime(mid) < time) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the last record with a time stamp less than or equal to time, or -1.
+     */
+    int floorIndex(long time) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (getTime(mid) <= time) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Returns the number of bytes a sample takes in a segment, including its strings.
+     */
+    static int sizeOf(FeedSampleBlock block, int i) {
+        int bits = block.getStatusBits(i);
+        int size = RECORD_BYTES + sizeOf(block.getRenderingInfoText(i)) + sizeOf(block.getExtras(i));
+        if ((bits & FeedSampleBlock.TEXT_VALUE) != 0) {
+            size += sizeOf(block.getValueText(i));
+        }
+        return size;
+    }
+
+    private static int sizeOf(String s) {
+        return s == null ? 0 : 4 + 2 * s.length();
+    }
+
+    private static int sizeOf(Map<String, String> extras) {
+        if (extras == null) {
+            return 0;
+        }
+        int size = 4;
+        for (Entry<String, String> entry : extras.entrySet()) {
+            size += sizeOf(entry.getKey()) + sizeOf(entry.getValue() == null ? "" : entry.getValue());
+        }
+        return size;
+    }
+
+    /**
+     * Appends a sample whose time stamp is greater than the time stamp of the last record.
+     * @return false if the segment does not have room for the sample
+     */
+    boolean append(FeedSampleBlock block, int i, long time) {
+        assert count == 0 || time > getLastTime();
+        if (heapStart - count * RECORD_BYTES < sizeOf(block, i)) {
+            return false;
+        }
+        write(count++, block, i, time);
+        return true;
+    }
+
+    /**
+     * Inserts a sample in time stamp order.
+     * @return false if the segment does not have room for the sample or already holds a sample with the same time stamp
+     */
+    boolean insert(FeedSampleBlock block, int i, long time) {
+        int pos = ceilingIndex(time);
+        if (pos < count && getTime(pos) == time) {
+            return false;
+        }
+        if (heapStart - count * RECORD_BYTES < sizeOf(block, i)) {
+            return false;
+        }
+        if (pos < count) {
+            byte[] moved = new byte[(count - pos) * RECORD_BYTES];
+            ByteBuffer records = buffer.duplicate();
+            records.position(pos * RECORD_BYTES);
+            records.get(moved);
+            records.position((pos + 1) * RECORD_BYTES);
+            records.put(moved);
+        }
+        count++;
+        write(pos, block, i, time);
+        return true;
+    }
+
+    /**
+     * Replaces the content of the segment with a range of samples, which must fit in the segment.
+     */
+    void encode(FeedSampleBlock block, int from, int to) {
+        clear();
+        for (int i = from; i < to; i++) {
+            boolean added = append(block, i, block.getTime(i));
+            assert added;
+        }
+    }
+
+    void decode(int pos, FeedSampleBlock destination) {
+        int at = pos * RECORD_BYTES;
+        destination.add(buffer.getLong(at + TIME), buffer.get(at + STATUS) & 0xff, buffer.getLong(at + NORMALIZED_TIME),
+                        buffer.getDouble(at + VALUE), getString(buffer.getInt(at + TEXT)),
+                        buffer.getInt(at + RENDERING_INFO_ID), getString(buffer.getInt(at + RENDERING_INFO_TEXT)),
+                        buffer.getInt(at + STATUS_ID), getExtras(buffer.getInt(at + EXTRAS)));
+    }
+
+    void decode(int from, int to, FeedSampleBlock destination) {
+        for (int i = from; i < to; i++) {
+            decode(i, destination);
+        }
+    }
+
+    private void write(int pos, FeedSampleBlock block, int i, long time) {
+        int bits = block.getStatusBits(i);
+        int at = pos * RECORD_BYTES;
+        buffer.putLong(at + TIME, time);
+        buffer.putLong(at + NORMALIZED_TIME, block.getNormalizedTime(i));
+        buffer.putDouble(at + VALUE, block.getValue(i));
+        buffer.put(at + STATUS, (byte) bits);
+        buffer.putInt(at + RENDERING_INFO_ID, block.getRenderingInfoId(i));
+        buffer.putInt(at + STATUS_ID, block.getStatusId(i));
+        buffer.putInt(at + TEXT, (bits & FeedSampleBlock.TEXT_VALUE) != 0 ? putString(block.getValueText(i)) : NONE);
+        buffer.putInt(at + RENDERING_INFO_TEXT, putString(block.getRenderingInfoText(i)));
+        buffer.putInt(at + EXTRAS, putExtras(block.getExtras(i)));
+    }
+
+    private int putString(String s) {
+        if (s == null) {
+            return NONE;
+        }
+        heapStart -= sizeOf(s);
+        writeString(heapStart, s);
+        return heapStart;
+    }
+
+    private int writeString(int at, String s) {
+        int length = s.length();
+        buffer.putInt(at, length);
+        at += 4;
+        for (int i = 0; i < length; i++, at += 2) {
+            buffer.putChar(at, s.charAt(i));
+        }
+        return at;
+    }
+
+    private int putExtras(Map<String, String> extras) {
+        if (extras == null) {
+            return NONE;
+        }
+        heapStart -= sizeOf(extras);
+        int at = heapStart;
+        buffer.putInt(at, extras.size());
+        at += 4;
+        for (Entry<String, String> entry : extras.entrySet()) {
+            at = writeString(at, entry.getKey());
+            at = writeString(at, entry.getValue() == null ? "" : entry.getValue());
+        }
+        return heapStart;
+    }
+
+    private String getString(int at) {
+        if (at == NONE) {
+            return null;
+        }
+        int length = buffer.getInt(at);
+        char[] chars = new char[length];
+        at += 4;
+        for (int i = 0; i < length; i++, at += 2) {
+            chars[i] = buffer.getChar(at);
+        }
+        return new String(chars);
+    }
+
+    private Map<String, String> getExtras(int at) {
+        if (at == NONE) {
+            return null;
+        }
+        int size = buffer.getInt(at);
+        at += 4;
+        Map<String, String> extras = new HashMap<String, String>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String key = getString(at);
+            at += sizeOf(key);
+            String value = getString(at);
+            at += sizeOf(value);
+            extras.put(key, value);
+        }
+        return extras;
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.memory.internal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Fixed budget of direct memory divided into equally sized segments. The memory is allocated once, so the
+ * footprint of the off-heap memory buffer does not depend on the number of samples it holds.
+ */
+public final class OffHeapSegmentPool {
+    private final int segmentBytes;
+    private final int numOfSegments;
+    private final Deque<ByteBuffer> freeSegments = new ArrayDeque<ByteBuffer>();
+
+    public OffHeapSegmentPool(long budgetBytes, int segmentBytes) {
+        if (segmentBytes < OffHeapSegment.RECORD_BYTES) {
+            throw new IllegalArgumentException("Segment size must be at least " + OffHeapSegment.RECORD_BYTES + " bytes");
+        }
+        long segments = budgetBytes / segmentBytes;
+        if (segments < 1 || segments * segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Off-heap budget must hold between one segment and 2GB: " + budgetBytes);
+        }
+        this.segmentBytes = segmentBytes;
+        this.numOfSegments = (int) segments;
+
+        ByteBuffer memory = ByteBuffer.allocateDirect(numOfSegments * segmentBytes);
+        for (int i = 0; i < numOfSegments; i++) {
+            memory.limit((i + 1) * segmentBytes);
+            memory.position(i * segmentBytes);
+            freeSegments.add(memory.slice());
+        }
+    }
+
+    /**
+     * Returns a free segment or null if the whole budget is in use.
+     */
+    public synchronized ByteBuffer acquire() {
+        return freeSegments.poll();
+    }
+
+    public synchronized void release(ByteBuffer segment) {
+        assert segment.capacity() == segmentBytes;
+        freeSegments.push(segment);
+    }
+
+    public synchronized int getNumOfFreeSegments() {
+        return freeSegments.size();
+    }
+
+    public int getNumOfSegments() {
+        return numOfSegments;
+    }
+
+    public int getSegmentBytes() {
+        return segmentBytes;
+    }
+}
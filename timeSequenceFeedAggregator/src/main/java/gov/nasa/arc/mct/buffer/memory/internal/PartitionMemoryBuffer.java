@@ -21,48 +21,72 @@
  *******************************************************************************/
 package gov.nasa.arc.mct.buffer.memory.internal;
 
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
 import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
 import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
 import gov.nasa.arc.mct.buffer.disk.internal.PartitionTimestamps;
 import gov.nasa.arc.mct.buffer.internal.MetaDataBuffer;
 import gov.nasa.arc.mct.buffer.internal.PartitionDataBuffer;
 import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
+import gov.nasa.arc.mct.buffer.util.SampleBlocks;
 
-import java.io.Serializable;
 import java.lang.ref.SoftReference;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Memory partition which keeps the samples of each feed in a columnar {@link FeedSampleBlock}. The map based
+ * methods are adapters on top of the typed ones.
+ * <p>
+ * Readers never lock. Each feed publishes a read only snapshot of its samples after every write and reads return
+ * views of that snapshot. Samples arriving in time order are appended behind the published snapshot, which leaves it
+ * unchanged; other writes copy the samples of the feed before updating them. Writers of the same feed are serialized,
+ * writers of different feeds are not.
+ */
 public class PartitionMemoryBuffer implements PartitionDataBuffer {
     private static final Logger LOGGER = LoggerFactory.getLogger(PartitionMemoryBuffer.class);
     private static final Logger READ_PERF_LOGGER = LoggerFactory.getLogger("gov.nasa.arc.mct.performance.memory.partitionbuffer.read");
     private static final Logger WRITE_PERF_LOGGER = LoggerFactory.getLogger("gov.nasa.arc.mct.performance.memory.partitionbuffer.write");
 
-    private static final class TimeStampComparator implements Comparator<Long>, Serializable {
-        private static final long serialVersionUID = -665810351953536404L;
+    private volatile ConcurrentMap<String, FeedSamples> cachedData = new ConcurrentHashMap<String, FeedSamples>();
+    private volatile SoftReference<ConcurrentMap<String, FeedSamples>> claimableCachedData = null;
 
-        @Override
-        public int compare(Long o1, Long o2) {
-            return o1.compareTo(o2);
+    private final MemoryBufferEnv env;
+    private volatile boolean active;
+
+    private static final class FeedSamples {
+        private FeedSampleBlock samples;
+        private volatile FeedSampleBlock snapshot;
+
+        FeedSamples(String feedID, int capacity) {
+            samples = new FeedSampleBlock(feedID, capacity);
+            snapshot = samples.slice(0, 0);
         }
-    }
-    private static final Comparator<Long> TIMESTAMP_COMPARATOR = new TimeStampComparator();
 
-    private volatile Map<String, TreeMap<Long, Map<String, String>>> cachedData = new HashMap<String, TreeMap<Long, Map<String, String>>>();
-    private volatile SoftReference<Map<String, TreeMap<Long, Map<String, String>>>> claimableCachedData = null;
+        FeedSampleBlock getSnapshot() {
+            return snapshot;
+        }
 
-    private final MemoryBufferEnv env;
-    private volatile boolean active;
+        synchronized void addAll(FeedSampleBlock newSamples) {
+            if (!samples.isEmpty() && newSamples.getFirstTime() <= samples.getLastTime()) {
+                // the published snapshot shares storage with samples, so samples cannot be updated in place
+                FeedSampleBlock copy = new FeedSampleBlock(samples.getFeedID(), samples.size() + newSamples.size());
+                copy.addAll(samples);
+                samples = copy;
+            }
+            samples.addAll(newSamples);
+            snapshot = samples.slice(0, samples.size());
+        }
+    }
 
     public PartitionMemoryBuffer(int partitionNumber) {
         this(new MemoryBufferEnv(null, partitionNumber));
@@ -91,43 +115,44 @@ public class PartitionMemoryBuffer implements PartitionDataBuffer {
         return this.env;
     }
     
-    private Map<String, TreeMap<Long, Map<String, String>>> getCachedData() {
-        Map<String, TreeMap<Long, Map<String, String>>> returnedCachedData = null;
-        if (cachedData != null) {
-            returnedCachedData = cachedData;
-        } else if (claimableCachedData != null) {
+    private ConcurrentMap<String, FeedSamples> getCachedData() {
+        ConcurrentMap<String, FeedSamples> returnedCachedData = cachedData;
+        if (returnedCachedData == null && claimableCachedData != null) {
             returnedCachedData = claimableCachedData.get();
         }
         if (returnedCachedData == null) {
-            returnedCachedData = Collections.emptyMap();
+            // the samples of a claimed inactive partition are gone
+            returnedCachedData = new ConcurrentHashMap<String, FeedSamples>();
         }
         return returnedCachedData;
     }
     
     @Override
     public Map<String, SortedMap<Long, Map<String, String>>> getLastData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return SampleBlocks.toSortedMaps(getLastSamples(feedIDs, timeUnit, startTime, endTime));
+    }
+    
+    @Override
+    public Map<String, FeedSampleBlock> getLastSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
         
-        Map<String, TreeMap<Long, Map<String, String>>> cachedData = getCachedData();
+        ConcurrentMap<String, FeedSamples> cachedData = getCachedData();
         
-        Map<String, SortedMap<Long, Map<String, String>>> returnedData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+        Map<String, FeedSampleBlock> returnedData = new HashMap<String, FeedSampleBlock>();
 
+        long start = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+        long end = TimeUnit.NANOSECONDS.convert(endTime, timeUnit);
         for (String feedID : feedIDs) {
-            synchronized (this) {
-                TreeMap<Long, Map<String, String>> feedCachedData = cachedData.get(feedID);
-                if (feedCachedData == null) {
-                    continue;
-                }
+            FeedSamples feedCachedData = cachedData.get(feedID);
+            if (feedCachedData == null) {
+                continue;
+            }
 
-                long start = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
-                long end = TimeUnit.NANOSECONDS.convert(endTime, timeUnit);
-                Entry<Long, Map<String, String>> feedSearchedData = feedCachedData.subMap(start, true, end, true).lastEntry();
-                if (feedSearchedData != null) {
-                    SortedMap<Long, Map<String, String>> feedData = new TreeMap<Long, Map<String, String>>();
-                    feedData.put(feedSearchedData.getKey(), feedSearchedData.getValue());
-                    returnedData.put(feedID, feedData);
-                }
+            FeedSampleBlock snapshot = feedCachedData.getSnapshot();
+            int last = snapshot.floorIndex(end);
+            if (last >= 0 && snapshot.getTime(last) >= start) {
+                returnedData.put(feedID, snapshot.slice(last, last + 1));
             }
         }
         
@@ -140,29 +165,30 @@ public class PartitionMemoryBuffer implements PartitionDataBuffer {
     @Override
     public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime,
             long endTime) {
+        return SampleBlocks.toSortedMaps(getSamples(feedIDs, timeUnit, startTime, endTime));
+    }
+    
+    @Override
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
         
-        Map<String, TreeMap<Long, Map<String, String>>> cachedData = getCachedData();
+        ConcurrentMap<String, FeedSamples> cachedData = getCachedData();
         
-        Map<String, SortedMap<Long, Map<String, String>>> returnedData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+        Map<String, FeedSampleBlock> returnedData = new HashMap<String, FeedSampleBlock>();
 
         startTime = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
         endTime = TimeUnit.NANOSECONDS.convert(endTime, timeUnit);
 
         for (String feedID : feedIDs) {
-            synchronized (this) {
-                TreeMap<Long, Map<String, String>> feedCachedData = cachedData.get(feedID);
-                if (feedCachedData == null) {
-                    continue;
-                }
+            FeedSamples feedCachedData = cachedData.get(feedID);
+            if (feedCachedData == null) {
+                continue;
+            }
 
-                Map<Long, Map<String, String>> feedSearchedData = feedCachedData.subMap(startTime, true, endTime, true);
-                if (feedSearchedData != null && !feedSearchedData.isEmpty()) {
-                    SortedMap<Long, Map<String, String>> feedData = new TreeMap<Long, Map<String, String>>();
-                    feedData.putAll(feedSearchedData);
-                    returnedData.put(feedID, feedData);
-                }
+            FeedSampleBlock feedSearchedData = feedCachedData.getSnapshot().subBlock(startTime, endTime);
+            if (!feedSearchedData.isEmpty()) {
+                returnedData.put(feedID, feedSearchedData);
             }
         }
         
@@ -174,7 +200,7 @@ public class PartitionMemoryBuffer implements PartitionDataBuffer {
 
     @Override
     public void inactive() {
-        claimableCachedData = new SoftReference<Map<String,TreeMap<Long,Map<String,String>>>>(cachedData);
+        claimableCachedData = new SoftReference<ConcurrentMap<String, FeedSamples>>(cachedData);
         cachedData = null;
         this.active = false;
     }
@@ -191,42 +217,40 @@ public class PartitionMemoryBuffer implements PartitionDataBuffer {
 
     @Override
     public Map<String, PartitionTimestamps> putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) {
+        Map<String, FeedSampleBlock> samples = new HashMap<String, FeedSampleBlock>(value.size() * 2);
+        for (Entry<String, Map<Long, Map<String, String>>> entry : value.entrySet()) {
+            samples.put(entry.getKey(), toBlock(entry.getKey(), entry.getValue(), timeUnit));
+        }
+        return putSamples(samples, TimeUnit.NANOSECONDS);
+    }
+    
+    @Override
+    public Map<String, PartitionTimestamps> putSamples(Map<String, FeedSampleBlock> value, TimeUnit timeUnit) {
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
         
         Map<String, PartitionTimestamps> timestamps = new HashMap<String, PartitionTimestamps>();
-        Map<String, TreeMap<Long, Map<String, String>>> cachedData = getCachedData();
+        ConcurrentMap<String, FeedSamples> cachedData = getCachedData();
 
-        for (Entry<String, Map<Long, Map<String, String>>> entry : value.entrySet()) {
+        for (Entry<String, FeedSampleBlock> entry : value.entrySet()) {
             String feedID = entry.getKey();
-            long largestTime = 0;
-            long smallestTime = 0;
-            synchronized (this) {
-                TreeMap<Long, Map<String, String>> cachedFeedData = cachedData.get(feedID);
-                if (cachedFeedData == null) {
-                    cachedFeedData = new TreeMap<Long, Map<String, String>>(TIMESTAMP_COMPARATOR);
-                    cachedData.put(feedID, cachedFeedData);
-                }
-                for (Entry<Long, Map<String, String>> feedData : entry.getValue().entrySet()) {
-                    Long time = feedData.getKey();
-                    time = TimeUnit.NANOSECONDS.convert(time, timeUnit);
-                    LOGGER.debug("Putting data for feed {} with time {}", feedID, time);
-                    if (time.longValue() > largestTime) {
-                        largestTime = time.longValue();
-                    }
-                    if (smallestTime == 0) {
-                        smallestTime = time.longValue();
-                    } else if (time.longValue() < smallestTime) {
-                        smallestTime = time.longValue();
-                    }
-                    Map<String, String> clonedFeedData = new HashMap<String, String>(feedData.getValue());
-                    cachedFeedData.put(time, clonedFeedData);
+            FeedSampleBlock samples = SampleBlocks.toNanoseconds(entry.getValue(), timeUnit);
+            if (samples.isEmpty()) {
+                continue;
+            }
+            LOGGER.debug("Putting {} samples for feed {}", samples.size(), feedID);
+            FeedSamples cachedFeedData = cachedData.get(feedID);
+            if (cachedFeedData == null) {
+                cachedFeedData = new FeedSamples(feedID, Math.max(16, samples.size()));
+                FeedSamples existing = cachedData.putIfAbsent(feedID, cachedFeedData);
+                if (existing != null) {
+                    cachedFeedData = existing;
                 }
             }
-            timestamps.put(feedID, new PartitionTimestamps(smallestTime, largestTime));
+            cachedFeedData.addAll(samples);
+            timestamps.put(feedID, new PartitionTimestamps(samples.getFirstTime(), samples.getLastTime()));
         }
         
-        
         timer.stopInterval();
         WRITE_PERF_LOGGER.debug("Time to write {} feeds: {} from partition " + this.env.getCurrentBufferPartition(), value.size(), timer.getIntervalInMillis());
 
@@ -238,38 +262,11 @@ public class PartitionMemoryBuffer implements PartitionDataBuffer {
         final ElapsedTimer timer = new ElapsedTimer();
         timer.startInterval();
         
-        Map<String, TreeMap<Long, Map<String, String>>> cachedData = getCachedData();
-
-        for (Entry<String, Map<Long, Map<String, String>>> entry : value.entrySet()) {
-            String feedID = entry.getKey();
-            long largestTime = 0;
-            long smallestTime = 0;
-            synchronized (this) {
-                TreeMap<Long, Map<String, String>> cachedFeedData = cachedData.get(feedID);
-                if (cachedFeedData == null) {
-                    cachedFeedData = new TreeMap<Long, Map<String, String>>(TIMESTAMP_COMPARATOR);
-                    cachedData.put(feedID, cachedFeedData);
-                }
-                for (Entry<Long, Map<String, String>> feedData : entry.getValue().entrySet()) {
-                    Long time = feedData.getKey();
-                    time = TimeUnit.NANOSECONDS.convert(time, timeUnit);
-                    LOGGER.debug("Putting data for feed {} with time {}", feedID, time);
-                    if (time.longValue() > largestTime) {
-                        largestTime = time.longValue();
-                    }
-                    if (smallestTime == 0) {
-                        smallestTime = time.longValue();
-                    } else if (time.longValue() < smallestTime) {
-                        smallestTime = time.longValue();
-                    }
-                    Map<String, String> clonedFeedData = new HashMap<String, String>(feedData.getValue());
-                    cachedFeedData.put(time, clonedFeedData);
-                }
-            }
-            metadata.updatePartitionMetaData(metadataIndex, feedID, smallestTime, largestTime);
+        Map<String, PartitionTimestamps> timestamps = putData(value, timeUnit);
+        for (Entry<String, PartitionTimestamps> entry : timestamps.entrySet()) {
+            metadata.updatePartitionMetaData(metadataIndex, entry.getKey(), entry.getValue().getStartTimestamp(), entry.getValue().getEndTimestamp());
         }
         
-        
         timer.stopInterval();
         if (WRITE_PERF_LOGGER.isDebugEnabled()) {
             WRITE_PERF_LOGGER.debug("Time to write {} feeds: {} from partition " + this.env.getCurrentBufferPartition(), value.size(), timer.getIntervalInMillis());
@@ -277,6 +274,15 @@ public class PartitionMemoryBuffer implements PartitionDataBuffer {
         }
     }
     
+    private FeedSampleBlock toBlock(String feedID, Map<Long, Map<String, String>> entries, TimeUnit timeUnit) {
+        FeedSampleBlock block = new FeedSampleBlock(feedID, entries.size());
+        for (Entry<Long, Map<String, String>> feedData : entries.entrySet()) {
+            long time = TimeUnit.NANOSECONDS.convert(feedData.getKey().longValue(), timeUnit);
+            block.add(time, feedData.getValue());
+        }
+        return block;
+    }
+    
     @Override
     public void resetBuffer() {
         cachedData.clear();
@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.memory.internal;
+
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
+import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
+import gov.nasa.arc.mct.buffer.disk.internal.PartitionTimestamps;
+import gov.nasa.arc.mct.buffer.internal.MetaDataBuffer;
+import gov.nasa.arc.mct.buffer.internal.PartitionDataBuffer;
+import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
+import gov.nasa.arc.mct.buffer.util.SampleBlocks;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Memory partition which keeps the samples of each feed in a chain of {@link OffHeapSegment}s taken from a
+ * fixed {@link OffHeapSegmentPool} of its own. Once the pool is exhausted the oldest segment of a feed holding more than one
+ * segment is recycled, preferably from the feed being written, so every feed behaves like a ring buffer and the
+ * footprint of the buffer never grows beyond its budget. The start time stamps in the meta data are moved forward
+ * when samples are discarded so that requests for older samples fall through to the next buffer.
+ */
+public class PartitionOffHeapMemoryBuffer implements PartitionDataBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionOffHeapMemoryBuffer.class);
+    private static final Logger READ_PERF_LOGGER = LoggerFactory.getLogger("gov.nasa.arc.mct.performance.offheap.partitionbuffer.read");
+    private static final Logger WRITE_PERF_LOGGER = LoggerFactory.getLogger("gov.nasa.arc.mct.performance.offheap.partitionbuffer.write");
+
+    private final Map<String, List<OffHeapSegment>> feeds = new HashMap<String, List<OffHeapSegment>>();
+    private final MemoryBufferEnv env;
+    private final OffHeapSegmentPool pool;
+    private final MetaDataBuffer metaDataBuffer;
+    private volatile boolean active;
+    private volatile boolean closed;
+    private long recycledSegments;
+    private long droppedSamples;
+
+    /**
+     * Creates a partition.
+     * @param env environment of the partition
+     * @param pool pool the segments are taken from
+     * @param metaDataBuffer meta data to update when samples are discarded, may be null
+     */
+    public PartitionOffHeapMemoryBuffer(MemoryBufferEnv env, OffHeapSegmentPool pool, MetaDataBuffer metaDataBuffer) {
+        this.env = env;
+        this.pool = pool;
+        this.metaDataBuffer = metaDataBuffer;
+        this.active = true;
+    }
+
+    @Override
+    public synchronized void removeBuffer() {
+        releaseSegments();
+        closed = true;
+        this.env.closeAndRestartEnvironment();
+    }
+
+    @Override
+    public void closeBuffer() {
+        removeBuffer();
+    }
+
+    @Override
+    public DataBufferEnv getBufferEnv() {
+        return this.env;
+    }
+
+    @Override
+    public Map<String, SortedMap<Long, Map<String, String>>> getLastData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return SampleBlocks.toSortedMaps(getLastSamples(feedIDs, timeUnit, startTime, endTime));
+    }
+
+    @Override
+    public Map<String, FeedSampleBlock> getLastSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        final ElapsedTimer timer = new ElapsedTimer();
+        timer.startInterval();
+
+        Map<String, FeedSampleBlock> returnedData = new HashMap<String, FeedSampleBlock>();
+
+        long start = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+        long end = TimeUnit.NANOSECONDS.convert(endTime, timeUnit);
+        for (String feedID : feedIDs) {
+            synchronized (this) {
+                List<OffHeapSegment> segments = feeds.get(feedID);
+                if (segments == null) {
+                    continue;
+                }
+                for (int i = segments.size() - 1; i >= 0; i--) {
+                    OffHeapSegment segment = segments.get(i);
+                    int last = segment.floorIndex(end);
+                    if (last < 0) {
+                        continue;
+                    }
+                    if (segment.getTime(last) >= start) {
+                        FeedSampleBlock feedData = new FeedSampleBlock(feedID, 1);
+                        segment.decode(last, feedData);
+                        returnedData.put(feedID, feedData);
+                    }
+                    break;
+                }
+            }
+        }
+
+        timer.stopInterval();
+        READ_PERF_LOGGER.debug("Time to get {} feeds from off-heap memory: {} from partition " + this.env.getCurrentBufferPartition(), feedIDs.size(), timer.getIntervalInMillis());
+
+        return returnedData;
+    }
+
+    @Override
+    public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime,
+            long endTime) {
+        return SampleBlocks.toSortedMaps(getSamples(feedIDs, timeUnit, startTime, endTime));
+    }
+
+    @Override
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        final ElapsedTimer timer = new ElapsedTimer();
+        timer.startInterval();
+
+        Map<String, FeedSampleBlock> returnedData = new HashMap<String, FeedSampleBlock>();
+
+        long start = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+        long end = TimeUnit.NANOSECONDS.convert(endTime, timeUnit);
+        for (String feedID : feedIDs) {
+            synchronized (this) {
+                List<OffHeapSegment> segments = feeds.get(feedID);
+                if (segments == null) {
+                    continue;
+                }
+                FeedSampleBlock feedData = null;
+                for (OffHeapSegment segment : segments) {
+                    if (segment.getLastTime() < start) {
+                        continue;
+                    }
+                    if (segment.getFirstTime() > end) {
+                        break;
+                    }
+                    int from = segment.ceilingIndex(start);
+                    int to = segment.floorIndex(end) + 1;
+                    if (from < to) {
+                        if (feedData == null) {
+                            feedData = new FeedSampleBlock(feedID, to - from);
+                        }
+                        segment.decode(from, to, feedData);
+                    }
+                }
+                if (feedData != null) {
+                    returnedData.put(feedID, feedData);
+                }
+            }
+        }
+
+        timer.stopInterval();
+        READ_PERF_LOGGER.debug("Time to get {} feeds from off-heap memory: {} from partition " + this.env.getCurrentBufferPartition(), feedIDs.size(), timer.getIntervalInMillis());
+
+        return returnedData;
+    }
+
+    @Override
+    public void inactive() {
+        this.active = false;
+    }
+
+    @Override
+    public boolean isActive() {
+        return this.active;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public Map<String, PartitionTimestamps> putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) {
+        Map<String, FeedSampleBlock> samples = new HashMap<String, FeedSampleBlock>(value.size() * 2);
+        for (Entry<String, Map<Long, Map<String, String>>> entry : value.entrySet()) {
+            FeedSampleBlock block = new FeedSampleBlock(entry.getKey(), entry.getValue().size());
+            for (Entry<Long, Map<String, String>> feedData : entry.getValue().entrySet()) {
+                block.add(TimeUnit.NANOSECONDS.convert(feedData.getKey().longValue(), timeUnit), feedData.getValue());
+            }
+            samples.put(entry.getKey(), block);
+        }
+        return putSamples(samples, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Map<String, PartitionTimestamps> putSamples(Map<String, FeedSampleBlock> value, TimeUnit timeUnit) {
+        final ElapsedTimer timer = new ElapsedTimer();
+        timer.startInterval();
+
+        Map<String, PartitionTimestamps> timestamps = new HashMap<String, PartitionTimestamps>();
+
+        for (Entry<String, FeedSampleBlock> entry : value.entrySet()) {
+            String feedID = entry.getKey();
+            FeedSampleBlock samples = SampleBlocks.toNanoseconds(entry.getValue(), timeUnit);
+            if (samples.isEmpty()) {
+                continue;
+            }
+            LOGGER.debug("Putting {} samples for feed {}", samples.size(), feedID);
+            synchronized (this) {
+                if (closed) {
+                    break;
+                }
+                List<OffHeapSegment> segments = feeds.get(feedID);
+                if (segments == null) {
+                    segments = new ArrayList<OffHeapSegment>();
+                    feeds.put(feedID, segments);
+                }
+                for (int i = 0; i < samples.size(); i++) {
+                    put(feedID, segments, samples, i);
+                }
+                if (segments.isEmpty()) {
+                    feeds.remove(feedID);
+                    continue;
+                }
+                // samples discarded to make room must not be reported as held by this partition
+                long start = Math.max(samples.getFirstTime(), segments.get(0).getFirstTime());
+                timestamps.put(feedID, new PartitionTimestamps(start, Math.max(start, samples.getLastTime())));
+            }
+        }
+
+        timer.stopInterval();
+        WRITE_PERF_LOGGER.debug("Time to write {} feeds: {} from partition " + this.env.getCurrentBufferPartition(), value.size(), timer.getIntervalInMillis());
+
+        return timestamps;
+    }
+
+    @Override
+    public void putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit, MetaDataBuffer metadata, int metadataIndex) {
+        Map<String, PartitionTimestamps> timestamps = putData(value, timeUnit);
+        for (Entry<String, PartitionTimestamps> entry : timestamps.entrySet()) {
+            metadata.updatePartitionMetaData(metadataIndex, entry.getKey(), entry.getValue().getStartTimestamp(), entry.getValue().getEndTimestamp());
+        }
+    }
+
+    private void put(String feedID, List<OffHeapSegment> segments, FeedSampleBlock samples, int i) {
+        long time = samples.getTime(i);
+        if (OffHeapSegment.sizeOf(samples, i) > pool.getSegmentBytes()) {
+            dropSamples(feedID, 1);
+            return;
+        }
+
+        int last = segments.size() - 1;
+        if (last < 0 || time > segments.get(last).getLastTime()) {
+            if (last >= 0 && segments.get(last).append(samples, i, time)) {
+                return;
+            }
+            OffHeapSegment segment = newSegment(feedID, null);
+            if (segment == null) {
+                dropSamples(feedID, 1);
+                return;
+            }
+            segment.append(samples, i, time);
+            segments.add(segment);
+            return;
+        }
+
+        int k = segments.size() - 1;
+        while (k > 0 && segments.get(k).getFirstTime() > time) {
+            k--;
+        }
+        OffHeapSegment segment = segments.get(k);
+        if (segment.insert(samples, i, time)) {
+            return;
+        }
+
+        // the segment is full or holds a sample with the same time stamp, rewrite it
+        FeedSampleBlock rewritten = new FeedSampleBlock(feedID, segment.size() + 1);
+        segment.decode(0, segment.size(), rewritten);
+        SampleBlocks.copy(samples, i, rewritten, time);
+        store(feedID, segments, segment, rewritten);
+    }
+
+    /**
+     * Stores the samples of a block in place of a segment, using as many new segments as required after it.
+     */
+    private void store(String feedID, List<OffHeapSegment> segments, OffHeapSegment segment, FeedSampleBlock samples) {
+        int[] sizes = new int[samples.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = OffHeapSegment.sizeOf(samples, i);
+        }
+
+        int needed = countSegments(sizes, 0) - 1;
+        List<OffHeapSegment> added = new ArrayList<OffHeapSegment>(needed);
+        while (added.size() < needed) {
+            OffHeapSegment newSegment = newSegment(feedID, segment);
+            if (newSegment == null) {
+                break;
+            }
+            added.add(newSegment);
+        }
+
+        // without enough segments only the most recent samples are kept
+        int from = 0;
+        while (countSegments(sizes, from) > added.size() + 1) {
+            from++;
+        }
+        if (from > 0) {
+            dropSamples(feedID, from);
+        }
+
+        int k = segments.indexOf(segment);
+        OffHeapSegment target = segment;
+        int used = 0;
+        int start = from;
+        int bytes = 0;
+        for (int i = from; i < sizes.length; i++) {
+            if (bytes + sizes[i] > pool.getSegmentBytes()) {
+                target.encode(samples, start, i);
+                target = added.get(used++);
+                segments.add(++k, target);
+                start = i;
+                bytes = 0;
+            }
+            bytes += sizes[i];
+        }
+        target.encode(samples, start, sizes.length);
+
+        for (int i = used; i < added.size(); i++) {
+            pool.release(added.get(i).getBuffer());
+        }
+        if (from > 0 && metaDataBuffer != null && segments.get(0) == segment) {
+            metaDataBuffer.truncatePartitionMetaData(env.getCurrentBufferPartition(), feedID, segment.getFirstTime());
+        }
+    }
+
+    private int countSegments(int[] sizes, int from) {
+        int count = 1;
+        int bytes = 0;
+        for (int i = from; i < sizes.length; i++) {
+            if (bytes + sizes[i] > pool.getSegmentBytes()) {
+                count++;
+                bytes = 0;
+            }
+            bytes += sizes[i];
+        }
+        return count;
+    }
+
+    /**
+     * Returns an empty segment from the pool or, when the pool is exhausted, the recycled oldest segment of a feed.
+     * @param feedID feed the segment is for
+     * @param keep segment which must not be recycled, may be null
+     * @return the segment or null if none can be recycled
+     */
+    private OffHeapSegment newSegment(String feedID, OffHeapSegment keep) {
+        ByteBuffer memory = pool.acquire();
+        if (memory != null) {
+            return new OffHeapSegment(memory);
+        }
+
+        String victimID = null;
+        List<OffHeapSegment> victim = null;
+        if (isRecyclable(feeds.get(feedID), keep)) {
+            victimID = feedID;
+            victim = feeds.get(feedID);
+        } else {
+            for (Entry<String, List<OffHeapSegment>> entry : feeds.entrySet()) {
+                List<OffHeapSegment> segments = entry.getValue();
+                if (isRecyclable(segments, keep) && (victim == null || segments.size() > victim.size())) {
+                    victimID = entry.getKey();
+                    victim = segments;
+                }
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
+
+        OffHeapSegment recycled = victim.remove(0);
+        recycled.clear();
+        recycledSegments++;
+        LOGGER.debug("Recycled oldest segment of feed {} in partition {}", victimID, env.getCurrentBufferPartition());
+        if (metaDataBuffer != null) {
+            metaDataBuffer.truncatePartitionMetaData(env.getCurrentBufferPartition(), victimID, victim.get(0).getFirstTime());
+        }
+        return recycled;
+    }
+
+    private boolean isRecyclable(List<OffHeapSegment> segments, OffHeapSegment keep) {
+        return segments != null && segments.size() > 1 && segments.get(0) != keep;
+    }
+
+    private void dropSamples(String feedID, int count) {
+        if (droppedSamples == 0) {
+            LOGGER.warn("Off-heap memory buffer cannot hold samples of feed {}, memory.buffer.offheap.bytes or memory.buffer.offheap.segment.bytes may be too small", feedID);
+        }
+        droppedSamples += count;
+    }
+
+    /**
+     * Returns the number of segments which were recycled because the pool was exhausted.
+     */
+    public synchronized long getNumOfRecycledSegments() {
+        return recycledSegments;
+    }
+
+    /**
+     * Returns the number of samples which could not be kept.
+     */
+    public synchronized long getNumOfDroppedSamples() {
+        return droppedSamples;
+    }
+
+    private void releaseSegments() {
+        for (List<OffHeapSegment> segments : feeds.values()) {
+            for (OffHeapSegment segment : segments) {
+                pool.release(segment.getBuffer());
+            }
+        }
+        feeds.clear();
+    }
+
+    @Override
+    public synchronized void resetBuffer() {
+        releaseSegments();
+    }
+}
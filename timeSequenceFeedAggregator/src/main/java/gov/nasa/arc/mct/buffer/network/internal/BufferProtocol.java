@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.network.internal;
+
+import gov.nasa.arc.mct.buffer.util.FeedDataCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary protocol between the buffer server and its clients. Every message is a frame:
+ * <pre>
+ * [int length][int request id][byte op or status][payload]
+ * </pre>
+ * where the length counts the bytes after itself. A response carries the id of its request, so a client can send
+ * several requests on a connection without waiting and match the responses as they come back, in any order.
+ * <p>
+ * Requests:
+ * <ul>
+ * <li>{@link #GET_DATA}, {@link #GET_LAST_DATA}: <code>[long start][long end][int n][n feed IDs]</code>,
+ * times in nanoseconds. The response holds the samples as a feed map.</li>
+ * <li>{@link #PUT_DATA}: a feed map. The response is empty.</li>
+ * </ul>
+ * A feed map is encoded by {@link FeedDataCodec}, with times in nanoseconds.
+ */
+final class BufferProtocol {
+    static final byte GET_DATA = 1;
+    static final byte GET_LAST_DATA = 2;
+    static final byte PUT_DATA = 3;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    /** Bytes of the frame header after the length: request id and op. */
+    static final int HEADER_SIZE = 5;
+    /** Largest frame accepted, so a corrupted length cannot exhaust the heap. */
+    static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+
+    private BufferProtocol() {
+        //
+    }
+
+    /**
+     * Returns a frame ready to be written, positioned at its start.
+     */
+    static ByteBuffer frame(int requestID, byte op, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + HEADER_SIZE + payload.length);
+        frame.putInt(HEADER_SIZE + payload.length);
+        frame.putInt(requestID);
+        frame.put(op);
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    static byte[] encodeRequest(Set<String> feedIDs, long startTime, long endTime) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(startTime);
+        out.writeLong(endTime);
+        out.writeInt(feedIDs.size());
+        for (String feedID : feedIDs) {
+            out.writeUTF(feedID);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Set<String> decodeFeedIDs(DataInputStream in) throws IOException {
+        int feeds = in.readInt();
+        Set<String> feedIDs = new HashSet<String>(feeds * 2);
+        for (int i = 0; i < feeds; i++) {
+            feedIDs.add(in.readUTF());
+        }
+        return feedIDs;
+    }
+
+    static byte[] encodeData(Map<String, ? extends Map<Long, Map<String, String>>> value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        FeedDataCodec.writeData(out, value, TimeUnit.NANOSECONDS);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Map<String, SortedMap<Long, Map<String, String>>> decodeData(DataInputStream in) throws IOException {
+        return FeedDataCodec.readData(in);
+    }
+
+    static byte[] encodeError(String message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        FeedDataCodec.writeString(out, message);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static String decodeError(DataInputStream in) throws IOException {
+        return FeedDataCodec.readString(in);
+    }
+}
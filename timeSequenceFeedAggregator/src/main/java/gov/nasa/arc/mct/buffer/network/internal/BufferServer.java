@@ -0,0 +1,367 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.network.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the buffers of this process to the <code>network</code> buffers of other processes on the same host, so
+ * they share one buffer instead of keeping a copy each. A single thread accepts connections and reads and writes
+ * frames of the {@link BufferProtocol} without blocking; requests are answered by a pool of worker threads, so a
+ * slow read does not hold up the other requests of a connection. A connection is not read while it has
+ * {@link #MAX_IN_FLIGHT} requests unanswered, so a client sending faster than it is answered is held back by TCP
+ * instead of filling the worker queue.
+ */
+public final class BufferServer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferServer.class);
+
+    /**
+     * Maximum number of requests of a connection read but not yet answered.
+     */
+    static final int MAX_IN_FLIGHT = 32;
+
+    /**
+     * Buffers served to the clients.
+     */
+    public interface Source {
+        /**
+         * Returns the samples of feeds, keyed by time stamps in nanoseconds.
+         * @param startTime start time in nanoseconds
+         * @param endTime end time in nanoseconds
+         */
+        Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime);
+
+        /**
+         * Writes samples keyed by time stamps in nanoseconds.
+         */
+        void putData(Map<String, Map<Long, Map<String, String>>> value);
+    }
+
+    private final Source source;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final Thread selectorThread;
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<Connection>();
+    private volatile boolean closed;
+
+    /**
+     * Starts serving.
+     * @param host address to listen on; a loopback address keeps the buffers local
+     * @param port port to listen on, 0 for any free port
+     * @param workerThreads number of threads answering requests
+     * @param source buffers to serve
+     */
+    public BufferServer(String host, int port, int workerThreads, Source source) throws IOException {
+        this.source = source;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(host, port));
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        this.workers = Executors.newFixedThreadPool(workerThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Buffer server worker");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        this.selectorThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "Buffer server");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+        LOGGER.info("Buffer server listening on {}", serverChannel.socket().getLocalSocketAddress());
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops serving and closes the connections. Requests being answered are dropped.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+    }
+
+    private void serve() {
+        try {
+            while (!closed) {
+                selector.select();
+                for (Connection connection = pendingWrites.poll(); connection != null; connection = pendingWrites.poll()) {
+                    connection.enableWrite();
+                }
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException e) {
+                        LOGGER.debug("Closing buffer client connection", e);
+                        connection.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.error("Buffer server stopped", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // ignore exception
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignore exception
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        LOGGER.debug("Buffer client connected from {}", channel.socket().getRemoteSocketAddress());
+    }
+
+    /**
+     * Answers a request.
+     * @return the payload of the response
+     */
+    private byte[] answer(byte op, DataInputStream in) throws IOException {
+        switch (op) {
+        case BufferProtocol.GET_DATA: {
+            long startTime = in.readLong();
+            long endTime = in.readLong();
+            return BufferProtocol.encodeData(source.getData(BufferProtocol.decodeFeedIDs(in), startTime, endTime));
+        }
+        case BufferProtocol.GET_LAST_DATA: {
+            long startTime = in.readLong();
+            long endTime = in.readLong();
+            return BufferProtocol.encodeData(getLastData(BufferProtocol.decodeFeedIDs(in), startTime, endTime));
+        }
+        case BufferProtocol.PUT_DATA:
+            source.putData(new HashMap<String, Map<Long, Map<String, String>>>(BufferProtocol.decodeData(in)));
+            return new byte[0];
+        default:
+            throw new IOException("Unknown request " + op);
+        }
+    }
+
+    /**
+     * Returns the last sample of each feed between startTime and endTime. The buffers add the sample before the
+     * start of a request when they have no sample at the start, so a request starting and ending at endTime
+     * returns the last sample.
+     */
+    private Map<String, SortedMap<Long, Map<String, String>>> getLastData(Set<String> feedIDs, long startTime, long endTime) {
+        Map<String, SortedMap<Long, Map<String, String>>> lastData = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+        for (Entry<String, SortedMap<Long, Map<String, String>>> entry : source.getData(feedIDs, endTime, endTime).entrySet()) {
+            SortedMap<Long, Map<String, String>> data = entry.getValue();
+            if (!data.isEmpty() && data.lastKey().longValue() >= startTime) {
+                SortedMap<Long, Map<String, String>> last = new TreeMap<Long, Map<String, String>>();
+                last.put(data.lastKey(), data.get(data.lastKey()));
+                lastData.put(entry.getKey(), last);
+            }
+        }
+        return lastData;
+    }
+
+    /**
+     * A client connection. Frames are read and written by the selector thread; responses are queued by the workers.
+     * A request is in flight from its dispatch until its response is written.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer length = ByteBuffer.allocate(4);
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<ByteBuffer>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private ByteBuffer frame;
+        private SelectionKey key;
+        private boolean readPaused;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            while (true) {
+                if (frame == null) {
+                    if (channel.read(length) < 0) {
+                        throw new EOFException();
+                    }
+                    if (length.hasRemaining()) {
+                        return;
+                    }
+                    int size = length.getInt(0);
+                    if (size < BufferProtocol.HEADER_SIZE || size > BufferProtocol.MAX_FRAME_SIZE) {
+                        throw new IOException("Invalid frame length " + size);
+                    }
+                    frame = ByteBuffer.allocate(size);
+                }
+                if (channel.read(frame) < 0) {
+                    throw new EOFException();
+                }
+                if (frame.hasRemaining()) {
+                    return;
+                }
+                frame.flip();
+                dispatch(frame);
+                frame = null;
+                length.clear();
+                if (inFlight.get() >= MAX_IN_FLIGHT) {
+                    // read again when write() has sent enough responses
+                    readPaused = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                    return;
+                }
+            }
+        }
+
+        private void dispatch(ByteBuffer request) {
+            final int requestID = request.getInt();
+            final byte op = request.get();
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(request.array(), request.position(), request.remaining()));
+            inFlight.incrementAndGet();
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ByteBuffer response;
+                    try {
+                        response = BufferProtocol.frame(requestID, BufferProtocol.OK, answer(op, in));
+                    } catch (Exception e) {
+                        LOGGER.error("Error answering buffer request " + op, e);
+                        try {
+                            response = BufferProtocol.frame(requestID, BufferProtocol.ERROR, BufferProtocol.encodeError(String.valueOf(e)));
+                        } catch (IOException ioe) {
+                            inFlight.decrementAndGet();
+                            pendingWrites.add(Connection.this);
+                            selector.wakeup();
+                            return;
+                        }
+                    }
+                    responses.add(response);
+                    pendingWrites.add(Connection.this);
+                    selector.wakeup();
+                }
+            });
+        }
+
+        void enableWrite() {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        void write() throws IOException {
+            for (ByteBuffer response = responses.peek(); response != null; response = responses.peek()) {
+                channel.write(response);
+                if (response.hasRemaining()) {
+                    return;
+                }
+                responses.poll();
+                inFlight.decrementAndGet();
+            }
+            if (inFlight.get() < MAX_IN_FLIGHT) {
+                readPaused = false;
+            }
+            // a response queued from now on puts the connection back in pendingWrites
+            key.interestOps(readPaused ? 0 : SelectionKey.OP_READ);
+        }
+
+        void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore exception
+            }
+        }
+    }
+}
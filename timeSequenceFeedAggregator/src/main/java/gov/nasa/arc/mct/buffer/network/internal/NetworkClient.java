@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.network.internal;
+
+import gov.nasa.arc.mct.api.feed.DataRequest;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client side of the {@link BufferProtocol}. Requests are spread over a small pool of connections, and each
+ * connection carries the requests of any number of threads at once: a request is written as soon as the connection
+ * is free for writing, and a reader thread hands each response to the thread waiting for it. Connections are opened
+ * when first used and opened again after a failure.
+ */
+final class NetworkClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NetworkClient.class);
+
+    private final InetSocketAddress address;
+    private final long timeoutMillis;
+    private final Connection[] connections;
+    private final AtomicInteger nextRequestID = new AtomicInteger();
+    private final AtomicInteger nextConnection = new AtomicInteger();
+    private volatile boolean closed;
+
+    /**
+     * @param host host of the buffer server
+     * @param port port of the buffer server
+     * @param connections number of connections to the server
+     * @param timeoutMillis time to wait for a response
+     */
+    NetworkClient(String host, int port, int connections, long timeoutMillis) {
+        this.address = new InetSocketAddress(host, port);
+        this.timeoutMillis = timeoutMillis;
+        this.connections = new Connection[Math.max(1, connections)];
+        for (int i = 0; i < this.connections.length; i++) {
+            this.connections[i] = new Connection();
+        }
+    }
+
+    /**
+     * Sends a request and waits for its response. The wait is cut short by the deadline of the current
+     * {@link DataRequest}, if any.
+     * @return the payload of the response
+     * @throws IOException if the request fails, the server answers with an error or no response comes in time
+     */
+    DataInputStream request(byte op, byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Buffer client closed");
+        }
+        long timeout = timeoutMillis;
+        DataRequest dataRequest = DataRequest.current();
+        if (dataRequest != null && dataRequest.hasDeadline()) {
+            timeout = Math.min(timeout, dataRequest.getRemainingTime(TimeUnit.MILLISECONDS));
+        }
+        int requestID = nextRequestID.incrementAndGet();
+        Connection connection = connections[(nextConnection.getAndIncrement() & Integer.MAX_VALUE) % connections.length];
+        Response response = connection.send(requestID, op, payload);
+        try {
+            if (!response.latch.await(Math.max(0, timeout), TimeUnit.MILLISECONDS)) {
+                throw new IOException("No response from the buffer server in " + timeout + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the buffer server");
+        } finally {
+            connection.pending.remove(Integer.valueOf(requestID));
+        }
+        if (response.failure != null) {
+            throw response.failure;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(response.payload));
+        if (response.status != BufferProtocol.OK) {
+            throw new IOException("Buffer server error: " + BufferProtocol.decodeError(in));
+        }
+        return in;
+    }
+
+    /**
+     * Closes the connections. Requests waiting for a response fail.
+     */
+    void close() {
+        closed = true;
+        for (Connection connection : connections) {
+            connection.close(new IOException("Buffer client closed"));
+        }
+    }
+
+    private static final class Response {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private byte status;
+        private byte[] payload;
+        private IOException failure;
+    }
+
+    private final class Connection {
+        private final ConcurrentMap<Integer, Response> pending = new ConcurrentHashMap<Integer, Response>();
+        private SocketChannel channel;
+
+        synchronized Response send(int requestID, byte op, byte[] payload) throws IOException {
+            Response response = new Response();
+            pending.put(Integer.valueOf(requestID), response);
+            try {
+                SocketChannel c = open();
+                ByteBuffer frame = BufferProtocol.frame(requestID, op, payload);
+                while (frame.hasRemaining()) {
+                    c.write(frame);
+                }
+            } catch (IOException e) {
+                pending.remove(Integer.valueOf(requestID));
+                close(e);
+                throw e;
+            }
+            return response;
+        }
+
+        private SocketChannel open() throws IOException {
+            if (channel == null) {
+                if (closed) {
+                    throw new IOException("Buffer client closed");
+                }
+                final SocketChannel c = SocketChannel.open(address);
+                c.socket().setTcpNoDelay(true);
+                channel = c;
+                Thread reader = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        receive(c);
+                    }
+                }, "Buffer client reader");
+                reader.setDaemon(true);
+                reader.start();
+                LOGGER.debug("Connected to the buffer server at {}", address);
+            }
+            return channel;
+        }
+
+        private void receive(SocketChannel c) {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(c)));
+                while (true) {
+                    int size = in.readInt();
+                    if (size < BufferProtocol.HEADER_SIZE || size > BufferProtocol.MAX_FRAME_SIZE) {
+                        throw new IOException("Invalid frame length " + size);
+                    }
+                    int requestID = in.readInt();
+                    byte status = in.readByte();
+                    byte[] payload = new byte[size - BufferProtocol.HEADER_SIZE];
+                    in.readFully(payload);
+                    // the requester may have given up waiting
+                    Response response = pending.remove(Integer.valueOf(requestID));
+                    if (response != null) {
+                        response.status = status;
+                        response.payload = payload;
+                        response.latch.countDown();
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.warn("Lost the connection to the buffer server at {}: {}", address, e.toString());
+                }
+                synchronized (this) {
+                    if (channel == c) {
+                        close(e);
+                    }
+                }
+            }
+        }
+
+        synchronized void close(IOException failure) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // ignore exception
+                }
+                channel = null;
+            }
+            for (Integer requestID : pending.keySet()) {
+                Response response = pending.remove(requestID);
+                if (response != null) {
+                    response.failure = failure;
+                    response.latch.countDown();
+                }
+            }
+        }
+    }
+}
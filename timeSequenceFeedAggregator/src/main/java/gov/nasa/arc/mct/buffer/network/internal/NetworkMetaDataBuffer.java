@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.network.internal;
+
+import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
+import gov.nasa.arc.mct.buffer.internal.MetaDataBuffer;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metadata of the <code>network</code> buffer. The samples are written by the other clients of the server as well,
+ * so this process cannot tell which feeds the server holds; every request goes to the server, which takes the
+ * samples it does not have from its own slower buffers.
+ */
+final class NetworkMetaDataBuffer extends MetaDataBuffer {
+
+    NetworkMetaDataBuffer(DataBufferEnv metaEnv) {
+        super(metaEnv);
+    }
+
+    @Override
+    public boolean hasFeed(int bufferPartition, String feedID) {
+        return true;
+    }
+
+    @Override
+    public boolean isWithinTimeSpan(int bufferPartition, String feedID, TimeUnit timeunit, long startTime, long endTime) {
+        return true;
+    }
+
+    @Override
+    public boolean isFullyWithinTimeSpan(int bufferPartition, String feedID, TimeUnit timeunit, long startTime) {
+        return true;
+    }
+
+    @Override
+    public boolean isWithinTimeSpan(int bufferPartition, Set<String> feedIDs, TimeUnit timeunit, long startTime, long endTime) {
+        return true;
+    }
+
+    @Override
+    public boolean isFullyWithinTimeSpan(int bufferPartition, Set<String> feedIDs, TimeUnit timeunit, long startTime) {
+        return true;
+    }
+}
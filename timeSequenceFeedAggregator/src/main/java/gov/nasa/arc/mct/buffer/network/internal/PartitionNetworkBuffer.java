@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.network.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+import gov.nasa.arc.mct.buffer.config.DataBufferEnv;
+import gov.nasa.arc.mct.buffer.config.NetworkBufferEnv;
+import gov.nasa.arc.mct.buffer.disk.internal.PartitionTimestamps;
+import gov.nasa.arc.mct.buffer.internal.MetaDataBuffer;
+import gov.nasa.arc.mct.buffer.internal.PartitionDataBuffer;
+import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
+import gov.nasa.arc.mct.buffer.util.SampleBlocks;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Partition whose samples are kept by a {@link BufferServer}. Reads and writes are forwarded to the server; a
+ * request the server cannot answer reads no samples, so the slower buffers of this process answer it instead.
+ */
+public class PartitionNetworkBuffer implements PartitionDataBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionNetworkBuffer.class);
+    private static final Logger READ_PERF_LOGGER = LoggerFactory.getLogger("gov.nasa.arc.mct.performance.network.partitionbuffer.read");
+
+    private final NetworkBufferEnv env;
+    private final NetworkClient client;
+    private volatile boolean active;
+    private volatile boolean closed;
+
+    public PartitionNetworkBuffer(int partitionNumber) {
+        this(new NetworkBufferEnv(null, partitionNumber));
+    }
+
+    public PartitionNetworkBuffer(NetworkBufferEnv env) {
+        this.env = env;
+        this.client = new NetworkClient(env.getNetworkBufferServerHost(), env.getNetworkBufferServerPort(),
+                        env.getNumOfConnections(), env.getRequestTimeoutMillis());
+        this.active = true;
+    }
+
+    @Override
+    public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return request(BufferProtocol.GET_DATA, feedIDs, timeUnit, startTime, endTime);
+    }
+
+    @Override
+    public Map<String, SortedMap<Long, Map<String, String>>> getLastData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return request(BufferProtocol.GET_LAST_DATA, feedIDs, timeUnit, startTime, endTime);
+    }
+
+    private Map<String, SortedMap<Long, Map<String, String>>> request(byte op, Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        if (feedIDs.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final ElapsedTimer timer = new ElapsedTimer();
+        timer.startInterval();
+        try {
+            Map<String, SortedMap<Long, Map<String, String>>> data = BufferProtocol.decodeData(client.request(op,
+                            BufferProtocol.encodeRequest(feedIDs, TimeUnit.NANOSECONDS.convert(startTime, timeUnit),
+                                            TimeUnit.NANOSECONDS.convert(endTime, timeUnit))));
+            timer.stopInterval();
+            READ_PERF_LOGGER.debug("Time to get {} feeds from the buffer server: {}", feedIDs.size(), timer.getIntervalInMillis());
+            return data;
+        } catch (IOException e) {
+            LOGGER.warn("Cannot read {} feeds from the buffer server: {}", feedIDs.size(), e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    @Override
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return SampleBlocks.toSamples(getData(feedIDs, timeUnit, startTime, endTime));
+    }
+
+    @Override
+    public Map<String, FeedSampleBlock> getLastSamples(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        return SampleBlocks.toSamples(getLastData(feedIDs, timeUnit, startTime, endTime));
+    }
+
+    @Override
+    public Map<String, PartitionTimestamps> putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit) throws BufferFullException {
+        Map<String, PartitionTimestamps> timestamps = new HashMap<String, PartitionTimestamps>();
+        Map<String, Map<Long, Map<String, String>>> nanos = new HashMap<String, Map<Long, Map<String, String>>>(value.size() * 2);
+        for (Entry<String, Map<Long, Map<String, String>>> feed : value.entrySet()) {
+            if (feed.getValue().isEmpty()) {
+                continue;
+            }
+            Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>(feed.getValue().size() * 2);
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+            for (Entry<Long, Map<String, String>> entry : feed.getValue().entrySet()) {
+                long time = TimeUnit.NANOSECONDS.convert(entry.getKey().longValue(), timeUnit);
+                entries.put(Long.valueOf(time), entry.getValue());
+                start = Math.min(start, time);
+                end = Math.max(end, time);
+            }
+            nanos.put(feed.getKey(), entries);
+            timestamps.put(feed.getKey(), new PartitionTimestamps(start, end));
+        }
+        if (nanos.isEmpty()) {
+            return timestamps;
+        }
+        try {
+            client.request(BufferProtocol.PUT_DATA, BufferProtocol.encodeData(nanos));
+        } catch (IOException e) {
+            // the caller keeps the samples, so it can retry or overflow them
+            LOGGER.error("Cannot write {} feeds to the buffer server: {}", nanos.size(), e.getMessage());
+            throw new BufferFullException(e.getMessage());
+        }
+        return timestamps;
+    }
+
+    @Override
+    public Map<String, PartitionTimestamps> putSamples(Map<String, FeedSampleBlock> value, TimeUnit timeUnit) throws BufferFullException {
+        return putData(SampleBlocks.toMaps(value), timeUnit);
+    }
+
+    @Override
+    public void putData(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit, MetaDataBuffer metadata, int metadataIndex) throws BufferFullException {
+        Map<String, PartitionTimestamps> timestamps = putData(value, timeUnit);
+        for (Entry<String, PartitionTimestamps> entry : timestamps.entrySet()) {
+            metadata.updatePartitionMetaData(metadataIndex, entry.getKey(), entry.getValue().getStartTimestamp(), entry.getValue().getEndTimestamp());
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public void inactive() {
+        active = false;
+    }
+
+    @Override
+    public void removeBuffer() {
+        closed = true;
+        client.close();
+        env.closeAndRestartEnvironment();
+    }
+
+    @Override
+    public void closeBuffer() {
+        removeBuffer();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public DataBufferEnv getBufferEnv() {
+        return env;
+    }
+
+    @Override
+    public void resetBuffer() {
+        // the samples belong to the server and are shared with its other clients
+    }
+}
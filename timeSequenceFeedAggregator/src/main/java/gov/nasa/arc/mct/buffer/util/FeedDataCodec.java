@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.util;
+
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary encoding of feed data, shared by the files and the protocol which carry samples in their map
+ * representation. Feed data is <code>[int feeds]</code> followed, for each feed, by its ID, <code>[int samples]</code>
+ * and, for each sample, <code>[long time][int entries]</code> and the key and value of each entry. Times are in
+ * nanoseconds. Feed IDs and keys are modified UTF-8 strings; values are written by {@link #writeString}, so they
+ * are not limited to 64K.
+ */
+public final class FeedDataCodec {
+
+    private FeedDataCodec() {
+    }
+
+    /**
+     * Writes feed data.
+     * @param value samples keyed by feed and by time stamp
+     * @param timeUnit time unit of the time stamps
+     */
+    public static void writeData(DataOutputStream out, Map<String, ? extends Map<Long, Map<String, String>>> value,
+                    TimeUnit timeUnit) throws IOException {
+        out.writeInt(value.size());
+        for (Entry<String, ? extends Map<Long, Map<String, String>>> feed : value.entrySet()) {
+            out.writeUTF(feed.getKey());
+            out.writeInt(feed.getValue().size());
+            for (Entry<Long, Map<String, String>> sample : feed.getValue().entrySet()) {
+                writeSample(out, TimeUnit.NANOSECONDS.convert(sample.getKey().longValue(), timeUnit), sample.getValue());
+            }
+        }
+    }
+
+    /**
+     * Writes blocks of samples in the same form as {@link #writeData}.
+     * @param timeUnit time unit of the time stamps of the blocks
+     */
+    public static void writeSamples(DataOutputStream out, Map<String, FeedSampleBlock> samples, TimeUnit timeUnit)
+                    throws IOException {
+        out.writeInt(samples.size());
+        for (Entry<String, FeedSampleBlock> feed : samples.entrySet()) {
+            FeedSampleBlock block = feed.getValue();
+            out.writeUTF(feed.getKey());
+            out.writeInt(block.size());
+            for (int i = 0; i < block.size(); i++) {
+                writeSample(out, TimeUnit.NANOSECONDS.convert(block.getTime(i), timeUnit), block.toMap(i));
+            }
+        }
+    }
+
+    private static void writeSample(DataOutputStream out, long time, Map<String, String> sample) throws IOException {
+        out.writeLong(time);
+        out.writeInt(sample.size());
+        for (Entry<String, String> entry : sample.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+    }
+
+    /**
+     * Reads feed data written by {@link #writeData} or {@link #writeSamples}.
+     * @return the samples keyed by feed and by time stamp in nanoseconds
+     */
+    public static Map<String, SortedMap<Long, Map<String, String>>> readData(DataInputStream in) throws IOException {
+        int feeds = in.readInt();
+        Map<String, SortedMap<Long, Map<String, String>>> value = new HashMap<String, SortedMap<Long, Map<String, String>>>(feeds * 2);
+        for (int i = 0; i < feeds; i++) {
+            String feedID = in.readUTF();
+            int samples = in.readInt();
+            SortedMap<Long, Map<String, String>> feedData = new TreeMap<Long, Map<String, String>>();
+            for (int j = 0; j < samples; j++) {
+                long time = in.readLong();
+                int entries = in.readInt();
+                Map<String, String> sample = new HashMap<String, String>(entries * 2);
+                for (int k = 0; k < entries; k++) {
+                    String key = in.readUTF();
+                    sample.put(key, readString(in));
+                }
+                feedData.put(Long.valueOf(time), sample);
+            }
+            value.put(feedID, feedData);
+        }
+        return value;
+    }
+
+    /**
+     * Writes a string prefixed by the length of its UTF-8 encoding, or -1 for null.
+     */
+    public static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
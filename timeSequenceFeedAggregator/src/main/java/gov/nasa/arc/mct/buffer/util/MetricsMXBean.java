@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.util;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link MetricsRegistry}, registered as <code>gov.nasa.arc.mct.feed:type=Metrics</code>.
+ */
+public interface MetricsMXBean {
+    /**
+     * Returns the latency histograms, in microseconds.
+     */
+    Map<String, LatencySnapshot> getLatencies();
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    /**
+     * Returns the ratio of hits to hits and misses of each pair of <code>.hits</code> and <code>.misses</code>
+     * counters, keyed by their common prefix.
+     */
+    Map<String, Double> getHitRates();
+
+    /**
+     * Discards the recorded latencies and counts.
+     */
+    void reset();
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of the feed aggregator and its buffers: latency histograms, counters and gauges, each under a dotted name.
+ * The metrics are exposed over JMX through {@link MetricsMXBean}. Callers on hot paths look up their histograms and
+ * counters once and keep them.
+ */
+public final class MetricsRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsRegistry.class);
+
+    static final String OBJECT_NAME = "gov.nasa.arc.mct.feed:type=Metrics";
+    private static final String HITS = ".hits";
+    private static final String MISSES = ".misses";
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    /**
+     * A value read when the metrics are.
+     */
+    public interface Gauge {
+        long getValue();
+    }
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<String, Gauge>();
+
+    MetricsRegistry() {
+        //
+    }
+
+    /**
+     * Returns the registry, registering it with the platform MBean server on first use.
+     */
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE.new View(), new ObjectName(OBJECT_NAME));
+        } catch (Exception e) {
+            LOGGER.warn("Cannot register the feed aggregator metrics with JMX: {}", e.toString());
+        }
+    }
+
+    /**
+     * Returns the histogram of a name, creating it if needed.
+     */
+    public LatencyHistogram getHistogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = histograms.putIfAbsent(name, histogram);
+            if (existing != null) {
+                histogram = existing;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns the counter of a name, creating it if needed.
+     */
+    public AtomicLong getCounter(String name) {
+        AtomicLong counter = counters.get(name);
+        if (counter == null) {
+            counter = new AtomicLong();
+            AtomicLong existing = counters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Registers a gauge, replacing the gauge of the same name.
+     */
+    public void putGauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Removes a gauge, if it is still the one registered under its name.
+     */
+    public void removeGauge(String name, Gauge gauge) {
+        gauges.remove(name, gauge);
+    }
+
+    /**
+     * Returns the snapshots of the histograms which recorded anything, in microseconds.
+     */
+    public Map<String, LatencySnapshot> getLatencies() {
+        Map<String, LatencySnapshot> latencies = new TreeMap<String, LatencySnapshot>();
+        for (Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                latencies.put(entry.getKey(), entry.getValue().getSnapshot());
+            }
+        }
+        return latencies;
+    }
+
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<String, Long>();
+        for (Entry<String, AtomicLong> entry : counters.entrySet()) {
+            values.put(entry.getKey(), Long.valueOf(entry.getValue().get()));
+        }
+        return values;
+    }
+
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<String, Long>();
+        for (Entry<String, Gauge> entry : gauges.entrySet()) {
+            try {
+                values.put(entry.getKey(), Long.valueOf(entry.getValue().getValue()));
+            } catch (RuntimeException e) {
+                LOGGER.debug("Cannot read gauge " + entry.getKey(), e);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the ratio of hits of each pair of <code>&lt;name&gt;.hits</code> and <code>&lt;name&gt;.misses</code>
+     * counters, keyed by <code>&lt;name&gt;</code>.
+     */
+    public Map<String, Double> getHitRates() {
+        Map<String, Double> rates = new TreeMap<String, Double>();
+        for (Entry<String, AtomicLong> entry : counters.entrySet()) {
+            String name = entry.getKey();
+            if (name.endsWith(HITS)) {
+                String prefix = name.substring(0, name.length() - HITS.length());
+                AtomicLong misses = counters.get(prefix + MISSES);
+                long hits = entry.getValue().get();
+                long total = hits + (misses == null ? 0 : misses.get());
+                if (total > 0) {
+                    rates.put(prefix, Double.valueOf((double) hits / total));
+                }
+            }
+        }
+        return rates;
+    }
+
+    /**
+     * Clears the histograms and counters; gauges are left alone.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : counters.values()) {
+            counter.set(0);
+        }
+    }
+
+    private final class View implements MetricsMXBean {
+        @Override
+        public Map<String, LatencySnapshot> getLatencies() {
+            return MetricsRegistry.this.getLatencies();
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return MetricsRegistry.this.getCounters();
+        }
+
+        @Override
+        public Map<String, Long> getGauges() {
+            return MetricsRegistry.this.getGauges();
+        }
+
+        @Override
+        /**
+     * Returns the ratio of hits of each pair of <code>&lt;name&gt;.hits</code> and <code>&lt;name&gt;.misses</code>
+     * counters, keyed by <code>&lt;name&gt;</code>.
+     */
+    public Map<String, Double> getHitRates() {
+            return MetricsRegistry.this.getHitRates();
+        }
+
+        @Override
+        public void reset() {
+            MetricsRegistry.this.reset();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.util;
+
+import gov.nasa.arc.mct.api.feed.DataRequest;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Threads shared by all the buffers to read the segments of their partitions in parallel. Reads are served by
+ * priority, then by deadline, then in the order they were submitted; the priority and deadline are those of the
+ * {@link DataRequest} of the thread submitting them.
+ * <p>
+ * The submitting thread does not just wait: it runs the reads of its own request which no pool thread has taken
+ * yet, so a request always makes progress even when the pool is busy with other requests. Once the request is
+ * cancelled, interrupted or past its deadline, the reads which have not started are skipped.
+ */
+public final class ReadScheduler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadScheduler.class);
+
+    private static final int THREADS = 10;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final ReadScheduler INSTANCE = new ReadScheduler(THREADS);
+
+    private final ThreadPoolExecutor pool;
+    private final AtomicLong sequence = new AtomicLong();
+
+    ReadScheduler(int threads) {
+        pool = new ThreadPoolExecutor(threads, threads, 10L, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            private final AtomicInteger count = new AtomicInteger();
+
+                            @Override
+                            public Thread newThread(Runnable r) {
+                                Thread t = new Thread(r, "Buffer read " + count.incrementAndGet());
+                                t.setContextClassLoader(getClass().getClassLoader());
+                                t.setDaemon(true);
+                                return t;
+                            }
+                        });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    public static ReadScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs reads in parallel and waits until they are done, or until the request of the current thread is cancelled
+     * or past its deadline. In that case reads which have started are still waited for, since they use the
+     * partition, but the others are skipped.
+     * @param reads reads of the request
+     * @return true if all the reads ran
+     */
+    public boolean invokeAll(List<? extends Runnable> reads) {
+        DataRequest request = DataRequest.current();
+        int priority = request == null ? DataRequest.Priority.live.ordinal() : request.getPriority().ordinal();
+        long deadline = request == null || !request.hasDeadline() ? Long.MAX_VALUE
+                        : request.getRemainingTime(TimeUnit.NANOSECONDS);
+
+        CountDownLatch done = new CountDownLatch(reads.size());
+        Read[] tasks = new Read[reads.size()];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Read(reads.get(i), priority, deadline, sequence.incrementAndGet(), done);
+        }
+        // the last reads are left to the submitting thread, which runs them from the end
+        for (int i = 0; i < tasks.length - 1; i++) {
+            pool.execute(tasks[i]);
+        }
+
+        boolean interrupted = false;
+        boolean complete = true;
+        try {
+            for (int i = tasks.length - 1; i >= 0; i--) {
+                if (isDone(request)) {
+                    break;
+                }
+                tasks[i].run();
+            }
+            while (done.getCount() > 0) {
+                if (isDone(request) || interrupted) {
+                    complete = skip(tasks) == 0;
+                    awaitUninterruptibly(done);
+                    break;
+                }
+                try {
+                    done.await(Math.min(POLL_NANOS, request == null ? POLL_NANOS
+                                    : request.getRemainingTime(TimeUnit.NANOSECONDS)), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return complete && !interrupted;
+    }
+
+    private static boolean isDone(DataRequest request) {
+        return Thread.currentThread().isInterrupted() || (request != null && request.isDone());
+    }
+
+    // claims the reads which have not started
+    private static int skip(Read[] tasks) {
+        int skipped = 0;
+        for (Read task : tasks) {
+            if (task.claim()) {
+                task.done.countDown();
+                skipped++;
+            }
+        }
+        LOGGER.debug("Skipped {} reads of a cancelled or expired request", Integer.valueOf(skipped));
+        return skipped;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A read, run once by either a pool thread or the submitting thread.
+     */
+    private static final class Read implements Runnable, Comparable<Read> {
+        private final Runnable read;
+        private final int priority;
+        private final long deadline;
+        private final long sequence;
+        private final CountDownLatch done;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Read(Runnable read, int priority, long deadline, long sequence, CountDownLatch done) {
+            this.read = read;
+            this.priority = priority;
+            this.deadline = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + deadline;
+            this.sequence = sequence;
+            this.done = done;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            if (!claim()) {
+                return;
+            }
+            try {
+                read.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("Error reading the buffer", e);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        @Override
+        public int compareTo(Read o) {
+            if (priority != o.priority) {
+                return priority < o.priority ? -1 : 1;
+            }
+            if (deadline != o.deadline) {
+                // deadlines are compared as time stamps which may wrap around
+                if (deadline == Long.MAX_VALUE || o.deadline == Long.MAX_VALUE) {
+                    return deadline == Long.MAX_VALUE ? 1 : -1;
+                }
+                return deadline - o.deadline < 0 ? -1 : 1;
+            }
+            return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+        }
+    }
+}
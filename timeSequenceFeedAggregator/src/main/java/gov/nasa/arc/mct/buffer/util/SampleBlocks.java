@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.util;
+
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Conversions between {@link FeedSampleBlock}s and the map representation of feed data, used
+ * by partition buffers to implement the map based methods on top of the typed ones and the other way around.
+ *
+ */
+public final class SampleBlocks {
+    
+    private SampleBlocks() {
+    }
+    
+    public static Map<String, FeedSampleBlock> toSamples(Map<String, SortedMap<Long, Map<String, String>>> data) {
+        Map<String, FeedSampleBlock> samples = new HashMap<String, FeedSampleBlock>(data.size() * 2);
+        for (Entry<String, SortedMap<Long, Map<String, String>>> entry : data.entrySet()) {
+            samples.put(entry.getKey(), FeedSampleBlock.fromMaps(entry.getKey(), entry.getValue()));
+        }
+        return samples;
+    }
+    
+    public static Map<String, SortedMap<Long, Map<String, String>>> toSortedMaps(Map<String, FeedSampleBlock> samples) {
+        Map<String, SortedMap<Long, Map<String, String>>> data = new HashMap<String, SortedMap<Long, Map<String, String>>>(samples.size() * 2);
+        for (Entry<String, FeedSampleBlock> entry : samples.entrySet()) {
+            data.put(entry.getKey(), entry.getValue().toSortedMap());
+        }
+        return data;
+    }
+    
+    public static Map<String, Map<Long, Map<String, String>>> toMaps(Map<String, FeedSampleBlock> samples) {
+        Map<String, Map<Long, Map<String, String>>> data = new HashMap<String, Map<Long, Map<String, String>>>(samples.size() * 2);
+        for (Entry<String, FeedSampleBlock> entry : samples.entrySet()) {
+            Map<Long, Map<String, String>> feedData = entry.getValue().toSortedMap();
+            data.put(entry.getKey(), feedData);
+        }
+        return data;
+    }
+    
+    /**
+     * Returns a block whose time stamps are in nanoseconds. The block is returned as is if timeUnit is already nanoseconds.
+     */
+    public static FeedSampleBlock toNanoseconds(FeedSampleBlock block, TimeUnit timeUnit) {
+        if (timeUnit == TimeUnit.NANOSECONDS) {
+            return block;
+        }
+        FeedSampleBlock converted = new FeedSampleBlock(block.getFeedID(), block.size());
+        for (int i = 0; i < block.size(); i++) {
+            copy(block, i, converted, TimeUnit.NANOSECONDS.convert(block.getTime(i), timeUnit));
+        }
+        return converted;
+    }
+    
+    /**
+     * Copies a sample from one block to another, using the given time stamp.
+     */
+    public static void copy(FeedSampleBlock source, int i, FeedSampleBlock destination, long time) {
+        int bits = source.getStatusBits(i);
+        destination.add(time, bits, source.getNormalizedTime(i), source.getValue(i),
+                        (bits & FeedSampleBlock.TEXT_VALUE) != 0 ? source.getValueText(i) : null,
+                        source.getRenderingInfoId(i), source.getRenderingInfoText(i), source.getStatusId(i),
+                        source.getExtras(i));
+    }
+}
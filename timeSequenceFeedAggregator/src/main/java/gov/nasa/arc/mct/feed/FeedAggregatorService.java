@@ -26,14 +26,30 @@ import gov.nasa.arc.mct.api.feed.DataArchive;
 import gov.nasa.arc.mct.api.feed.DataProvider;
 import gov.nasa.arc.mct.api.feed.DataProvider.LOS;
 import gov.nasa.arc.mct.api.feed.FeedAggregator;
+import gov.nasa.arc.mct.api.feed.FeedChangeAggregator;
+import gov.nasa.arc.mct.api.feed.FeedChangeListener;
+import gov.nasa.arc.mct.api.feed.FeedCursorAggregator;
+import gov.nasa.arc.mct.api.feed.FeedDataCursor;
 import gov.nasa.arc.mct.api.feed.FeedDataArchive;
+import gov.nasa.arc.mct.api.feed.FeedRollupAggregator;
+import gov.nasa.arc.mct.api.feed.FeedRollupProvider;
+import gov.nasa.arc.mct.api.feed.FeedSampleAggregator;
+import gov.nasa.arc.mct.api.feed.FeedSampleArchive;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
 import gov.nasa.arc.mct.buffer.internal.DataBuffer;
 import gov.nasa.arc.mct.buffer.internal.DataBufferFactory;
+import gov.nasa.arc.mct.buffer.network.internal.BufferServer;
 import gov.nasa.arc.mct.buffer.util.ElapsedTimer;
+import gov.nasa.arc.mct.buffer.util.MetricsRegistry;
+import gov.nasa.arc.mct.buffer.util.SampleBlocks;
+import gov.nasa.arc.mct.feed.IngestQueue.OverloadPolicy;
+import gov.nasa.arc.mct.util.FilepathReplacer;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -44,11 +60,11 @@ import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.Vector;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JOptionPane;
 
@@ -56,7 +72,8 @@ import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public final class FeedAggregatorService implements FeedDataArchive, FeedAggregator {
+public final class FeedAggregatorService implements FeedDataArchive, FeedAggregator, FeedSampleAggregator, FeedSampleArchive, FeedRollupAggregator,
+                FeedCursorAggregator, FeedChangeAggregator {
     private static Logger LOGGER = LoggerFactory.getLogger(FeedAggregatorService.class.getName());
     private static final Logger PERF_LOGGER = LoggerFactory.getLogger("gov.nasa.arc.mct.performance.feedAggregator");
     private static final Logger READ_PERF_LOGGER = LoggerFactory.getLogger("gov.nasa.arc.mct.performance.read.feedAggregator");
@@ -64,6 +81,25 @@ public final class FeedAggregatorService implements FeedDataArchive, FeedAggrega
     private static final String DIALOG_WINDOW_TITLE = "MCT Buffer Available Space Warning";
     
     private static final String BUFFER_LIST_PROPERTY = "bufferList";
+    private static final String BATCH_MILLIS_PROPERTY = "feed.write.batch.millis";
+    private static final String BATCH_SIZE_PROPERTY = "feed.write.batch.size";
+    private static final long DEFAULT_BATCH_MILLIS = 50;
+    private static final int DEFAULT_BATCH_SIZE = 5000;
+    private static final String QUEUE_SAMPLES_PROPERTY = "feed.write.queue.samples";
+    private static final String QUEUE_POLICY_PROPERTY = "feed.write.queue.policy";
+    private static final String OVERFLOW_FILE_PROPERTY = "feed.write.overflow.file";
+    private static final int DEFAULT_QUEUE_SAMPLES = 500000;
+    private static final String OVERFLOW_FILE_NAME = "ingest-overflow.dat";
+    private static final String SERVER_HOST_PROPERTY = "network.buffer.server.host";
+    private static final String SERVER_PORT_PROPERTY = "network.buffer.server.port";
+    private static final String SERVER_THREADS_PROPERTY = "network.buffer.server.threads";
+    private static final int DEFAULT_SERVER_THREADS = 4;
+    private static final Runnable NO_CALLBACK = new Runnable() {
+        @Override
+        public void run() {
+            // writes of the buffer server clients are acknowledged once queued
+        }
+    };
     
     private final Vector<DataProvider> dataProviders; // use a synchronized data
                                                       // structure due to the
@@ -71,12 +107,28 @@ public final class FeedAggregatorService implements FeedDataArchive, FeedAggrega
                                                       // accessing from multiple
                                                       // threads.
     private final Vector<DataArchive> dataArchives;
-    private final ThreadPoolExecutor bufferWorkers;
-    private LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<Runnable>();
+    private final IngestQueue queue;
     private DataArchive dormantArchive;
     private RunMode currentRunMode;
     private Properties configProp;
-    private final AtomicInteger numOfWriteJobs = new AtomicInteger(0);
+    
+    // samples put one feed at a time are written to the slower archives in batches
+    private final long batchMillis;
+    private final int batchSize;
+    private final Object batchLock = new Object();
+    private Timer batchTimer;
+    private Map<String, Map<Long, Map<String, String>>> pendingBatch;
+    private int pendingSamples;
+    private TimerTask pendingBatchFlush;
+    private BufferServer bufferServer;
+    private final Map<String, MetricsRegistry.Gauge> queueGauges = new HashMap<String, MetricsRegistry.Gauge>();
+    private final List<FeedChangeListener> changeListeners = new CopyOnWriteArrayList<FeedChangeListener>();
+    private final SharedReads sharedReads = new SharedReads(new SharedReads.Source() {
+        @Override
+        public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+            return getSortedData(feedIDs, timeUnit, startTime, endTime);
+        }
+    });
     
     private static enum RunMode {
         embedded, server;
@@ -90,6 +142,13 @@ public final class FeedAggregatorService implements FeedDataArchive, FeedAggrega
             }
         },
         
+        offheapmemory() {
+            @Override
+            public DataBuffer getDataBuffer(Properties props) {
+                return DataBufferFactory.getOffHeapMemoryDataBuffer(props);
+            }
+        },
+        
         noncoddisk() {
             @Override
             public DataBuffer getDataBuffer(Properties props) {
@@ -102,6 +161,20 @@ public final class FeedAggregatorService implements FeedDataArchive, FeedAggrega
             public DataBuffer getDataBuffer(Properties props) {
                 return DataBufferFactory.getFastDiskDataBuffer(props);
             }
+        },
+
+        mmaplog() {
+            @Override
+            public DataBuffer getDataBuffer(Properties props) {
+                return DataBufferFactory.getLogDataBuffer(props);
+            }
+        },
+
+        network() {
+            @Override
+            public DataBuffer getDataBuffer(Properties props) {
+                return DataBufferFactory.getNetworkDataBuffer(props);
+            }
         };
         
         abstract DataBuffer getDataBuffer(Properties props);
@@ -120,11 +193,137 @@ public final class FeedAggregatorService implements FeedDataArchive, FeedAggrega
         List<DataBuffer> dataBuffers = getDataBuffers();
         this.dataArchives.addAll(dataBuffers);
 
-        this.bufferWorkers = new ThreadPoolExecutor(1, 1, 1l, TimeUnit.SECONDS,
-                queue);
         this.dataProviders.addAll(dataBuffers);
         String runMode = configProp.getProperty("runMode");
         this.currentRunMode = Enum.valueOf(RunMode.class, runMode);
+        
+        String millis = configProp.getProperty(BATCH_MILLIS_PROPERTY);
+        this.batchMillis = millis == null ? DEFAULT_BATCH_MILLIS : Long.parseLong(millis.trim());
+        String size = configProp.getProperty(BATCH_SIZE_PROPERTY);
+        this.batchSize = size == null ? DEFAULT_BATCH_SIZE : Integer.parseInt(size.trim());
+        this.batchTimer = batchMillis > 0 ? new Timer("Feed Aggregator write batch timer", true) : null;
+        
+        String queueSamples = configProp.getProperty(QUEUE_SAMPLES_PROPERTY);
+        String policy = configProp.getProperty(QUEUE_POLICY_PROPERTY);
+        this.queue = new IngestQueue(queueSamples == null ? DEFAULT_QUEUE_SAMPLES : Integer.parseInt(queueSamples.trim()),
+                        policy == null ? OverloadPolicy.block : Enum.valueOf(OverloadPolicy.class, policy.trim()),
+                        getOverflowFile(), new IngestQueue.WriteFactory() {
+                            @Override
+                            public IngestQueue.Write newWrite(Map<String, Map<Long, Map<String, String>>> value, Runnable callback) {
+                                return new PutDataTask(value, TimeUnit.NANOSECONDS, callback);
+                            }
+                        });
+        registerQueueGauges();
+        
+        if (currentRunMode == RunMode.server) {
+            startBufferServer();
+        }
+    }
+    
+    /**
+     * Serves the buffers to the <code>network</code> buffers of other processes, if a port is configured.
+     */
+    private void startBufferServer() {
+        String port = configProp.getProperty(SERVER_PORT_PROPERTY);
+        if (port == null) {
+            return;
+        }
+        String threads = configProp.getProperty(SERVER_THREADS_PROPERTY);
+        try {
+            bufferServer = new BufferServer(configProp.getProperty(SERVER_HOST_PROPERTY, "localhost").trim(), Integer.parseInt(port.trim()),
+                            threads == null ? DEFAULT_SERVER_THREADS : Integer.parseInt(threads.trim()), new BufferServer.Source() {
+                                @Override
+                                public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime) {
+                                    return getSortedData(feedIDs, TimeUnit.NANOSECONDS, startTime, endTime);
+                                }
+
+                                @Override
+                                public void putData(Map<String, Map<Long, Map<String, String>>> value) {
+                                    FeedAggregatorService.this.putData(value, TimeUnit.NANOSECONDS, NO_CALLBACK);
+                                }
+                            });
+        } catch (IOException e) {
+            LOGGER.error("Cannot start the buffer server on port " + port, e);
+        }
+    }
+    
+    private void registerQueueGauges() {
+        queueGauges.put("queue.samples", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return queue.getQueuedSamples();
+            }
+        });
+        queueGauges.put("queue.overflowSamples", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return queue.getSpilledPendingSamples();
+            }
+        });
+        queueGauges.put("queue.droppedSamples", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return queue.getDroppedSamples();
+            }
+        });
+        queueGauges.put("queue.spilledSamples", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return queue.getSpilledSamples();
+            }
+        });
+        queueGauges.put("queue.averageEnqueueMicros", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return queue.getAverageEnqueueLatency(TimeUnit.MICROSECONDS);
+            }
+        });
+        queueGauges.put("queue.maxEnqueueMicros", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return queue.getMaxEnqueueLatency(TimeUnit.MICROSECONDS);
+            }
+        });
+        for (Entry<String, MetricsRegistry.Gauge> entry : queueGauges.entrySet()) {
+            MetricsRegistry.getInstance().putGauge(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    /**
+     * Returns the name the metrics of a provider or archive are registered under.
+     */
+    private static String getTierName(Object tier) {
+        if (tier instanceof DataBuffer) {
+            return DataBuffer.class.cast(tier).getName();
+        }
+        return tier.getClass().getSimpleName();
+    }
+    
+    /**
+     * Records the latency of a read from a provider, and the number of requested feeds it answered.
+     */
+    private static void recordRead(DataProvider dataProvider, long startNanos, int requestedFeeds, int remainingFeeds) {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        String tier = getTierName(dataProvider);
+        registry.getHistogram("get." + tier).recordSince(startNanos);
+        registry.getCounter("get." + tier + ".hits").addAndGet(requestedFeeds - remainingFeeds);
+        registry.getCounter("get." + tier + ".misses").addAndGet(remainingFeeds);
+    }
+    
+    private static void recordWrite(DataArchive dataArchive, long startNanos) {
+        MetricsRegistry.getInstance().getHistogram("put." + getTierName(dataArchive)).recordSince(startNanos);
+    }
+    
+    private File getOverflowFile() {
+        String file = configProp.getProperty(OVERFLOW_FILE_PROPERTY);
+        if (file != null) {
+            return new File(FilepathReplacer.substitute(file.trim()));
+        }
+        String bufferHome = System.getProperty("buffer.disk.loc");
+        if (bufferHome == null) {
+            bufferHome = configProp.getProperty("buffer.disk.loc", ".");
+        }
+        return new File(FilepathReplacer.substitute(bufferHome.trim()), OVERFLOW_FILE_NAME);
     }
     
     private static Properties loadConfig() {
@@ -185,119 +384,296 @@ public final class FeedAggregatorService implements FeedDataArchive, FeedAggrega
         this.dataProviders.remove(retrievalService);
     }
 
+    /**
+     * Returns the data of feeds. Concurrent requests for the same time window share their reads of the providers:
+     * see {@link SharedReads}.
+     */
     @Override
     public Map<String, List<Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime,
             long endTime) {
+        Map<String, SortedMap<Long, Map<String, String>>> obtainedValues = sharedReads.getData(feedIDs, timeUnit, startTime, endTime);
+        Map<String, List<Map<String, String>>> returnedData = new HashMap<String, List<Map<String,String>>>();
+        for (Entry<String, SortedMap<Long, Map<String, String>>> entry: obtainedValues.entrySet()) {
+            returnedData.put(entry.getKey(), new LinkedList<Map<String,String>>(entry.getValue().values()));
+        }
+        return returnedData;
+    }
+    
+    /**
+     * Reads the data of feeds, taking each feed from the first provider holding its samples.
+     */
+    private Map<String, SortedMap<Long, Map<String, String>>> getSortedData(Set<String> feedIDs, final TimeUnit timeUnit, final long startTime,
+            final long endTime) {
+        return readProviders(feedIDs, timeUnit, startTime, "feeds", new ProviderRead<SortedMap<Long, Map<String, String>>>() {
+            @Override
+            public Map<String, SortedMap<Long, Map<String, String>>> read(DataProvider provider, Set<String> feedIDs) {
+                return provider.getData(feedIDs, startTime, endTime, timeUnit);
+            }
+
+            @Override
+            public Long getFirstTime(SortedMap<Long, Map<String, String>> data) {
+                return data.isEmpty() ? null : data.firstKey();
+            }
+        });
+    }
+    
+    @Override
+    public Map<String, List<Map<String, String>>> getData(Set<String> feedIDs, final TimeUnit timeUnit, final long startTime,
+            final long endTime, final long resolution) {
+        Map<String, SortedMap<Long, Map<String, String>>> obtainedValues = readProviders(feedIDs, timeUnit, startTime, "rollups of feeds",
+                        new ProviderRead<SortedMap<Long, Map<String, String>>>() {
+            @Override
+            public Map<String, SortedMap<Long, Map<String, String>>> read(DataProvider provider, Set<String> feedIDs) {
+                if (provider instanceof FeedRollupProvider) {
+                    return FeedRollupProvider.class.cast(provider).getData(feedIDs, startTime, endTime, timeUnit, resolution);
+                }
+                return provider.getData(feedIDs, startTime, endTime, timeUnit);
+            }
+
+            @Override
+            public Long getFirstTime(SortedMap<Long, Map<String, String>> data) {
+                return data.isEmpty() ? null : data.firstKey();
+            }
+        });
+        Map<String, List<Map<String, String>>> returnedData = new HashMap<String, List<Map<String,String>>>();
+        for (Entry<String, SortedMap<Long, Map<String, String>>> entry: obtainedValues.entrySet()) {
+            returnedData.put(entry.getKey(), new LinkedList<Map<String,String>>(entry.getValue().values()));
+        }
+        return returnedData;
+    }
+    
+    @Override
+    public FeedDataCursor openCursor(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime, int chunkSize) {
+        return new WindowCursor(new WindowCursor.Source() {
+            @Override
+            public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime) {
+                return getSortedData(feedIDs, TimeUnit.NANOSECONDS, startTime, endTime);
+            }
+        }, new HashSet<String>(feedIDs), TimeUnit.NANOSECONDS.convert(startTime, timeUnit),
+                        TimeUnit.NANOSECONDS.convert(endTime, timeUnit), chunkSize);
+    }
+
+    @Override
+    public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, final TimeUnit timeUnit, final long startTime, final long endTime) {
+        return readProviders(feedIDs, timeUnit, startTime, "samples of feeds", new ProviderRead<FeedSampleBlock>() {
+            @Override
+            public Map<String, FeedSampleBlock> read(DataProvider provider, Set<String> feedIDs) {
+                if (provider instanceof FeedSampleAggregator) {
+                    return FeedSampleAggregator.class.cast(provider).getSamples(feedIDs, timeUnit, startTime, endTime);
+                }
+                return SampleBlocks.toSamples(provider.getData(feedIDs, startTime, endTime, timeUnit));
+            }
+
+            @Override
+            public Long getFirstTime(FeedSampleBlock data) {
+                return data.isEmpty() ? null : Long.valueOf(data.getFirstTime());
+            }
+        });
+    }
+    
+    /**
+     * A read of feeds from a provider, in one of the forms the aggregator returns.
+     */
+    private interface ProviderRead<T> {
+        Map<String, T> read(DataProvider provider, Set<String> feedIDs);
+
+        /**
+         * @return time stamp in nanoseconds of the first sample of the data, or null if it is empty
+         */
+        Long getFirstTime(T data);
+    }
+
+    /**
+     * Reads feeds from the providers in order. A feed is read from the next provider only while the providers read
+     * so far have no sample of it at or before the start time, and do not cover the start time.
+     */
+    private <T> Map<String, T> readProviders(Set<String> feedIDs, TimeUnit timeUnit, long startTime, String what, ProviderRead<T> read) {
         final ElapsedTimer timer = new ElapsedTimer();
         
         feedIDs = new HashSet<String>(feedIDs);
         int feedSize = feedIDs.size();
-        Map<String, List<Map<String, String>>> returnedData = new HashMap<String, List<Map<String,String>>>();
+        long startNanos = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
+        Map<String, T> returnedData = new HashMap<String, T>();
         for (DataProvider dataRetrieval : dataProviders) {
             timer.startInterval();
+            final long start = System.nanoTime();
+            final int requestedFeeds = feedIDs.size();
 
-            Map<String, SortedMap<Long, Map<String, String>>> obtainedValues = dataRetrieval
-                    .getData(feedIDs, startTime, endTime, timeUnit);
-            
-            for (Entry<String, SortedMap<Long, Map<String, String>>> entry: obtainedValues.entrySet()) {
-                returnedData.put(entry.getKey(), new LinkedList<Map<String,String>>(entry.getValue().values()));
+            Map<String, T> obtainedValues = read.read(dataRetrieval, feedIDs);
+            returnedData.putAll(obtainedValues);
+            for (Iterator<String> itr = feedIDs.iterator(); itr.hasNext();) {
+                String feedID = itr.next();
+                T feedData = obtainedValues.get(feedID);
+                Long valueTime = feedData == null ? null : read.getFirstTime(feedData);
+                if (valueTime != null
+                                && (valueTime.longValue() < startNanos || dataRetrieval.isFullyWithinTimeSpan(feedID, startNanos, TimeUnit.NANOSECONDS))) {
+                    itr.remove();
+                }
             }
-            filterObtainedFeeds(dataRetrieval, feedIDs, obtainedValues, timeUnit, startTime);
+            recordRead(dataRetrieval, start, requestedFeeds, feedIDs.size());
             
             timer.stopInterval();
-            READ_PERF_LOGGER.debug("Time to get {} feeds: {} ms from provider " + dataRetrieval.getLOS(), feedSize, timer.getIntervalInMillis());
+            READ_PERF_LOGGER.debug("Time to get {} {}: {} ms from provider " + dataRetrieval.getLOS(),
+                            new Object[] { feedSize, what, timer.getIntervalInMillis() });
 
             if (feedIDs.isEmpty()) { break; }
         }
         return returnedData;
     }
-    
-    private void filterObtainedFeeds(DataProvider dataProvider, Set<String> feedIDs, Map<String, SortedMap<Long, Map<String, String>>> obtainedValues,
-            TimeUnit timeUnit, long startTime) {
-        startTime = TimeUnit.NANOSECONDS.convert(startTime, timeUnit);
-        
-        for (Iterator<String> itr = feedIDs.iterator(); itr.hasNext();) {
-            String feedID = itr.next();
-            SortedMap<Long, Map<String, String>> feedData = obtainedValues.get(feedID);
-            if (feedData != null && !feedData.isEmpty()) {
-                long valueTime = feedData.firstKey();
-                if (valueTime < startTime || dataProvider.isFullyWithinTimeSpan(feedID, startTime, TimeUnit.NANOSECONDS)) {
-                    itr.remove();
-                }
-            }
-        }
-    }
 
     @Override
     public void putData(String feedID, TimeUnit timeUnit, long time, Map<String, String> value) {
-        PERF_LOGGER.debug("Queue size {}", queue.size());
+        PERF_LOGGER.debug("Queue size {}", queue.getQueuedSamples());
         Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
         entries.put(Long.valueOf(time), value);
         putData(feedID, timeUnit, entries);
     }
 
     /**
-     * Asynchronously putting data into the data buffer.
+     * Asynchronously putting data into the data buffer. The entries are written to the first archive right away and
+     * to the other archives with the entries of the other calls made within the batch window.
      */
     @Override
     public void putData(String feedID, TimeUnit timeUnit, Map<Long, Map<String, String>> entries) {
-        PERF_LOGGER.debug("Queue size {}", queue.size());
+        PERF_LOGGER.debug("Queue size {}", queue.getQueuedSamples());
         DataArchive db = this.dataArchives.get(0);
+        final long start = System.nanoTime();
         try {
             db.putData(feedID, timeUnit, entries);
+            recordWrite(db, start);
         } catch (BufferFullException e) {
             LOGGER.error("Memory buffer should not be full", e);
         }
-        PutDataTask task = new PutDataTask(feedID, timeUnit, entries);
-        numOfWriteJobs.incrementAndGet();
-        bufferWorkers.execute(task);
+        fireFeedsChanged(Collections.singleton(feedID));
+        if (dataArchives.size() > 1) {
+            addToBatch(feedID, timeUnit, entries);
+        }
+    }
+    
+    private void addToBatch(String feedID, TimeUnit timeUnit, Map<Long, Map<String, String>> entries) {
+        synchronized (batchLock) {
+            if (pendingBatch == null) {
+                pendingBatch = new HashMap<String, Map<Long, Map<String, String>>>();
+                if (batchTimer != null) {
+                    pendingBatchFlush = new TimerTask() {
+                        @Override
+                        public void run() {
+                            flushBatch();
+                        }
+                    };
+                    batchTimer.schedule(pendingBatchFlush, batchMillis);
+                }
+            }
+            Map<Long, Map<String, String>> feedEntries = pendingBatch.get(feedID);
+            if (feedEntries == null) {
+                feedEntries = new HashMap<Long, Map<String, String>>();
+                pendingBatch.put(feedID, feedEntries);
+            }
+            // a later sample with the same time stamp replaces the earlier one, as it would in the archives
+            for (Entry<Long, Map<String, String>> entry : entries.entrySet()) {
+                feedEntries.put(Long.valueOf(TimeUnit.NANOSECONDS.convert(entry.getKey().longValue(), timeUnit)), entry.getValue());
+            }
+            pendingSamples += entries.size();
+            if (batchTimer == null || pendingSamples >= batchSize) {
+                flushBatch();
+            }
+        }
+    }
+    
+    /**
+     * Queues the pending batch for writing. Called before queuing any other write so writes stay in order.
+     */
+    private void flushBatch() {
+        synchronized (batchLock) {
+            if (pendingBatch == null) {
+                return;
+            }
+            if (pendingBatchFlush != null) {
+                pendingBatchFlush.cancel();
+                pendingBatchFlush = null;
+            }
+            PERF_LOGGER.debug("Writing batch of {} samples for {} feeds", pendingSamples, pendingBatch.size());
+            PutDataTask task = new PutDataTask(pendingBatch, TimeUnit.NANOSECONDS, null);
+            pendingBatch = null;
+            pendingSamples = 0;
+            queue.offer(task);
+        }
     }
 
     @Override
     public void putData(final Map<String, Map<Long, Map<String, String>>> value, final TimeUnit timeUnit,
             final Runnable callback) {
-        PERF_LOGGER.debug("Queue size {}", queue.size());
+        PERF_LOGGER.debug("Queue size {}", queue.getQueuedSamples());
         if (!value.isEmpty()) {
             DataArchive db = this.dataArchives.get(0);
+            final long start = System.nanoTime();
             try {
                 db.putData(value, timeUnit, null);
+                recordWrite(db, start);
             } catch (BufferFullException e) {
                 LOGGER.error("Memory buffer should not be full", e);
             }
+            fireFeedsChanged(Collections.unmodifiableSet(value.keySet()));
             if (dataArchives.size() == 1) {
                 callback.run();
             } else {
-                Runnable bulkInsert = new Runnable() {
-                    public void run() {
-                        try {
-                            for (Iterator<DataArchive> it = dataArchives.iterator(); it.hasNext();) {
-                                DataArchive dataArchive = it.next();
-                                if (dataArchive.getLOS() == LOS.fast) {
-                                    continue;
-                                }
-                                try {
-                                    if (it.hasNext()) {
-                                        dataArchive.putData(value, timeUnit, null);
-                                    } else {
-                                        dataArchive.putData(value, timeUnit, callback);
-                                    }
-                                } catch (BufferFullException e) {
-                                    dormantArchive = dataArchive;
-                                    it.remove();
-                                    bufferFullAlert(e.getMessage());
-                                }
-                            }
-                        } finally {
-                            synchronized(numOfWriteJobs) {
-                                if (numOfWriteJobs.decrementAndGet() == 0) {
-                                    numOfWriteJobs.notifyAll();
-                                }
-                            }
-                        }
-                    }
-                };
-                numOfWriteJobs.incrementAndGet();
-                bufferWorkers.execute(bulkInsert);
+                flushBatch();
+                queue.offer(new PutDataTask(value, timeUnit, callback));
+            }
+        }
+    }
+    
+    @Override
+    public void putSamples(final Map<String, FeedSampleBlock> samples, final TimeUnit timeUnit, final Runnable callback) {
+        PERF_LOGGER.debug("Queue size {}", queue.getQueuedSamples());
+        if (!samples.isEmpty()) {
+            DataArchive db = this.dataArchives.get(0);
+            final long start = System.nanoTime();
+            try {
+                putSamples(db, samples, timeUnit, null);
+                recordWrite(db, start);
+            } catch (BufferFullException e) {
+                LOGGER.error("Memory buffer should not be full", e);
+            }
+            fireFeedsChanged(Collections.unmodifiableSet(samples.keySet()));
+            if (dataArchives.size() == 1) {
+                if (callback != null) {
+                    callback.run();
+                }
+            } else {
+                flushBatch();
+                queue.offer(new PutSamplesTask(samples, timeUnit, callback));
+            }
+        }
+    }
+    
+    private static void putSamples(DataArchive dataArchive, Map<String, FeedSampleBlock> samples, TimeUnit timeUnit, Runnable callback) throws BufferFullException {
+        if (dataArchive instanceof FeedSampleArchive) {
+            FeedSampleArchive.class.cast(dataArchive).putSamples(samples, timeUnit, callback);
+        } else {
+            dataArchive.putData(SampleBlocks.toMaps(samples), timeUnit, callback);
+        }
+    }
+    
+    @Override
+    public void addFeedChangeListener(FeedChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    @Override
+    public void removeFeedChangeListener(FeedChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Notifies the listeners once samples are in the first archive, which is the first one read.
+     */
+    private void fireFeedsChanged(Set<String> feedIDs) {
+        for (FeedChangeListener listener : changeListeners) {
+            try {
+                listener.feedsChanged(feedIDs);
+            } catch (RuntimeException e) {
+                LOGGER.error("Error notifying feed change listener", e);
             }
         }
     }
@@ -332,15 +708,22 @@ public final class FeedAggregatorService implements FeedDataArchive, FeedAggrega
     }
 
     public void shutdown() {
-        synchronized(numOfWriteJobs) {
-            while (numOfWriteJobs.get() > 0) {
-                try {
-                    numOfWriteJobs.wait();
-                } catch (InterruptedException e) {
-                    LOGGER.error("InterruptedException during shutdown", e);
-                }
+        if (bufferServer != null) {
+            bufferServer.close();
+            bufferServer = null;
+        }
+        synchronized (batchLock) {
+            flushBatch();
+            // later puts are written on their own
+            if (batchTimer != null) {
+                batchTimer.cancel();
+                batchTimer = null;
             }
         }
+        queue.close();
+        for (Entry<String, MetricsRegistry.Gauge> entry : queueGauges.entrySet()) {
+            MetricsRegistry.getInstance().removeGauge(entry.getKey(), entry.getValue());
+        }
         for (DataProvider dataProvider: dataProviders) {
             if (dataProvider instanceof DataBuffer) {
                 DataBuffer.class.cast(dataProvider).closeBuffer();
@@ -348,40 +731,153 @@ public final class FeedAggregatorService implements FeedDataArchive, FeedAggrega
         }
     }
 
-    private final class PutDataTask implements Runnable {
-        private final String feedID;
+    /**
+     * Returns the number of samples waiting to be written to the archives after the first one.
+     */
+    public int getWriteQueueSamples() {
+        return queue.getQueuedSamples();
+    }
+    
+    /**
+     * Returns the number of samples waiting in the overflow file of the write queue.
+     */
+    public long getWriteOverflowSamples() {
+        return queue.getSpilledPendingSamples();
+    }
+    
+    /**
+     * Returns the average time spent by producers queuing a write.
+     */
+    public long getAverageEnqueueLatency(TimeUnit timeUnit) {
+        return queue.getAverageEnqueueLatency(timeUnit);
+    }
+    
+    /**
+     * Returns the longest time spent by a producer queuing a write.
+     */
+    public long getMaxEnqueueLatency(TimeUnit timeUnit) {
+        return queue.getMaxEnqueueLatency(timeUnit);
+    }
+    
+    /**
+     * Returns the number of samples the write queue dropped since the service started.
+     */
+    public long getDroppedSamples() {
+        return queue.getDroppedSamples();
+    }
+    
+    /**
+     * Returns the number of samples the write queue moved to its overflow file since the service started.
+     */
+    public long getSpilledSamples() {
+        return queue.getSpilledSamples();
+    }
+    
+    /**
+     * Writes entries to the archives after the first one. Each archive receives all the entries in a single call;
+     * the callback is given to the last one.
+     */
+    private final class PutDataTask extends IngestQueue.Write {
+        private final Map<String, Map<Long, Map<String, String>>> value;
+        private final TimeUnit timeUnit;
+
+        public PutDataTask(Map<String, Map<Long, Map<String, String>>> value, TimeUnit timeUnit, Runnable callback) {
+            super(callback);
+            this.value = value;
+            this.timeUnit = timeUnit;
+        }
+
+        @Override
+        int size() {
+            int size = 0;
+            for (Map<Long, Map<String, String>> entries : value.values()) {
+                size += entries.size();
+            }
+            return size;
+        }
+
+        @Override
+        Map<String, Map<Long, Map<String, String>>> getData() {
+            if (timeUnit == TimeUnit.NANOSECONDS) {
+                return value;
+            }
+            Map<String, Map<Long, Map<String, String>>> data = new HashMap<String, Map<Long, Map<String, String>>>(value.size() * 2);
+            for (Entry<String, Map<Long, Map<String, String>>> feed : value.entrySet()) {
+                Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>(feed.getValue().size() * 2);
+                for (Entry<Long, Map<String, String>> entry : feed.getValue().entrySet()) {
+                    entries.put(Long.valueOf(TimeUnit.NANOSECONDS.convert(entry.getKey().longValue(), timeUnit)), entry.getValue());
+                }
+                data.put(feed.getKey(), entries);
+            }
+            return data;
+        }
+
+        @Override
+        void write() {
+            for (Iterator<DataArchive> it = dataArchives.iterator(); it.hasNext();) {
+                DataArchive dataArchive = it.next();
+                if (dataArchive.getLOS() == LOS.fast) {
+                    continue;
+                }
+                final long start = System.nanoTime();
+                try {
+                    dataArchive.putData(value, timeUnit, it.hasNext() ? null : getCallback());
+                    recordWrite(dataArchive, start);
+                } catch (BufferFullException e) {
+                    dormantArchive = dataArchive;
+                    it.remove();
+                    bufferFullAlert(e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes sample blocks to the archives after the first one, the same way as {@link PutDataTask}.
+     */
+    private final class PutSamplesTask extends IngestQueue.Write {
+        private final Map<String, FeedSampleBlock> samples;
         private final TimeUnit timeUnit;
-        private final Map<Long, Map<String, String>> entries;
 
-        public PutDataTask(String feedID, TimeUnit timeUnit, Map<Long, Map<String, String>> entries) {
-            this.feedID = feedID;
+        public PutSamplesTask(Map<String, FeedSampleBlock> samples, TimeUnit timeUnit, Runnable callback) {
+            super(callback);
+            this.samples = samples;
             this.timeUnit = timeUnit;
-            this.entries = entries;
         }
 
         @Override
-        public void run() {
-            try {
-                if (dataArchives.size() > 1) {
-                    for (Iterator<DataArchive> it = dataArchives.iterator(); it.hasNext();) {
-                        DataArchive dataArchive = it.next();
-                        if (dataArchive.getLOS() == LOS.fast) {
-                            continue;
-                        }
-                        try {
-                            dataArchive.putData(feedID, timeUnit, entries);
-                        } catch (BufferFullException e) {
-                            dormantArchive = dataArchive;
-                            it.remove();
-                            bufferFullAlert(e.getMessage());
-                        }
-                    }
+        int size() {
+            int size = 0;
+            for (FeedSampleBlock block : samples.values()) {
+                size += block.size();
+            }
+            return size;
+        }
+
+        @Override
+        Map<String, Map<Long, Map<String, String>>> getData() {
+            Map<String, FeedSampleBlock> nanos = new HashMap<String, FeedSampleBlock>(samples.size() * 2);
+            for (Entry<String, FeedSampleBlock> entry : samples.entrySet()) {
+                nanos.put(entry.getKey(), SampleBlocks.toNanoseconds(entry.getValue(), timeUnit));
+            }
+            return SampleBlocks.toMaps(nanos);
+        }
+
+        @Override
+        void write() {
+            for (Iterator<DataArchive> it = dataArchives.iterator(); it.hasNext();) {
+                DataArchive dataArchive = it.next();
+                if (dataArchive.getLOS() == LOS.fast) {
+                    continue;
                 }
-            } finally {
-                synchronized(this) {
-                    if (numOfWriteJobs.decrementAndGet() == 0) {
-                        this.notifyAll();
-                    }
+                final long start = System.nanoTime();
+                try {
+                    putSamples(dataArchive, samples, timeUnit, it.hasNext() ? null : getCallback());
+                    recordWrite(dataArchive, start);
+                } catch (BufferFullException e) {
+                    dormantArchive = dataArchive;
+                    it.remove();
+                    bufferFullAlert(e.getMessage());
                 }
             }
         }
@@ -0,0 +1,421 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.feed;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded queue of the writes to the slower archives, drained by a single worker thread. The queue holds at most
+ * a given number of samples; when a write does not fit, the {@link OverloadPolicy} decides what happens to it.
+ */
+final class IngestQueue {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestQueue.class);
+
+    /**
+     * What to do with a write when the queue is full.
+     */
+    enum OverloadPolicy {
+        /** Wait until the queue has room for the write. */
+        block,
+        /**
+         * Drop the oldest queued writes until the write fits. The latest sample of each feed of a dropped write is
+         * still written, so change only data feeds keep their last value.
+         */
+        dropOldest,
+        /** Append the write to the overflow file; it is written once the queue is empty. */
+        spill;
+    }
+
+    /**
+     * A write to the archives.
+     */
+    abstract static class Write {
+        private final Runnable callback;
+
+        Write(Runnable callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * Returns the callback to run once the samples are written, or null.
+         */
+        Runnable getCallback() {
+            return callback;
+        }
+
+        /**
+         * Returns the number of samples of the write.
+         */
+        abstract int size();
+
+        /**
+         * Writes the samples to the archives and runs the callback.
+         */
+        abstract void write();
+
+        /**
+         * Returns the samples of the write, keyed by time stamps in nanoseconds.
+         */
+        abstract Map<String, Map<Long, Map<String, String>>> getData();
+    }
+
+    /**
+     * Creates the writes of samples coming back from dropped or spilled writes.
+     */
+    interface WriteFactory {
+        /**
+         * @param value samples keyed by time stamps in nanoseconds
+         * @param callback callback of the write, or null
+         */
+        Write newWrite(Map<String, Map<Long, Map<String, String>>> value, Runnable callback);
+    }
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+
+    private final int capacity;
+    private final OverloadPolicy policy;
+    private final WriteFactory factory;
+    private final OverflowFile overflowFile;
+    private final Thread worker;
+
+    private final ArrayDeque<Write> writes = new ArrayDeque<Write>();
+    private final LinkedList<Runnable> spilledCallbacks = new LinkedList<Runnable>();
+    private final Map<String, Map<Long, Map<String, String>>> lastSamplesOfDropped = new HashMap<String, Map<Long, Map<String, String>>>();
+    private int queuedSamples;
+    private long spilledPendingSamples;
+    private boolean writing;
+    private boolean overloaded;
+    private boolean closed;
+
+    // updated under the lock, read without it
+    private volatile long enqueueCount;
+    private volatile long enqueueNanos;
+    private volatile long maxEnqueueNanos;
+    private volatile long droppedSamples;
+    private volatile long spilledSamples;
+
+    /**
+     * Creates a queue and starts its worker thread.
+     * @param capacity number of samples the queue holds
+     * @param policy what to do with writes that do not fit
+     * @param overflowFile file of the spilled writes; only used by the spill policy
+     * @param factory creates the writes of the samples read back from the overflow file
+     */
+    IngestQueue(int capacity, OverloadPolicy policy, File overflowFile, WriteFactory factory) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.factory = factory;
+        this.overflowFile = policy == OverloadPolicy.spill ? new OverflowFile(overflowFile) : null;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "Feed Aggregator write worker");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues a write, applying the overload policy if the queue is full. A write is always accepted by an empty
+     * queue, whatever its size. Once the queue is closed writes are made by the calling thread.
+     */
+    void offer(Write write) {
+        long start = System.nanoTime();
+        List<Write> dropped = null;
+        boolean inline = false;
+        lock.lock();
+        try {
+            if (closed) {
+                inline = true;
+            } else {
+                int size = write.size();
+                if (overflowFile != null && !spilledCallbacks.isEmpty()) {
+                    // keep the order of the writes while earlier ones are in the overflow file
+                    spill(write);
+                    write = null;
+                }
+                while (write != null && !writes.isEmpty() && queuedSamples + size > capacity) {
+                    if (!overloaded) {
+                        overloaded = true;
+                        LOGGER.warn("Write queue full with {} samples, applying {} policy", Integer.valueOf(queuedSamples), policy);
+                    }
+                    switch (policy) {
+                    case block:
+                        notFull.awaitUninterruptibly();
+                        break;
+                    case dropOldest:
+                        if (dropped == null) {
+                            dropped = new ArrayList<Write>();
+                        }
+                        dropped.add(dropOldest());
+                        break;
+                    case spill:
+                        spill(write);
+                        write = null;
+                        break;
+                    }
+                }
+                if (write != null && !closed) {
+                    writes.addLast(write);
+                    queuedSamples += size;
+                    notEmpty.signal();
+                } else if (write != null) {
+                    inline = true;
+                }
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            enqueueCount++;
+            enqueueNanos += elapsed;
+            if (elapsed > maxEnqueueNanos) {
+                maxEnqueueNanos = elapsed;
+            }
+            lock.unlock();
+        }
+        if (dropped != null) {
+            for (Write w : dropped) {
+                runCallback(w.getCallback());
+            }
+        }
+        if (inline) {
+            write.write();
+        }
+    }
+
+    private Write dropOldest() {
+        Write oldest = writes.removeFirst();
+        queuedSamples -= oldest.size();
+        int kept = 0;
+        for (Entry<String, Map<Long, Map<String, String>>> feed : oldest.getData().entrySet()) {
+            Entry<Long, Map<String, String>> last = null;
+            for (Entry<Long, Map<String, String>> sample : feed.getValue().entrySet()) {
+                if (last == null || sample.getKey().longValue() > last.getKey().longValue()) {
+                    last = sample;
+                }
+            }
+            if (last != null) {
+                Map<Long, Map<String, String>> lastSample = new HashMap<Long, Map<String, String>>(2);
+                lastSample.put(last.getKey(), last.getValue());
+                if (lastSamplesOfDropped.put(feed.getKey(), lastSample) != null) {
+                    // the last sample of an earlier dropped write is replaced
+                    droppedSamples++;
+                }
+                kept++;
+            }
+        }
+        droppedSamples += oldest.size() - kept;
+        return oldest;
+    }
+
+    private void spill(Write write) {
+        try {
+            overflowFile.append(write.getData());
+            spilledCallbacks.addLast(write.getCallback());
+            spilledPendingSamples += write.size();
+            spilledSamples += write.size();
+            notEmpty.signal();
+        } catch (IOException e) {
+            LOGGER.error("Cannot write to the overflow file, dropping " + write.size() + " samples", e);
+            droppedSamples += write.size();
+            runCallback(write.getCallback());
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Write write;
+            lock.lock();
+            try {
+                while (writes.isEmpty() && lastSamplesOfDropped.isEmpty() && spilledCallbacks.isEmpty()) {
+                    if (closed) {
+                        return;
+                    }
+                    notEmpty.awaitUninterruptibly();
+                }
+                write = nextWrite();
+                writing = write != null;
+            } finally {
+                lock.unlock();
+            }
+            if (write != null) {
+                try {
+                    write.write();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Error writing to the archives", e);
+                }
+            }
+            lock.lock();
+            try {
+                writing = false;
+                if (isEmpty()) {
+                    overloaded = false;
+                    idle.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Write nextWrite() {
+        if (!lastSamplesOfDropped.isEmpty()) {
+            Map<String, Map<Long, Map<String, String>>> value = new HashMap<String, Map<Long, Map<String, String>>>(lastSamplesOfDropped);
+            lastSamplesOfDropped.clear();
+            return factory.newWrite(value, null);
+        }
+        if (!writes.isEmpty()) {
+            Write write = writes.removeFirst();
+            queuedSamples -= write.size();
+            notFull.signalAll();
+            return write;
+        }
+        Runnable callback = spilledCallbacks.removeFirst();
+        try {
+            Map<String, Map<Long, Map<String, String>>> value = overflowFile.next();
+            int size = 0;
+            for (Map<Long, Map<String, String>> feedData : value.values()) {
+                size += feedData.size();
+            }
+            spilledPendingSamples -= size;
+            return factory.newWrite(value, callback);
+        } catch (IOException e) {
+            LOGGER.error("Cannot read the overflow file, dropping " + spilledPendingSamples + " samples", e);
+            droppedSamples += spilledPendingSamples;
+            spilledPendingSamples = 0;
+            spilledCallbacks.clear();
+            try {
+                overflowFile.clear();
+            } catch (IOException ioe) {
+                // ignore exception
+            }
+            runCallback(callback);
+            return null;
+        }
+    }
+
+    private boolean isEmpty() {
+        return !writing && writes.isEmpty() && lastSamplesOfDropped.isEmpty() && spilledCallbacks.isEmpty();
+    }
+
+    private static void runCallback(Runnable callback) {
+        if (callback != null) {
+            callback.run();
+        }
+    }
+
+    /**
+     * Waits until all the queued and spilled writes are written, then stops the worker thread.
+     */
+    void close() {
+        lock.lock();
+        try {
+            while (!isEmpty()) {
+                idle.awaitUninterruptibly();
+            }
+            closed = true;
+            notEmpty.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (overflowFile != null) {
+            overflowFile.close();
+        }
+    }
+
+    /**
+     * Returns the number of samples waiting in the queue.
+     */
+    int getQueuedSamples() {
+        lock.lock();
+        try {
+            return queuedSamples;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of samples waiting in the overflow file.
+     */
+    long getSpilledPendingSamples() {
+        lock.lock();
+        try {
+            return spilledPendingSamples;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    OverloadPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the average time spent queuing a write, including the time spent blocked or spilling.
+     */
+    long getAverageEnqueueLatency(TimeUnit timeUnit) {
+        long count = enqueueCount;
+        return count == 0 ? 0 : timeUnit.convert(enqueueNanos / count, TimeUnit.NANOSECONDS);
+    }
+
+    long getMaxEnqueueLatency(TimeUnit timeUnit) {
+        return timeUnit.convert(maxEnqueueNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the number of samples dropped since the queue was created.
+     */
+    long getDroppedSamples() {
+        return droppedSamples;
+    }
+
+    /**
+     * Returns the number of samples written to the overflow file since the queue was created.
+     */
+    long getSpilledSamples() {
+        return spilledSamples;
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.feed;
+
+import gov.nasa.arc.mct.buffer.util.FeedDataCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local file holding the writes that did not fit in the ingest queue. Writes are appended as records and read back
+ * in the same order; the file is truncated whenever all its records have been read. Not thread safe; the
+ * {@link IngestQueue} serializes access.
+ */
+final class OverflowFile {
+    private final File file;
+    private RandomAccessFile raf;
+    private long readPosition;
+    private long writePosition;
+
+    OverflowFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Appends a write.
+     * @param value samples of the write, keyed by feed and by time stamp in nanoseconds
+     */
+    void append(Map<String, Map<Long, Map<String, String>>> value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        FeedDataCodec.writeData(out, value, TimeUnit.NANOSECONDS);
+        out.flush();
+
+        RandomAccessFile f = open();
+        f.seek(writePosition);
+        f.writeInt(bytes.size());
+        f.write(bytes.toByteArray());
+        writePosition = f.getFilePointer();
+    }
+
+    /**
+     * Reads the oldest record that has not been read yet.
+     */
+    Map<String, Map<Long, Map<String, String>>> next() throws IOException {
+        RandomAccessFile f = open();
+        f.seek(readPosition);
+        byte[] record = new byte[f.readInt()];
+        f.readFully(record);
+        readPosition = f.getFilePointer();
+        if (readPosition >= writePosition) {
+            clear();
+        }
+
+        return new HashMap<String, Map<Long, Map<String, String>>>(
+                        FeedDataCodec.readData(new DataInputStream(new ByteArrayInputStream(record))));
+    }
+
+    /**
+     * Discards all records.
+     */
+    void clear() throws IOException {
+        readPosition = 0;
+        writePosition = 0;
+        if (raf != null) {
+            raf.setLength(0);
+        }
+    }
+
+    /**
+     * Closes and deletes the file.
+     */
+    void close() {
+        readPosition = 0;
+        writePosition = 0;
+        if (raf != null) {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                // ignore exception
+            }
+            raf = null;
+        }
+        file.delete();
+    }
+
+    private RandomAccessFile open() throws IOException {
+        if (raf == null) {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+        }
+        return raf;
+    }
+}
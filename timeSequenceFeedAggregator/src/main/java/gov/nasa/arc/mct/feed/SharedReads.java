@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.feed;
+
+import gov.nasa.arc.mct.api.feed.DataRequest;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares the reads of concurrent requests for the same time window. A request whose feeds are all being read by
+ * a request in flight waits for that read instead of reading the feeds again. Requests arriving while their window
+ * is being read are merged: the first one reads the feeds of all of them in a single read, once the read in flight
+ * is complete. An idle window is read right away, so sharing adds no latency to requests which do not overlap.
+ * <p>
+ * A read shared with other requests runs on the thread of the request which started it, with its priority and
+ * deadline; requests only share reads with requests of the same priority. If that read stops early because its
+ * request was cancelled, timed out or failed, the other requests read their feeds on their own. So do the requests
+ * merged into a read whose request is cancelled or timed out while it waits for the read in flight.
+ */
+final class SharedReads {
+    private static final long WAIT_SLICE_MILLIS = 50;
+
+    /**
+     * Reads the samples of feeds.
+     */
+    interface Source {
+        /**
+         * @return samples of the feeds keyed by time stamps in nanoseconds
+         */
+        Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime);
+    }
+
+    private final Source source;
+    // guarded by itself
+    private final Map<Window, Flights> windows = new HashMap<Window, Flights>();
+
+    SharedReads(Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns the samples of feeds, sharing the reads of concurrent requests. The sorted maps of the result may be
+     * shared with other requests and must not be modified.
+     */
+    Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit, long startTime, long endTime) {
+        DataRequest request = DataRequest.current();
+        Window window = new Window(timeUnit, startTime, endTime, request == null ? DataRequest.Priority.live : request.getPriority());
+        Flights flights;
+        Flight flight;
+        Flight previous = null;
+        boolean reader;
+        synchronized (windows) {
+            flights = windows.get(window);
+            if (flights == null) {
+                flights = new Flights();
+                windows.put(window, flights);
+            }
+            if (flights.running == null) {
+                flight = new Flight(feedIDs);
+                flights.running = flight;
+                reader = true;
+            } else if (flights.running.feedIDs.containsAll(feedIDs)) {
+                flight = flights.running;
+                reader = false;
+            } else {
+                reader = flights.pending == null;
+                if (reader) {
+                    flights.pending = new Flight(Collections.<String>emptySet());
+                    previous = flights.running;
+                }
+                flight = flights.pending;
+                flight.feedIDs.addAll(feedIDs);
+            }
+        }
+
+        if (reader) {
+            // the read in flight makes this one the running read once it completes
+            if (previous != null && !previous.await(request)) {
+                abandon(window, flights, flight);
+                return Collections.emptyMap();
+            }
+            read(window, flights, flight, timeUnit, startTime, endTime, request);
+        } else if (!flight.await(request)) {
+            return Collections.emptyMap();
+        } else if (!flight.complete) {
+            return source.getData(feedIDs, timeUnit, startTime, endTime);
+        }
+        Map<String, SortedMap<Long, Map<String, String>>> data = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+        for (String feedID : feedIDs) {
+            SortedMap<Long, Map<String, String>> feedData = flight.data.get(feedID);
+            if (feedData != null) {
+                data.put(feedID, feedData);
+            }
+        }
+        return data;
+    }
+
+    private void read(Window window, Flights flights, Flight flight, TimeUnit timeUnit, long startTime, long endTime,
+                    DataRequest request) {
+        Map<String, SortedMap<Long, Map<String, String>>> data = null;
+        try {
+            Set<String> feedIDs;
+            synchronized (windows) {
+                feedIDs = new HashSet<String>(flight.feedIDs);
+            }
+            data = source.getData(feedIDs, timeUnit, startTime, endTime);
+        } finally {
+            boolean complete = data != null && !Thread.currentThread().isInterrupted()
+                            && (request == null || (!request.isCancelled() && request.getRemainingTime(TimeUnit.NANOSECONDS) > 0));
+            synchronized (windows) {
+                runPending(window, flights);
+            }
+            flight.finish(data, complete);
+        }
+    }
+
+    /**
+     * Gives up a merged read before it starts; the requests merged into it read their feeds on their own.
+     */
+    private void abandon(Window window, Flights flights, Flight flight) {
+        synchronized (windows) {
+            if (flights.pending == flight) {
+                flights.pending = null;
+            } else {
+                // the read in flight completed meanwhile and made this one the running read
+                runPending(window, flights);
+            }
+        }
+        flight.finish(null, false);
+    }
+
+    // guarded by the windows map
+    private void runPending(Window window, Flights flights) {
+        flights.running = flights.pending;
+        flights.pending = null;
+        if (flights.running == null) {
+            windows.remove(window);
+        }
+    }
+
+    /**
+     * Returns the number of windows being read; for tests.
+     */
+    int getWindowsInFlight() {
+        synchronized (windows) {
+            return windows.size();
+        }
+    }
+
+    private static final class Window {
+        private final TimeUnit timeUnit;
+        private final long startTime;
+        private final long endTime;
+        private final DataRequest.Priority priority;
+
+        Window(TimeUnit timeUnit, long startTime, long endTime, DataRequest.Priority priority) {
+            this.timeUnit = timeUnit;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.priority = priority;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Window)) {
+                return false;
+            }
+            Window w = (Window) o;
+            return timeUnit == w.timeUnit && startTime == w.startTime && endTime == w.endTime && priority == w.priority;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (startTime ^ (startTime >>> 32) ^ (endTime * 31) ^ (endTime >>> 32)) + timeUnit.ordinal() * 7 + priority.ordinal();
+        }
+    }
+
+    /**
+     * The read in flight for a window, and the read merging the requests which arrived meanwhile.
+     */
+    private static final class Flights {
+        private Flight running;
+        private Flight pending;
+    }
+
+    private static final class Flight {
+        // guarded by the windows map; only the pending read takes more feeds
+        private final Set<String> feedIDs;
+        private Map<String, SortedMap<Long, Map<String, String>>> data;
+        private boolean complete;
+        private boolean done;
+
+        Flight(Set<String> feedIDs) {
+            this.feedIDs = new HashSet<String>(feedIDs);
+        }
+
+        synchronized void finish(Map<String, SortedMap<Long, Map<String, String>>> data, boolean complete) {
+            this.data = data;
+            this.complete = complete;
+            this.done = true;
+            notifyAll();
+        }
+
+        /**
+         * Waits until the read is done, or the waiting request is cancelled, past its deadline or interrupted.
+         * @param request request waiting, or null
+         * @return true if the read is done
+         */
+        synchronized boolean await(DataRequest request) {
+            while (!done) {
+                if (request != null && (request.isCancelled() || request.getRemainingTime(TimeUnit.MILLISECONDS) <= 0)) {
+                    return false;
+                }
+                try {
+                    wait(WAIT_SLICE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
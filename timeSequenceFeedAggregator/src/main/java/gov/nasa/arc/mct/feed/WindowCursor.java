@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.feed;
+
+import gov.nasa.arc.mct.api.feed.FeedDataCursor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cursor reading a time span through a series of windows, so only the samples of one window are held at a time.
+ * The window is resized after each read to hold about a chunk of samples: halved when it held more, doubled when
+ * it held less than half a chunk.
+ */
+final class WindowCursor implements FeedDataCursor {
+    static final long INITIAL_WINDOW = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_WINDOW = Long.MAX_VALUE / 4;
+
+    /**
+     * Reads the samples of a window.
+     */
+    interface Source {
+        /**
+         * @param startTime start time in nanoseconds
+         * @param endTime end time in nanoseconds, inclusive
+         * @return samples of the feeds keyed by time stamps in nanoseconds
+         */
+        Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime);
+    }
+
+    private final Source source;
+    private final Set<String> feedIDs;
+    private final long endTime;
+    private final int chunkSize;
+    private final Map<String, Long> lastTimes = new HashMap<String, Long>();
+    private final Map<String, Iterator<Map<String, String>>> pending = new LinkedHashMap<String, Iterator<Map<String, String>>>();
+    private long nextStart;
+    private long window = INITIAL_WINDOW;
+    private boolean done;
+
+    /**
+     * @param startTime start time in nanoseconds
+     * @param endTime end time in nanoseconds, inclusive
+     */
+    WindowCursor(Source source, Set<String> feedIDs, long startTime, long endTime, int chunkSize) {
+        this.source = source;
+        this.feedIDs = feedIDs;
+        this.endTime = endTime;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.nextStart = startTime;
+        this.done = startTime > endTime || feedIDs.isEmpty();
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (pending.isEmpty() && !done) {
+            readWindow();
+        }
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public Map<String, List<Map<String, String>>> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map<String, List<Map<String, String>>> chunk = new HashMap<String, List<Map<String, String>>>();
+        int budget = chunkSize;
+        for (Iterator<Entry<String, Iterator<Map<String, String>>>> feeds = pending.entrySet().iterator(); feeds.hasNext() && budget > 0;) {
+            Entry<String, Iterator<Map<String, String>>> feed = feeds.next();
+            List<Map<String, String>> samples = new ArrayList<Map<String, String>>();
+            Iterator<Map<String, String>> it = feed.getValue();
+            while (budget > 0 && it.hasNext()) {
+                samples.add(it.next());
+                budget--;
+            }
+            if (!it.hasNext()) {
+                feeds.remove();
+            }
+            chunk.put(feed.getKey(), samples);
+        }
+        return chunk;
+    }
+
+    @Override
+    public void close() {
+        done = true;
+        pending.clear();
+    }
+
+    private void readWindow() {
+        long windowEnd = endTime - nextStart < window ? endTime : nextStart + window - 1;
+        Map<String, SortedMap<Long, Map<String, String>>> data = source.getData(feedIDs, nextStart, windowEnd);
+        int count = 0;
+        for (Entry<String, SortedMap<Long, Map<String, String>>> entry : data.entrySet()) {
+            SortedMap<Long, Map<String, String>> samples = entry.getValue();
+            // samples before the window, such as the last value before the start time, are only returned once
+            Long lastTime = lastTimes.get(entry.getKey());
+            if (lastTime != null) {
+                samples = samples.tailMap(Long.valueOf(lastTime.longValue() + 1));
+            }
+            if (samples.isEmpty()) {
+                continue;
+            }
+            lastTimes.put(entry.getKey(), samples.lastKey());
+            pending.put(entry.getKey(), samples.values().iterator());
+            count += samples.size();
+        }
+
+        if (count > chunkSize) {
+            window = Math.max(1, window / 2);
+        } else if (count < chunkSize / 2) {
+            window = Math.min(MAX_WINDOW, window * 2);
+        }
+        if (windowEnd >= endTime) {
+            done = true;
+        } else {
+            nextStart = windowEnd + 1;
+        }
+    }
+}
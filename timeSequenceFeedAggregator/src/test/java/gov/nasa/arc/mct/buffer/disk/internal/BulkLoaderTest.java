@@ -0,0 +1,246 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.disk.internal;
+
+import gov.nasa.arc.mct.buffer.config.FastDiskBufferEnv;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BulkLoaderTest {
+    private String testFeedID1 = "TestPui1";
+    private String testFeedID2 = "TestPui2";
+    private File dir;
+    private Properties prop;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        dir = File.createTempFile("mct-bulk", "");
+        dir.delete();
+        dir.mkdir();
+        prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("buffer.partitions", "2");
+        prop.put("buffer.time.millis", "-1");
+        prop.put("buffer.disk.loc", new File(dir, "buffer").toString());
+        prop.put(BulkLoader.BATCH_SIZE_PROPERTY, "7");
+    }
+
+    @AfterMethod
+    public void teardown() {
+        delete(dir);
+    }
+
+    private void delete(File f) {
+        if (f.isDirectory()) {
+            for (File f2 : f.listFiles()) {
+                delete(f2);
+            }
+        }
+        f.delete();
+    }
+
+    private File writeCsv(String name, String... lines) throws IOException {
+        File file = new File(dir, name);
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private File writeBinary(String name, String feedID, long fromMillis, long toMillis) throws IOException {
+        File file = new File(dir, name);
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            // written backwards; the reader sorts the samples
+            for (long time = toMillis - 1000; time >= fromMillis; time -= 1000) {
+                SampleDumpReader.writeSample(out, feedID, time, sample(time));
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static Map<String, String> sample(long time) {
+        Map<String, String> sample = new HashMap<String, String>();
+        sample.put("value", String.valueOf(time / 1000));
+        sample.put("status", "ok");
+        return sample;
+    }
+
+    @Test
+    public void csvTest() throws IOException {
+        File file = writeCsv("dump.csv", "feed,time,value,status", "# comment", "", testFeedID1 + ",2000,2,ok",
+                        testFeedID1 + ",1000,1,", testFeedID2 + ", 1000 ,x,ok");
+        SampleDumpReader reader = new SampleDumpReader(file);
+        try {
+            Map<String, Map<Long, Map<String, String>>> batch = reader.nextBatch(2);
+            Assert.assertEquals(batch.keySet(), Collections.singleton(testFeedID1));
+            SortedMap<Long, Map<String, String>> data = (SortedMap<Long, Map<String, String>>) batch.get(testFeedID1);
+            Assert.assertEquals(data.firstKey(), Long.valueOf(1000));
+            // empty values are left out
+            Assert.assertEquals(data.get(Long.valueOf(1000)), Collections.singletonMap("value", "1"));
+            Assert.assertEquals(data.get(Long.valueOf(2000)), sample(2000));
+
+            batch = reader.nextBatch(2);
+            Assert.assertEquals(batch.get(testFeedID2).get(Long.valueOf(1000)).get("value"), "x");
+            Assert.assertNull(reader.nextBatch(2));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void binaryTest() throws IOException {
+        SampleDumpReader reader = new SampleDumpReader(writeBinary("dump.bin", testFeedID1, 0, 10000));
+        try {
+            Map<String, Map<Long, Map<String, String>>> batch = reader.nextBatch(100);
+            SortedMap<Long, Map<String, String>> data = (SortedMap<Long, Map<String, String>>) batch.get(testFeedID1);
+            Assert.assertEquals(data.size(), 10);
+            Assert.assertEquals(data.firstKey(), Long.valueOf(0));
+            Assert.assertEquals(data.get(Long.valueOf(9000)), sample(9000));
+            Assert.assertNull(reader.nextBatch(100));
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void malformedTest() throws IOException {
+        SampleDumpReader reader = new SampleDumpReader(writeCsv("dump.csv", "feed,time,value", testFeedID1 + ",1000"));
+        try {
+            reader.nextBatch(10);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void loadTest() throws Exception {
+        File csv = writeCsv("dump.csv", "feed,time,value,status", testFeedID1 + ",1000,1,ok", testFeedID1 + ",2000,2,ok");
+        File binary = writeBinary("dump.bin", testFeedID2, 0, 60000);
+        BulkLoader loader = new BulkLoader(prop);
+        try {
+            Assert.assertEquals(loader.load(Arrays.asList(csv, binary)), 62);
+        } finally {
+            loader.close();
+        }
+
+        // the samples are found by the partition and the metadata the buffer opens on startup
+        FastDiskBufferEnv metaEnv = new FastDiskBufferEnv(prop);
+        MetaDiskBuffer metaDataBuffer = new MetaDiskBuffer(metaEnv);
+        PartitionFastDiskBuffer partitionBuffer = new PartitionFastDiskBuffer(new FastDiskBufferEnv(prop));
+        try {
+            int partition = partitionBuffer.getBufferEnv().getCurrentBufferPartition();
+            Assert.assertTrue(metaDataBuffer.hasFeed(partition, testFeedID1));
+            // the binary dump starts at time 0, which is recorded as the start of the feed
+            Assert.assertTrue(metaDataBuffer.isFullyWithinTimeSpan(partition, testFeedID2, TimeUnit.MILLISECONDS, 0));
+            Assert.assertTrue(metaDataBuffer.isWithinTimeSpan(partition, Collections.singleton(testFeedID2), TimeUnit.MILLISECONDS, 59000, 70000));
+
+            Map<String, SortedMap<Long, Map<String, String>>> data = partitionBuffer.getData(
+                            new HashSet<String>(Arrays.asList(testFeedID1, testFeedID2)), TimeUnit.MILLISECONDS, 0, 60000);
+            Assert.assertEquals(data.get(testFeedID1).size(), 2);
+            Assert.assertEquals(data.get(testFeedID1).get(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(2000))), sample(2000));
+            Assert.assertEquals(data.get(testFeedID2).size(), 60);
+            Assert.assertEquals(data.get(testFeedID2).get(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(59000))), sample(59000));
+        } finally {
+            partitionBuffer.closeBuffer();
+            metaDataBuffer.close();
+            metaEnv.closeEnvironment();
+        }
+    }
+    @Test
+    public void partitionTest() throws Exception {
+        prop.put("buffer.time.millis", String.valueOf(TimeUnit.HOURS.toMillis(2)));
+        long now = System.currentTimeMillis();
+        long recent = now - TimeUnit.MINUTES.toMillis(1);
+        long old = now - TimeUnit.MINUTES.toMillis(90);
+        long expired = now - TimeUnit.HOURS.toMillis(10);
+        File csv = writeCsv("dump.csv", "feed,time,value,status", testFeedID1 + "," + recent + ",1,ok", testFeedID1 + "," + old + ",2,ok",
+                        testFeedID2 + "," + expired + ",3,ok");
+        BulkLoader loader = new BulkLoader(prop);
+        int oldest;
+        try {
+            int current = loader.getPartition(now);
+            oldest = loader.getPartition(old);
+            Assert.assertTrue(oldest != current);
+            // samples older than the buffer go to its oldest partition, samples after the load to the current one
+            Assert.assertEquals(loader.getPartition(expired), oldest);
+            Assert.assertEquals(loader.getPartition(now + TimeUnit.HOURS.toMillis(1)), current);
+            Assert.assertEquals(loader.load(Collections.singletonList(csv)), 3);
+        } finally {
+            loader.close();
+        }
+
+        FastDiskBufferEnv metaEnv = new FastDiskBufferEnv(prop);
+        MetaDiskBuffer metaDataBuffer = new MetaDiskBuffer(metaEnv);
+        PartitionFastDiskBuffer currentBuffer = new PartitionFastDiskBuffer(new FastDiskBufferEnv(prop));
+        PartitionFastDiskBuffer oldestBuffer = new PartitionFastDiskBuffer(new FastDiskBufferEnv(prop, oldest));
+        try {
+            int current = currentBuffer.getBufferEnv().getCurrentBufferPartition();
+            // the metadata of each partition written covers its own samples
+            Assert.assertTrue(metaDataBuffer.isWithinTimeSpan(current, Collections.singleton(testFeedID1), TimeUnit.MILLISECONDS, recent, recent));
+            Assert.assertFalse(metaDataBuffer.isWithinTimeSpan(current, Collections.singleton(testFeedID1), TimeUnit.MILLISECONDS, old, old));
+            Assert.assertFalse(metaDataBuffer.hasFeed(current, testFeedID2));
+            Assert.assertTrue(metaDataBuffer.isWithinTimeSpan(oldest, Collections.singleton(testFeedID1), TimeUnit.MILLISECONDS, old, old));
+            Assert.assertTrue(metaDataBuffer.hasFeed(oldest, testFeedID2));
+
+            Set<String> feedIDs = new HashSet<String>(Arrays.asList(testFeedID1, testFeedID2));
+            Map<String, SortedMap<Long, Map<String, String>>> data = currentBuffer.getData(feedIDs, TimeUnit.MILLISECONDS, 0, now);
+            Assert.assertEquals(data.get(testFeedID1).keySet(), Collections.singleton(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(recent))));
+            Assert.assertNull(data.get(testFeedID2));
+            data = oldestBuffer.getData(feedIDs, TimeUnit.MILLISECONDS, 0, now);
+            Assert.assertEquals(data.get(testFeedID1).keySet(), Collections.singleton(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(old))));
+            Assert.assertEquals(data.get(testFeedID2).size(), 1);
+        } finally {
+            currentBuffer.closeBuffer();
+            oldestBuffer.closeBuffer();
+            metaDataBuffer.close();
+            metaEnv.closeEnvironment();
+        }
+    }
+}
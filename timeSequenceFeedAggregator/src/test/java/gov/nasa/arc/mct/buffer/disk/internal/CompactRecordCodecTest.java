@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.disk.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class CompactRecordCodecTest {
+    private static final long TIMESTAMP = TimeUnit.MILLISECONDS.toNanos(1300000000123L);
+
+    private KeyDictionary dictionary;
+    private CompactRecordCodec codec;
+
+    @BeforeMethod
+    public void setup() {
+        dictionary = new KeyDictionary();
+        codec = new CompactRecordCodec(dictionary, true);
+    }
+
+    private static Map<String, String> sample(String... keyValues) {
+        Map<String, String> data = new HashMap<String, String>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            data.put(keyValues[i], keyValues[i + 1]);
+        }
+        return data;
+    }
+
+    @DataProvider(name = "samples")
+    public Object[][] samples() {
+        return new Object[][] {
+            { sample("value", "1.5", "time", "1300000000123", "isValid", "true", "status", "", "ri", "3") },
+            { sample("value", "-42", "time", "1300000000000", "isValid", "false") },
+            { sample("value", "1.50", "time", "17") },
+            { sample("value", "-0", "data", "007") },
+            { sample("value", "1.0E-5", "time", "-9223372036854775808") },
+            { sample("value", "NaN", "status", "\u00b0C \u2713") },
+            { sample("value", null, "customKey", "OPEN", "other", "12345678901234567890") },
+            { sample() }
+        };
+    }
+
+    @Test(dataProvider = "samples")
+    public void roundTripTest(Map<String, String> data) throws Exception {
+        byte[] record = codec.encode(data, TIMESTAMP);
+        Assert.assertEquals(record[0], CompactRecordCodec.VERSION);
+        Assert.assertEquals(codec.decode(record, TIMESTAMP), data);
+    }
+
+    @Test
+    public void getAndSetDataTest() throws Exception {
+        Map<String, String> data = sample("value", "2.25", "time", "1300000000124", "isValid", "true");
+
+        PersistentBufferObject pObj = new PersistentBufferObject();
+        pObj.setKey(new PersistentBufferKey("feed", TIMESTAMP));
+        codec.setData(pObj, data);
+        Assert.assertNull(pObj.getData());
+        Assert.assertNotNull(pObj.getRecord());
+        Assert.assertEquals(codec.getData(pObj), data);
+
+        // samples written as maps are read as they were stored
+        PersistentBufferObject mapObj = new PersistentBufferObject();
+        mapObj.setKey(new PersistentBufferKey("feed", TIMESTAMP));
+        new CompactRecordCodec(dictionary, false).setData(mapObj, data);
+        Assert.assertNull(mapObj.getRecord());
+        Assert.assertSame(codec.getData(mapObj), data);
+    }
+
+    @Test
+    public void recordSizeTest() throws Exception {
+        Map<String, String> data = sample("value", "12.75", "time", "1300000000124", "isValid", "true", "status", "");
+        // version, count, four keys with their tags, the value, the time delta and the empty status length
+        Assert.assertEquals(codec.encode(data, TIMESTAMP).length, 2 + 4 * 2 + 8 + 1 + 1);
+    }
+
+    @Test
+    public void keyDictionaryTest() throws Exception {
+        Assert.assertEquals(dictionary.getCode("value"), dictionary.getCode("value"));
+        Assert.assertTrue(dictionary.getCode("value") < KeyDictionary.FIRST_CODE);
+
+        int first = dictionary.getCode("first");
+        int second = dictionary.getCode("second");
+        Assert.assertEquals(first, KeyDictionary.FIRST_CODE);
+        Assert.assertEquals(second, KeyDictionary.FIRST_CODE + 1);
+        Assert.assertEquals(dictionary.getCode("first"), first);
+        Assert.assertEquals(dictionary.getKey(second), "second");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknownKeyTest() {
+        dictionary.getKey(KeyDictionary.FIRST_CODE + 10);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void unknownVersionTest() throws Exception {
+        byte[] record = codec.encode(sample("value", "1"), TIMESTAMP);
+        record[0] = CompactRecordCodec.VERSION + 1;
+        codec.decode(record, TIMESTAMP);
+    }
+}
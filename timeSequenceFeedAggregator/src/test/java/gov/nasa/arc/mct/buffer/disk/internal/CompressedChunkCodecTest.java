@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.disk.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class CompressedChunkCodecTest {
+    private static final long START_MILLIS = 1300000000000L;
+
+    private static Map<String, String> sample(String... keyValues) {
+        Map<String, String> data = new HashMap<String, String>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            data.put(keyValues[i], keyValues[i + 1]);
+        }
+        return data;
+    }
+
+    // 10 Hz sine wave with the usual status and rendering info
+    private static SortedMap<Long, Map<String, String>> telemetry(int size) {
+        SortedMap<Long, Map<String, String>> samples = new TreeMap<Long, Map<String, String>>();
+        for (int i = 0; i < size; i++) {
+            long millis = START_MILLIS + i * 100;
+            double value = Math.round(Math.sin(i / 50.0) * 1000) / 100.0;
+            samples.put(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(millis)), sample("value", Double.toString(value),
+                            "time", Long.toString(millis), "isValid", "true", "status", "", "ri", "1 0 0 0"));
+        }
+        return samples;
+    }
+
+    @Test
+    public void roundTripTest() {
+        SortedMap<Long, Map<String, String>> samples = new TreeMap<Long, Map<String, String>>();
+        long time = TimeUnit.MILLISECONDS.toNanos(START_MILLIS);
+        String[][] values = {
+            { "value", "1.5", "time", "1300000000000", "isValid", "true", "status", "" },
+            { "value", "-42", "time", "17", "isValid", "false" },
+            { "value", "1.50", "data", "007", "status", "\u00b0C \u2713" },
+            { "value", "NaN", "time", "-9223372036854775808" },
+            { "value", null, "customKey", "OPEN" },
+            { }
+        };
+        long[] deltas = { 0, 1, 100000, 1L << 40, 3, 0x7FFFFFFFFFFFL };
+        for (int i = 0; i < values.length; i++) {
+            time += deltas[i];
+            samples.put(Long.valueOf(time), sample(values[i]));
+        }
+        Assert.assertEquals(CompressedChunkCodec.decode(CompressedChunkCodec.encode(samples), Long.MIN_VALUE, Long.MAX_VALUE), samples);
+
+        SortedMap<Long, Map<String, String>> telemetry = telemetry(CompressedChunkCodec.MAX_SAMPLES);
+        Assert.assertEquals(CompressedChunkCodec.decode(CompressedChunkCodec.encode(telemetry), Long.MIN_VALUE, Long.MAX_VALUE), telemetry);
+    }
+
+    @Test
+    public void timeSpanTest() {
+        SortedMap<Long, Map<String, String>> telemetry = telemetry(100);
+        byte[] chunk = CompressedChunkCodec.encode(telemetry);
+        long start = TimeUnit.MILLISECONDS.toNanos(START_MILLIS + 1000);
+        long end = TimeUnit.MILLISECONDS.toNanos(START_MILLIS + 2000);
+        SortedMap<Long, Map<String, String>> data = CompressedChunkCodec.decode(chunk, start, end);
+        Assert.assertEquals(data, telemetry.subMap(Long.valueOf(start), Long.valueOf(end + 1)));
+        Assert.assertEquals(data.size(), 11);
+        Assert.assertTrue(CompressedChunkCodec.decode(chunk, 0, start - TimeUnit.SECONDS.toNanos(10)).isEmpty());
+    }
+
+    @Test
+    public void compressionTest() throws Exception {
+        SortedMap<Long, Map<String, String>> telemetry = telemetry(CompressedChunkCodec.MAX_SAMPLES);
+        CompactRecordCodec codec = new CompactRecordCodec(new KeyDictionary(), true);
+        long recordBytes = 0;
+        for (Map.Entry<Long, Map<String, String>> entry : telemetry.entrySet()) {
+            // each record is also stored with its key
+            recordBytes += codec.encode(entry.getValue(), entry.getKey().longValue()).length + 8;
+        }
+        int chunkBytes = CompressedChunkCodec.encode(telemetry).length;
+        Assert.assertTrue(chunkBytes * 4 < recordBytes, chunkBytes + " bytes compressed from " + recordBytes);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void truncatedChunkTest() {
+        byte[] chunk = CompressedChunkCodec.encode(telemetry(10));
+        byte[] truncated = new byte[chunk.length / 2];
+        System.arraycopy(chunk, 0, truncated, 0, truncated.length);
+        CompressedChunkCodec.decode(truncated, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
+import gov.nasa.arc.mct.buffer.memory.internal.MemoryDataBufferHelper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ChangeIndexTest {
+    private CODataBuffer indexedBuffer;
+    private CODataBuffer searchedBuffer;
+    private String testFeedID1 = "TestPui1";
+    private String testFeedID2 = "TestPui2";
+    private String testFeedID3 = "TestPui3";
+    private Set<String> feedIDs = new HashSet<String>(Arrays.asList(testFeedID1, testFeedID2, testFeedID3));
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        indexedBuffer = newBuffer(null);
+        // the same buffer without the index answers by searching the partitions
+        searchedBuffer = newBuffer("0");
+    }
+
+    private CODataBuffer newBuffer(String maxChanges) throws IOException {
+        Properties prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("memory.buffer.partition", "2");
+        prop.put("memory.buffer.time.millis", "-1");
+        if (maxChanges != null) {
+            prop.put(ChangeIndex.MAX_CHANGES_PROPERTY, maxChanges);
+        }
+        return new CODataBuffer(new MemoryBufferEnv(prop), new MemoryDataBufferHelper());
+    }
+
+    @AfterMethod
+    public void reset() {
+        indexedBuffer.reset();
+        searchedBuffer.reset();
+    }
+
+    private void putData(String feedID, long... millis) throws BufferFullException {
+        Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
+        for (long time : millis) {
+            entries.put(Long.valueOf(time), Collections.singletonMap(FeedSampleBlock.VALUE_KEY, String.valueOf(time)));
+        }
+        indexedBuffer.putData(Collections.singletonMap(feedID, entries), TimeUnit.MILLISECONDS, null);
+        searchedBuffer.putData(Collections.singletonMap(feedID, entries), TimeUnit.MILLISECONDS, null);
+    }
+
+    private void rotate() {
+        indexedBuffer.prepareForNextPartition();
+        indexedBuffer.moveToNextPartition();
+        searchedBuffer.prepareForNextPartition();
+        searchedBuffer.moveToNextPartition();
+    }
+
+    private Map<String, SortedMap<Long, Map<String, String>>> getData(long startMillis, long endMillis) {
+        Map<String, SortedMap<Long, Map<String, String>>> data = indexedBuffer.getData(feedIDs, startMillis, endMillis, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(data, searchedBuffer.getData(feedIDs, startMillis, endMillis, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(indexedBuffer.getSamples(feedIDs, TimeUnit.MILLISECONDS, startMillis, endMillis).keySet(), data.keySet());
+        return data;
+    }
+
+    private static void assertTimes(SortedMap<Long, Map<String, String>> data, long... millis) {
+        Assert.assertEquals(data.size(), millis.length);
+        int i = 0;
+        for (Long time : data.keySet()) {
+            Assert.assertEquals(time.longValue(), TimeUnit.MILLISECONDS.toNanos(millis[i++]));
+        }
+    }
+
+    @Test
+    public void indexTest() {
+        ChangeIndex index = new ChangeIndex(3, 4);
+        Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
+        for (long time : new long[] { 30, 10, 20, 20 }) {
+            entries.put(Long.valueOf(time), Collections.<String, String>emptyMap());
+        }
+        index.putData(0, Collections.singletonMap(testFeedID1, entries), TimeUnit.NANOSECONDS);
+        Map<String, ChangeIndex.Change> changes = index.getLastChanges(Arrays.asList(testFeedID1, testFeedID2), 25, 0);
+        Assert.assertEquals(changes.get(testFeedID1).getPartition(), 0);
+        Assert.assertEquals(changes.get(testFeedID1).getTime(), 20);
+        Assert.assertEquals(changes.get(testFeedID2).getPartition(), -1);
+        Assert.assertEquals(index.getLastChanges(Collections.singleton(testFeedID1), 5, 0).get(testFeedID1).getPartition(), -1);
+        Assert.assertTrue(index.hasChanges(0, testFeedID1, 15, 25));
+        Assert.assertFalse(index.hasChanges(0, testFeedID1, 21, 29));
+        Assert.assertFalse(index.hasChanges(1, testFeedID1, 0, 100));
+
+        // the same change in a newer partition, as for the samples carried over by a rotation
+        index.putData(1, Collections.singletonMap(testFeedID1, Collections.singletonMap(Long.valueOf(30), Collections.<String, String>emptyMap())),
+                        TimeUnit.NANOSECONDS);
+        Assert.assertEquals(index.getLastChanges(Collections.singleton(testFeedID1), 40, 1).get(testFeedID1).getPartition(), 1);
+        Assert.assertEquals(index.getLastChanges(Collections.singleton(testFeedID1), 25, 1).get(testFeedID1).getPartition(), 0);
+
+        // a feed with more changes than the index keeps is not indexed until the partition is cleared
+        entries.clear();
+        for (long time = 0; time < 5; time++) {
+            entries.put(Long.valueOf(time), Collections.<String, String>emptyMap());
+        }
+        index.putData(2, Collections.singletonMap(testFeedID1, entries), TimeUnit.NANOSECONDS);
+        Assert.assertTrue(index.getLastChanges(Collections.singleton(testFeedID1), 25, 2).isEmpty());
+        index.clear(2);
+        Assert.assertEquals(index.getLastChanges(Collections.singleton(testFeedID1), 25, 2).get(testFeedID1).getTime(), 20);
+
+        index.markIncomplete(1, Collections.singleton(testFeedID2));
+        Assert.assertTrue(index.getLastChanges(Collections.singleton(testFeedID2), 25, 2).isEmpty());
+        index.clear(1);
+        Assert.assertEquals(index.getLastChanges(Collections.singleton(testFeedID2), 25, 2).get(testFeedID2).getPartition(), -1);
+
+        Assert.assertTrue(new ChangeIndex(3, 0).getLastChanges(Collections.singleton(testFeedID1), 25, 0).isEmpty());
+    }
+
+    @Test
+    public void lastValueTest() throws BufferFullException {
+        putData(testFeedID1, 1000);
+        putData(testFeedID2, 2000);
+        putData(testFeedID3, 1000, 5000);
+        Map<String, SortedMap<Long, Map<String, String>>> data = getData(3000, 4000);
+        assertTimes(data.get(testFeedID1), 1000);
+        assertTimes(data.get(testFeedID2), 2000);
+        assertTimes(data.get(testFeedID3), 1000);
+
+        data = getData(1000, 6000);
+        assertTimes(data.get(testFeedID2), 2000);
+        assertTimes(data.get(testFeedID3), 1000, 5000);
+        Assert.assertNull(getData(0, 500).get(testFeedID1));
+    }
+
+    @Test
+    public void rotationTest() throws BufferFullException {
+        putData(testFeedID1, 1000);
+        putData(testFeedID3, 1000, 5000);
+        rotate();
+        putData(testFeedID2, 11000);
+        putData(testFeedID3, 12000);
+        Map<String, SortedMap<Long, Map<String, String>>> data = getData(10000, 15000);
+        assertTimes(data.get(testFeedID1), 1000);
+        assertTimes(data.get(testFeedID2), 11000);
+        assertTimes(data.get(testFeedID3), 5000, 12000);
+        assertTimes(getData(3000, 11000).get(testFeedID3), 1000, 5000);
+
+        // the first partition is reused; the last changes are carried over to it
+        rotate();
+        putData(testFeedID3, 21000);
+        data = getData(20000, 25000);
+        assertTimes(data.get(testFeedID1), 1000);
+        assertTimes(data.get(testFeedID2), 11000);
+        assertTimes(data.get(testFeedID3), 12000, 21000);
+
+        Map<String, List<Map<String, String>>> list = indexedBuffer.getData(feedIDs, TimeUnit.MILLISECONDS, 11000, 25000);
+        Assert.assertEquals(list, searchedBuffer.getData(feedIDs, TimeUnit.MILLISECONDS, 11000, 25000));
+        // the change at 5 seconds went away with the first partition
+        Assert.assertEquals(list.get(testFeedID3).size(), 2);
+    }
+
+    @Test
+    public void overflowTest() throws BufferFullException, IOException {
+        indexedBuffer.reset();
+        indexedBuffer = newBuffer("2");
+        putData(testFeedID1, 1000, 2000, 3000);
+        putData(testFeedID2, 1000, 2000);
+        Map<String, SortedMap<Long, Map<String, String>>> data = getData(2500, 4000);
+        assertTimes(data.get(testFeedID1), 2000, 3000);
+        assertTimes(data.get(testFeedID2), 2000);
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.feed.FeedAggregatorService;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FeedAggregatorServiceBatchTest {
+    private FeedAggregatorService service;
+    private String testFeedID = "TestPui1";
+    private File bufferLocation;
+    private Properties prop;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("bufferList", "memory,mmaplog");
+        prop.put("buffer.partitions", "2");
+        prop.put("buffer.time.millis", "-1");
+        prop.put("memory.buffer.time.millis", "-1");
+        bufferLocation = File.createTempFile("mct-buffer", "");
+        bufferLocation.delete();
+        bufferLocation.mkdir();
+        prop.put("buffer.disk.loc", bufferLocation.toString());
+        DataBufferFactory.reset();
+    }
+
+    @AfterMethod
+    public void reset() {
+        if (service != null) {
+            service.shutdown();
+        }
+        DataBufferFactory.reset();
+        delete(bufferLocation);
+    }
+
+    private void delete(File f) {
+        if (f.isDirectory()) {
+            for (File f2 : f.listFiles()) {
+                delete(f2);
+            }
+        }
+        f.delete();
+    }
+
+    private void putSamples(int count) {
+        for (long time = 0; time < count; time++) {
+            Map<String, String> sample = new HashMap<String, String>();
+            sample.put("value", String.valueOf(time));
+            service.putData(testFeedID, TimeUnit.MILLISECONDS, time, sample);
+        }
+    }
+
+    private int archivedSamples() {
+        DataBuffer logBuffer = DataBufferFactory.getLogDataBuffer(prop);
+        List<Map<String, String>> data = logBuffer.getData(Collections.singleton(testFeedID),
+                        TimeUnit.MILLISECONDS, 0, 1000).get(testFeedID);
+        return data == null ? 0 : data.size();
+    }
+
+    private void waitForArchivedSamples(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (archivedSamples() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(archivedSamples(), count);
+    }
+
+    @Test
+    public void batchSizeTest() throws InterruptedException {
+        prop.put("feed.write.batch.millis", "600000");
+        prop.put("feed.write.batch.size", "10");
+        service = new FeedAggregatorService(prop);
+        putSamples(25);
+
+        // two full batches are written, the rest waits for the window to close
+        waitForArchivedSamples(20);
+        Assert.assertEquals(service.getData(Collections.singleton(testFeedID), TimeUnit.MILLISECONDS, 0, 1000)
+                        .get(testFeedID).size(), 25);
+    }
+
+    @Test
+    public void batchWindowTest() throws InterruptedException {
+        prop.put("feed.write.batch.millis", "20");
+        prop.put("feed.write.batch.size", "1000");
+        service = new FeedAggregatorService(prop);
+        putSamples(25);
+        waitForArchivedSamples(25);
+    }
+
+    @Test
+    public void unbatchedTest() throws InterruptedException {
+        prop.put("feed.write.batch.millis", "0");
+        service = new FeedAggregatorService(prop);
+        putSamples(25);
+        waitForArchivedSamples(25);
+    }
+}
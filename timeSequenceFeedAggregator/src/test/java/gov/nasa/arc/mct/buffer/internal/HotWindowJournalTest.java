@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
+import gov.nasa.arc.mct.buffer.memory.internal.MemoryDataBufferHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class HotWindowJournalTest {
+    private String testFeedID1 = "TestPui1";
+    private String testFeedID2 = "TestPui2";
+    private File dir;
+    private Properties prop;
+    private CODataBuffer dataBuffer;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        dir = File.createTempFile("mct-hot", "");
+        dir.delete();
+        prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("memory.buffer.partition", "2");
+        prop.put("memory.buffer.time.millis", "-1");
+        prop.put(HotWindowJournal.DIR_PROPERTY, dir.getAbsolutePath());
+    }
+
+    @AfterMethod
+    public void teardown() {
+        if (dataBuffer != null) {
+            dataBuffer.closeBuffer();
+        }
+        delete(dir);
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    // a buffer refilled from the journal, as it is on startup
+    private CODataBuffer startBuffer() {
+        MemoryBufferEnv env = new MemoryBufferEnv(prop);
+        CODataBuffer buffer = new CODataBuffer(env, new MemoryDataBufferHelper());
+        buffer.restore(new HotWindowJournal(env.getSnapshotDirectory(), env.getNumOfBufferPartitions()));
+        return buffer;
+    }
+
+    private static Map<Long, Map<String, String>> entries(long fromMillis, long toMillis) {
+        Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
+        for (long time = fromMillis; time < toMillis; time += 100) {
+            Map<String, String> sample = new HashMap<String, String>();
+            sample.put(FeedSampleBlock.VALUE_KEY, String.valueOf(time / 100));
+            sample.put("status", "ok");
+            entries.put(Long.valueOf(time), sample);
+        }
+        return entries;
+    }
+
+    private SortedMap<Long, Map<String, String>> getData(DataBuffer buffer, String feedID) {
+        return buffer.getData(Collections.singleton(feedID), 0, Long.MAX_VALUE, TimeUnit.NANOSECONDS).get(feedID);
+    }
+
+    @Test
+    public void restoreTest() throws BufferFullException {
+        dataBuffer = startBuffer();
+        dataBuffer.putData(testFeedID1, TimeUnit.MILLISECONDS, entries(0, 5000));
+        dataBuffer.putSamples(Collections.singletonMap(testFeedID2, FeedSampleBlock.fromMaps(testFeedID2, entries(0, 1000))),
+                        TimeUnit.MILLISECONDS, null);
+        SortedMap<Long, Map<String, String>> feed1 = getData(dataBuffer, testFeedID1);
+        SortedMap<Long, Map<String, String>> feed2 = getData(dataBuffer, testFeedID2);
+        Assert.assertEquals(feed1.size(), 50);
+
+        // the buffer is not closed, as after a crash
+        CODataBuffer restarted = startBuffer();
+        try {
+            Assert.assertEquals(getData(restarted, testFeedID1), feed1);
+            Assert.assertEquals(getData(restarted, testFeedID2), feed2);
+            Assert.assertTrue(restarted.isFullyWithinTimeSpan(testFeedID1, 0, TimeUnit.MILLISECONDS));
+        } finally {
+            restarted.closeBuffer();
+        }
+        Assert.assertFalse(new File(dir, "replay").exists());
+    }
+
+    @Test
+    public void restoreTwiceTest() throws BufferFullException {
+        dataBuffer = startBuffer();
+        dataBuffer.putData(testFeedID1, TimeUnit.MILLISECONDS, entries(0, 2000));
+        dataBuffer.closeBuffer();
+
+        // the restored samples are journaled again
+        dataBuffer = startBuffer();
+        dataBuffer.putData(testFeedID1, TimeUnit.MILLISECONDS, entries(2000, 3000));
+        dataBuffer.closeBuffer();
+
+        dataBuffer = startBuffer();
+        Assert.assertEquals(getData(dataBuffer, testFeedID1).size(), 30);
+    }
+
+    @Test
+    public void resetTest() throws BufferFullException {
+        dataBuffer = startBuffer();
+        dataBuffer.putData(testFeedID1, TimeUnit.MILLISECONDS, entries(0, 2000));
+        dataBuffer.reset();
+        dataBuffer.putData(testFeedID2, TimeUnit.MILLISECONDS, entries(0, 1000));
+        dataBuffer.closeBuffer();
+
+        dataBuffer = startBuffer();
+        Assert.assertNull(getData(dataBuffer, testFeedID1));
+        Assert.assertEquals(getData(dataBuffer, testFeedID2).size(), 10);
+    }
+
+    @Test
+    public void tornRecordTest() throws IOException {
+        HotWindowJournal journal = new HotWindowJournal(dir, 1);
+        Assert.assertTrue(journal.recover(Long.MIN_VALUE).isEmpty());
+        journal.appendData(0, Collections.singletonMap(testFeedID1, entries(0, 1000)), TimeUnit.MILLISECONDS);
+        journal.appendData(0, Collections.singletonMap(testFeedID1, entries(1000, 2000)), TimeUnit.MILLISECONDS);
+        journal.completeRecovery();
+        journal.close();
+
+        // the second record is cut short, as if the process died while writing it
+        File f = new File(dir, "hot-0.journal");
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            raf.setLength(raf.length() - 10);
+        } finally {
+            raf.close();
+        }
+        journal = new HotWindowJournal(dir, 1);
+        Map<String, Map<Long, Map<String, String>>> data = journal.recover(Long.MIN_VALUE);
+        Assert.assertEquals(data.get(testFeedID1).size(), 10);
+        Assert.assertTrue(data.get(testFeedID1).containsKey(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(900))));
+
+        // a recovery which does not complete is made again from the same files
+        journal.appendData(0, Collections.singletonMap(testFeedID1, entries(0, 500)), TimeUnit.MILLISECONDS);
+        journal.close();
+        journal = new HotWindowJournal(dir, 1);
+        Assert.assertEquals(journal.recover(Long.MIN_VALUE).get(testFeedID1).size(), 10);
+        journal.completeRecovery();
+        journal.close();
+    }
+
+    @Test
+    public void oldSamplesTest() {
+        HotWindowJournal journal = new HotWindowJournal(dir, 2);
+        journal.recover(Long.MIN_VALUE);
+        journal.appendData(0, Collections.singletonMap(testFeedID1, entries(0, 1000)), TimeUnit.MILLISECONDS);
+        journal.appendData(1, Collections.singletonMap(testFeedID1, entries(1000, 2000)), TimeUnit.MILLISECONDS);
+        journal.appendData(0, Collections.singletonMap(testFeedID2, entries(0, 1000)), TimeUnit.MILLISECONDS);
+        journal.completeRecovery();
+        journal.close();
+
+        // samples older than the memory buffer are not restored
+        journal = new HotWindowJournal(dir, 2);
+        Map<String, Map<Long, Map<String, String>>> data = journal.recover(TimeUnit.MILLISECONDS.toNanos(1500));
+        Assert.assertEquals(data.keySet(), Collections.singleton(testFeedID1));
+        Assert.assertEquals(data.get(testFeedID1).size(), 5);
+        Assert.assertTrue(data.get(testFeedID1).containsKey(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(1500))));
+        journal.completeRecovery();
+        journal.close();
+    }
+}
@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.SampleDictionary;
+import gov.nasa.arc.mct.buffer.config.LogBufferEnv;
+import gov.nasa.arc.mct.buffer.log.internal.PartitionLogBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LogDataBufferTest {
+    private DataBuffer dataBuffer;
+    private String testFeedID1 = "TestPui1";
+    private String testFeedID2 = "TestPui2";
+    private File bufferLocation;
+    private Properties prop;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("buffer.partitions", "2");
+        prop.put("buffer.time.millis", "-1");
+        prop.put("log.buffer.segment.bytes", "4096");
+        prop.put("log.buffer.index.interval", "4");
+        bufferLocation = File.createTempFile("mct-buffer", "");
+        bufferLocation.delete();
+        bufferLocation.mkdir();
+        prop.put("buffer.disk.loc", bufferLocation.toString());
+        DataBufferFactory.reset();
+        dataBuffer = DataBufferFactory.getLogDataBuffer(prop);
+    }
+
+    @AfterMethod
+    public void reset() {
+        if (dataBuffer != null) {
+            dataBuffer.closeBuffer();
+        }
+        DataBufferFactory.reset();
+        delete(bufferLocation);
+    }
+
+    private void delete(File f) {
+        if (f.isDirectory()) {
+            for (File f2 : f.listFiles()) {
+                delete(f2);
+            }
+        }
+        f.delete();
+    }
+
+    private Map<String, String> sample(String value) {
+        Map<String, String> sample = new HashMap<String, String>();
+        sample.put("value", value);
+        sample.put("status", "ok");
+        return sample;
+    }
+
+    @Test
+    public void rangeScanTest() throws BufferFullException {
+        // interleaved feeds spread over several segments
+        for (long time = 0; time < 500; time++) {
+            dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, time, sample(String.valueOf(time)));
+            dataBuffer.putData(testFeedID2, TimeUnit.NANOSECONDS, time, sample("other" + time));
+        }
+
+        List<Map<String, String>> returnData = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 123, 321).get(testFeedID1);
+        Assert.assertEquals(returnData.size(), 199);
+        for (int i = 0; i < returnData.size(); i++) {
+            Assert.assertEquals(returnData.get(i).get("value"), String.valueOf(123 + i));
+            Assert.assertEquals(returnData.get(i).get("status"), "ok");
+        }
+        Assert.assertEquals(dataBuffer.getData(Collections.singleton(testFeedID2),
+                        TimeUnit.NANOSECONDS, 499, 600).get(testFeedID2).get(0).get("value"), "other499");
+
+        PartitionDataBuffer partition = dataBuffer.partitionDataBuffers[0].get();
+        Assert.assertNull(partition.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 600, 700).get(testFeedID1));
+        Map<Long, Map<String, String>> lastData = partition.getLastData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 0, 250).get(testFeedID1);
+        Assert.assertEquals(lastData.size(), 1);
+        Assert.assertEquals(lastData.get(250L).get("value"), "250");
+    }
+
+    @Test
+    public void putOutOfOrderTest() throws BufferFullException {
+        for (long time = 0; time < 60; time += 2) {
+            dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, time, sample(String.valueOf(time)));
+        }
+        for (long time = 59; time >= 1; time -= 2) {
+            dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, time, sample(String.valueOf(time)));
+        }
+        dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, 10, sample("replaced"));
+
+        List<Map<String, String>> returnData = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 0, 59).get(testFeedID1);
+        Assert.assertEquals(returnData.size(), 60);
+        for (int i = 0; i < returnData.size(); i++) {
+            Assert.assertEquals(returnData.get(i).get("value"), i == 10 ? "replaced" : String.valueOf(i));
+        }
+
+        PartitionDataBuffer partition = dataBuffer.partitionDataBuffers[0].get();
+        Assert.assertEquals(partition.getLastData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 0, 20).get(testFeedID1).get(20L).get("value"), "20");
+    }
+
+    @Test
+    public void recoveryTest() throws BufferFullException {
+        PartitionLogBuffer partition = new PartitionLogBuffer(new LogBufferEnv(prop, 1), null);
+        for (long time = 0; time < 300; time++) {
+            partition.putData(Collections.singletonMap(testFeedID1, Collections.singletonMap(time, sample(String.valueOf(time)))),
+                            TimeUnit.NANOSECONDS);
+        }
+        partition.closeBuffer();
+
+        MetaDataBuffer metaDataBuffer = new MetaDataBuffer(new LogBufferEnv(prop));
+        partition = new PartitionLogBuffer(new LogBufferEnv(prop, 1), metaDataBuffer);
+        SortedMap<Long, Map<String, String>> data = partition.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 0, 299).get(testFeedID1);
+        Assert.assertEquals(data.size(), 300);
+        Assert.assertEquals(data.get(299L).get("value"), "299");
+        Assert.assertEquals(metaDataBuffer.getStartTimestamp(1, testFeedID1), 0);
+        Assert.assertEquals(metaDataBuffer.getEndTimestamp(1, testFeedID1), 299);
+
+        // appends continue after the recovered records
+        partition.putData(Collections.singletonMap(testFeedID1, Collections.singletonMap(300L, sample("300"))),
+                        TimeUnit.NANOSECONDS);
+        Assert.assertEquals(partition.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 299, 300).get(testFeedID1).size(), 2);
+        partition.removeBuffer();
+    }
+
+    /**
+     * Writes a log partition from another process, whose dictionary assigns other ids to the same strings.
+     */
+    public static final class RecoveryWriter {
+        public static void main(String[] args) throws Exception {
+            for (int i = 0; i < 1000; i++) {
+                SampleDictionary.intern("padding" + i);
+            }
+            Properties prop = new Properties();
+            prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+            prop.put("log.buffer.segment.bytes", "4096");
+            prop.put("buffer.disk.loc", args[0]);
+            PartitionLogBuffer partition = new PartitionLogBuffer(new LogBufferEnv(prop, 1), null);
+            for (long time = 0; time < 100; time++) {
+                partition.putData(Collections.singletonMap("TestPui1", Collections.singletonMap(time, styledSample(time))),
+                                TimeUnit.NANOSECONDS);
+            }
+            partition.closeBuffer();
+        }
+    }
+
+    private static Map<String, String> styledSample(long time) {
+        Map<String, String> sample = new HashMap<String, String>();
+        sample.put("value", String.valueOf(time));
+        sample.put("status", time % 2 == 0 ? "ok" : "stale" + time % 3);
+        sample.put("ri", "-16777216&ok" + time % 5 + "&-16777216&true&true&" + time);
+        return sample;
+    }
+
+    @Test
+    public void recoveryInNewProcessTest() throws Exception {
+        Process writer = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+                        "-cp", System.getProperty("java.class.path"), RecoveryWriter.class.getName(),
+                        bufferLocation.getPath()).redirectErrorStream(true).start();
+        writer.getInputStream().close();
+        Assert.assertEquals(writer.waitFor(), 0);
+
+        PartitionLogBuffer partition = new PartitionLogBuffer(new LogBufferEnv(prop, 1), null);
+        SortedMap<Long, Map<String, String>> data = partition.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 0, 99).get(testFeedID1);
+        Assert.assertEquals(data.size(), 100);
+        for (long time = 0; time < 100; time++) {
+            Assert.assertEquals(data.get(time), styledSample(time));
+        }
+
+        // appends reuse the strings recovered from the log
+        partition.putData(Collections.singletonMap(testFeedID1, Collections.singletonMap(100L, styledSample(100))),
+                        TimeUnit.NANOSECONDS);
+        partition.closeBuffer();
+        partition = new PartitionLogBuffer(new LogBufferEnv(prop, 1), null);
+        Assert.assertEquals(partition.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 100, 100).get(testFeedID1).get(100L), styledSample(100));
+        partition.removeBuffer();
+    }
+
+    @Test
+    public void partitionRotationTest() throws BufferFullException {
+        dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, 1, sample("1"));
+        dataBuffer.prepareForNextPartition();
+        dataBuffer.moveToNextPartition();
+        dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, 2, sample("2"));
+
+        SortedMap<Long, Map<String, String>> returnData = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 10, TimeUnit.NANOSECONDS).get(testFeedID1);
+        Assert.assertEquals(returnData.size(), 2);
+        Assert.assertEquals(returnData.get(1L).get("value"), "1");
+        Assert.assertEquals(returnData.get(2L).get("value"), "2");
+    }
+}
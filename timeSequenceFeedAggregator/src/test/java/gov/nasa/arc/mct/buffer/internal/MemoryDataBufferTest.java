@@ -23,6 +23,7 @@ package gov.nasa.arc.mct.buffer.internal;
 
 import gov.nasa.arc.mct.api.feed.BufferFullException;
 import gov.nasa.arc.mct.api.feed.DataProvider.LOS;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
 import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
 import gov.nasa.arc.mct.buffer.memory.internal.MemoryDataBufferHelper;
 import gov.nasa.arc.mct.buffer.memory.internal.PartitionMemoryBuffer;
@@ -325,6 +326,63 @@ public class MemoryDataBufferTest {
         assertHasSameValue(returnValue, value3);
     }
 
+    @Test
+    public void putSamplesTest() throws BufferFullException {
+        long time = System.currentTimeMillis();
+        FeedSampleBlock block = new FeedSampleBlock(testFeedID1);
+        block.add(time + 1, time + 1, 2.5, true, null, "ok");
+        block.add(time, time, 1.5, false, null, null);
+        dataBuffer.putSamples(Collections.singletonMap(testFeedID1, block), TimeUnit.MILLISECONDS, null);
+
+        FeedSampleBlock returnData = dataBuffer.getSamples(Collections.singleton(testFeedID1),
+                        TimeUnit.MILLISECONDS, time, time + 100).get(testFeedID1);
+        Assert.assertEquals(returnData.size(), 2);
+        Assert.assertEquals(returnData.getTime(0), TimeUnit.NANOSECONDS.convert(time, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(returnData.getValue(0), 1.5);
+        Assert.assertFalse(returnData.isValid(0));
+        Assert.assertEquals(returnData.getValue(1), 2.5);
+        Assert.assertEquals(returnData.getStatus(1), "ok");
+
+        List<Map<String, String>> mapData = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.MILLISECONDS, time, time + 100).get(testFeedID1);
+        Assert.assertEquals(mapData.size(), 2);
+        Assert.assertEquals(mapData.get(1).get(FeedSampleBlock.VALUE_KEY), "2.5");
+        Assert.assertEquals(mapData.get(1).get(FeedSampleBlock.TIME_KEY), Long.toString(time + 1));
+    }
+
+    @Test
+    public void getSamplesMatchesMapTest() throws BufferFullException {
+        Map<Long, Map<String, String>> feedData = new HashMap<Long, Map<String, String>>();
+        Map<String, String> value1 = new HashMap<String, String>();
+        value1.put("data", "1.30");
+        value1.put("time", "100");
+        value1.put("ri", "-16777216&ok&-16777216&true&true&1.3");
+        value1.put("isValid", "true");
+        value1.put("custom", "x");
+        Map<String, String> value2 = new HashMap<String, String>();
+        value2.put("data", "OPEN");
+        value2.put("isValid", "maybe");
+        value2.put("ri", "OPEN");
+        Map<String, String> value3 = new HashMap<String, String>();
+        value3.put("data", "42");
+        value3.put("ri", "-16777216&ok&-16777216&true&true&42");
+        long time = System.currentTimeMillis();
+        feedData.put(time, value1);
+        feedData.put(time + 1, value2);
+        feedData.put(time + 2, value3);
+        dataBuffer.putData(testFeedID1, TimeUnit.MILLISECONDS, feedData);
+
+        FeedSampleBlock samples = dataBuffer.getSamples(Collections.singleton(testFeedID1),
+                        TimeUnit.MILLISECONDS, time, time + 100).get(testFeedID1);
+        Assert.assertEquals(samples.size(), 3);
+        assertHasSameValue(samples.toMap(0), value1);
+        assertHasSameValue(samples.toMap(1), value2);
+        assertHasSameValue(samples.toMap(2), value3);
+        Assert.assertFalse(samples.isNumeric(0));
+        Assert.assertTrue(Double.isNaN(samples.getValue(1)));
+        Assert.assertEquals(samples.getValue(2), 42.0);
+    }
+
         private void assertHasSameValue(Map<String, String> actualValue,
                         Map<String, String> expectedValue) {
             Assert.assertEquals(actualValue.size(), expectedValue.size());
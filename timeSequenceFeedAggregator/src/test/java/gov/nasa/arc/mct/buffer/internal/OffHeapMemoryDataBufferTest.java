@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
+import gov.nasa.arc.mct.buffer.memory.internal.OffHeapMemoryDataBufferHelper;
+import gov.nasa.arc.mct.buffer.memory.internal.PartitionOffHeapMemoryBuffer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class OffHeapMemoryDataBufferTest {
+    private DataBuffer dataBuffer;
+    private String testFeedID1 = "TestPui1";
+    private String testFeedID2 = "TestPui2";
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        dataBuffer = newDataBuffer(65536);
+    }
+
+    private DataBuffer newDataBuffer(long budget) throws IOException {
+        return newDataBuffer(budget, 1);
+    }
+
+    private DataBuffer newDataBuffer(long budget, int partitions) throws IOException {
+        Properties prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("memory.buffer.partition", String.valueOf(partitions));
+        prop.put("memory.buffer.time.millis", "-1");
+        prop.put("memory.buffer.offheap.bytes", String.valueOf(budget));
+        prop.put("memory.buffer.offheap.segment.bytes", "1024");
+        return new CODataBuffer(new MemoryBufferEnv(prop), new OffHeapMemoryDataBufferHelper());
+    }
+
+    @AfterMethod
+    public void reset() {
+        if (dataBuffer != null) {
+            dataBuffer.closeBuffer();
+        }
+        DataBufferFactory.reset();
+    }
+
+    private Map<String, String> sample(String value) {
+        Map<String, String> sample = new HashMap<String, String>();
+        sample.put("value", value);
+        sample.put("status", "ok");
+        return sample;
+    }
+
+    @Test
+    public void putOutOfOrderTest() throws BufferFullException {
+        Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
+        for (long time = 0; time < 60; time += 2) {
+            entries.put(time, sample(String.valueOf(time)));
+        }
+        dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, entries);
+        // fills the gaps of the full segments and replaces existing samples
+        for (long time = 59; time >= 1; time -= 2) {
+            dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, time, sample(String.valueOf(time)));
+        }
+        dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, 10, sample("replaced"));
+
+        List<Map<String, String>> returnData = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 0, 59).get(testFeedID1);
+        Assert.assertEquals(returnData.size(), 60);
+        for (int i = 0; i < returnData.size(); i++) {
+            Assert.assertEquals(returnData.get(i).get("value"), i == 10 ? "replaced" : String.valueOf(i));
+            Assert.assertEquals(returnData.get(i).get("status"), "ok");
+        }
+    }
+
+    @Test
+    public void budgetTest() throws BufferFullException, IOException {
+        dataBuffer.closeBuffer();
+        dataBuffer = newDataBuffer(4096);
+        for (long time = 0; time < 1000; time++) {
+            dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, time, sample(String.valueOf(time)));
+        }
+        dataBuffer.putData(testFeedID2, TimeUnit.NANOSECONDS, 0, sample("0"));
+
+        List<Map<String, String>> returnData = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 0, 1000).get(testFeedID1);
+        // the oldest samples were discarded to stay within four segments
+        Assert.assertTrue(returnData.size() < 1000);
+        Assert.assertEquals(returnData.get(returnData.size() - 1).get("value"), "999");
+        long oldest = Long.parseLong(returnData.get(0).get("value"));
+        Assert.assertFalse(dataBuffer.isFullyWithinTimeSpan(testFeedID1, 0, TimeUnit.NANOSECONDS));
+        Assert.assertTrue(dataBuffer.isFullyWithinTimeSpan(testFeedID1, oldest, TimeUnit.NANOSECONDS));
+
+        Assert.assertEquals(dataBuffer.getData(Collections.singleton(testFeedID2),
+                        TimeUnit.NANOSECONDS, 0, 1000).get(testFeedID2).get(0).get("value"), "0");
+    }
+
+    @Test
+    public void rotationTest() throws BufferFullException, IOException {
+        dataBuffer.closeBuffer();
+        dataBuffer = newDataBuffer(8192, 2);
+        // the first partition uses up its share of the budget
+        for (long time = 0; time < 1000; time++) {
+            dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, time, sample(String.valueOf(time)));
+        }
+        dataBuffer.prepareForNextPartition();
+        dataBuffer.moveToNextPartition();
+
+        // the new current partition keeps the samples while the inactive partition holds its segments
+        for (long time = 1000; time < 1010; time++) {
+            dataBuffer.putData(testFeedID2, TimeUnit.NANOSECONDS, time, sample(String.valueOf(time)));
+        }
+        PartitionOffHeapMemoryBuffer partition = (PartitionOffHeapMemoryBuffer) dataBuffer.partitionDataBuffers[1].get();
+        Assert.assertEquals(partition.getNumOfDroppedSamples(), 0);
+        List<Map<String, String>> returnData = dataBuffer.getData(Collections.singleton(testFeedID2),
+                        TimeUnit.NANOSECONDS, 1000, 1010).get(testFeedID2);
+        Assert.assertEquals(returnData.size(), 10);
+        Assert.assertEquals(returnData.get(0).get("value"), "1000");
+        // and the inactive partition still holds the most recent samples of the first feed
+        returnData = dataBuffer.getData(Collections.singleton(testFeedID1), TimeUnit.NANOSECONDS, 0, 1000).get(testFeedID1);
+        Assert.assertEquals(returnData.get(returnData.size() - 1).get("value"), "999");
+    }
+
+    @Test
+    public void getLastDataTest() throws BufferFullException {
+        for (long time = 0; time < 100; time++) {
+            dataBuffer.putData(testFeedID1, TimeUnit.NANOSECONDS, time, sample(String.valueOf(time)));
+        }
+        PartitionDataBuffer partition = dataBuffer.partitionDataBuffers[0].get();
+        Map<Long, Map<String, String>> lastData = partition.getLastData(Collections.singleton(testFeedID1),
+                        TimeUnit.NANOSECONDS, 0, 50).get(testFeedID1);
+        Assert.assertEquals(lastData.size(), 1);
+        Assert.assertEquals(lastData.get(50L).get("value"), "50");
+    }
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
+import gov.nasa.arc.mct.buffer.memory.internal.PartitionMemoryBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Measures read and write throughput of a memory partition while large historical requests run concurrently with
+ * live writes. The locking baseline serializes every call and copies the result, as the partition did when reads
+ * held its monitor.
+ */
+public class PartitionMemoryBufferContentionTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionMemoryBufferContentionTest.class);
+    private static final int NUM_OF_FEEDS = 8;
+    private static final int HISTORY = 20000;
+    private static final int NUM_OF_READERS = 4;
+    private static final long DURATION_MILLIS = 1000;
+
+    private Properties prop;
+    private Set<String> feedIDs;
+
+    private static interface Partition {
+        Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, long startTime, long endTime);
+
+        void putSamples(Map<String, FeedSampleBlock> samples);
+    }
+
+    private static class LockFreePartition implements Partition {
+        protected final PartitionMemoryBuffer buffer;
+
+        LockFreePartition(PartitionMemoryBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, long startTime, long endTime) {
+            return buffer.getSamples(feedIDs, TimeUnit.NANOSECONDS, startTime, endTime);
+        }
+
+        @Override
+        public void putSamples(Map<String, FeedSampleBlock> samples) {
+            buffer.putSamples(samples, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static final class LockingPartition extends LockFreePartition {
+        LockingPartition(PartitionMemoryBuffer buffer) {
+            super(buffer);
+        }
+
+        @Override
+        public synchronized Map<String, FeedSampleBlock> getSamples(Set<String> feedIDs, long startTime, long endTime) {
+            Map<String, FeedSampleBlock> samples = super.getSamples(feedIDs, startTime, endTime);
+            for (Map.Entry<String, FeedSampleBlock> entry : samples.entrySet()) {
+                entry.setValue(entry.getValue().copy());
+            }
+            return samples;
+        }
+
+        @Override
+        public synchronized void putSamples(Map<String, FeedSampleBlock> samples) {
+            super.putSamples(samples);
+        }
+    }
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("memory.buffer.partition", "1");
+        prop.put("memory.buffer.time.millis", "-1");
+        feedIDs = new HashSet<String>();
+        for (int i = 0; i < NUM_OF_FEEDS; i++) {
+            feedIDs.add("TestPui" + i);
+        }
+    }
+
+    private PartitionMemoryBuffer newBuffer() {
+        PartitionMemoryBuffer buffer = new PartitionMemoryBuffer(new MemoryBufferEnv(prop));
+        for (String feedID : feedIDs) {
+            FeedSampleBlock history = new FeedSampleBlock(feedID, HISTORY);
+            for (int i = 0; i < HISTORY; i++) {
+                history.add(i, i, i, true, null, "ok");
+            }
+            buffer.putSamples(Collections.singletonMap(feedID, history), TimeUnit.NANOSECONDS);
+        }
+        return buffer;
+    }
+
+    private long[] run(final Partition partition) throws InterruptedException {
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicLong reads = new AtomicLong();
+        final AtomicLong writes = new AtomicLong();
+        final AtomicBoolean consistent = new AtomicBoolean(true);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < NUM_OF_READERS; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    while (!done.get()) {
+                        Map<String, FeedSampleBlock> samples = partition.getSamples(feedIDs, 0, Long.MAX_VALUE);
+                        for (FeedSampleBlock block : samples.values()) {
+                            if (block.size() < HISTORY || block.getLastTime() != block.getFirstTime() + block.size() - 1) {
+                                consistent.set(false);
+                            }
+                        }
+                        reads.incrementAndGet();
+                    }
+                }
+            });
+        }
+        threads.add(new Thread() {
+            @Override
+            public void run() {
+                long time = HISTORY;
+                while (!done.get()) {
+                    Map<String, FeedSampleBlock> samples = new HashMap<String, FeedSampleBlock>();
+                    for (String feedID : feedIDs) {
+                        FeedSampleBlock block = new FeedSampleBlock(feedID, 1);
+                        block.add(time, time, time, true, null, "ok");
+                        samples.put(feedID, block);
+                    }
+                    partition.putSamples(samples);
+                    time++;
+                    writes.incrementAndGet();
+                }
+            }
+        });
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(DURATION_MILLIS);
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue(consistent.get(), "Readers observed a partially written partition");
+        return new long[] { reads.get(), writes.get() };
+    }
+
+    @Test
+    public void contentionTest() throws InterruptedException {
+        long[] locking = run(new LockingPartition(newBuffer()));
+        long[] lockFree = run(new LockFreePartition(newBuffer()));
+
+        LOGGER.info("Locking reads: {}/s, writes: {}/s", locking[0] * 1000 / DURATION_MILLIS, locking[1] * 1000 / DURATION_MILLIS);
+        LOGGER.info("Lock free reads: {}/s, writes: {}/s", lockFree[0] * 1000 / DURATION_MILLIS, lockFree[1] * 1000 / DURATION_MILLIS);
+
+        Assert.assertTrue(lockFree[0] > 0);
+        Assert.assertTrue(lockFree[1] > 0);
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.buffer.disk.internal.PartitionTimestamps;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class PartitionMetaDataTest {
+    private static final int NUM_OF_FEEDS = 5000;
+
+    private static Set<String> feeds(String prefix, int count) {
+        Set<String> feedIDs = new HashSet<String>();
+        for (int i = 0; i < count; i++) {
+            feedIDs.add(prefix + i);
+        }
+        return feedIDs;
+    }
+
+    private static PartitionMetaData newMetaData() {
+        PartitionMetaData metaData = new PartitionMetaData(0);
+        int i = 0;
+        for (String feedID : feeds("feed", NUM_OF_FEEDS)) {
+            metaData.updateTimestamp(feedID, 1000 + i, 2000 + i);
+            i++;
+        }
+        return metaData;
+    }
+
+    @Test
+    public void withinTimeSpanTest() {
+        PartitionMetaData metaData = newMetaData();
+        Set<String> present = feeds("feed", NUM_OF_FEEDS);
+        Set<String> absent = feeds("other", NUM_OF_FEEDS);
+
+        Assert.assertTrue(metaData.isWithinTimeSpan(present, 0, 1000));
+        Assert.assertTrue(metaData.isWithinTimeSpan(present, 2000 + NUM_OF_FEEDS - 1, Long.MAX_VALUE));
+        Assert.assertFalse(metaData.isWithinTimeSpan(present, 0, 999));
+        Assert.assertFalse(metaData.isWithinTimeSpan(present, 2000 + NUM_OF_FEEDS, Long.MAX_VALUE));
+        Assert.assertFalse(metaData.isWithinTimeSpan(absent, 0, Long.MAX_VALUE));
+        Assert.assertFalse(metaData.isWithinTimeSpan(Collections.<String>emptySet(), 0, Long.MAX_VALUE));
+        // the filter never drops a feed the partition has
+        for (String feedID : present) {
+            Assert.assertTrue(metaData.isWithinTimeSpan(Collections.singleton(feedID), 0, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void fullyWithinTimeSpanTest() {
+        PartitionMetaData metaData = newMetaData();
+        Set<String> present = feeds("feed", NUM_OF_FEEDS);
+
+        Assert.assertTrue(metaData.isFullyWithinTimeSpan(present, 1000 + NUM_OF_FEEDS - 1));
+        Assert.assertFalse(metaData.isFullyWithinTimeSpan(present, 1000 + NUM_OF_FEEDS - 2));
+        Assert.assertFalse(metaData.isFullyWithinTimeSpan(present, 999));
+        Assert.assertFalse(metaData.isFullyWithinTimeSpan(Collections.singleton("other0"), 5000));
+        Assert.assertTrue(metaData.isFullyWithinTimeSpan(Collections.<String>emptySet(), 0));
+
+        metaData = new PartitionMetaData(0);
+        metaData.updateTimestamp("feed0", 1000, 2000);
+        Assert.assertTrue(metaData.isFullyWithinTimeSpan(Collections.singleton("feed0"), 1000));
+        metaData.truncateTimestamp("feed0", 1500);
+        Assert.assertFalse(metaData.isFullyWithinTimeSpan(Collections.singleton("feed0"), 1499));
+        Assert.assertTrue(metaData.isFullyWithinTimeSpan(Collections.singleton("feed0"), 1500));
+    }
+
+    @Test
+    public void rolloverFeedsTest() {
+        PartitionMetaData metaData = new PartitionMetaData(0);
+        metaData.addFeeds(Collections.singleton("feed0"));
+        Assert.assertTrue(metaData.hasFeed("feed0"));
+        Assert.assertFalse(metaData.isWithinTimeSpan(Collections.singleton("feed0"), 0, Long.MAX_VALUE));
+        Assert.assertFalse(metaData.isFullyWithinTimeSpan(Collections.singleton("feed0"), Long.MAX_VALUE));
+
+        metaData.updateTimestamp("feed0", 10, -1);
+        Assert.assertTrue(metaData.isWithinTimeSpan(Collections.singleton("feed0"), 100, 200));
+
+        metaData.reset();
+        Assert.assertFalse(metaData.isWithinTimeSpan(Collections.singleton("feed0"), 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void missingSummaryTest() throws Exception {
+        // partitions stored before the summaries were kept have none
+        PartitionMetaData metaData = new PartitionMetaData(0);
+        Map<String, PartitionTimestamps> timestamps = new HashMap<String, PartitionTimestamps>();
+        timestamps.put("feed0", new PartitionTimestamps(100, 200));
+        metaData.setTimeStamp(timestamps);
+        Field summary = PartitionMetaData.class.getDeclaredField("summary");
+        summary.setAccessible(true);
+        summary.set(metaData, null);
+
+        Assert.assertTrue(metaData.isWithinTimeSpan(Collections.singleton("feed0"), 150, 300));
+        Assert.assertFalse(metaData.isWithinTimeSpan(Collections.singleton("feed0"), 201, 300));
+        Assert.assertNotNull(summary.get(metaData));
+    }
+
+    @Test
+    public void falsePositiveRateTest() {
+        PartitionSummary summary = PartitionSummary.build(Collections.<String, PartitionTimestamps>emptyMap());
+        for (String feedID : feeds("feed", 256)) {
+            summary.addFeed(feedID);
+        }
+        int falsePositives = 0;
+        for (String feedID : feeds("other", 10000)) {
+            if (summary.mightHaveFeed(feedID)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue(falsePositives < 300, falsePositives + " false positives");
+    }
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
+import gov.nasa.arc.mct.buffer.memory.internal.MemoryDataBufferHelper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Measures how long reads and writes stall while partitions rotate. A rotation only waits for the operations which
+ * started before it; it never makes other operations wait.
+ */
+public class PartitionRotationStallTest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionRotationStallTest.class);
+    private static final String FEED_ID = "TestPui1";
+    private static final long DURATION_MILLIS = 1000;
+    private static final long MAX_STALL_MILLIS = 250;
+
+    private CODataBuffer dataBuffer;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        Properties prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("memory.buffer.partition", "3");
+        prop.put("memory.buffer.time.millis", "-1");
+        dataBuffer = new CODataBuffer(new MemoryBufferEnv(prop), new MemoryDataBufferHelper());
+    }
+
+    @AfterMethod
+    public void reset() {
+        if (dataBuffer != null) {
+            dataBuffer.reset();
+        }
+    }
+
+    private void putData(long time) throws BufferFullException {
+        Map<String, String> value = new HashMap<String, String>();
+        value.put("value", String.valueOf(time));
+        dataBuffer.putData(FEED_ID, TimeUnit.MILLISECONDS, time, value);
+    }
+
+    private SortedMap<Long, Map<String, String>> getData(long startTime, long endTime) {
+        return dataBuffer.getData(Collections.singleton(FEED_ID), startTime, endTime, TimeUnit.MILLISECONDS).get(FEED_ID);
+    }
+
+    @Test
+    public void rotationWithOperationInProgressTest() throws Exception {
+        putData(0);
+        dataBuffer.prepareForNextPartition();
+
+        // an operation on the current partition which has not finished yet
+        int epoch = dataBuffer.epochs.enter();
+        Thread rotation = new Thread() {
+            @Override
+            public void run() {
+                dataBuffer.moveToNextPartition();
+            }
+        };
+        rotation.start();
+        rotation.join(100);
+        Assert.assertTrue(rotation.isAlive());
+
+        long start = System.nanoTime();
+        putData(1);
+        SortedMap<Long, Map<String, String>> data = getData(0, 1);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue(elapsed < 100, "Operations stalled for " + elapsed + " ms");
+        Assert.assertEquals(data.size(), 2);
+        Assert.assertEquals(dataBuffer.currentParition.getBufferEnv().getCurrentBufferPartition(), 1);
+
+        dataBuffer.epochs.exit(epoch);
+        rotation.join(5000);
+        Assert.assertFalse(rotation.isAlive());
+        Assert.assertFalse(dataBuffer.partitionDataBuffers[0].get().isActive());
+    }
+
+    @Test
+    public void writeAfterRotationStartedTest() throws Exception {
+        putData(0);
+        dataBuffer.prepareForNextPartition();
+        PartitionDataBuffer previous = dataBuffer.partitionDataBuffers[0].get();
+
+        // an operation holds up the rotation after it switched the current partition
+        int epoch = dataBuffer.epochs.enter();
+        Thread rotation = new Thread() {
+            @Override
+            public void run() {
+                dataBuffer.moveToNextPartition();
+            }
+        };
+        rotation.start();
+        rotation.join(100);
+        Assert.assertTrue(rotation.isAlive());
+
+        // a write which looked up the partition before the rotation does not start on it, a read still does
+        Assert.assertEquals(dataBuffer.enterWriteEpoch(previous), -1);
+        int read = dataBuffer.enterEpoch(previous);
+        Assert.assertTrue(read >= 0);
+        dataBuffer.exitEpoch(read);
+
+        dataBuffer.epochs.exit(epoch);
+        rotation.join(5000);
+        Assert.assertFalse(rotation.isAlive());
+        // nor once the partition is flushed and inactive
+        Assert.assertEquals(dataBuffer.enterWriteEpoch(previous), -1);
+        putData(1);
+        Assert.assertEquals(getData(0, 1).size(), 2);
+    }
+
+    @Test
+    public void stallTest() throws InterruptedException {
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicLong time = new AtomicLong();
+        final AtomicLong maxStallNanos = new AtomicLong();
+        final AtomicBoolean failed = new AtomicBoolean(false);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        threads.add(new Thread() {
+            @Override
+            public void run() {
+                while (!done.get()) {
+                    long start = System.nanoTime();
+                    try {
+                        putData(time.incrementAndGet());
+                    } catch (BufferFullException e) {
+                        failed.set(true);
+                    }
+                    record(maxStallNanos, System.nanoTime() - start);
+                }
+            }
+        });
+        for (int i = 0; i < 2; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    while (!done.get()) {
+                        long now = time.get();
+                        long start = System.nanoTime();
+                        getData(Math.max(0, now - 1000), now);
+                        record(maxStallNanos, System.nanoTime() - start);
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        int rotations = 0;
+        long end = System.currentTimeMillis() + DURATION_MILLIS;
+        while (System.currentTimeMillis() < end) {
+            dataBuffer.prepareForNextPartition();
+            dataBuffer.moveToNextPartition();
+            rotations++;
+            Thread.sleep(10);
+        }
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long maxStallMillis = TimeUnit.NANOSECONDS.toMillis(maxStallNanos.get());
+        LOGGER.info("{} rotations, {} writes, worst read/write stall: {} ms",
+                        new Object[] { Integer.valueOf(rotations), Long.valueOf(time.get()), Long.valueOf(maxStallMillis) });
+        Assert.assertFalse(failed.get());
+        Assert.assertTrue(rotations > 0);
+        Assert.assertTrue(maxStallMillis < MAX_STALL_MILLIS, "Worst stall was " + maxStallMillis + " ms");
+    }
+
+    private static void record(AtomicLong max, long nanos) {
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+}
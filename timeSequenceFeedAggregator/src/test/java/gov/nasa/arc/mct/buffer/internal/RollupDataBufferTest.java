@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+import gov.nasa.arc.mct.buffer.config.LogBufferEnv;
+import gov.nasa.arc.mct.buffer.config.MemoryBufferEnv;
+import gov.nasa.arc.mct.buffer.log.internal.LogDataBufferHelper;
+import gov.nasa.arc.mct.buffer.memory.internal.MemoryDataBufferHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RollupDataBufferTest {
+    private CODataBuffer dataBuffer;
+    private String testFeedID1 = "TestPui1";
+    private String testFeedID2 = "TestPui2";
+    private Properties prop;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("memory.buffer.partition", "2");
+        prop.put("memory.buffer.time.millis", "-1");
+        dataBuffer = new CODataBuffer(new MemoryBufferEnv(prop), new MemoryDataBufferHelper());
+    }
+
+    @AfterMethod
+    public void reset() {
+        if (dataBuffer != null) {
+            dataBuffer.reset();
+        }
+    }
+
+    private static Map<String, String> sample(double value) {
+        Map<String, String> sample = new HashMap<String, String>();
+        sample.put(FeedSampleBlock.VALUE_KEY, String.valueOf(value));
+        sample.put("status", "ok");
+        return sample;
+    }
+
+    // 10 Hz saw tooth with a period of 7 seconds
+    private static double value(long millis) {
+        return (millis % 7000) / 100;
+    }
+
+    private void putData(String feedID, long fromMillis, long toMillis) throws BufferFullException {
+        Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
+        for (long time = fromMillis; time < toMillis; time += 100) {
+            entries.put(Long.valueOf(time), sample(value(time)));
+        }
+        dataBuffer.putData(Collections.singletonMap(feedID, entries), TimeUnit.MILLISECONDS, null);
+    }
+
+    private void assertEnvelope(SortedMap<Long, Map<String, String>> rollup, SortedMap<Long, Map<String, String>> raw,
+                    long resolutionMillis) {
+        Map<Long, double[]> rawRanges = ranges(raw, resolutionMillis);
+        Map<Long, double[]> rollupRanges = ranges(rollup, resolutionMillis);
+        Assert.assertEquals(rollupRanges.keySet(), rawRanges.keySet());
+        for (Map.Entry<Long, double[]> entry : rawRanges.entrySet()) {
+            double[] range = rollupRanges.get(entry.getKey());
+            Assert.assertEquals(range[0], entry.getValue()[0]);
+            Assert.assertEquals(range[1], entry.getValue()[1]);
+        }
+        Assert.assertTrue(rollup.size() <= rawRanges.size() * 4);
+        Assert.assertEquals(rollup.firstKey(), raw.firstKey());
+        Assert.assertEquals(rollup.lastKey(), raw.lastKey());
+        for (Map.Entry<Long, Map<String, String>> entry : rollup.entrySet()) {
+            Assert.assertEquals(entry.getValue(), raw.get(entry.getKey()));
+        }
+    }
+
+    // minimum and maximum value of each interval
+    private static Map<Long, double[]> ranges(SortedMap<Long, Map<String, String>> data, long resolutionMillis) {
+        long resolution = TimeUnit.MILLISECONDS.toNanos(resolutionMillis);
+        Map<Long, double[]> ranges = new TreeMap<Long, double[]>();
+        for (Map.Entry<Long, Map<String, String>> entry : data.entrySet()) {
+            Long interval = Long.valueOf(entry.getKey().longValue() / resolution);
+            double value = Double.parseDouble(entry.getValue().get(FeedSampleBlock.VALUE_KEY));
+            double[] range = ranges.get(interval);
+            if (range == null) {
+                ranges.put(interval, new double[] { value, value });
+            } else {
+                range[0] = Math.min(range[0], value);
+                range[1] = Math.max(range[1], value);
+            }
+        }
+        return ranges;
+    }
+
+    @Test
+    public void rollupTest() throws BufferFullException {
+        putData(testFeedID1, 0, 120000);
+        SortedMap<Long, Map<String, String>> raw = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 120000, TimeUnit.MILLISECONDS).get(testFeedID1);
+        Assert.assertEquals(raw.size(), 1200);
+
+        // a 15 second resolution is answered from the 10 second rollups
+        SortedMap<Long, Map<String, String>> rollup = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 120000, TimeUnit.MILLISECONDS, 15000).get(testFeedID1);
+        assertEnvelope(rollup, raw, 10000);
+        Assert.assertTrue(rollup.size() <= 48);
+
+        rollup = dataBuffer.getData(Collections.singleton(testFeedID1), 0, 120000, TimeUnit.MILLISECONDS, 1000).get(testFeedID1);
+        assertEnvelope(rollup, raw, 1000);
+    }
+
+    @Test
+    public void fineResolutionTest() throws BufferFullException {
+        putData(testFeedID1, 0, 5000);
+        SortedMap<Long, Map<String, String>> data = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 5000, TimeUnit.MILLISECONDS, 500).get(testFeedID1);
+        Assert.assertEquals(data.size(), 50);
+    }
+
+    @Test
+    public void putSamplesTest() throws BufferFullException {
+        Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
+        for (long time = 0; time < 60000; time += 100) {
+            entries.put(Long.valueOf(time), sample(value(time)));
+        }
+        dataBuffer.putSamples(Collections.singletonMap(testFeedID2, FeedSampleBlock.fromMaps(testFeedID2, entries)),
+                        TimeUnit.MILLISECONDS, null);
+        SortedMap<Long, Map<String, String>> raw = dataBuffer.getData(Collections.singleton(testFeedID2),
+                        0, 60000, TimeUnit.MILLISECONDS).get(testFeedID2);
+        SortedMap<Long, Map<String, String>> rollup = dataBuffer.getData(Collections.singleton(testFeedID2),
+                        0, 60000, TimeUnit.MILLISECONDS, 60000).get(testFeedID2);
+        Assert.assertEquals(ranges(rollup, 60000).get(Long.valueOf(0))[0], 0.0);
+        Assert.assertEquals(ranges(rollup, 60000).get(Long.valueOf(0))[1], 69.0);
+        Assert.assertTrue(rollup.size() <= 4);
+        Assert.assertEquals(rollup.firstKey(), raw.firstKey());
+        Assert.assertEquals(rollup.lastKey(), raw.lastKey());
+    }
+
+    @Test
+    public void reduceTest() throws BufferFullException {
+        putData(testFeedID1, 0, 30000);
+        SortedMap<Long, Map<String, String>> raw = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 30000, TimeUnit.MILLISECONDS).get(testFeedID1);
+        SortedMap<Long, Map<String, String>> rollup = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 30000, TimeUnit.MILLISECONDS, 10000).get(testFeedID1);
+        // samples the rollups do not cover are reduced the same way when they are read
+        Assert.assertEquals(RollupTier.reduce(raw, TimeUnit.SECONDS.toNanos(10)), rollup);
+
+        RollupTier tier = new RollupTier(RollupTier.getResolutions(prop), Collections.singleton(testFeedID1));
+        Assert.assertFalse(tier.isComplete(testFeedID1));
+        Assert.assertTrue(tier.isComplete(testFeedID2));
+        tier.clear();
+        Assert.assertTrue(tier.isComplete(testFeedID1));
+    }
+
+    @Test
+    public void replacedSampleTest() throws BufferFullException {
+        putData(testFeedID1, 0, 10000);
+        // the maximum of the first second is replaced by a sample which is no longer the maximum
+        dataBuffer.putData(Collections.singletonMap(testFeedID1, Collections.singletonMap(Long.valueOf(900), sample(0.5))),
+                        TimeUnit.MILLISECONDS, null);
+        // the minimum of the second second is replaced by a smaller one
+        dataBuffer.putData(Collections.singletonMap(testFeedID1, Collections.singletonMap(Long.valueOf(1000), sample(-1))),
+                        TimeUnit.MILLISECONDS, null);
+        SortedMap<Long, Map<String, String>> raw = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 10000, TimeUnit.MILLISECONDS).get(testFeedID1);
+        SortedMap<Long, Map<String, String>> rollup = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 10000, TimeUnit.MILLISECONDS, 1000).get(testFeedID1);
+        assertEnvelope(rollup, raw, 1000);
+        Assert.assertEquals(rollup.get(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(900))), sample(0.5));
+        Assert.assertEquals(rollup.get(Long.valueOf(TimeUnit.MILLISECONDS.toNanos(1000))), sample(-1));
+    }
+
+    @Test
+    public void diskBufferTest() throws BufferFullException, IOException {
+        File bufferLocation = File.createTempFile("mct-buffer", "");
+        bufferLocation.delete();
+        bufferLocation.mkdir();
+        prop.put("buffer.partitions", "2");
+        prop.put("buffer.time.millis", "-1");
+        prop.put("buffer.disk.loc", bufferLocation.toString());
+        dataBuffer.reset();
+        // disk buffers keep no rollups and reduce the samples they read
+        dataBuffer = new CODataBuffer(new LogBufferEnv(prop), new LogDataBufferHelper());
+        putData(testFeedID1, 0, 30000);
+        SortedMap<Long, Map<String, String>> raw = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 30000, TimeUnit.MILLISECONDS).get(testFeedID1);
+        SortedMap<Long, Map<String, String>> rollup = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 30000, TimeUnit.MILLISECONDS, 10000).get(testFeedID1);
+        Assert.assertEquals(rollup, RollupTier.reduce(raw, TimeUnit.SECONDS.toNanos(10)));
+        dataBuffer.closeBuffer();
+        dataBuffer = null;
+        delete(bufferLocation);
+    }
+
+    private static void delete(File f) {
+        if (f.isDirectory()) {
+            for (File f2 : f.listFiles()) {
+                delete(f2);
+            }
+        }
+        f.delete();
+    }
+
+    @Test
+    public void resolutionsTest() {
+        Properties resolutions = new Properties();
+        resolutions.put(RollupTier.RESOLUTIONS_PROPERTY, "60000, 5000");
+        long[] levels = RollupTier.getResolutions(resolutions);
+        Assert.assertEquals(levels.length, 2);
+        Assert.assertEquals(levels[0], TimeUnit.SECONDS.toNanos(5));
+        Assert.assertEquals(RollupTier.selectLevel(levels, TimeUnit.SECONDS.toNanos(1)), -1);
+        Assert.assertEquals(RollupTier.selectLevel(levels, TimeUnit.SECONDS.toNanos(30)), 0);
+        Assert.assertEquals(RollupTier.selectLevel(levels, TimeUnit.HOURS.toNanos(1)), 1);
+
+        resolutions.put(RollupTier.RESOLUTIONS_PROPERTY, "");
+        Assert.assertEquals(RollupTier.getResolutions(resolutions).length, 0);
+    }
+
+    @Test
+    public void partitionRotationTest() throws BufferFullException {
+        putData(testFeedID1, 0, 10000);
+        dataBuffer.prepareForNextPartition();
+        dataBuffer.moveToNextPartition();
+        putData(testFeedID1, 10000, 20000);
+        SortedMap<Long, Map<String, String>> rollup = dataBuffer.getData(Collections.singleton(testFeedID1),
+                        0, 20000, TimeUnit.MILLISECONDS, 10000).get(testFeedID1);
+        Assert.assertEquals(rollup.firstKey().longValue(), 0L);
+        Assert.assertEquals(rollup.lastKey().longValue(), TimeUnit.MILLISECONDS.toNanos(19900));
+
+        // the first partition is reused
+        dataBuffer.prepareForNextPartition();
+        dataBuffer.moveToNextPartition();
+        putData(testFeedID1, 20000, 30000);
+        rollup = dataBuffer.getData(Collections.singleton(testFeedID1), 20000, 30000, TimeUnit.MILLISECONDS, 10000).get(testFeedID1);
+        for (Long time : rollup.keySet()) {
+            Assert.assertTrue(time.longValue() >= TimeUnit.MILLISECONDS.toNanos(19900));
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.network.internal;
+
+import gov.nasa.arc.mct.api.feed.BufferFullException;
+import gov.nasa.arc.mct.buffer.config.NetworkBufferEnv;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class BufferServerTest {
+    private static final String FEED_ID = "TestPui1";
+
+    private ConcurrentMap<String, SortedMap<Long, Map<String, String>>> samples;
+    private BufferServer server;
+    private List<PartitionNetworkBuffer> clients;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        samples = new ConcurrentHashMap<String, SortedMap<Long, Map<String, String>>>();
+        server = new BufferServer("127.0.0.1", 0, 2, new BufferServer.Source() {
+            // like the buffers, adds the last sample before the start when there is no sample at the start
+            @Override
+            public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime) {
+                Map<String, SortedMap<Long, Map<String, String>>> data = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+                for (String feedID : feedIDs) {
+                    SortedMap<Long, Map<String, String>> feedSamples = samples.get(feedID);
+                    if (feedSamples == null) {
+                        continue;
+                    }
+                    synchronized (feedSamples) {
+                        SortedMap<Long, Map<String, String>> feedData = new TreeMap<Long, Map<String, String>>(
+                                        feedSamples.subMap(Long.valueOf(startTime), Long.valueOf(endTime + 1)));
+                        SortedMap<Long, Map<String, String>> before = feedSamples.headMap(Long.valueOf(startTime + 1));
+                        if (!feedData.containsKey(Long.valueOf(startTime)) && !before.isEmpty()) {
+                            feedData.put(before.lastKey(), before.get(before.lastKey()));
+                        }
+                        if (!feedData.isEmpty()) {
+                            data.put(feedID, feedData);
+                        }
+                    }
+                }
+                return data;
+            }
+
+            @Override
+            public void putData(Map<String, Map<Long, Map<String, String>>> value) {
+                for (Entry<String, Map<Long, Map<String, String>>> entry : value.entrySet()) {
+                    samples.putIfAbsent(entry.getKey(), new TreeMap<Long, Map<String, String>>());
+                    SortedMap<Long, Map<String, String>> feedSamples = samples.get(entry.getKey());
+                    synchronized (feedSamples) {
+                        feedSamples.putAll(entry.getValue());
+                    }
+                }
+            }
+        });
+        clients = new ArrayList<PartitionNetworkBuffer>();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        for (PartitionNetworkBuffer client : clients) {
+            client.closeBuffer();
+        }
+        server.close();
+    }
+
+    private PartitionNetworkBuffer newClient(int connections) {
+        Properties prop = new Properties();
+        prop.setProperty("network.buffer.server.host", "127.0.0.1");
+        prop.setProperty("network.buffer.server.port", String.valueOf(server.getPort()));
+        prop.setProperty("network.buffer.connections", String.valueOf(connections));
+        prop.setProperty("network.buffer.timeout.millis", "5000");
+        PartitionNetworkBuffer client = new PartitionNetworkBuffer(new NetworkBufferEnv(prop));
+        clients.add(client);
+        return client;
+    }
+
+    private static Map<String, Map<Long, Map<String, String>>> newData(String feedID, long fromMillis, long toMillis) {
+        Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
+        for (long time = fromMillis; time < toMillis; time++) {
+            entries.put(Long.valueOf(time), Collections.singletonMap("value", String.valueOf(time)));
+        }
+        return Collections.singletonMap(feedID, entries);
+    }
+
+    @Test
+    public void roundTripTest() throws BufferFullException {
+        PartitionNetworkBuffer client = newClient(1);
+        client.putData(newData(FEED_ID, 0, 100), TimeUnit.MILLISECONDS);
+
+        SortedMap<Long, Map<String, String>> data = client.getData(Collections.singleton(FEED_ID), TimeUnit.MILLISECONDS, 10, 19).get(FEED_ID);
+        Assert.assertEquals(data.size(), 10);
+        Assert.assertEquals(data.firstKey().longValue(), TimeUnit.MILLISECONDS.toNanos(10));
+        Assert.assertEquals(data.get(data.lastKey()).get("value"), "19");
+
+        data = client.getLastData(Collections.singleton(FEED_ID), TimeUnit.MILLISECONDS, 0, 50).get(FEED_ID);
+        Assert.assertEquals(data.size(), 1);
+        Assert.assertEquals(data.get(data.firstKey()).get("value"), "50");
+        Assert.assertTrue(client.getLastData(Collections.singleton(FEED_ID), TimeUnit.MILLISECONDS, 200, 300).isEmpty());
+        Assert.assertTrue(client.getData(Collections.singleton("TestPui2"), TimeUnit.MILLISECONDS, 0, 100).isEmpty());
+    }
+
+    @Test
+    public void sharedTest() throws BufferFullException {
+        PartitionNetworkBuffer writer = newClient(1);
+        PartitionNetworkBuffer reader = newClient(1);
+        writer.putData(newData(FEED_ID, 0, 10), TimeUnit.MILLISECONDS);
+        Assert.assertEquals(reader.getData(Collections.singleton(FEED_ID), TimeUnit.MILLISECONDS, 0, 10).get(FEED_ID).size(), 10);
+    }
+
+    @Test
+    public void pipelineTest() throws InterruptedException, BufferFullException {
+        final PartitionNetworkBuffer client = newClient(2);
+        for (int i = 0; i < 8; i++) {
+            client.putData(newData("TestPui" + i, i * 100, i * 100 + 100), TimeUnit.MILLISECONDS);
+        }
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] readers = new Thread[8];
+        for (int i = 0; i < readers.length; i++) {
+            final int feed = i;
+            readers[i] = new Thread() {
+                @Override
+                public void run() {
+                    // the threads share two connections, so their requests and responses interleave
+                    for (int j = 0; j < 50; j++) {
+                        SortedMap<Long, Map<String, String>> data = client.getData(Collections.singleton("TestPui" + feed),
+                                        TimeUnit.MILLISECONDS, feed * 100 + j, feed * 100 + j).get("TestPui" + feed);
+                        if (data == null || data.size() != 1 || !data.get(data.firstKey()).get("value").equals(String.valueOf(feed * 100 + j))) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            readers[i].start();
+        }
+        for (Thread reader : readers) {
+            reader.join(10000);
+        }
+        Assert.assertEquals(failures.get(), 0);
+    }
+
+    @Test
+    public void serverDownTest() throws BufferFullException {
+        PartitionNetworkBuffer client = newClient(1);
+        client.putData(newData(FEED_ID, 0, 10), TimeUnit.MILLISECONDS);
+        server.close();
+        // requests the server cannot answer read no samples
+        Assert.assertTrue(client.getData(Collections.singleton(FEED_ID), TimeUnit.MILLISECONDS, 0, 10).isEmpty());
+        // and the samples it cannot write are handed back to the caller
+        try {
+            client.putData(newData(FEED_ID, 10, 20), TimeUnit.MILLISECONDS);
+            Assert.fail("Expected a BufferFullException");
+        } catch (BufferFullException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void backpressureTest() throws Exception {
+        final AtomicInteger started = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        BufferServer blockingServer = new BufferServer("127.0.0.1", 0, BufferServer.MAX_IN_FLIGHT * 2, new BufferServer.Source() {
+            @Override
+            public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime) {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public void putData(Map<String, Map<Long, Map<String, String>>> value) {
+                started.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Socket socket = new Socket("127.0.0.1", blockingServer.getPort());
+        try {
+            int requests = BufferServer.MAX_IN_FLIGHT * 2;
+            OutputStream out = socket.getOutputStream();
+            byte[] payload = BufferProtocol.encodeData(newData(FEED_ID, 0, 1));
+            for (int i = 0; i < requests; i++) {
+                out.write(BufferProtocol.frame(i, BufferProtocol.PUT_DATA, payload).array());
+            }
+            out.flush();
+            for (int i = 0; i < 100 && started.get() < BufferServer.MAX_IN_FLIGHT; i++) {
+                Thread.sleep(20);
+            }
+            Thread.sleep(200);
+            // the server stops reading the connection once MAX_IN_FLIGHT requests wait for an answer
+            Assert.assertEquals(started.get(), BufferServer.MAX_IN_FLIGHT);
+
+            release.countDown();
+            socket.setSoTimeout(5000);
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for (int i = 0; i < requests; i++) {
+                byte[] response = new byte[in.readInt()];
+                in.readFully(response);
+                Assert.assertEquals(response[4], BufferProtocol.OK);
+            }
+            Assert.assertEquals(started.get(), requests);
+        } finally {
+            release.countDown();
+            socket.close();
+            blockingServer.close();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void bucketTest() {
+        for (long nanos = 0; nanos < 100000; nanos++) {
+            int bucket = LatencyHistogram.bucketOf(nanos);
+            Assert.assertTrue(LatencyHistogram.upperBoundOf(bucket) >= nanos);
+            Assert.assertTrue(bucket == 0 || LatencyHistogram.upperBoundOf(bucket - 1) < nanos);
+        }
+        Assert.assertTrue(LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)) > 0);
+    }
+
+    @Test
+    public void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(histogram.getPercentile(0.5, TimeUnit.NANOSECONDS), 0);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        Assert.assertEquals(histogram.getCount(), 1000);
+        Assert.assertEquals(histogram.getMax(TimeUnit.MICROSECONDS), 1000);
+        Assert.assertEquals(histogram.getMean(TimeUnit.NANOSECONDS), 500500);
+        assertWithin(histogram.getPercentile(0.5, TimeUnit.MICROSECONDS), 500);
+        assertWithin(histogram.getPercentile(0.9, TimeUnit.MICROSECONDS), 900);
+        assertWithin(histogram.getPercentile(0.99, TimeUnit.MICROSECONDS), 990);
+        Assert.assertEquals(histogram.getPercentile(1, TimeUnit.MICROSECONDS), 1000);
+
+        LatencySnapshot snapshot = histogram.getSnapshot();
+        Assert.assertEquals(snapshot.getCount(), 1000);
+        Assert.assertEquals(snapshot.getP90(), histogram.getPercentile(0.9, TimeUnit.MICROSECONDS));
+
+        histogram.reset();
+        Assert.assertEquals(histogram.getCount(), 0);
+        Assert.assertEquals(histogram.getMax(TimeUnit.NANOSECONDS), 0);
+    }
+
+    // percentiles are the upper bound of their bucket
+    private static void assertWithin(long actual, long expected) {
+        Assert.assertTrue(actual >= expected && actual <= expected * 5 / 4, actual + " not within 25% of " + expected);
+    }
+
+    @Test
+    public void hitRateTest() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.getCounter("get.memory.hits").addAndGet(3);
+        registry.getCounter("get.memory.misses").addAndGet(1);
+        registry.getCounter("get.fastdisk.hits");
+        Assert.assertEquals(registry.getHitRates().get("get.memory"), Double.valueOf(0.75));
+        // no reads yet
+        Assert.assertFalse(registry.getHitRates().containsKey("get.fastdisk"));
+
+        registry.reset();
+        Assert.assertTrue(registry.getHitRates().isEmpty());
+        Assert.assertEquals(registry.getCounters().get("get.memory.hits"), Long.valueOf(0));
+    }
+
+    @Test
+    public void gaugeTest() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Gauge gauge = new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return 42;
+            }
+        };
+        registry.putGauge("queue.samples", gauge);
+        Assert.assertEquals(registry.getGauges().get("queue.samples"), Long.valueOf(42));
+        registry.removeGauge("queue.samples", new MetricsRegistry.Gauge() {
+            @Override
+            public long getValue() {
+                return 0;
+            }
+        });
+        Assert.assertTrue(registry.getGauges().containsKey("queue.samples"));
+        registry.removeGauge("queue.samples", gauge);
+        Assert.assertFalse(registry.getGauges().containsKey("queue.samples"));
+    }
+
+    @Test
+    public void jmxTest() throws Exception {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        registry.getHistogram("test.jmx").record(TimeUnit.MILLISECONDS.toNanos(2));
+        registry.getCounter("test.jmx.hits").incrementAndGet();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MetricsRegistry.OBJECT_NAME);
+        TabularData latencies = (TabularData) server.getAttribute(name, "Latencies");
+        CompositeData row = latencies.get(new Object[] { "test.jmx" });
+        CompositeData snapshot = (CompositeData) row.get("value");
+        Assert.assertEquals(snapshot.get("count"), Long.valueOf(1));
+        Assert.assertEquals(snapshot.get("max"), Long.valueOf(2000));
+
+        TabularData hitRates = (TabularData) server.getAttribute(name, "HitRates");
+        Assert.assertEquals(hitRates.get(new Object[] { "test.jmx" }).get("value"), Double.valueOf(1));
+    }
+}
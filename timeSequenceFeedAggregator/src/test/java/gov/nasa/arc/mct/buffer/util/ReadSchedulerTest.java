@@ -0,0 +1,227 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.buffer.util;
+
+import gov.nasa.arc.mct.api.feed.DataRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ReadSchedulerTest {
+
+    private static Runnable await(final CountDownLatch started, final CountDownLatch gate) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static Runnable record(final List<String> order, final String name, final CountDownLatch ran) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                order.add(name);
+                ran.countDown();
+            }
+        };
+    }
+
+    private static Thread invokeAll(final ReadScheduler scheduler, final DataRequest.Priority priority, final Runnable... reads) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                DataRequest request = DataRequest.begin(priority, 0, TimeUnit.MILLISECONDS, null);
+                try {
+                    scheduler.invokeAll(Arrays.asList(reads));
+                } finally {
+                    request.end();
+                }
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    @Test
+    public void allReadsTest() throws InterruptedException {
+        final ReadScheduler scheduler = new ReadScheduler(2);
+        final AtomicInteger count = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            Runnable[] reads = new Runnable[8];
+            for (int j = 0; j < reads.length; j++) {
+                reads[j] = new Runnable() {
+                    @Override
+                    public void run() {
+                        count.incrementAndGet();
+                    }
+                };
+            }
+            threads[i] = invokeAll(scheduler, DataRequest.Priority.history, reads);
+        }
+        for (Thread t : threads) {
+            t.join(5000);
+        }
+        Assert.assertEquals(count.get(), 32);
+        Assert.assertTrue(scheduler.invokeAll(Collections.<Runnable>emptyList()));
+    }
+
+    @Test
+    public void priorityTest() throws InterruptedException {
+        ReadScheduler scheduler = new ReadScheduler(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch callersGate = new CountDownLatch(1);
+
+        // the pool thread and the submitting thread are both busy
+        CountDownLatch busy = new CountDownLatch(2);
+        Thread blocker = invokeAll(scheduler, DataRequest.Priority.live, await(busy, gate), await(busy, gate));
+        Assert.assertTrue(busy.await(5, TimeUnit.SECONDS));
+
+        // each caller is busy with its own last read, the other one is queued
+        CountDownLatch ran = new CountDownLatch(2);
+        CountDownLatch historyStarted = new CountDownLatch(1);
+        Thread history = invokeAll(scheduler, DataRequest.Priority.history, record(order, "history", ran),
+                        await(historyStarted, callersGate));
+        Assert.assertTrue(historyStarted.await(5, TimeUnit.SECONDS));
+        CountDownLatch liveStarted = new CountDownLatch(1);
+        Thread live = invokeAll(scheduler, DataRequest.Priority.live, record(order, "live", ran),
+                        await(liveStarted, callersGate));
+        Assert.assertTrue(liveStarted.await(5, TimeUnit.SECONDS));
+
+        gate.countDown();
+        Assert.assertTrue(ran.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(order, Arrays.asList("live", "history"));
+        callersGate.countDown();
+        blocker.join(5000);
+        history.join(5000);
+        live.join(5000);
+    }
+
+    @Test
+    public void cancelTest() {
+        ReadScheduler scheduler = new ReadScheduler(1);
+        final FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        });
+        final AtomicInteger count = new AtomicInteger();
+        List<Runnable> reads = new ArrayList<Runnable>();
+        for (int i = 0; i < 10; i++) {
+            reads.add(new Runnable() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        // the task of the request is cancelled by its first read
+        reads.set(9, new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+                task.cancel(false);
+            }
+        });
+        DataRequest request = DataRequest.begin(DataRequest.Priority.live, 0, TimeUnit.MILLISECONDS, task);
+        try {
+            Assert.assertFalse(scheduler.invokeAll(reads));
+        } finally {
+            request.end();
+        }
+        Assert.assertTrue(count.get() < 10);
+        Assert.assertNull(DataRequest.current());
+    }
+
+    @Test
+    public void deadlineTest() {
+        ReadScheduler scheduler = new ReadScheduler(1);
+        final AtomicInteger count = new AtomicInteger();
+        List<Runnable> reads = new ArrayList<Runnable>();
+        for (int i = 0; i < 20; i++) {
+            reads.add(new Runnable() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        DataRequest request = DataRequest.begin(DataRequest.Priority.live, 50, TimeUnit.MILLISECONDS, null);
+        long start = System.nanoTime();
+        try {
+            Assert.assertFalse(scheduler.invokeAll(reads));
+        } finally {
+            request.end();
+        }
+        Assert.assertTrue(count.get() < 20);
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 200);
+    }
+
+    @Test
+    public void interruptTest() {
+        ReadScheduler scheduler = new ReadScheduler(1);
+        final AtomicInteger count = new AtomicInteger();
+        Runnable read = new Runnable() {
+            @Override
+            public void run() {
+                count.incrementAndGet();
+            }
+        };
+        Thread.currentThread().interrupt();
+        try {
+            Assert.assertFalse(scheduler.invokeAll(Arrays.asList(read, read, read)));
+            Assert.assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        Assert.assertTrue(count.get() < 3);
+    }
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.feed;
+
+import gov.nasa.arc.mct.api.feed.FeedChangeListener;
+import gov.nasa.arc.mct.api.feed.FeedSampleBlock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class FeedChangeListenerTest {
+    private String testFeedID1 = "TestPui1";
+    private String testFeedID2 = "TestPui2";
+    private FeedAggregatorService service;
+    private List<Set<String>> changes;
+    private List<Integer> samplesWhenNotified;
+    private FeedChangeListener listener;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        Properties prop = new Properties();
+        prop.load(ClassLoader.getSystemResourceAsStream("properties/testFeed.properties"));
+        prop.put("bufferList", "memory");
+        prop.put("runMode", "embedded");
+        prop.put("memory.buffer.partition", "2");
+        prop.put("memory.buffer.time.millis", "-1");
+        service = new FeedAggregatorService(prop);
+        changes = new ArrayList<Set<String>>();
+        samplesWhenNotified = new ArrayList<Integer>();
+        listener = new FeedChangeListener() {
+            @Override
+            public void feedsChanged(Set<String> feedIDs) {
+                changes.add(new HashSet<String>(feedIDs));
+                // the samples can be read by the time the listener is notified
+                int samples = 0;
+                for (List<Map<String, String>> data : service.getData(feedIDs, TimeUnit.MILLISECONDS, 0, 10000).values()) {
+                    samples += data.size();
+                }
+                samplesWhenNotified.add(Integer.valueOf(samples));
+            }
+        };
+        service.addFeedChangeListener(listener);
+    }
+
+    @AfterMethod
+    public void teardown() {
+        // the memory buffer is shared by the services
+        service.reset();
+    }
+
+    private static Map<Long, Map<String, String>> entries(long fromMillis, long toMillis) {
+        Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
+        for (long time = fromMillis; time < toMillis; time += 1000) {
+            entries.put(Long.valueOf(time), Collections.singletonMap(FeedSampleBlock.VALUE_KEY, String.valueOf(time)));
+        }
+        return entries;
+    }
+
+    @Test
+    public void putDataTest() {
+        service.putData(testFeedID1, TimeUnit.MILLISECONDS, entries(0, 2000));
+        Assert.assertEquals(changes, Collections.singletonList(Collections.singleton(testFeedID1)));
+        Assert.assertEquals(samplesWhenNotified.get(0), Integer.valueOf(2));
+
+        Map<String, Map<Long, Map<String, String>>> value = new HashMap<String, Map<Long, Map<String, String>>>();
+        value.put(testFeedID1, entries(2000, 3000));
+        value.put(testFeedID2, entries(0, 1000));
+        service.putData(value, TimeUnit.MILLISECONDS, new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        Assert.assertEquals(changes.size(), 2);
+        Assert.assertEquals(changes.get(1), value.keySet());
+        Assert.assertEquals(samplesWhenNotified.get(1), Integer.valueOf(4));
+    }
+
+    @Test
+    public void putSamplesTest() {
+        service.putSamples(Collections.singletonMap(testFeedID2, FeedSampleBlock.fromMaps(testFeedID2, entries(0, 3000))),
+                        TimeUnit.MILLISECONDS, null);
+        Assert.assertEquals(changes, Collections.singletonList(Collections.singleton(testFeedID2)));
+        Assert.assertEquals(samplesWhenNotified.get(0), Integer.valueOf(3));
+    }
+
+    @Test
+    public void removeListenerTest() {
+        // nothing is written, so nothing is notified
+        service.putData(Collections.<String, Map<Long, Map<String, String>>>emptyMap(), TimeUnit.MILLISECONDS, null);
+        Assert.assertTrue(changes.isEmpty());
+
+        service.removeFeedChangeListener(listener);
+        service.putData(testFeedID1, TimeUnit.MILLISECONDS, entries(0, 1000));
+        Assert.assertTrue(changes.isEmpty());
+    }
+}
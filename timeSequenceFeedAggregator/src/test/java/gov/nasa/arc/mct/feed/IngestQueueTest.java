@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.feed;
+
+import gov.nasa.arc.mct.feed.IngestQueue.OverloadPolicy;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class IngestQueueTest {
+    private static final String FEED_ID = "TestPui1";
+
+    private File overflowFile;
+    private List<Map<String, Map<Long, Map<String, String>>>> written;
+    private CountDownLatch started;
+    private CountDownLatch release;
+    private AtomicInteger callbacks;
+    private IngestQueue queue;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        overflowFile = File.createTempFile("mct-overflow", "");
+        overflowFile.delete();
+        written = Collections.synchronizedList(new ArrayList<Map<String, Map<Long, Map<String, String>>>>());
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        callbacks = new AtomicInteger();
+    }
+
+    @AfterMethod
+    public void teardown() {
+        release.countDown();
+        if (queue != null) {
+            queue.close();
+        }
+        overflowFile.delete();
+    }
+
+    private final class TestWrite extends IngestQueue.Write {
+        private final Map<String, Map<Long, Map<String, String>>> value;
+
+        TestWrite(Map<String, Map<Long, Map<String, String>>> value, Runnable callback) {
+            super(callback);
+            this.value = value;
+        }
+
+        @Override
+        int size() {
+            return value.get(FEED_ID).size();
+        }
+
+        @Override
+        void write() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.add(value);
+            if (getCallback() != null) {
+                getCallback().run();
+            }
+        }
+
+        @Override
+        Map<String, Map<Long, Map<String, String>>> getData() {
+            return value;
+        }
+    }
+
+    private IngestQueue newQueue(int capacity, OverloadPolicy policy) {
+        return new IngestQueue(capacity, policy, overflowFile, new IngestQueue.WriteFactory() {
+            @Override
+            public IngestQueue.Write newWrite(Map<String, Map<Long, Map<String, String>>> value, Runnable callback) {
+                return new TestWrite(value, callback);
+            }
+        });
+    }
+
+    private TestWrite newWrite(long from, long to) {
+        Map<Long, Map<String, String>> entries = new HashMap<Long, Map<String, String>>();
+        for (long time = from; time < to; time++) {
+            entries.put(Long.valueOf(time), Collections.singletonMap("value", String.valueOf(time)));
+        }
+        return new TestWrite(Collections.singletonMap(FEED_ID, entries), new Runnable() {
+            @Override
+            public void run() {
+                callbacks.incrementAndGet();
+            }
+        });
+    }
+
+    private void offerFirst(long from, long to) throws InterruptedException {
+        queue.offer(newWrite(from, to));
+        // the worker holds the first write until it is released
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void blockTest() throws InterruptedException {
+        queue = newQueue(10, OverloadPolicy.block);
+        offerFirst(0, 10);
+        queue.offer(newWrite(10, 20));
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                queue.offer(newWrite(20, 30));
+            }
+        };
+        producer.start();
+        producer.join(200);
+        Assert.assertTrue(producer.isAlive());
+        Assert.assertEquals(queue.getQueuedSamples(), 10);
+
+        release.countDown();
+        producer.join(5000);
+        Assert.assertFalse(producer.isAlive());
+        queue.close();
+        Assert.assertEquals(written.size(), 3);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(written.get(i).get(FEED_ID).containsKey(Long.valueOf(i * 10)));
+        }
+        Assert.assertEquals(callbacks.get(), 3);
+        Assert.assertEquals(queue.getDroppedSamples(), 0);
+        Assert.assertTrue(queue.getMaxEnqueueLatency(TimeUnit.MILLISECONDS) >= 100);
+    }
+
+    @Test
+    public void dropOldestTest() throws InterruptedException {
+        queue = newQueue(15, OverloadPolicy.dropOldest);
+        offerFirst(0, 10);
+        queue.offer(newWrite(10, 20));
+        queue.offer(newWrite(20, 30));
+        Assert.assertEquals(queue.getDroppedSamples(), 9);
+        // the callback of the dropped write runs right away
+        Assert.assertEquals(callbacks.get(), 1);
+
+        release.countDown();
+        queue.close();
+        Assert.assertEquals(written.size(), 3);
+        Assert.assertTrue(written.get(0).get(FEED_ID).containsKey(Long.valueOf(0)));
+        // the last sample of the dropped write comes before the newer write
+        Assert.assertEquals(written.get(1).get(FEED_ID).keySet(), Collections.singleton(Long.valueOf(19)));
+        Assert.assertTrue(written.get(2).get(FEED_ID).containsKey(Long.valueOf(20)));
+        Assert.assertEquals(callbacks.get(), 3);
+    }
+
+    @Test
+    public void spillTest() throws InterruptedException {
+        queue = newQueue(10, OverloadPolicy.spill);
+        offerFirst(0, 10);
+        queue.offer(newWrite(10, 20));
+        queue.offer(newWrite(20, 30));
+        queue.offer(newWrite(30, 31));
+        Assert.assertEquals(queue.getQueuedSamples(), 10);
+        Assert.assertEquals(queue.getSpilledSamples(), 11);
+        Assert.assertEquals(queue.getSpilledPendingSamples(), 11);
+        Assert.assertTrue(overflowFile.length() > 0);
+
+        release.countDown();
+        queue.close();
+        Assert.assertEquals(written.size(), 4);
+        Assert.assertEquals(written.get(2).get(FEED_ID).size(), 10);
+        Assert.assertEquals(written.get(2).get(FEED_ID).get(Long.valueOf(25)).get("value"), "25");
+        Assert.assertEquals(written.get(3).get(FEED_ID).keySet(), Collections.singleton(Long.valueOf(30)));
+        Assert.assertEquals(callbacks.get(), 4);
+        Assert.assertEquals(queue.getSpilledPendingSamples(), 0);
+        Assert.assertEquals(queue.getDroppedSamples(), 0);
+        Assert.assertFalse(overflowFile.exists());
+    }
+
+    @Test
+    public void closedTest() {
+        queue = newQueue(10, OverloadPolicy.block);
+        queue.close();
+        release.countDown();
+        queue.offer(newWrite(0, 5));
+        // writes are made by the caller once the queue is closed
+        Assert.assertEquals(written.size(), 1);
+    }
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.feed;
+
+import gov.nasa.arc.mct.api.feed.DataRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SharedReadsTest {
+    private List<Set<String>> reads;
+    private CountDownLatch started;
+    private CountDownLatch release;
+    private SharedReads sharedReads;
+
+    @BeforeMethod
+    public void setup() {
+        reads = Collections.synchronizedList(new ArrayList<Set<String>>());
+        started = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+        sharedReads = new SharedReads(new SharedReads.Source() {
+            @Override
+            public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, TimeUnit timeUnit,
+                            long startTime, long endTime) {
+                reads.add(new HashSet<String>(feedIDs));
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                Map<String, SortedMap<Long, Map<String, String>>> data = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+                for (String feedID : feedIDs) {
+                    SortedMap<Long, Map<String, String>> feedData = new TreeMap<Long, Map<String, String>>();
+                    feedData.put(Long.valueOf(startTime), Collections.singletonMap("value", feedID));
+                    data.put(feedID, feedData);
+                }
+                return data;
+            }
+        });
+    }
+
+    @AfterMethod
+    public void teardown() {
+        release.countDown();
+    }
+
+    private final class Request extends Thread {
+        private final Set<String> feedIDs;
+        private final long endTime;
+        private final DataRequest.Priority priority;
+        private volatile Map<String, SortedMap<Long, Map<String, String>>> data;
+        private volatile DataRequest request;
+
+        Request(long endTime, DataRequest.Priority priority, String... feedIDs) {
+            this.feedIDs = new HashSet<String>(Arrays.asList(feedIDs));
+            this.endTime = endTime;
+            this.priority = priority;
+            start();
+        }
+
+        Request(String... feedIDs) {
+            this(1000, DataRequest.Priority.live, feedIDs);
+        }
+
+        @Override
+        public void run() {
+            request = DataRequest.begin(priority, 0, TimeUnit.MILLISECONDS, null);
+            try {
+                data = sharedReads.getData(feedIDs, TimeUnit.MILLISECONDS, 0, endTime);
+            } finally {
+                request.end();
+            }
+        }
+
+        Map<String, SortedMap<Long, Map<String, String>>> getResult() throws InterruptedException {
+            join(5000);
+            Assert.assertFalse(isAlive());
+            return data;
+        }
+    }
+
+    // waits until a request is waiting for the read in flight
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.TIMED_WAITING && thread.getState() != Thread.State.WAITING) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void sharedTest() throws InterruptedException {
+        Request first = new Request("f1", "f2");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Request second = new Request("f1");
+        awaitWaiting(second);
+        release.countDown();
+
+        Assert.assertEquals(first.getResult().keySet(), new HashSet<String>(Arrays.asList("f1", "f2")));
+        Assert.assertEquals(second.getResult().keySet(), Collections.singleton("f1"));
+        Assert.assertSame(second.getResult().get("f1"), first.getResult().get("f1"));
+        Assert.assertEquals(reads.size(), 1);
+        Assert.assertEquals(sharedReads.getWindowsInFlight(), 0);
+    }
+
+    @Test
+    public void mergeTest() throws InterruptedException {
+        Request first = new Request("f1");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Request second = new Request("f2");
+        awaitWaiting(second);
+        Request third = new Request("f1", "f3");
+        awaitWaiting(third);
+        release.countDown();
+
+        Assert.assertEquals(first.getResult().keySet(), Collections.singleton("f1"));
+        Assert.assertEquals(second.getResult().keySet(), Collections.singleton("f2"));
+        Assert.assertEquals(third.getResult().keySet(), new HashSet<String>(Arrays.asList("f1", "f3")));
+        // the requests which arrived during the first read are read together
+        Assert.assertEquals(reads.size(), 2);
+        Assert.assertEquals(reads.get(1), new HashSet<String>(Arrays.asList("f1", "f2", "f3")));
+        Assert.assertEquals(sharedReads.getWindowsInFlight(), 0);
+    }
+
+    @Test
+    public void otherWindowTest() throws InterruptedException {
+        Request first = new Request("f1");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Request other = new Request(2000, DataRequest.Priority.live, "f1");
+        Request history = new Request(1000, DataRequest.Priority.history, "f1");
+        long deadline = System.currentTimeMillis() + 5000;
+        while (reads.size() < 3) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        release.countDown();
+        Assert.assertEquals(first.getResult().get("f1").size(), 1);
+        Assert.assertEquals(other.getResult().get("f1").size(), 1);
+        Assert.assertEquals(history.getResult().get("f1").size(), 1);
+    }
+
+    @Test
+    public void cancelledTest() throws InterruptedException {
+        Request first = new Request("f1");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Request second = new Request("f1");
+        awaitWaiting(second);
+        // the read stops early for the request which started it; the other request reads on its own
+        first.request.cancel();
+        release.countDown();
+
+        Assert.assertEquals(first.getResult().keySet(), Collections.singleton("f1"));
+        Assert.assertEquals(second.getResult().keySet(), Collections.singleton("f1"));
+        Assert.assertEquals(reads.size(), 2);
+    }
+
+    @Test
+    public void pendingCancelledTest() throws InterruptedException {
+        Request first = new Request("f1");
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Request second = new Request("f2");
+        awaitWaiting(second);
+        Request third = new Request("f3");
+        awaitWaiting(third);
+        // the merged read gives up without waiting for the read in flight; the request merged into it reads on its own
+        second.request.cancel();
+        Assert.assertTrue(second.getResult().isEmpty());
+        release.countDown();
+
+        Assert.assertEquals(first.getResult().keySet(), Collections.singleton("f1"));
+        Assert.assertEquals(third.getResult().keySet(), Collections.singleton("f3"));
+        Assert.assertEquals(reads.size(), 2);
+        Assert.assertEquals(reads.get(1), Collections.singleton("f3"));
+        Assert.assertEquals(sharedReads.getWindowsInFlight(), 0);
+    }
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Mission Control Technologies, Copyright (c) 2009-2012, United States Government
+ * as represented by the Administrator of the National Aeronautics and Space 
+ * Administration. All rights reserved.
+ *
+ * The MCT platform is licensed under the Apache License, Version 2.0 (the 
+ * "License"); you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT 
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the 
+ * License for the specific language governing permissions and limitations under 
+ * the License.
+ *
+ * MCT includes source code licensed under additional open source licenses. See 
+ * the MCT Open Source Licenses file included with this distribution or the About 
+ * MCT Licenses dialog available at runtime from the MCT Help menu for additional 
+ * information. 
+ *******************************************************************************/
+package gov.nasa.arc.mct.feed;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class WindowCursorTest {
+    private static final String FEED_ID1 = "TestPui1";
+    private static final String FEED_ID2 = "TestPui2";
+    private static final long SPACING = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private Map<String, SortedMap<Long, Map<String, String>>> archive;
+    private int reads;
+    private int maxReadSize;
+
+    @BeforeMethod
+    public void setup() {
+        archive = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+        reads = 0;
+        maxReadSize = 0;
+    }
+
+    private void addSamples(String feedID, long from, long to, long spacing) {
+        SortedMap<Long, Map<String, String>> samples = archive.get(feedID);
+        if (samples == null) {
+            samples = new TreeMap<Long, Map<String, String>>();
+            archive.put(feedID, samples);
+        }
+        for (long time = from; time < to; time += spacing) {
+            samples.put(Long.valueOf(time), Collections.singletonMap("time", String.valueOf(time)));
+        }
+    }
+
+    // returns the samples of the window and, like the buffers, the last sample before it
+    private final WindowCursor.Source source = new WindowCursor.Source() {
+        @Override
+        public Map<String, SortedMap<Long, Map<String, String>>> getData(Set<String> feedIDs, long startTime, long endTime) {
+            reads++;
+            int size = 0;
+            Map<String, SortedMap<Long, Map<String, String>>> data = new HashMap<String, SortedMap<Long, Map<String, String>>>();
+            for (String feedID : feedIDs) {
+                SortedMap<Long, Map<String, String>> samples = archive.get(feedID);
+                if (samples == null) {
+                    continue;
+                }
+                SortedMap<Long, Map<String, String>> window = new TreeMap<Long, Map<String, String>>(
+                                samples.subMap(Long.valueOf(startTime), Long.valueOf(endTime + 1)));
+                SortedMap<Long, Map<String, String>> before = samples.headMap(Long.valueOf(startTime));
+                if (!before.isEmpty()) {
+                    window.put(before.lastKey(), before.get(before.lastKey()));
+                }
+                if (!window.isEmpty()) {
+                    data.put(feedID, window);
+                    size += window.size();
+                }
+            }
+            maxReadSize = Math.max(maxReadSize, size);
+            return data;
+        }
+    };
+
+    private Map<String, List<Map<String, String>>> readAll(WindowCursor cursor, int chunkSize) {
+        Map<String, List<Map<String, String>>> all = new HashMap<String, List<Map<String, String>>>();
+        Map<String, Long> lastTimes = new HashMap<String, Long>();
+        while (cursor.hasNext()) {
+            Map<String, List<Map<String, String>>> chunk = cursor.next();
+            int size = 0;
+            for (Map.Entry<String, List<Map<String, String>>> entry : chunk.entrySet()) {
+                size += entry.getValue().size();
+                for (Map<String, String> sample : entry.getValue()) {
+                    long time = Long.parseLong(sample.get("time"));
+                    Long last = lastTimes.get(entry.getKey());
+                    Assert.assertTrue(last == null || time > last.longValue());
+                    lastTimes.put(entry.getKey(), Long.valueOf(time));
+                }
+                if (all.containsKey(entry.getKey())) {
+                    all.get(entry.getKey()).addAll(entry.getValue());
+                } else {
+                    all.put(entry.getKey(), entry.getValue());
+                }
+            }
+            Assert.assertTrue(size > 0 && size <= chunkSize);
+        }
+        cursor.close();
+        return all;
+    }
+
+    @Test
+    public void streamTest() {
+        long end = TimeUnit.MINUTES.toNanos(10);
+        addSamples(FEED_ID1, 0, end, SPACING);
+        addSamples(FEED_ID2, 0, end, SPACING * 7);
+        Set<String> feedIDs = new HashSet<String>();
+        feedIDs.add(FEED_ID1);
+        feedIDs.add(FEED_ID2);
+
+        Map<String, List<Map<String, String>>> all = readAll(new WindowCursor(source, feedIDs, 0, end - 1, 1000), 1000);
+        Assert.assertEquals(all.get(FEED_ID1).size(), archive.get(FEED_ID1).size());
+        Assert.assertEquals(all.get(FEED_ID2).size(), archive.get(FEED_ID2).size());
+        // windows adapt to hold about a chunk, far from the 68572 samples of the span
+        Assert.assertTrue(maxReadSize <= 4000, "read " + maxReadSize);
+    }
+
+    @Test
+    public void previousValueTest() {
+        addSamples(FEED_ID1, 0, TimeUnit.SECONDS.toNanos(1), SPACING);
+        addSamples(FEED_ID1, TimeUnit.MINUTES.toNanos(2), TimeUnit.MINUTES.toNanos(2) + 1, SPACING);
+        long start = TimeUnit.MINUTES.toNanos(1);
+
+        Map<String, List<Map<String, String>>> all = readAll(new WindowCursor(source, Collections.singleton(FEED_ID1),
+                        start, TimeUnit.MINUTES.toNanos(3), 100), 100);
+        // the last value before the start time is returned once, then the value at 2 minutes
+        Assert.assertEquals(all.get(FEED_ID1).size(), 2);
+        Assert.assertEquals(all.get(FEED_ID1).get(0).get("time"), String.valueOf(TimeUnit.SECONDS.toNanos(1) - SPACING));
+        Assert.assertEquals(all.get(FEED_ID1).get(1).get("time"), String.valueOf(TimeUnit.MINUTES.toNanos(2)));
+    }
+
+    @Test
+    public void burstTest() {
+        // a burst denser than a chunk within the initial window
+        addSamples(FEED_ID1, 0, WindowCursor.INITIAL_WINDOW, WindowCursor.INITIAL_WINDOW / 5000);
+        Map<String, List<Map<String, String>>> all = readAll(new WindowCursor(source, Collections.singleton(FEED_ID1),
+                        0, TimeUnit.SECONDS.toNanos(10), 1000), 1000);
+        Assert.assertEquals(all.get(FEED_ID1).size(), 5000);
+    }
+
+    @Test
+    public void emptyTest() {
+        WindowCursor cursor = new WindowCursor(source, Collections.singleton(FEED_ID1), 0, TimeUnit.DAYS.toNanos(1), 1000);
+        Assert.assertFalse(cursor.hasNext());
+        Assert.assertTrue(reads < 20);
+        try {
+            cursor.next();
+            Assert.fail();
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void closeTest() {
+        addSamples(FEED_ID1, 0, TimeUnit.SECONDS.toNanos(10), SPACING);
+        WindowCursor cursor = new WindowCursor(source, Collections.singleton(FEED_ID1), 0, TimeUnit.SECONDS.toNanos(10), 10);
+        Assert.assertTrue(cursor.hasNext());
+        cursor.next();
+        cursor.close();
+        Assert.assertFalse(cursor.hasNext());
+    }
+}